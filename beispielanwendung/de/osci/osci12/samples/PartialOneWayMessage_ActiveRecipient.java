@@ -6,8 +6,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
@@ -32,7 +30,6 @@ import de.osci.osci12.messagetypes.GetMessageId;
 import de.osci.osci12.messagetypes.InitDialog;
 import de.osci.osci12.messagetypes.OSCIMessage;
 import de.osci.osci12.messagetypes.PartialFetchDelivery;
-import de.osci.osci12.messagetypes.PartialStoreDelivery;
 import de.osci.osci12.messagetypes.ResponseToFetchAbstract;
 import de.osci.osci12.messagetypes.ResponseToFetchDelivery;
 import de.osci.osci12.messagetypes.ResponseToGetMessageId;
@@ -40,6 +37,7 @@ import de.osci.osci12.messagetypes.ResponseToInitDialog;
 import de.osci.osci12.messagetypes.ResponseToPartialFetchDelivery;
 import de.osci.osci12.messagetypes.ResponseToPartialStoreDelivery;
 import de.osci.osci12.messagetypes.StoreDelivery;
+import de.osci.osci12.messagetypes.StoreDeliverySplitter;
 import de.osci.osci12.roles.Addressee;
 import de.osci.osci12.roles.Intermed;
 import de.osci.osci12.roles.Originator;
@@ -163,16 +161,12 @@ public class PartialOneWayMessage_ActiveRecipient
     encryptedData.encrypt(reader);
     storeDel.addEncryptedData(encryptedData);
 
-    // Create 1000KB chunks
+    // Create 1000KB chunks. The StoreDelivery-message is serialized once and each
+    // chunk is sent as PartialStoreDelivery-message as soon as it is complete, so
+    // only one chunk is buffered at a time. The splitter throws an OSCIErrorException
+    // if the intermediary reports an error for a chunk.
     long chunkSize = 1000;
-    ByteArrayOutputStream storeDelOut = new ByteArrayOutputStream();
-    storeDel.writeMessage(storeDelOut);
-    byte[] storeDelBytes = storeDelOut.toByteArray();
-    long storeDelSize = storeDelBytes.length / 1024;
-    ByteArrayInputStream storeDelIn = new ByteArrayInputStream(storeDelBytes);
-    Path tempDir = Files.createTempDirectory("partial_store_delivery");
-    // Splits the StoreDeliveryMessage into chunk files
-    ChunkHelper ch = new ChunkHelper(storeDelIn, tempDir.toString(), "storeDel.osci", chunkSize);
+    StoreDeliverySplitter splitter = new StoreDeliverySplitter(storeDel, chunkSize);
 
     // Error handling
     if (!rsp2GetMsgID.getFeedback()[0][1].startsWith("0"))
@@ -180,27 +174,9 @@ public class PartialOneWayMessage_ActiveRecipient
       // do error handling
     }
 
-    // Iterate through all chunks
-    ResponseToPartialStoreDelivery rsp2PartialStoreDel = null;
-    int chunkNumber = ch.getNumberOfChunks();
-    for ( int i = 1 ; i <= chunkNumber ; i++ )
-    {
-      // Create the ChunkInformation for the current chunk
-      ChunkInformation chunkInfo = new ChunkInformation(chunkSize, i, storeDelSize, chunkNumber);
-      // Create the PartialStoreDelivery-message with the same message id as
-      // the StoreDelivery-message
-      PartialStoreDelivery parStoreDelivery = new PartialStoreDelivery(clientDialog, user2, chunkInfo,
-                                                                       rsp2GetMsgID.getMessageId());
-      // Set the ChunkBlob in the PartialStoreDelivery-message
-      parStoreDelivery.setChunkBlob(ch.getChunk(i));
-      rsp2PartialStoreDel = parStoreDelivery.send();
+    // Sends all chunks with the same message id as the StoreDelivery-message
+    ResponseToPartialStoreDelivery rsp2PartialStoreDel = splitter.send(clientDialog, user2);
 
-      // Error handling
-      if (rsp2PartialStoreDel == null || !rsp2PartialStoreDel.getFeedback()[0][1].startsWith("0"))
-      {
-        // do error handling
-      }
-    }
     // Bei der letzten ResponseToPartialStoreDelivery Nachricht sollte ein Inside Feedback endhalten sein
     if (rsp2PartialStoreDel == null || rsp2PartialStoreDel.getInsideFeedback() == null
         || !rsp2PartialStoreDel.getFeedback()[0][1].startsWith("0"))
@@ -209,9 +185,6 @@ public class PartialOneWayMessage_ActiveRecipient
     }
     // Auch die Processcard der letzten Nachricht enthält die Processcard der gesamt Nachricht
     rsp2PartialStoreDel.getProcessCardBundle();
-    // Optional: Delete all chunks after they have been sent
-    ch.deleteFiles();
-    tempDir.toFile().delete();
     ExitDialog ed = new ExitDialog(clientDialog);
 
     // Transmit the request and receive the response
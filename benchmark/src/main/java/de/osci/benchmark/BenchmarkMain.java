@@ -0,0 +1,44 @@
+package de.osci.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Startet die JMH-Benchmarks der OSCI-Bibliothek. Ohne abweichende Angaben wird der GC-Profiler
+ * (Allokationsrate je Operation) aktiviert und das Ergebnis als JSON in die Datei jmh-result.json geschrieben,
+ * damit die Werte verschiedener Versionen verglichen werden können. Alle übrigen Parameter werden an
+ * {@link org.openjdk.jmh.Main} weitergereicht, z.B. <code>-p payloadKB=1024 SymCipherBenchmark</code>.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public final class BenchmarkMain
+{
+  private BenchmarkMain()
+  {}
+
+  public static void main(String[] args) throws Exception
+  {
+    List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+
+    if (!arguments.contains("-prof"))
+      arguments.addAll(0, Arrays.asList("-prof", "gc"));
+
+    if (!arguments.contains("-rf"))
+      arguments.addAll(0, Arrays.asList("-rf", "json"));
+
+    if (!arguments.contains("-rff"))
+      arguments.addAll(0, Arrays.asList("-rff", "jmh-result.json"));
+
+    org.openjdk.jmh.Main.main(arguments.toArray(new String[0]));
+  }
+}
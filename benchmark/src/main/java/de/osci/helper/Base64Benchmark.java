@@ -0,0 +1,96 @@
+package de.osci.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.osci.osci12.messagetypes.MessageFixtures;
+
+
+/**
+ * Misst die Base64-Kodierung und -Dekodierung über Base64OutputStream und Base64InputStream.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Base64Benchmark
+{
+  @Param({"1", "64", "1024"})
+  public int payloadKB;
+
+  private byte[] payload;
+
+  private byte[] base64;
+
+  private final byte[] buffer = new byte[8192];
+
+  @Setup
+  public void setup() throws IOException
+  {
+    payload = MessageFixtures.randomBytes(payloadKB);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try (Base64OutputStream b64 = new Base64OutputStream(out, true))
+    {
+      b64.write(payload);
+    }
+
+    base64 = out.toByteArray();
+  }
+
+  @Benchmark
+  public void encode() throws IOException
+  {
+    try (Base64OutputStream out = new Base64OutputStream(new NullOutputStream(), true))
+    {
+      out.write(payload);
+    }
+  }
+
+  @Benchmark
+  public long decode() throws IOException
+  {
+    return drain(new Base64InputStream(new ByteArrayInputStream(base64)));
+  }
+
+  private long drain(InputStream in) throws IOException
+  {
+    long length = 0;
+    int n;
+
+    try (InputStream input = in)
+    {
+      while ((n = input.read(buffer)) > -1)
+        length += n;
+    }
+
+    return length;
+  }
+}
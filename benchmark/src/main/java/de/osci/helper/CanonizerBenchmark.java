@@ -0,0 +1,111 @@
+package de.osci.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.osci.osci12.messagetypes.MessageFixtures;
+
+
+/**
+ * Misst das Zerlegen einer Nachricht in MIME-Parts (MIMEParser) und die Kanonisierung des SOAP-Envelopes
+ * mit den Hashwerten der signierten Elemente (Canonizer, CanParser). Grundlage ist eine StoreDelivery mit
+ * signiertem Inhaltsdatencontainer.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CanonizerBenchmark
+{
+  @Param({"1", "64", "1024"})
+  public int payloadKB;
+
+  private byte[] message;
+
+  private byte[] envelope;
+
+  private final byte[] buffer = new byte[8192];
+
+  @Setup
+  public void setup() throws Exception
+  {
+    message = new MessageFixtures(payloadKB).getStoreDeliveryMessage();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try (InputStream in = new MIMEParser(new ByteArrayInputStream(message)).getNextStream())
+    {
+      int n;
+
+      while ((n = in.read(buffer)) > -1)
+        out.write(buffer, 0, n);
+    }
+
+    envelope = out.toByteArray();
+  }
+
+  @Benchmark
+  public long splitMimeParts() throws IOException
+  {
+    MIMEParser parser = new MIMEParser(new ByteArrayInputStream(message));
+    long length = 0;
+    InputStream part;
+
+    while ((part = parser.getNextStream()) != null)
+      length += drain(part);
+
+    return length;
+  }
+
+  @Benchmark
+  public int canonize() throws Exception
+  {
+    Canonizer canonizer = new Canonizer(new ByteArrayInputStream(envelope), null);
+    drain(canonizer);
+
+    if (canonizer.getCanException() != null)
+      throw canonizer.getCanException();
+
+    return canonizer.getDigestValues().size();
+  }
+
+  private long drain(InputStream in) throws IOException
+  {
+    long length = 0;
+    int n;
+
+    try (InputStream input = in)
+    {
+      while ((n = input.read(buffer)) > -1)
+        length += n;
+    }
+
+    return length;
+  }
+}
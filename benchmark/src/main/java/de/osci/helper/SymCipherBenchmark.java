@@ -0,0 +1,109 @@
+package de.osci.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.osci.osci12.common.Constants;
+import de.osci.osci12.encryption.Crypto;
+import de.osci.osci12.messagetypes.MessageFixtures;
+
+
+/**
+ * Misst die symmetrische Ver- und Entschlüsselung über SymCipherOutputStream und SymCipherInputStream mit
+ * AES-GCM und AES-CBC.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SymCipherBenchmark
+{
+  @Param({"1", "64", "1024"})
+  public int payloadKB;
+
+  @Param({Constants.SYMMETRIC_CIPHER_ALGORITHM_AES256_GCM, Constants.SYMMETRIC_CIPHER_ALGORITHM_AES256})
+  public String cipherAlgorithm;
+
+  private byte[] payload;
+
+  private SecretKey key;
+
+  private byte[] encrypted;
+
+  private final byte[] buffer = new byte[8192];
+
+  @Setup
+  public void setup() throws IOException, NoSuchAlgorithmException
+  {
+    payload = MessageFixtures.randomBytes(payloadKB);
+    key = Crypto.createSymKey(cipherAlgorithm);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try (SymCipherOutputStream cipher = new SymCipherOutputStream(out, key, cipherAlgorithm, true))
+    {
+      cipher.write(payload);
+    }
+
+    encrypted = out.toByteArray();
+  }
+
+  @Benchmark
+  public void encrypt() throws IOException
+  {
+    try (SymCipherOutputStream out = new SymCipherOutputStream(new NullOutputStream(), key, cipherAlgorithm,
+                                                               true))
+    {
+      out.write(payload);
+    }
+  }
+
+  @Benchmark
+  public long decrypt() throws IOException
+  {
+    return drain(new SymCipherInputStream(new ByteArrayInputStream(encrypted), key, cipherAlgorithm, false));
+  }
+
+  private long drain(InputStream in) throws IOException
+  {
+    long length = 0;
+    int n;
+
+    try (InputStream input = in)
+    {
+      while ((n = input.read(buffer)) > -1)
+        length += n;
+    }
+
+    return length;
+  }
+}
@@ -0,0 +1,85 @@
+package de.osci.osci12.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.osci.osci12.messagetypes.MessageFixtures;
+
+
+/**
+ * Misst das Schreiben und Lesen eines SwapBuffers unterhalb der Auslagerungsschwelle (Hauptspeicher) und
+ * oberhalb (verschlüsselte temporäre Datei).
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SwapBufferBenchmark
+{
+  @Param({"1", "64", "1024"})
+  public int payloadKB;
+
+  @Param({"true", "false"})
+  public boolean swap;
+
+  private byte[] payload;
+
+  private final byte[] buffer = new byte[8192];
+
+  @Setup
+  public void setup()
+  {
+    payload = MessageFixtures.randomBytes(payloadKB);
+  }
+
+  @Benchmark
+  public long writeAndRead() throws IOException
+  {
+    SwapBuffer swapBuffer = new SwapBuffer();
+    // Der Konstruktor setzt die Schwelle zurück
+    SwapBuffer.maxBufferSize = swap ? (payload.length / 2) : (payload.length * 2L);
+
+    try (OutputStream out = swapBuffer.getOutputStream())
+    {
+      out.write(payload);
+    }
+
+    long length = 0;
+    int n;
+
+    try (InputStream in = swapBuffer.getInputStream())
+    {
+      while ((n = in.read(buffer)) > -1)
+        length += n;
+    }
+
+    swapBuffer.deleteTempFile();
+    return length;
+  }
+}
@@ -0,0 +1,164 @@
+package de.osci.osci12.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.osci.osci12.extinterfaces.TransportFactory;
+import de.osci.osci12.extinterfaces.TransportI;
+import de.osci.osci12.roles.Originator;
+
+
+/**
+ * Misst das Anlegen von Transportobjekten durch viele Threads gleichzeitig, über einen gemeinsamen
+ * TransportI-Prototyp (Sperre je Prototyp), über je einen Prototyp pro Dialog und über eine threadsichere
+ * TransportFactory. Das simulierte Transportmodul benötigt für das Anlegen einer Instanz eine feste Zeit
+ * (z.B. für den Aufbau eines SSL-Kontextes).
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class TransportFactoryBenchmark
+{
+  /** shared: ein Prototyp für alle Threads, dialog: ein Prototyp je Thread, factory: TransportFactory */
+  @Param({"shared", "dialog", "factory"})
+  public String source;
+
+  @Param({"100", "1000"})
+  public long createMicros;
+
+  private DialogHandler shared;
+
+  @Setup
+  public void setup()
+  {
+    shared = newDialogHandler();
+  }
+
+  @Benchmark
+  public TransportI create(DialogState dialog) throws IOException
+  {
+    return ("dialog".equals(source) ? dialog.dialogHandler : shared).getTransportFactory().create();
+  }
+
+  DialogHandler newDialogHandler()
+  {
+    DialogHandler dh = new DialogHandler((Originator)null, null, new SlowTransport(createMicros));
+
+    if ("factory".equals(source))
+      dh.setTransportFactory(new SlowTransportFactory(createMicros));
+
+    return dh;
+  }
+
+  /**
+   * Eigener DialogHandler je Thread.
+   */
+  @State(Scope.Thread)
+  public static class DialogState
+  {
+    DialogHandler dialogHandler;
+
+    @Setup
+    public void setup(TransportFactoryBenchmark benchmark)
+    {
+      dialogHandler = benchmark.newDialogHandler();
+    }
+  }
+
+  private static final class SlowTransportFactory implements TransportFactory
+  {
+    private final long createMicros;
+
+    SlowTransportFactory(long createMicros)
+    {
+      this.createMicros = createMicros;
+    }
+
+    public TransportI create()
+    {
+      return new SlowTransport(createMicros);
+    }
+  }
+
+  /**
+   * Transportmodul, dessen Instanziierung eine feste Zeit benötigt. Es wird nichts versendet.
+   */
+  private static final class SlowTransport implements TransportI
+  {
+    private final long createMicros;
+
+    SlowTransport(long createMicros)
+    {
+      this.createMicros = createMicros;
+      long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(createMicros);
+
+      while (System.nanoTime() < end)
+        Thread.yield();
+    }
+
+    public String getVersion()
+    {
+      return "1.0";
+    }
+
+    public String getVendor()
+    {
+      return "Benchmark";
+    }
+
+    public TransportI newInstance()
+    {
+      return new SlowTransport(createMicros);
+    }
+
+    public InputStream getResponseStream() throws IOException
+    {
+      throw new IOException("not connected");
+    }
+
+    public boolean isOnline(URI uri)
+    {
+      return false;
+    }
+
+    public long getContentLength()
+    {
+      return -1;
+    }
+
+    public OutputStream getConnection(URI uri, long length) throws IOException
+    {
+      throw new IOException("not connected");
+    }
+  }
+}
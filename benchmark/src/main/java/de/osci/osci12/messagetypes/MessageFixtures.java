@@ -0,0 +1,356 @@
+package de.osci.osci12.messagetypes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import de.osci.helper.Tools;
+import de.osci.osci12.common.CommonFactory;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.extinterfaces.TransportI;
+import de.osci.osci12.messageparts.Attachment;
+import de.osci.osci12.messageparts.ChunkInformation;
+import de.osci.osci12.messageparts.Content;
+import de.osci.osci12.messageparts.ContentContainer;
+import de.osci.osci12.roles.Addressee;
+import de.osci.osci12.roles.Originator;
+import de.osci.osci12.samples.impl.crypto.PKCS12Decrypter;
+import de.osci.osci12.samples.impl.crypto.PKCS12Signer;
+
+
+/**
+ * Testdaten für die Benchmarks. Beim Anlegen wird ein vollständiger Nachrichtenaustausch mit dem
+ * {@link LoopbackIntermed} durchgeführt, dabei werden die serialisierten Aufträge und Antworten aller
+ * Nachrichtentypen aufgezeichnet. Die Dialoge bleiben offen und die ControlBlock-Prüfung wird auf beiden
+ * Seiten abgeschaltet, so dass die aufgezeichneten Nachrichten beliebig oft erneut geparst werden können.
+ * <p>
+ * Als Schlüssel werden die Test-Zertifikate der Beispielanwendung verwendet (Alice an Bob über den
+ * OSCI-Manager).
+ * </p>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public final class MessageFixtures
+{
+  /**
+   * Namen der aufgezeichneten Auftragstypen
+   */
+  public static final String[] MESSAGE_TYPES = {"InitDialog", "GetMessageId", "StoreDelivery", "FetchDelivery",
+                                                "FetchProcessCard", "PartialStoreDelivery",
+                                                "PartialFetchDelivery", "ExitDialog"};
+
+  private static final String CERTS = "/de/osci/osci12/samples/zertifikate/";
+
+  private static final String PIN = "123456";
+
+  final LoopbackIntermed intermed;
+
+  final Originator alice;
+
+  final Originator bob;
+
+  final Addressee bobAddressee;
+
+  final byte[] payload;
+
+  private final Map<String, byte[]> requests = new HashMap<String, byte[]>();
+
+  private final Map<String, byte[]> responses = new HashMap<String, byte[]>();
+
+  private final Map<String, DialogHandler> clientDialogs = new HashMap<String, DialogHandler>();
+
+  private byte[] storeDeliveryMessage;
+
+  // Zustand des aufzeichnenden Transports, die Nachrichten werden nacheinander versendet
+  private byte[] lastRequest;
+
+  private byte[] lastResponse;
+
+  private boolean dryRun;
+
+  /**
+   * Legt die Testdaten an.
+   *
+   * @param payloadKB Größe des Attachments der Zustellungen in KB
+   * @throws Exception bei Fehlern im Nachrichtenaustausch
+   */
+  public MessageFixtures(int payloadKB) throws Exception
+  {
+    intermed = new LoopbackIntermed(new PKCS12Signer(CERTS + "osci_manager_signature_4096.p12", PIN),
+                                    new PKCS12Decrypter(CERTS + "osci_manager_cipher_4096.p12", PIN));
+    alice = new Originator(new PKCS12Signer(CERTS + "alice_signature_4096.p12", PIN),
+                           new PKCS12Decrypter(CERTS + "alice_cipher_4096.p12", PIN));
+    bob = new Originator(new PKCS12Signer(CERTS + "bob_signature_4096.p12", PIN),
+                         new PKCS12Decrypter(CERTS + "bob_cipher_4096.p12", PIN));
+    bobAddressee = new Addressee(null,
+                                 Tools.createCertificate(getClass().getResourceAsStream(CERTS
+                                                                                        + "bob_cipher_4096.cer")));
+    payload = randomBytes(payloadKB);
+    record();
+  }
+
+  /**
+   * Liefert zufällige Daten.
+   *
+   * @param kb Größe in KB
+   * @return Daten
+   */
+  public static byte[] randomBytes(int kb)
+  {
+    byte[] data = new byte[kb * 1024];
+    new Random(kb).nextBytes(data);
+    return data;
+  }
+
+  /**
+   * Liefert eine unverschlüsselte, serialisierte StoreDelivery mit signiertem Inhaltsdatencontainer
+   * (MIME-Format).
+   *
+   * @return Nachricht
+   */
+  public byte[] getStoreDeliveryMessage()
+  {
+    return storeDeliveryMessage;
+  }
+
+  /**
+   * Liefert einen DialogHandler, dessen Nachrichten vom Loopback-Intermediär beantwortet werden.
+   */
+  DialogHandler newDialog(Originator client)
+  {
+    return new DialogHandler(client, intermed.getIntermed(), new RecordingTransport());
+  }
+
+  /**
+   * Legt eine StoreDelivery von Alice an Bob mit den Testdaten als Attachment an.
+   */
+  StoreDelivery createStoreDelivery(DialogHandler dh, String messageId, boolean signContainer) throws Exception
+  {
+    StoreDelivery storeDelivery = new StoreDelivery(dh, bobAddressee, messageId);
+    storeDelivery.setSubject("Benchmark");
+    storeDelivery.addContentContainer(createContentContainer(signContainer));
+    return storeDelivery;
+  }
+
+  /**
+   * Legt einen Inhaltsdatencontainer mit den Testdaten als Attachment an.
+   */
+  ContentContainer createContentContainer(boolean sign) throws Exception
+  {
+    ContentContainer container = new ContentContainer();
+    container.addContent(new Content("Benchmark content data."));
+    container.addContent(new Content(new Attachment(new ByteArrayInputStream(payload), "payload.bin")));
+
+    if (sign)
+      container.sign(alice);
+
+    return container;
+  }
+
+  /**
+   * Parst den aufgezeichneten Auftrag wie der Intermediär.
+   */
+  OSCIRequest parseRequest(String messageType) throws Exception
+  {
+    return new LoopbackMessageParser(intermed).parseStream(new ByteArrayInputStream(requests.get(messageType)),
+                                                          intermed.createDialogHandler());
+  }
+
+  /**
+   * Parst die aufgezeichnete Antwort wie der Client.
+   */
+  OSCIMessage parseResponse(String messageType) throws Exception
+  {
+    return OSCIRequest.parser.parseStream(new ByteArrayInputStream(responses.get(messageType)),
+                                          clientDialogs.get(messageType),
+                                          false,
+                                          null);
+  }
+
+  private void record() throws Exception
+  {
+    // Impliziter Dialog von Alice
+    DialogHandler implicit = newDialog(alice);
+    GetMessageId getMessageId = new GetMessageId(implicit);
+    String messageId = getMessageId.send().getMessageId();
+    keep("GetMessageId", implicit);
+
+    createStoreDelivery(implicit, messageId, true).send();
+    keep("StoreDelivery", implicit);
+
+    // Expliziter Dialog von Bob
+    DialogHandler explicit = newDialog(bob);
+    new InitDialog(explicit).send();
+    keep("InitDialog", explicit);
+
+    FetchProcessCard fetchProcessCard = new FetchProcessCard(explicit);
+    fetchProcessCard.setSelectionMode(OSCIMessage.SELECT_BY_MESSAGE_ID);
+    fetchProcessCard.setSelectionRule(messageId);
+    fetchProcessCard.send();
+    keep("FetchProcessCard", explicit);
+
+    FetchDelivery fetchDelivery = new FetchDelivery(explicit);
+    fetchDelivery.setSelectionMode(OSCIMessage.SELECT_BY_MESSAGE_ID);
+    fetchDelivery.setSelectionRule(messageId);
+    fetchDelivery.send();
+    keep("FetchDelivery", explicit);
+
+    // Paketierte Zustellung in zwei Teilen
+    String partialMessageId = new GetMessageId(implicit).send().getMessageId();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    createStoreDelivery(newDialog(alice), partialMessageId, true).writeMessage(out);
+    storeDeliveryMessage = out.toByteArray();
+
+    int chunkSize = (storeDeliveryMessage.length / 2048) + 1;
+    int chunkBytes = chunkSize * 1024;
+
+    for ( int i = 1 ; i <= 2 ; i++ )
+    {
+      ChunkInformation chunkInformation = new ChunkInformation(chunkSize, i, storeDeliveryMessage.length / 1024, 2);
+      PartialStoreDelivery partialStoreDelivery = new PartialStoreDelivery(implicit, bobAddressee,
+                                                                           chunkInformation, partialMessageId);
+      int offset = (i - 1) * chunkBytes;
+      partialStoreDelivery.setChunkBlob(new ByteArrayInputStream(storeDeliveryMessage, offset,
+                                                                 Math.min(chunkBytes,
+                                                                          storeDeliveryMessage.length - offset)));
+      partialStoreDelivery.send();
+
+      if (i == 1)
+        keep("PartialStoreDelivery", implicit);
+    }
+
+    PartialFetchDelivery partialFetchDelivery = new PartialFetchDelivery(explicit,
+                                                                         new ChunkInformation(chunkSize, 1));
+    partialFetchDelivery.setSelectionMode(OSCIMessage.SELECT_BY_MESSAGE_ID);
+    partialFetchDelivery.setSelectionRule(partialMessageId);
+    partialFetchDelivery.send();
+    keep("PartialFetchDelivery", explicit);
+
+    // Die Antwort auf ExitDialog stammt aus einem eigenen Dialog, der Auftrag wird nur aufgezeichnet,
+    // damit der Dialog für die übrigen Aufträge erhalten bleibt
+    DialogHandler exit = newDialog(bob);
+    new InitDialog(exit).send();
+    new ExitDialog(exit).send();
+    keep("ExitDialog", exit);
+
+    dryRun = true;
+
+    try
+    {
+      new ExitDialog(explicit).send();
+    }
+    catch (IOException ex)
+    {
+      requests.put("ExitDialog", lastRequest);
+    }
+    finally
+    {
+      dryRun = false;
+    }
+
+    CommonFactory.setDisableControlBlockCheck(implicit, true);
+    CommonFactory.setDisableControlBlockCheck(explicit, true);
+    CommonFactory.setDisableControlBlockCheck(exit, true);
+    CommonFactory.setDisableControlBlockCheck(intermed.findDialog(explicit.getControlblock()
+                                                                          .getConversationID(),
+                                                                  null),
+                                              true);
+  }
+
+  private void keep(String messageType, DialogHandler dh)
+  {
+    requests.put(messageType, lastRequest);
+    responses.put(messageType, lastResponse);
+    clientDialogs.put(messageType, dh);
+  }
+
+  /**
+   * Transportmodul, das die Nachrichten an den Loopback-Intermediär weiterreicht und dabei aufzeichnet
+   */
+  private final class RecordingTransport implements TransportI
+  {
+    private final TransportI transport = intermed.newTransport();
+
+    private ByteArrayOutputStream request;
+
+    private URI uri;
+
+    public String getVersion()
+    {
+      return transport.getVersion();
+    }
+
+    public String getVendor()
+    {
+      return transport.getVendor();
+    }
+
+    public TransportI newInstance()
+    {
+      return new RecordingTransport();
+    }
+
+    public boolean isOnline(URI uri)
+    {
+      return true;
+    }
+
+    public boolean isChunkedTransferSupported()
+    {
+      return true;
+    }
+
+    public long getContentLength()
+    {
+      return (lastResponse == null) ? -1 : lastResponse.length;
+    }
+
+    public OutputStream getConnection(URI uri, long length) throws IOException
+    {
+      this.uri = uri;
+      request = new ByteArrayOutputStream();
+      return request;
+    }
+
+    public InputStream getResponseStream() throws IOException
+    {
+      lastRequest = request.toByteArray();
+
+      if (dryRun)
+        throw new IOException("Message recorded only");
+
+      try (OutputStream out = transport.getConnection(uri, lastRequest.length))
+      {
+        out.write(lastRequest);
+      }
+
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+      try (InputStream in = transport.getResponseStream())
+      {
+        byte[] buf = new byte[8192];
+        int n;
+
+        while ((n = in.read(buf)) > -1)
+          response.write(buf, 0, n);
+      }
+
+      lastResponse = response.toByteArray();
+      return new ByteArrayInputStream(lastResponse);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package de.osci.osci12.messagetypes;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.osci.helper.NullOutputStream;
+
+
+/**
+ * Misst die Serialisierung einer StoreDelivery (OSCIMessage.writeXML), die Vorausberechnung der
+ * Nachrichtenlänge (OSCIMessage.calcLength) sowie die Serialisierung mit Transportverschlüsselung.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageWriteBenchmark
+{
+  @Param({"1", "64", "1024"})
+  public int payloadKB;
+
+  private StoreDelivery storeDelivery;
+
+  @Setup
+  public void setup() throws Exception
+  {
+    MessageFixtures fixtures = new MessageFixtures(payloadKB);
+    storeDelivery = fixtures.createStoreDelivery(fixtures.newDialog(fixtures.alice), "benchmark", true);
+    storeDelivery.sign();
+  }
+
+  @Benchmark
+  public void writeXML() throws Exception
+  {
+    storeDelivery.writeXML(new NullOutputStream());
+  }
+
+  @Benchmark
+  public long calcLength() throws Exception
+  {
+    return storeDelivery.calcLength();
+  }
+
+  @Benchmark
+  public void writeXMLEncrypted() throws Exception
+  {
+    new SOAPMessageEncrypted(storeDelivery, null).writeXML(new NullOutputStream());
+  }
+}
@@ -0,0 +1,78 @@
+package de.osci.osci12.messagetypes;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.messageparts.ContentContainer;
+
+
+/**
+ * Misst das Erstellen und Prüfen von Signaturen über Inhaltsdatencontainer und Nachrichten (RSA 4096 Bit).
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureBenchmark
+{
+  @Param({"1", "64", "1024"})
+  public int payloadKB;
+
+  private MessageFixtures fixtures;
+
+  private DialogHandler dialog;
+
+  private ContentContainer signedContainer;
+
+  @Setup
+  public void setup() throws Exception
+  {
+    fixtures = new MessageFixtures(payloadKB);
+    dialog = fixtures.newDialog(fixtures.alice);
+    signedContainer = ((StoreDelivery)fixtures.parseRequest("StoreDelivery")).getContentContainer()[0];
+  }
+
+  @Benchmark
+  public ContentContainer signContentContainer() throws Exception
+  {
+    return fixtures.createContentContainer(true);
+  }
+
+  @Benchmark
+  public StoreDelivery signStoreDelivery() throws Exception
+  {
+    StoreDelivery storeDelivery = fixtures.createStoreDelivery(dialog, "benchmark", false);
+    storeDelivery.sign();
+    return storeDelivery;
+  }
+
+  @Benchmark
+  public boolean verifyContentContainer() throws Exception
+  {
+    return signedContainer.checkAllSignatures();
+  }
+}
@@ -0,0 +1,54 @@
+package de.osci.helper.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * JFR-Ereignis für den Versand eines PartialStoreDelivery- bzw. PartialFetchDelivery-Auftrags.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+@Name("de.osci.ChunkTransfer")
+@Label("OSCI Chunk Transfer")
+@Description("Partial store or fetch of one chunk")
+class ChunkTransferEvent extends OSCIEvent
+{
+  @Label("Response Type")
+  String responseType;
+
+  @Label("Chunk Number")
+  int chunkNumber;
+
+  @Label("Total Chunks")
+  int totalChunks;
+
+  @Label("Request Size")
+  @DataAmount
+  long requestBytes;
+
+  @Label("Response Size")
+  @DataAmount
+  long responseBytes;
+
+  @Override
+  void populate(JfrSpan span)
+  {
+    super.populate(span);
+    responseType = span.responseType;
+    chunkNumber = span.chunkNumber;
+    totalChunks = span.totalChunks;
+    requestBytes = span.bytes;
+    responseBytes = span.responseBytes;
+  }
+}
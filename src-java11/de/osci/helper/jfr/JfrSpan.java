@@ -0,0 +1,120 @@
+package de.osci.helper.jfr;
+
+import de.osci.helper.FlightRecorderEvents.Span;
+
+
+/**
+ * Span zu einem laufenden JFR-Ereignis. Die Werte werden gesammelt und erst beim Abschluss in das Ereignis
+ * übernommen, wenn es die Schwellwerte der Aufzeichnung erfüllt.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+class JfrSpan extends Span
+{
+  private final OSCIEvent event;
+
+  String messageId;
+
+  String messageType;
+
+  String responseType;
+
+  String operation;
+
+  String algorithm;
+
+  volatile long bytes;
+
+  long responseBytes;
+
+  int chunkNumber;
+
+  int totalChunks = -1;
+
+  JfrSpan(OSCIEvent event)
+  {
+    this.event = event;
+  }
+
+  @Override
+  public boolean isRecording()
+  {
+    return true;
+  }
+
+  @Override
+  public void setMessageId(String messageId)
+  {
+    this.messageId = messageId;
+  }
+
+  @Override
+  public void setMessageType(String messageType)
+  {
+    this.messageType = messageType;
+  }
+
+  @Override
+  public void setResponseType(String responseType)
+  {
+    this.responseType = responseType;
+  }
+
+  @Override
+  public void setBytes(long bytes)
+  {
+    this.bytes = bytes;
+  }
+
+  @Override
+  public void setResponseBytes(long bytes)
+  {
+    this.responseBytes = bytes;
+  }
+
+  @Override
+  public void setOperation(String operation)
+  {
+    this.operation = operation;
+  }
+
+  @Override
+  public void setAlgorithm(String algorithm)
+  {
+    this.algorithm = algorithm;
+  }
+
+  @Override
+  public void setChunk(int chunkNumber, int totalChunks)
+  {
+    this.chunkNumber = chunkNumber;
+    this.totalChunks = totalChunks;
+  }
+
+  @Override
+  protected void addBytes(long count)
+  {
+    // Es zählt jeweils nur ein Thread
+    bytes += count;
+  }
+
+  @Override
+  public void commit()
+  {
+    event.end();
+
+    if (event.shouldCommit())
+    {
+      event.populate(this);
+      event.commit();
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package de.osci.helper.jfr;
+
+import de.osci.helper.FlightRecorderEvents;
+import de.osci.helper.FlightRecorderEvents.EventType;
+import de.osci.helper.FlightRecorderEvents.Span;
+
+
+/**
+ * Erzeugt die JFR-Ereignisse der Bibliothek. Wird von {@link FlightRecorderEvents} nur instanziiert, wenn die
+ * Laufzeitumgebung JFR anbietet.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class JfrSpanFactory implements FlightRecorderEvents.SpanFactory
+{
+  @Override
+  public Span begin(EventType type)
+  {
+    OSCIEvent event = create(type);
+
+    if (!event.isEnabled())
+      return Span.NONE;
+
+    event.begin();
+    return new JfrSpan(event);
+  }
+
+  private static OSCIEvent create(EventType type)
+  {
+    switch (type)
+    {
+      case MESSAGE_SEND:
+        return new MessageSendEvent();
+      case MESSAGE_PARSE:
+        return new MessageParseEvent();
+      case CANONICALIZATION:
+        return new CanonicalizationEvent();
+      case SWAP_TO_DISK:
+        return new SwapToDiskEvent();
+      case RSA_KEY_TRANSPORT:
+        return new RSAKeyTransportEvent();
+      case SIGNATURE:
+        return new SignatureEvent();
+      case CHUNK_TRANSFER:
+        return new ChunkTransferEvent();
+      default:
+        throw new IllegalArgumentException(type.name());
+    }
+  }
+}
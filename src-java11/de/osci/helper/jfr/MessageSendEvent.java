@@ -0,0 +1,46 @@
+package de.osci.helper.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * JFR-Ereignis für den Versand eines Auftrags einschließlich Empfang und Parsen der Antwort.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+@Name("de.osci.MessageSend")
+@Label("OSCI Message Send")
+@Description("Request sent and response received and parsed")
+class MessageSendEvent extends OSCIEvent
+{
+  @Label("Response Type")
+  String responseType;
+
+  @Label("Request Size")
+  @DataAmount
+  long requestBytes;
+
+  @Label("Response Size")
+  @DataAmount
+  long responseBytes;
+
+  @Override
+  void populate(JfrSpan span)
+  {
+    super.populate(span);
+    responseType = span.responseType;
+    requestBytes = span.bytes;
+    responseBytes = span.responseBytes;
+  }
+}
@@ -0,0 +1,40 @@
+package de.osci.helper.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * Basisklasse der JFR-Ereignisse der Bibliothek.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+@Category("OSCI")
+@StackTrace(false)
+abstract class OSCIEvent extends Event
+{
+  @Label("Message ID")
+  String messageId;
+
+  @Label("Message Type")
+  String messageType;
+
+  /**
+   * Übernimmt die Werte des Spans in das Ereignis.
+   */
+  void populate(JfrSpan span)
+  {
+    messageId = span.messageId;
+    messageType = span.messageType;
+  }
+}
@@ -0,0 +1,45 @@
+package de.osci.helper.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * JFR-Ereignis für die Erstellung bzw. Prüfung einer Signatur.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+@Name("de.osci.Signature")
+@Label("OSCI Signature")
+@Description("Signature created or verified")
+class SignatureEvent extends OSCIEvent
+{
+  @Label("Operation")
+  String operation;
+
+  @Label("Algorithm")
+  String algorithm;
+
+  @Label("Signed Info Size")
+  @DataAmount
+  long bytes;
+
+  @Override
+  void populate(JfrSpan span)
+  {
+    super.populate(span);
+    operation = span.operation;
+    algorithm = span.algorithm;
+    bytes = span.bytes;
+  }
+}
@@ -0,0 +1,41 @@
+package de.osci.helper.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * JFR-Ereignis für das Auslagern eines Datenpuffers in eine temporäre Datei.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+@Name("de.osci.SwapToDisk")
+@Label("OSCI Swap To Disk")
+@Description("Data buffer exceeded the memory limit and was moved to a temporary file")
+class SwapToDiskEvent extends OSCIEvent
+{
+  @Label("Swapped Size")
+  @DataAmount
+  long bytes;
+
+  @Label("Encryption Algorithm")
+  String algorithm;
+
+  @Override
+  void populate(JfrSpan span)
+  {
+    super.populate(span);
+    bytes = span.bytes;
+    algorithm = span.algorithm;
+  }
+}
@@ -0,0 +1,157 @@
+package de.osci.helper;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Bibliotheksinterne Hintergrund-Threads. Ein gemeinsamer Timer-Thread führt die periodischen Aufgaben aus
+ * (Ablauf von Dialogen und Message-IDs, Überwachung der Übertragung); er entscheidet nur, was zu tun ist, und
+ * darf nicht blockieren. Blockierende Arbeit (Nachfüllen, Abholen und Hochladen von Paketen, Beenden von
+ * Dialogen, Schließen blockierter Streams) wird an einen gemeinsamen Thread-Pool übergeben, dessen Threads
+ * nach einer Minute ohne Aufgabe beendet werden.
+ * <p>
+ * Alle Threads sind Daemon-Threads und halten die Anwendung nicht am Leben. Diese Klasse ist nicht Teil der
+ * öffentlichen Schnittstelle.
+ * </p>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public final class BackgroundTasks
+{
+  private static Log log = LogFactory.getLog(BackgroundTasks.class);
+
+  private BackgroundTasks()
+  {}
+
+  /**
+   * Liefert den gemeinsamen Thread-Pool für blockierende Hintergrundarbeit.
+   *
+   * @return Executor
+   */
+  public static Executor executor()
+  {
+    return Holder.EXECUTOR;
+  }
+
+  /**
+   * Führt die Aufgabe im festen Abstand auf dem Timer-Thread aus.
+   *
+   * @param task Aufgabe, darf nicht blockieren
+   * @param period Abstand in Millisekunden
+   * @return Future zum Beenden der Aufgabe
+   */
+  public static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period)
+  {
+    return Holder.TIMER.scheduleAtFixedRate(task, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Führt die Aufgabe im festen Abstand auf dem Timer-Thread aus, solange der Besitzer verwendet wird. Der
+   * Besitzer wird nur schwach referenziert, die Aufgabe beendet sich, sobald er nicht mehr erreichbar ist.
+   * Laufzeitfehler der Aufgabe werden protokolliert und beenden sie nicht.
+   *
+   * @param owner Besitzer, an den die Aufgabe übergeben wird
+   * @param task Aufgabe, darf den Besitzer nicht selbst referenzieren und nicht blockieren
+   * @param period Abstand in Millisekunden
+   * @param failure Meldung im Log, wenn die Aufgabe scheitert
+   * @return Future zum Beenden der Aufgabe
+   */
+  public static <T> ScheduledFuture<?> scheduleWeakly(T owner, Consumer<? super T> task, long period,
+                                                      String failure)
+  {
+    WeakTask<T> weakTask = new WeakTask<T>(owner, task, failure);
+    weakTask.future = scheduleAtFixedRate(weakTask, period);
+    return weakTask.future;
+  }
+
+  /**
+   * Timer-Aufgabe, die ihren Besitzer nur schwach referenziert und sich beendet, sobald er nicht mehr
+   * verwendet wird
+   */
+  private static final class WeakTask<T> implements Runnable
+  {
+    private final WeakReference<T> owner;
+
+    private final Consumer<? super T> task;
+
+    private final String failure;
+
+    volatile ScheduledFuture<?> future;
+
+    WeakTask(T owner, Consumer<? super T> task, String failure)
+    {
+      this.owner = new WeakReference<T>(owner);
+      this.task = task;
+      this.failure = failure;
+    }
+
+    @Override
+    public void run()
+    {
+      T o = owner.get();
+
+      if (o == null)
+      {
+        if (future != null)
+          future.cancel(false);
+
+        return;
+      }
+
+      try
+      {
+        task.accept(o);
+      }
+      catch (RuntimeException ex)
+      {
+        log.error(failure, ex);
+      }
+    }
+  }
+
+  private static final class Holder
+  {
+    static final ScheduledThreadPoolExecutor TIMER;
+
+    static final ThreadPoolExecutor EXECUTOR;
+
+    static
+    {
+      TIMER = new ScheduledThreadPoolExecutor(1, daemon("osci-timer"));
+      TIMER.setRemoveOnCancelPolicy(true);
+      EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                                        new SynchronousQueue<Runnable>(), daemon("osci-background"));
+    }
+
+    private static ThreadFactory daemon(String name)
+    {
+      AtomicInteger counter = new AtomicInteger();
+
+      return r -> {
+        Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      };
+    }
+  }
+}
@@ -16,7 +16,6 @@
  */
 package de.osci.helper;
 
-import java.io.BufferedOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -81,17 +80,7 @@ public class Base64OutputStream extends FilterOutputStream
    */
   public Base64OutputStream(OutputStream out, boolean isFlushEnd)
   {
-    super(new BufferedOutputStream(out)
-      {
-        public synchronized void flush() throws IOException
-        {
-          if (count > 0)
-          {
-            this.out.write(buf, 0, count);
-            count = 0;
-          }
-        }
-      });
+    super(new WriteBuffer(out));
 
     if (out == null)
       throw new NullPointerException();
@@ -260,4 +249,55 @@ public class Base64OutputStream extends FilterOutputStream
     inWait = 0;
     buffer = 0;
   }
+
+  /**
+   * Puffer vor dem eigentlichen Ausgabestrom. flush() schreibt nur den Pufferinhalt weiter, ohne den
+   * darunter liegenden Strom zu flushen. Im Gegensatz zu einer Ableitung von BufferedOutputStream kommt der
+   * Puffer ohne Monitor aus, so dass virtuelle Threads beim Schreiben nicht an ihren Träger-Thread gebunden
+   * werden. Ein Base64OutputStream wird ohnehin nur von einem Thread beschrieben.
+   */
+  private static class WriteBuffer extends FilterOutputStream
+  {
+    private final byte[] buf = new byte[8192];
+
+    private int count;
+
+    WriteBuffer(OutputStream out)
+    {
+      super(out);
+    }
+
+    public void write(int b) throws IOException
+    {
+      if (count >= buf.length)
+        flush();
+
+      buf[count++] = (byte)b;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+      if (len >= buf.length)
+      {
+        flush();
+        out.write(b, off, len);
+        return;
+      }
+
+      if (len > buf.length - count)
+        flush();
+
+      System.arraycopy(b, off, buf, count, len);
+      count += len;
+    }
+
+    public void flush() throws IOException
+    {
+      if (count > 0)
+      {
+        out.write(buf, 0, count);
+        count = 0;
+      }
+    }
+  }
 }
@@ -37,6 +37,7 @@ import org.xml.sax.helpers.DefaultHandler;
 import de.osci.osci12.common.Constants;
 import de.osci.osci12.common.Constants.HeaderTags;
 import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.encryption.Crypto;
 
 
 /**
@@ -397,12 +398,7 @@ public class CanParser extends DefaultHandler implements LexicalHandler
         }
         if (messageDigests.get(mdm) == null)
         {
-          if (DialogHandler.getSecurityProvider() == null)
-            messageDigests.put(mdm, MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(mdm)));
-          else
-            messageDigests.put(mdm,
-                               MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(mdm),
-                                                         DialogHandler.getSecurityProvider()));
+          messageDigests.put(mdm, Crypto.createMessageDigest(mdm));
         }
         md = (MessageDigest)messageDigests.get(mdm);
         md.reset();
@@ -583,11 +579,7 @@ public class CanParser extends DefaultHandler implements LexicalHandler
           String digAlgo = transportDigestMethods.get(controlBlockID);
           if (digAlgo != null)
           {
-            if (DialogHandler.getSecurityProvider() == null)
-              md = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(digAlgo));
-            else
-              md = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(digAlgo),
-                                             DialogHandler.getSecurityProvider());
+            md = Crypto.createMessageDigest(digAlgo);
             messageDigests.put(digAlgo, md);
             if (digestValues.containsKey(controlBlockID))
               throw new SAXException(DialogHandler.text.getString("unexpected_entry"));
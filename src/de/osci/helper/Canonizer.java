@@ -13,6 +13,11 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import org.xml.sax.SAXException;
 
+import de.osci.helper.FlightRecorderEvents.EventType;
+import de.osci.osci12.common.MessageMetrics;
+import de.osci.osci12.common.MessageMetrics.Phase;
+import de.osci.osci12.common.OSCIConfig;
+
 
 /**
  * Diese Klasse führt die Kanonisierung gemäß der Spezifikation
@@ -95,7 +100,13 @@ public class Canonizer extends FilterInputStream
     input = in;
     pis = new PipedInputStream();
     pos = new PipedOutputStream(pis);
-    cp = new CanParser(pos, sis,checkIds);
+
+    // Der kanonisierende Thread misst für den Versandvorgang des aufrufenden Threads mit, das Warten auf den
+    // Leser der Pipe zählt nicht zur Kanonisierung
+    final MessageMetrics metrics = MessageMetrics.current();
+    final OSCIConfig config = OSCIConfig.current();
+    final FlightRecorderEvents.Span event = FlightRecorderEvents.begin(EventType.CANONICALIZATION);
+    cp = new CanParser(event.count(MeteredOutputStream.wrap(pos, metrics, null)), sis,checkIds);
     cp.signedInfos = new Vector<byte[]>();
     cp.signedProperties = new Vector<String>();
     cp.cocoNS = new Vector<String>();
@@ -104,9 +115,16 @@ public class Canonizer extends FilterInputStream
       {
         public void run()
         {
+          OSCIConfig.Scope scope = config.bind();
+          MessageMetrics.Section section = MessageMetrics.enter(metrics, Phase.CANONICALIZE);
+
           try
           {
             cp.startCanonicalization(input, false);
+            // Vor dem Ende der Pipe abschließen, damit der Wert beim Leser vorliegt
+            section.close();
+            section = null;
+            event.commit();
             pos.close();
           }
           catch (SAXException e)
@@ -119,6 +137,11 @@ public class Canonizer extends FilterInputStream
           }
           finally
           {
+            if (section != null)
+              section.close();
+
+            scope.close();
+
             try
             {
               pos.close();
@@ -0,0 +1,376 @@
+package de.osci.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.osci12.common.Constants;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.encryption.Crypto;
+
+
+/**
+ * Zwischenspeicher für X.509-Zertifikate, der über die DER-Codierung der Zertifikate adressiert wird.
+ * Zertifikate, die in eingehenden Nachrichten immer wieder auftreten (insbesondere die des Intermediärs),
+ * werden so nur einmal geparst. Zu jedem Eintrag werden außerdem die DER-Codierung, deren Base64-Darstellung
+ * und der hexadezimale SHA-256-Hashwert vorgehalten, der in den Referenz-Ids der Rollen verwendet wird.
+ * <p>
+ * Der Cache ist für den nebenläufigen Zugriff ausgelegt und auf eine einstellbare Anzahl von Einträgen
+ * begrenzt. Bei Überschreitung werden beliebige Einträge verdrängt.
+ * </p>
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class CertificateCache
+{
+  private static Log log = LogFactory.getLog(CertificateCache.class);
+
+  /** Voreinstellung für die maximale Anzahl von Einträgen. */
+  public static final int DEFAULT_MAX_SIZE = 1024;
+
+  private static final String NO_HASH = "no_hash_available";
+
+  private static final ConcurrentHashMap<DerKey, Entry> cache = new ConcurrentHashMap<DerKey, Entry>();
+
+  private static volatile int maxSize = DEFAULT_MAX_SIZE;
+
+  private static final AtomicLong hits = new AtomicLong();
+
+  private static final AtomicLong misses = new AtomicLong();
+
+  private CertificateCache()
+  {}
+
+  /**
+   * Liefert den Eintrag zu der übergebenen DER-Codierung. Ist das Zertifikat noch nicht im Cache, wird es
+   * geparst und aufgenommen.
+   *
+   * @param der DER-Codierung des Zertifikats
+   * @return Cache-Eintrag
+   * @throws CertificateException wenn die Bytes kein gültiges Zertifikat darstellen
+   */
+  public static Entry get(byte[] der) throws CertificateException
+  {
+    DerKey key = new DerKey(der);
+    Entry entry = cache.get(key);
+
+    if (entry != null)
+    {
+      hits.incrementAndGet();
+      return entry;
+    }
+
+    misses.incrementAndGet();
+    key = new DerKey(der.clone());
+
+    return put(key, new Entry(Tools.createCertificate(key.der), key.der));
+  }
+
+  /**
+   * Liefert den Eintrag zu dem übergebenen Zertifikat. Ist das Zertifikat noch nicht im Cache, wird es
+   * aufgenommen.
+   *
+   * @param cert Zertifikat
+   * @return Cache-Eintrag
+   * @throws CertificateEncodingException bei Codierungsfehlern
+   */
+  public static Entry get(X509Certificate cert) throws CertificateEncodingException
+  {
+    DerKey key = new DerKey(cert.getEncoded());
+    Entry entry = cache.get(key);
+
+    if (entry != null)
+    {
+      hits.incrementAndGet();
+      return entry;
+    }
+
+    misses.incrementAndGet();
+
+    return put(key, new Entry(cert, key.der));
+  }
+
+  /**
+   * Liefert das Zertifikat zu der übergebenen DER-Codierung.
+   *
+   * @param der DER-Codierung des Zertifikats
+   * @return Zertifikat
+   * @throws CertificateException wenn die Bytes kein gültiges Zertifikat darstellen
+   * @see #get(byte[])
+   */
+  public static X509Certificate getCertificate(byte[] der) throws CertificateException
+  {
+    return get(der).getCertificate();
+  }
+
+  /**
+   * Liefert das Zertifikat zu der aus dem Stream gelesenen DER-Codierung, z.B. aus einem Base64InputStream
+   * über dem Inhalt eines ds:X509Certificate-Elementes.
+   *
+   * @param in Stream mit der DER-Codierung des Zertifikats
+   * @return Zertifikat
+   * @throws CertificateException bei Lesefehlern oder wenn die Bytes kein gültiges Zertifikat darstellen
+   * @see #get(byte[])
+   */
+  public static X509Certificate getCertificate(InputStream in) throws CertificateException
+  {
+    try
+    {
+      return getCertificate(Tools.readBytes(in));
+    }
+    catch (IOException ex)
+    {
+      throw new CertificateException(DialogHandler.text.getString("cert_gen_error"), ex);
+    }
+  }
+
+  /**
+   * Liefert den hexadezimalen SHA-256-Hashwert über der DER-Codierung des Zertifikats.
+   *
+   * @param cert Zertifikat
+   * @return Hashwert, bzw. "no_hash_available", wenn der Wert nicht berechnet werden konnte
+   */
+  public static String getHash(X509Certificate cert)
+  {
+    if (cert == null)
+      return NO_HASH;
+
+    try
+    {
+      return get(cert).getHash();
+    }
+    catch (CertificateEncodingException ex)
+    {
+      return NO_HASH;
+    }
+  }
+
+  /**
+   * Setzt die maximale Anzahl von Einträgen. Voreinstellung ist {@link #DEFAULT_MAX_SIZE}.
+   *
+   * @param size maximale Anzahl
+   */
+  public static void setMaxSize(int size)
+  {
+    if (size < 1)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + size);
+
+    maxSize = size;
+    evict();
+  }
+
+  /**
+   * Liefert die maximale Anzahl von Einträgen.
+   *
+   * @return maximale Anzahl
+   */
+  public static int getMaxSize()
+  {
+    return maxSize;
+  }
+
+  /**
+   * Liefert die aktuelle Anzahl von Einträgen.
+   *
+   * @return Anzahl
+   */
+  public static int getSize()
+  {
+    return cache.size();
+  }
+
+  /**
+   * Liefert die Anzahl der Zugriffe, die aus dem Cache bedient wurden.
+   *
+   * @return Anzahl Treffer
+   */
+  public static long getHitCount()
+  {
+    return hits.get();
+  }
+
+  /**
+   * Liefert die Anzahl der Zugriffe, für die ein neuer Eintrag angelegt werden musste.
+   *
+   * @return Anzahl Fehlzugriffe
+   */
+  public static long getMissCount()
+  {
+    return misses.get();
+  }
+
+  /**
+   * Leert den Cache.
+   */
+  public static void clear()
+  {
+    cache.clear();
+  }
+
+  private static Entry put(DerKey key, Entry entry)
+  {
+    Entry existing = cache.putIfAbsent(key, entry);
+
+    if (existing != null)
+      return existing;
+
+    evict();
+
+    return entry;
+  }
+
+  private static void evict()
+  {
+    if (cache.size() <= maxSize)
+      return;
+
+    Iterator<DerKey> keys = cache.keySet().iterator();
+
+    while ((cache.size() > maxSize) && keys.hasNext())
+    {
+      keys.next();
+      keys.remove();
+    }
+
+    if (log.isDebugEnabled())
+      log.debug("Certificate cache trimmed to " + cache.size() + " entries.");
+  }
+
+  /**
+   * Eintrag des Zertifikat-Caches mit den vorberechneten Darstellungen eines Zertifikats.
+   */
+  public static class Entry
+  {
+    private final X509Certificate certificate;
+
+    private final byte[] der;
+
+    private final String hash;
+
+    private final String base64;
+
+    Entry(X509Certificate certificate, byte[] der)
+    {
+      this.certificate = certificate;
+      this.der = der;
+
+      String h;
+
+      try
+      {
+        h = Crypto.toHex(Crypto.createMessageDigest(Constants.DIGEST_ALGORITHM_SHA256).digest(der));
+      }
+      catch (Exception ex)
+      {
+        h = NO_HASH;
+      }
+
+      hash = h;
+
+      String b64 = null;
+
+      try
+      {
+        b64 = Base64.encode(der);
+      }
+      catch (IOException ex)
+      {
+        // tritt bei ByteArrayOutputStream nicht auf
+        log.debug(ex.getMessage());
+      }
+
+      base64 = b64;
+    }
+
+    /**
+     * Liefert das Zertifikat.
+     *
+     * @return Zertifikat
+     */
+    public X509Certificate getCertificate()
+    {
+      return certificate;
+    }
+
+    /**
+     * Liefert eine Kopie der DER-Codierung des Zertifikats.
+     *
+     * @return DER-Codierung
+     */
+    public byte[] getEncoded()
+    {
+      return der.clone();
+    }
+
+    /**
+     * Liefert die Länge der DER-Codierung des Zertifikats.
+     *
+     * @return Länge in Bytes
+     */
+    public int getEncodedLength()
+    {
+      return der.length;
+    }
+
+    /**
+     * Liefert den hexadezimalen SHA-256-Hashwert über der DER-Codierung.
+     *
+     * @return Hashwert
+     */
+    public String getHash()
+    {
+      return hash;
+    }
+
+    /**
+     * Liefert die Base64-Codierung der DER-Bytes, wie sie in ds:X509Certificate-Elementen geschrieben wird.
+     *
+     * @return Base64-String
+     */
+    public String getBase64()
+    {
+      return base64;
+    }
+  }
+
+  private static final class DerKey
+  {
+    final byte[] der;
+
+    private final int hashCode;
+
+    DerKey(byte[] der)
+    {
+      this.der = der;
+      this.hashCode = Arrays.hashCode(der);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      return (obj instanceof DerKey) && Arrays.equals(der, ((DerKey)obj).der);
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package de.osci.helper;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Erzeugt Ereignisse für den JDK Flight Recorder (JFR), so dass in einer Aufzeichnung die Verarbeitungsschritte
+ * der Bibliothek neben GC- und I/O-Ereignissen erscheinen. Aufgezeichnet werden Versand (de.osci.MessageSend),
+ * Parsen (de.osci.MessageParse), Kanonisierung (de.osci.Canonicalization), Auslagern von Daten in temporäre
+ * Dateien (de.osci.SwapToDisk), RSA-Schlüsseltransport (de.osci.RSAKeyTransport), Signaturerstellung und
+ * -prüfung (de.osci.Signature) sowie paketierte Übertragungen (de.osci.ChunkTransfer). Die Ereignisse tragen,
+ * soweit an der jeweiligen Stelle bekannt, Nachrichten-ID, Nachrichtentyp, Datenmengen und Dauer.
+ * <p>
+ * Die Ereignisse werden wie die des JDK über die Aufzeichnungseinstellungen aktiviert, z.B.
+ * </p>
+ * <pre>
+ * java -XX:StartFlightRecording:filename=osci.jfr ...
+ * jfr print --categories OSCI osci.jfr
+ * </pre>
+ * <p>
+ * Da die Bibliothek weiterhin ab JDK 1.8 lauffähig ist, liegen die Ereignisklassen (Paket de.osci.helper.jfr)
+ * im Verzeichnis /src-java11. Sie werden mit --release 11 übersetzt und im Multi-Release-Anteil des Archivs
+ * (META-INF/versions/11) ausgeliefert. Sie werden nur geladen, wenn die Laufzeitumgebung JFR anbietet und
+ * der Multi-Release-Anteil vorhanden ist. Ohne JFR oder ohne laufende Aufzeichnung liefert
+ * {@link #begin(EventType)} einen Span ohne Wirkung; an den Messstellen wird dann weder gezählt noch
+ * zwischengespeichert.
+ * </p>
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public final class FlightRecorderEvents
+{
+  private static Log log = LogFactory.getLog(FlightRecorderEvents.class);
+
+  /**
+   * Arten der aufgezeichneten Ereignisse
+   */
+  public enum EventType
+  {
+    /** Versand eines Auftrags einschließlich Empfang und Parsen der Antwort */
+    MESSAGE_SEND,
+    /** Parsen einer eingehenden Nachricht */
+    MESSAGE_PARSE,
+    /** Kanonisierung einer eingehenden Nachricht */
+    CANONICALIZATION,
+    /** Auslagern eines Datenpuffers in eine temporäre Datei */
+    SWAP_TO_DISK,
+    /** RSA-Verschlüsselung (wrap) bzw. -Entschlüsselung (unwrap) eines symmetrischen Schlüssels */
+    RSA_KEY_TRANSPORT,
+    /** Erstellung (create) bzw. Prüfung (verify) einer Signatur */
+    SIGNATURE,
+    /** Versand eines PartialStoreDelivery- bzw. PartialFetchDelivery-Auftrags */
+    CHUNK_TRANSFER
+  }
+
+  /**
+   * Schnittstelle zur Implementierung im Paket de.osci.helper.jfr. For internal use only.
+   */
+  public interface SpanFactory
+  {
+    /**
+     * Beginnt ein Ereignis.
+     *
+     * @param type Art des Ereignisses
+     * @return Span oder {@link Span#NONE}, wenn das Ereignis nicht aufgezeichnet wird
+     */
+    public Span begin(EventType type);
+  }
+
+  private static final SpanFactory FACTORY = createFactory();
+
+  private FlightRecorderEvents()
+  {}
+
+  /**
+   * Prüft, ob die Laufzeitumgebung JFR-Ereignisse unterstützt.
+   *
+   * @return <code>true</code>, wenn jdk.jfr verfügbar ist
+   */
+  public static boolean isSupported()
+  {
+    return FACTORY != null;
+  }
+
+  /**
+   * Beginnt ein Ereignis. Der gelieferte Span muss mit {@link Span#commit()} abgeschlossen werden.
+   *
+   * @param type Art des Ereignisses
+   * @return Span, ohne Wirkung, wenn das Ereignis nicht aufgezeichnet wird
+   */
+  public static Span begin(EventType type)
+  {
+    if (FACTORY == null)
+      return Span.NONE;
+
+    return FACTORY.begin(type);
+  }
+
+  private static SpanFactory createFactory()
+  {
+    try
+    {
+      Class.forName("jdk.jfr.Event");
+      Class<?> factory = Class.forName("de.osci.helper.jfr.JfrSpanFactory");
+      return (SpanFactory)factory.getDeclaredConstructor().newInstance();
+    }
+    catch (ClassNotFoundException ex)
+    {
+      return null;
+    }
+    catch (Exception | LinkageError ex)
+    {
+      log.warn("JFR events could not be registered.", ex);
+      return null;
+    }
+  }
+
+  /**
+   * Laufendes Ereignis. Die Werte werden beim Abschluss in das Ereignis übernommen; Werte, die ein Ereignistyp
+   * nicht kennt, werden ignoriert. Die Basisklasse ist ohne Wirkung.
+   */
+  public static class Span
+  {
+    /**
+     * Span ohne Wirkung
+     */
+    public static final Span NONE = new Span();
+
+    /**
+     * For internal use only.
+     */
+    protected Span()
+    {}
+
+    /**
+     * Liefert <code>true</code>, wenn das Ereignis aufgezeichnet wird.
+     *
+     * @return <code>true</code> bei laufender Aufzeichnung
+     */
+    public boolean isRecording()
+    {
+      return false;
+    }
+
+    /**
+     * Setzt die Nachrichten-ID.
+     *
+     * @param messageId Nachrichten-ID, darf <code>null</code> sein
+     */
+    public void setMessageId(String messageId)
+    {}
+
+    /**
+     * Setzt den Nachrichtentyp.
+     *
+     * @param messageType Nachrichtentyp, z.B. "StoreDelivery"
+     */
+    public void setMessageType(String messageType)
+    {}
+
+    /**
+     * Setzt den Nachrichtentyp der Antwort.
+     *
+     * @param responseType Nachrichtentyp oder <code>null</code>, wenn keine Antwort empfangen wurde
+     */
+    public void setResponseType(String responseType)
+    {}
+
+    /**
+     * Setzt die verarbeitete Datenmenge, bei Versandvorgängen die Größe des Auftrags.
+     *
+     * @param bytes Datenmenge in Bytes
+     */
+    public void setBytes(long bytes)
+    {}
+
+    /**
+     * Setzt die Größe der Antwort eines Versandvorgangs.
+     *
+     * @param bytes Datenmenge in Bytes
+     */
+    public void setResponseBytes(long bytes)
+    {}
+
+    /**
+     * Setzt die Operation, z.B. "wrap"/"unwrap" oder "create"/"verify".
+     *
+     * @param operation Operation
+     */
+    public void setOperation(String operation)
+    {}
+
+    /**
+     * Setzt den verwendeten Algorithmus.
+     *
+     * @param algorithm Algorithmus-URI
+     */
+    public void setAlgorithm(String algorithm)
+    {}
+
+    /**
+     * Setzt die Angaben zum übertragenen Paket.
+     *
+     * @param chunkNumber Nummer des Pakets
+     * @param totalChunks Gesamtzahl der Pakete oder -1, wenn nicht bekannt
+     */
+    public void setChunk(int chunkNumber, int totalChunks)
+    {}
+
+    /**
+     * Liefert einen Stream, der die gelesenen Bytes zur Datenmenge addiert.
+     *
+     * @param in Stream
+     * @return zählender Stream oder in, wenn nicht aufgezeichnet wird
+     */
+    public InputStream count(InputStream in)
+    {
+      if (!isRecording())
+        return in;
+
+      return new FilterInputStream(in)
+        {
+          @Override
+          public int read() throws IOException
+          {
+            int b = in.read();
+
+            if (b >= 0)
+              addBytes(1);
+
+            return b;
+          }
+
+          @Override
+          public int read(byte[] b, int off, int len) throws IOException
+          {
+            int count = in.read(b, off, len);
+
+            if (count > 0)
+              addBytes(count);
+
+            return count;
+          }
+        };
+    }
+
+    /**
+     * Liefert einen Stream, der die geschriebenen Bytes zur Datenmenge addiert.
+     *
+     * @param out Stream
+     * @return zählender Stream oder out, wenn nicht aufgezeichnet wird
+     */
+    public OutputStream count(OutputStream out)
+    {
+      if (!isRecording())
+        return out;
+
+      return new FilterOutputStream(out)
+        {
+          @Override
+          public void write(int b) throws IOException
+          {
+            out.write(b);
+            addBytes(1);
+          }
+
+          @Override
+          public void write(byte[] b, int off, int len) throws IOException
+          {
+            out.write(b, off, len);
+            addBytes(len);
+          }
+
+          @Override
+          public void close() throws IOException
+          {
+            out.close();
+          }
+        };
+    }
+
+    /**
+     * Addiert zur Datenmenge.
+     *
+     * @param bytes Datenmenge in Bytes
+     */
+    protected void addBytes(long bytes)
+    {}
+
+    /**
+     * Schließt das Ereignis ab und übergibt es an die Aufzeichnung.
+     */
+    public void commit()
+    {}
+  }
+}
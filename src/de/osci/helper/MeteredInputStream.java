@@ -0,0 +1,105 @@
+package de.osci.helper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import de.osci.osci12.common.MessageMetrics;
+import de.osci.osci12.common.MessageMetrics.Phase;
+
+
+/**
+ * InputStream, der die Zeit der Lesezugriffe und die gelesene Datenmenge einem Verarbeitungsschritt
+ * zurechnet. Lesezugriffe auf ebenfalls gemessene Streams darunter werden deren Schritten zugerechnet.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see MessageMetrics
+ */
+public class MeteredInputStream extends FilterInputStream
+{
+  private final MessageMetrics.Section section;
+
+  /**
+   * Creates a new MeteredInputStream object.
+   *
+   * @param in zu messender Stream
+   * @param metrics Messwerte
+   * @param phase Verarbeitungsschritt oder <code>null</code> für Wartezeiten, die keinem Schritt zugerechnet
+   *          werden
+   */
+  public MeteredInputStream(InputStream in, MessageMetrics metrics, Phase phase)
+  {
+    super(in);
+    section = metrics.section(phase);
+  }
+
+  /**
+   * Liefert einen gemessenen Stream oder, wenn nicht gemessen wird, den übergebenen Stream.
+   *
+   * @param in zu messender Stream
+   * @param metrics Messwerte, darf <code>null</code> sein
+   * @param phase Verarbeitungsschritt oder <code>null</code>
+   * @return Stream
+   */
+  public static InputStream wrap(InputStream in, MessageMetrics metrics, Phase phase)
+  {
+    return (metrics == null) ? in : new MeteredInputStream(in, metrics, phase);
+  }
+
+  @Override
+  public int read() throws IOException
+  {
+    int b = -1;
+    section.begin();
+
+    try
+    {
+      b = in.read();
+      return b;
+    }
+    finally
+    {
+      section.end((b < 0) ? 0 : 1);
+    }
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException
+  {
+    int count = 0;
+    section.begin();
+
+    try
+    {
+      count = in.read(b, off, len);
+      return count;
+    }
+    finally
+    {
+      section.end(Math.max(count, 0));
+    }
+  }
+
+  @Override
+  public long skip(long n) throws IOException
+  {
+    section.begin();
+
+    try
+    {
+      return in.skip(n);
+    }
+    finally
+    {
+      section.end(0);
+    }
+  }
+}
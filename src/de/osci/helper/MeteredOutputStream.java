@@ -0,0 +1,119 @@
+package de.osci.helper;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import de.osci.osci12.common.MessageMetrics;
+import de.osci.osci12.common.MessageMetrics.Phase;
+
+
+/**
+ * OutputStream, der die Zeit der Schreibzugriffe und die geschriebene Datenmenge einem Verarbeitungsschritt
+ * zurechnet. Schreibzugriffe auf ebenfalls gemessene Streams darunter werden deren Schritten zugerechnet.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see MessageMetrics
+ */
+public class MeteredOutputStream extends FilterOutputStream
+{
+  private final MessageMetrics.Section section;
+
+  /**
+   * Creates a new MeteredOutputStream object.
+   *
+   * @param out zu messender Stream
+   * @param metrics Messwerte
+   * @param phase Verarbeitungsschritt oder <code>null</code> für Wartezeiten, die keinem Schritt zugerechnet
+   *          werden
+   */
+  public MeteredOutputStream(OutputStream out, MessageMetrics metrics, Phase phase)
+  {
+    super(out);
+    section = metrics.section(phase);
+  }
+
+  /**
+   * Liefert einen gemessenen Stream oder, wenn nicht gemessen wird, den übergebenen Stream.
+   *
+   * @param out zu messender Stream
+   * @param metrics Messwerte, darf <code>null</code> sein
+   * @param phase Verarbeitungsschritt oder <code>null</code>
+   * @return Stream
+   */
+  public static OutputStream wrap(OutputStream out, MessageMetrics metrics, Phase phase)
+  {
+    return (metrics == null) ? out : new MeteredOutputStream(out, metrics, phase);
+  }
+
+  @Override
+  public void write(int b) throws IOException
+  {
+    section.begin();
+
+    try
+    {
+      out.write(b);
+    }
+    finally
+    {
+      section.end(1);
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    section.begin();
+
+    try
+    {
+      out.write(b, off, len);
+    }
+    finally
+    {
+      section.end(len);
+    }
+  }
+
+  @Override
+  public void flush() throws IOException
+  {
+    section.begin();
+
+    try
+    {
+      out.flush();
+    }
+    finally
+    {
+      section.end(0);
+    }
+  }
+
+  /**
+   * Schließt den darunterliegenden Stream, ohne vorher flush() aufzurufen.
+   */
+  @Override
+  public void close() throws IOException
+  {
+    section.begin();
+
+    try
+    {
+      out.close();
+    }
+    finally
+    {
+      section.end(0);
+    }
+  }
+}
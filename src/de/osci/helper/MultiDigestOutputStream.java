@@ -0,0 +1,73 @@
+package de.osci.helper;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Collection;
+
+
+/**
+ * Diese Erweiterung der Klasse java.io.FilterOutputStream aktualisiert beim Schreiben mehrere
+ * MessageDigest-Objekte gleichzeitig. Hierdurch können Hashwerte für verschiedene Algorithmen in einem
+ * einzigen Durchlauf über die Daten berechnet werden.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see java.security.DigestOutputStream
+ */
+public class MultiDigestOutputStream extends FilterOutputStream
+{
+  private MessageDigest[] digests;
+
+  /**
+   * Creates a new MultiDigestOutputStream object.
+   *
+   * @param out OutputStream, an den die Daten weitergereicht werden
+   * @param digests zu aktualisierende MessageDigest-Objekte
+   */
+  public MultiDigestOutputStream(OutputStream out, Collection<MessageDigest> digests)
+  {
+    super(out);
+    this.digests = digests.toArray(new MessageDigest[digests.size()]);
+  }
+
+  /**
+   * undocumented
+   *
+   * @param b undocumented
+   *
+   * @throws IOException undocumented
+   */
+  public void write(int b) throws IOException
+  {
+    for ( int i = 0 ; i < digests.length ; i++ )
+      digests[i].update((byte)b);
+
+    out.write(b);
+  }
+
+  /**
+   * undocumented
+   *
+   * @param b undocumented
+   * @param off undocumented
+   * @param len undocumented
+   *
+   * @throws IOException undocumented
+   */
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    for ( int i = 0 ; i < digests.length ; i++ )
+      digests[i].update(b, off, len);
+
+    out.write(b, off, len);
+  }
+}
@@ -0,0 +1,334 @@
+package de.osci.helper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import de.osci.osci12.common.DialogHandler;
+
+
+/**
+ * OutputStream, der die geschriebenen Daten über einen Ring von Puffern an einen zweiten Thread übergibt,
+ * welcher sie in den Zielstrom schreibt. Erzeuger (z.B. Serialisierung und Verschlüsselung) und Verbraucher
+ * (z.B. Socket) arbeiten so nebenläufig: Solange freie Puffer vorhanden sind, wartet der Erzeuger nicht auf
+ * den Zielstrom und umgekehrt. Für große Nachrichten nähert sich die Gesamtdauer damit dem Maximum statt der
+ * Summe der beiden Verarbeitungszeiten.
+ * <p>
+ * Der Ring ist begrenzt; ist er voll, blockiert der Erzeuger, bis der Verbraucher einen Puffer freigibt. Fehler
+ * beim Schreiben in den Zielstrom werden beim nächsten Pufferwechsel bzw. in {@link #finish()} an den
+ * Erzeuger weitergereicht. Ein Aufruf von flush() übergibt den aktuellen Puffer und veranlasst ein flush()
+ * auf dem Zielstrom, ohne darauf zu warten.
+ * </p>
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see de.osci.osci12.common.OSCIConfig#withPipelineDepth(int)
+ */
+public class PipelinedOutputStream extends OutputStream
+{
+  private static final Chunk END = new Chunk(null, 0, false);
+
+  private final OutputStream out;
+
+  private final BlockingQueue<byte[]> free;
+
+  private final BlockingQueue<Chunk> filled;
+
+  private final CountDownLatch done = new CountDownLatch(1);
+
+  private byte[] buf;
+
+  private int count;
+
+  private boolean finished;
+
+  private volatile IOException error;
+
+  /**
+   * Legt einen Stream an, der über den übergebenen Executor in den Zielstrom schreibt.
+   *
+   * @param out Zielstrom
+   * @param depth Anzahl der Puffer im Ring (mindestens 2)
+   * @param bufferSize Größe eines Puffers in Bytes
+   * @param executor Executor für den schreibenden Thread oder <code>null</code> für einen internen Pool
+   */
+  public PipelinedOutputStream(OutputStream out, int depth, int bufferSize, Executor executor)
+  {
+    if (out == null)
+      throw new NullPointerException();
+
+    if (depth < 2)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_secondargument")
+                                         + depth);
+
+    if (bufferSize < 1)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_thirdargument")
+                                         + bufferSize);
+
+    this.out = out;
+    free = new ArrayBlockingQueue<byte[]>(depth);
+    // Jeder Pufferwechsel verbraucht einen Puffer, daneben wird höchstens die Endemarkierung eingestellt
+    filled = new ArrayBlockingQueue<Chunk>(depth + 1);
+
+    for ( int i = 1 ; i < depth ; i++ )
+      free.add(new byte[bufferSize]);
+
+    buf = new byte[bufferSize];
+
+    (executor == null ? getDefaultExecutor() : executor).execute(new Runnable()
+    {
+      public void run()
+      {
+        drain();
+      }
+    });
+  }
+
+  public void write(int b) throws IOException
+  {
+    if (count == buf.length)
+      handOff(false);
+
+    buf[count++] = (byte)b;
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    while (len > 0)
+    {
+      if (count == buf.length)
+        handOff(false);
+
+      int n = Math.min(len, buf.length - count);
+      System.arraycopy(b, off, buf, count, n);
+      count += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  public void flush() throws IOException
+  {
+    if (!finished)
+      handOff(true);
+  }
+
+  /**
+   * Übergibt die restlichen Daten, wartet, bis sie in den Zielstrom geschrieben wurden, und flusht diesen.
+   * Der Zielstrom wird nicht geschlossen.
+   *
+   * @throws IOException wenn beim Schreiben in den Zielstrom ein Fehler aufgetreten ist
+   */
+  public void finish() throws IOException
+  {
+    if (finished)
+      return;
+
+    handOff(true);
+    finished = true;
+    put(END);
+
+    try
+    {
+      done.await();
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+
+    checkError();
+  }
+
+  /**
+   * Schreibt die restlichen Daten und schließt anschließend den Zielstrom.
+   *
+   * @throws IOException wenn beim Schreiben in den Zielstrom ein Fehler aufgetreten ist
+   */
+  public void close() throws IOException
+  {
+    try
+    {
+      finish();
+    }
+    finally
+    {
+      out.close();
+    }
+  }
+
+  /**
+   * Bricht die Übertragung ab, z.B. wenn der Erzeuger auf einen Fehler gestoßen ist. Noch nicht geschriebene
+   * Daten werden verworfen, der Zielstrom wird nicht geschlossen. Wie {@link #finish()} kehrt die Methode
+   * erst zurück, wenn der schreibende Thread beendet ist, danach kann der Zielstrom geschlossen werden. Ein
+   * Schreibvorgang, der gerade im Zielstrom blockiert, wird dabei abgewartet.
+   */
+  public void abort()
+  {
+    // Nach finish() oder einem früheren abort() ist nichts mehr zu tun
+    if (done.getCount() == 0)
+      return;
+
+    finished = true;
+
+    if (error == null)
+      error = new IOException("Pipeline aborted");
+
+    // Es ist immer Platz für die Endemarkierung, der Verbraucher verwirft nach einem Fehler alle Puffer. Wurde
+    // finish() beim Einstellen unterbrochen, fehlt sie noch; eine zweite bleibt unbeachtet liegen
+    filled.offer(END);
+    boolean interrupted = false;
+
+    while (true)
+    {
+      try
+      {
+        done.await();
+        break;
+      }
+      catch (InterruptedException ex)
+      {
+        interrupted = true;
+      }
+    }
+
+    if (interrupted)
+      Thread.currentThread().interrupt();
+  }
+
+  private void handOff(boolean flush) throws IOException
+  {
+    if (finished)
+      throw new IOException("Stream closed");
+
+    checkError();
+    put(new Chunk(buf, count, flush));
+
+    try
+    {
+      buf = free.take();
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      abort();
+      throw new InterruptedIOException();
+    }
+
+    count = 0;
+  }
+
+  private void put(Chunk chunk) throws IOException
+  {
+    try
+    {
+      filled.put(chunk);
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      abort();
+      throw new InterruptedIOException();
+    }
+  }
+
+  private void checkError() throws IOException
+  {
+    IOException ex = error;
+
+    if (ex != null)
+      throw (IOException)new IOException(ex.getMessage()).initCause(ex);
+  }
+
+  private void drain()
+  {
+    boolean interrupted = false;
+
+    try
+    {
+      while (true)
+      {
+        Chunk chunk;
+
+        try
+        {
+          chunk = filled.take();
+        }
+        catch (InterruptedException ex)
+        {
+          // Weiter Puffer freigeben, damit der Erzeuger nicht blockiert
+          interrupted = true;
+
+          if (error == null)
+            error = new InterruptedIOException();
+
+          continue;
+        }
+
+        if (chunk == END)
+          return;
+
+        if (error == null)
+        {
+          try
+          {
+            if (chunk.length > 0)
+              out.write(chunk.data, 0, chunk.length);
+
+            if (chunk.flush)
+              out.flush();
+          }
+          catch (IOException ex)
+          {
+            error = ex;
+          }
+          catch (RuntimeException ex)
+          {
+            error = new IOException(ex);
+          }
+        }
+
+        free.offer(chunk.data);
+      }
+    }
+    finally
+    {
+      done.countDown();
+
+      if (interrupted)
+        Thread.currentThread().interrupt();
+    }
+  }
+
+  private static Executor getDefaultExecutor()
+  {
+    return BackgroundTasks.executor();
+  }
+
+  private static final class Chunk
+  {
+    final byte[] data;
+
+    final int length;
+
+    final boolean flush;
+
+    Chunk(byte[] data, int length, boolean flush)
+    {
+      this.data = data;
+      this.length = length;
+      this.flush = flush;
+    }
+  }
+}
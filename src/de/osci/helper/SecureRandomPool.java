@@ -0,0 +1,335 @@
+package de.osci.helper;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.SecureRandomSpi;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIConfig;
+
+
+/**
+ * Pool von SecureRandom-Instanzen für die Erzeugung von Zufallszahlen (Initialisierungsvektoren,
+ * Sitzungsschlüssel, MIME-Boundaries, Challenge-Werte). Anstelle einer einzigen, von allen Threads
+ * gemeinsam genutzten Instanz werden mehrere unabhängige Instanzen ("Stripes") verwaltet, die jeweils durch
+ * eine eigene Sperre geschützt sind. Ein Thread verwendet bevorzugt den seiner Thread-Id zugeordneten Stripe
+ * und weicht bei Belegung auf den nächsten aus.
+ * <p>
+ * Die Instanzen werden mit dem im DialogHandler eingestellten Algorithmus und Security-Provider erzeugt.
+ * Wird der Algorithmus geändert, werden die Instanzen bei der nächsten Verwendung neu angelegt. Nach einer
+ * einstellbaren Anzahl erzeugter Bytes wird eine Instanz mit frischem Seed-Material nachgesät; dieses stammt
+ * aus einer nicht blockierenden Quelle des Systems.
+ * </p>
+ * <p>
+ * Für die Überwachung stehen Zähler für Anforderungen, Wartesituationen (Contention), Nachsaaten und
+ * erzeugte Bytes zur Verfügung. Sie werden verteilt geführt und erst beim Auslesen summiert, so dass sie
+ * die Stripes nicht wieder über eine gemeinsame Speicherzelle koppeln.
+ * </p>
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see Tools#createRawRandom(int)
+ * @see DialogHandler#setSecureRandomAlgorithm(String)
+ */
+public class SecureRandomPool
+{
+  private static Log log = LogFactory.getLog(SecureRandomPool.class);
+
+  /** Voreinstellung für die Anzahl der Bytes, nach denen eine Instanz nachgesät wird (1 MB). */
+  public static final long DEFAULT_RESEED_INTERVAL = 1024 * 1024;
+
+  private static final int SEED_LENGTH = 32;
+
+  // Quelle für das Seed-Material der Nachsaaten, die nicht auf den Entropie-Pool des Systems wartet
+  private static final SecureRandom SEED_SOURCE = createSeedSource();
+
+  private final Stripe[] stripes;
+
+  private final int mask;
+
+  private volatile long reseedInterval = DEFAULT_RESEED_INTERVAL;
+
+  private final LongAdder acquisitions = new LongAdder();
+
+  private final LongAdder contentions = new LongAdder();
+
+  private final LongAdder reseeds = new LongAdder();
+
+  private final LongAdder generatedBytes = new LongAdder();
+
+  private final SecureRandom facade;
+
+  /**
+   * Legt einen Pool an, dessen Größe sich nach der Anzahl der verfügbaren Prozessoren richtet.
+   */
+  public SecureRandomPool()
+  {
+    this(2 * Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Legt einen Pool mit mindestens der übergebenen Anzahl an Instanzen an. Die Anzahl wird auf die nächste
+   * Zweierpotenz aufgerundet.
+   *
+   * @param stripeCount Anzahl der SecureRandom-Instanzen
+   */
+  public SecureRandomPool(int stripeCount)
+  {
+    int size = 1;
+
+    while (size < stripeCount)
+      size <<= 1;
+
+    stripes = new Stripe[size];
+
+    for ( int i = 0 ; i < size ; i++ )
+      stripes[i] = new Stripe();
+
+    mask = size - 1;
+    facade = new PooledSecureRandom(this);
+  }
+
+  /**
+   * Füllt das übergebene Array mit Zufallsbytes.
+   *
+   * @param bytes zu füllendes Array
+   * @throws NoSuchAlgorithmException wenn der eingestellte Algorithmus nicht verfügbar ist
+   */
+  public void nextBytes(byte[] bytes) throws NoSuchAlgorithmException
+  {
+    acquisitions.increment();
+
+    int index = (int)Thread.currentThread().getId() & mask;
+    Stripe stripe = stripes[index];
+
+    if (!stripe.lock.tryLock())
+    {
+      Stripe next = stripes[(index + 1) & mask];
+
+      if (next.lock.tryLock())
+        stripe = next;
+      else
+      {
+        contentions.increment();
+        stripe.lock.lock();
+      }
+    }
+
+    try
+    {
+      stripe.nextBytes(bytes);
+    }
+    finally
+    {
+      stripe.lock.unlock();
+    }
+
+    generatedBytes.add(bytes.length);
+  }
+
+  /**
+   * Liefert eine SecureRandom-Sicht auf diesen Pool, die z.B. an KeyGenerator.init(int, SecureRandom)
+   * übergeben werden kann. Alle Anforderungen werden an den Pool weitergereicht.
+   *
+   * @return SecureRandom-Objekt
+   */
+  public SecureRandom getSecureRandom()
+  {
+    return facade;
+  }
+
+  /**
+   * Liefert die Anzahl der Bytes, nach denen eine Instanz nachgesät wird.
+   *
+   * @return Anzahl Bytes
+   * @see #setReseedInterval(long)
+   */
+  public long getReseedInterval()
+  {
+    return reseedInterval;
+  }
+
+  /**
+   * Setzt die Anzahl der Bytes, nach denen eine Instanz mit frischem Seed-Material nachgesät wird. Ein Wert
+   * kleiner oder gleich 0 schaltet das Nachsäen ab. Voreinstellung ist {@link #DEFAULT_RESEED_INTERVAL}.
+   *
+   * @param reseedInterval Anzahl Bytes
+   */
+  public void setReseedInterval(long reseedInterval)
+  {
+    this.reseedInterval = reseedInterval;
+  }
+
+  /**
+   * Liefert die Anzahl der Instanzen in diesem Pool.
+   *
+   * @return Anzahl der Instanzen
+   */
+  public int getStripeCount()
+  {
+    return stripes.length;
+  }
+
+  /**
+   * Liefert die Anzahl der bisherigen Anforderungen von Zufallsbytes.
+   *
+   * @return Anzahl der Anforderungen
+   */
+  public long getAcquisitionCount()
+  {
+    return acquisitions.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der Anforderungen, bei denen auf die Freigabe einer Instanz gewartet werden musste.
+   *
+   * @return Anzahl der Wartesituationen
+   */
+  public long getContentionCount()
+  {
+    return contentions.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der bisher durchgeführten Nachsaaten.
+   *
+   * @return Anzahl der Nachsaaten
+   */
+  public long getReseedCount()
+  {
+    return reseeds.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der insgesamt erzeugten Zufallsbytes.
+   *
+   * @return Anzahl der Bytes
+   */
+  public long getGeneratedBytes()
+  {
+    return generatedBytes.sum();
+  }
+
+  private static SecureRandom createInstance(String algorithm) throws NoSuchAlgorithmException
+  {
+    Provider provider = OSCIConfig.current().getSecurityProvider();
+
+    if (provider == null)
+      return SecureRandom.getInstance(algorithm);
+
+    try
+    {
+      return SecureRandom.getInstance(algorithm, provider);
+    }
+    catch (NoSuchAlgorithmException nsae)
+    {
+      // in case the configured provider does not support the algorithm, fallback
+      return SecureRandom.getInstance(algorithm);
+    }
+  }
+
+  /**
+   * generateSeed() kann unter JDK 8 auf /dev/random warten. NativePRNGNonBlocking liest /dev/urandom; wo es
+   * nicht verfügbar ist, liefert nextBytes() der Standardinstanz Seed-Material ohne zu blockieren.
+   */
+  private static SecureRandom createSeedSource()
+  {
+    try
+    {
+      return SecureRandom.getInstance("NativePRNGNonBlocking");
+    }
+    catch (NoSuchAlgorithmException ex)
+    {
+      return new SecureRandom();
+    }
+  }
+
+  private class Stripe
+  {
+    final ReentrantLock lock = new ReentrantLock();
+
+    private SecureRandom random;
+
+    private String algorithm;
+
+    private long bytesSinceReseed;
+
+    void nextBytes(byte[] bytes) throws NoSuchAlgorithmException
+    {
+      String currentAlgorithm = OSCIConfig.current().getSecureRandomAlgorithm();
+
+      if ((random == null) || !currentAlgorithm.equals(algorithm))
+      {
+        random = createInstance(currentAlgorithm);
+        algorithm = currentAlgorithm;
+        bytesSinceReseed = 0;
+      }
+      else if ((reseedInterval > 0) && (bytesSinceReseed >= reseedInterval))
+      {
+        if (log.isDebugEnabled())
+          log.debug("Reseeding SecureRandom instance after " + bytesSinceReseed + " bytes.");
+
+        byte[] seed = new byte[SEED_LENGTH];
+        SEED_SOURCE.nextBytes(seed);
+        random.setSeed(seed);
+        reseeds.increment();
+        bytesSinceReseed = 0;
+      }
+
+      random.nextBytes(bytes);
+      bytesSinceReseed += bytes.length;
+    }
+  }
+
+  private static class PooledSecureRandom extends SecureRandom
+  {
+    private static final long serialVersionUID = 1L;
+
+    PooledSecureRandom(final SecureRandomPool pool)
+    {
+      super(new SecureRandomSpi()
+      {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void engineSetSeed(byte[] seed)
+        {
+          // Die Instanzen des Pools werden selbständig nachgesät
+        }
+
+        @Override
+        protected void engineNextBytes(byte[] bytes)
+        {
+          try
+          {
+            pool.nextBytes(bytes);
+          }
+          catch (NoSuchAlgorithmException ex)
+          {
+            throw new IllegalStateException(ex);
+          }
+        }
+
+        @Override
+        protected byte[] engineGenerateSeed(int numBytes)
+        {
+          byte[] seed = new byte[numBytes];
+          engineNextBytes(seed);
+          return seed;
+        }
+      }, null);
+    }
+  }
+}
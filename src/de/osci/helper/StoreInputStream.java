@@ -5,6 +5,7 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
@@ -26,6 +27,7 @@ public class StoreInputStream extends FilterInputStream
   private ByteArrayOutputStream buffer;
   private boolean closed = false;
   private boolean save = false;
+  private final ReentrantLock lock = new ReentrantLock();
 
   /**
    * Creates a new StoreInputStream object.
@@ -108,7 +110,9 @@ public class StoreInputStream extends FilterInputStream
    */
   public void setSave(boolean save) throws IOException
   {
-    synchronized (in)
+    lock.lock();
+
+    try
     {
       this.save = save;
 
@@ -120,6 +124,10 @@ public class StoreInputStream extends FilterInputStream
 
       buffer = null;
     }
+    finally
+    {
+      lock.unlock();
+    }
   }
 
   /**
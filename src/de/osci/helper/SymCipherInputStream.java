@@ -144,11 +144,7 @@ public class SymCipherInputStream extends FilterInputStream
         }
       }
 
-      if (DialogHandler.getSecurityProvider() == null)
-        cipher = Cipher.getInstance(Constants.JCA_JCE_MAP.get(symAlgorithm));
-      else
-        cipher = Cipher.getInstance(Constants.JCA_JCE_MAP.get(symAlgorithm),
-                                    DialogHandler.getSecurityProvider());
+      cipher = Crypto.createCipher(symAlgorithm);
 
       if (encrypt)
       {
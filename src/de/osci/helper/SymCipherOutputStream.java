@@ -182,15 +182,7 @@ public class SymCipherOutputStream extends FilterOutputStream
 
     try
     {
-      if (DialogHandler.getSecurityProvider() == null)
-      {
-        cipher = Cipher.getInstance(Constants.JCA_JCE_MAP.get(symAlgorithm));
-      }
-      else
-      {
-        cipher = Cipher.getInstance(Constants.JCA_JCE_MAP.get(symAlgorithm),
-                                    DialogHandler.getSecurityProvider());
-      }
+      cipher = Crypto.createCipher(symAlgorithm);
 
       if (symAlgorithm.endsWith("tripledes-cbc"))
       {
@@ -9,7 +9,6 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
@@ -29,7 +28,7 @@ import java.security.cert.X509Certificate;
 public class Tools
 {
   private static Log log = LogFactory.getLog(Tools.class);
-  private static SecureRandom random;
+  private static volatile SecureRandomPool randomPool = new SecureRandomPool();
   private static CertificateFactory factory;
 
   /**
@@ -200,23 +199,36 @@ public class Tools
    */
   public static byte[] createRawRandom(int length) throws NoSuchAlgorithmException
   {
-    if (random == null)
-    {
-      try
-      {
-        random = SecureRandom.getInstance(DialogHandler.getSecureRandomAlgorithm(), DialogHandler.getSecurityProvider());
-      }
-      catch (NoSuchAlgorithmException nsae)
-      {
-        // in case the configured provider does not support the algorithm, fallback
-        random = SecureRandom.getInstance(DialogHandler.getSecureRandomAlgorithm());
-      }
-    }
-
     byte[] bytes = new byte[length];
-    random.nextBytes(bytes);
+    randomPool.nextBytes(bytes);
 
     return bytes;
+  }
+
+  /**
+   * Liefert den Pool von SecureRandom-Instanzen, aus dem sämtliche Zufallswerte der Bibliothek
+   * (Initialisierungsvektoren, Sitzungsschlüssel, Boundaries, Challenges) erzeugt werden. Über das
+   * zurückgegebene Objekt können das Intervall für das Nachsäen eingestellt und Zähler abgefragt werden.
+   *
+   * @return SecureRandom-Pool
+   * @see #setSecureRandomPool(SecureRandomPool)
+   */
+  public static SecureRandomPool getSecureRandomPool()
+  {
+    return randomPool;
+  }
+
+  /**
+   * Setzt den Pool von SecureRandom-Instanzen, z.B. um eine andere Anzahl von Instanzen zu verwenden.
+   *
+   * @param pool SecureRandom-Pool
+   * @see #getSecureRandomPool()
+   */
+  public static void setSecureRandomPool(SecureRandomPool pool)
+  {
+    if (pool == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + "null");
 
+    randomPool = pool;
   }
 }
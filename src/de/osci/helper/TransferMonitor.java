@@ -0,0 +1,422 @@
+package de.osci.helper;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.osci12.common.DialogHandler;
+
+
+/**
+ * Überwacht die Übertragung einer Nachricht über die Streams des Transportmoduls. Die übertragenen Bytes
+ * werden gezählt und in den Abständen des Meldeintervalls mit Gesamtgröße und aktueller Übertragungsrate an
+ * den ProgressEventHandlerI des Dialogs gemeldet, nach Abschluss der Übertragung in jedem Fall.
+ * <p>
+ * Ist ein Zeitlimit gesetzt, prüft der Timer-Thread der Bibliothek, ob ein Lese- bzw. Schreibzugriff länger
+ * als dieses Limit blockiert. In diesem Fall wird der Stream des Transportmoduls aus einem Hintergrund-Thread
+ * geschlossen, um den blockierten Zugriff zu beenden, und der Zugriff mit einer IOException abgebrochen.
+ * Wartezeiten, in denen die Bibliothek selbst keine Daten anfordert (z.B. beim Verarbeiten der Antwort),
+ * gelten nicht als Stillstand.
+ * </p>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see DialogHandler#setProgressInterval(long)
+ * @see DialogHandler#setStallTimeout(long)
+ */
+public final class TransferMonitor
+{
+  private static Log log = LogFactory.getLog(TransferMonitor.class);
+
+  private static final long IDLE = Long.MIN_VALUE;
+
+  private final DialogHandler dh;
+
+  private final int type;
+
+  private final long total;
+
+  private final long interval;
+
+  private final long stallTimeout;
+
+  private final Closeable stream;
+
+  private final long startTime;
+
+  private long bytes;
+
+  private long reportedBytes = -1;
+
+  private long reportedTime;
+
+  private boolean finished;
+
+  private volatile long blockedSince = IDLE;
+
+  private volatile boolean stalled;
+
+  private ScheduledFuture<?> watchdog;
+
+  private TransferMonitor(DialogHandler dh, int type, long total, Closeable stream)
+  {
+    this.dh = dh;
+    this.type = type;
+    this.total = total;
+    this.stream = stream;
+    interval = TimeUnit.MILLISECONDS.toNanos(dh.getProgressInterval());
+    stallTimeout = TimeUnit.MILLISECONDS.toNanos(dh.getStallTimeout());
+    startTime = System.nanoTime();
+    reportedTime = startTime;
+
+    if (stallTimeout > 0)
+    {
+      long period = Math.max(dh.getStallTimeout() / 4, 10);
+      watchdog = BackgroundTasks.scheduleAtFixedRate(this::checkStall, period);
+    }
+  }
+
+  /**
+   * Liefert einen überwachten Stream oder, wenn im Dialog weder ein ProgressEventHandlerI noch ein Zeitlimit
+   * gesetzt ist, den übergebenen Stream.
+   *
+   * @param out Stream des Transportmoduls
+   * @param dh DialogHandler des Auftrags
+   * @param type Event-Id, {@link de.osci.osci12.common.Constants#EVENT_SEND_MSG}
+   * @param total Anzahl der zu übertragenden Bytes oder -1, wenn nicht bekannt
+   * @return Stream
+   */
+  public static OutputStream wrap(OutputStream out, DialogHandler dh, int type, long total)
+  {
+    if (!isMonitored(dh))
+      return out;
+
+    return new MonitoredOutputStream(out, new TransferMonitor(dh, type, total, out));
+  }
+
+  /**
+   * Liefert einen überwachten Stream oder, wenn im Dialog weder ein ProgressEventHandlerI noch ein Zeitlimit
+   * gesetzt ist, den übergebenen Stream.
+   *
+   * @param in Stream des Transportmoduls
+   * @param dh DialogHandler des Auftrags
+   * @param type Event-Id, {@link de.osci.osci12.common.Constants#EVENT_RECEIVE_MSG}
+   * @param total Anzahl der zu übertragenden Bytes oder -1, wenn nicht bekannt
+   * @return Stream
+   */
+  public static InputStream wrap(InputStream in, DialogHandler dh, int type, long total)
+  {
+    if (!isMonitored(dh))
+      return in;
+
+    return new MonitoredInputStream(in, new TransferMonitor(dh, type, total, in));
+  }
+
+  /**
+   * Prüft, ob die Übertragungen des Dialogs überwacht werden.
+   *
+   * @param dh DialogHandler
+   * @return <code>true</code>, wenn ein ProgressEventHandlerI oder ein Zeitlimit gesetzt ist
+   */
+  public static boolean isMonitored(DialogHandler dh)
+  {
+    return (dh.getProgressEventHandler() != null) || (dh.getStallTimeout() > 0);
+  }
+
+  private void begin() throws IOException
+  {
+    if (stalled)
+      throw stalledException(null);
+
+    blockedSince = System.nanoTime();
+  }
+
+  private void end()
+  {
+    blockedSince = IDLE;
+  }
+
+  private IOException failed(IOException ex)
+  {
+    return stalled ? stalledException(ex) : ex;
+  }
+
+  private void add(long count) throws IOException
+  {
+    if (stalled)
+      throw stalledException(null);
+
+    if (count <= 0)
+      return;
+
+    bytes += count;
+    long now = System.nanoTime();
+
+    if (now - reportedTime >= interval)
+      report(now, bytes - Math.max(reportedBytes, 0), now - reportedTime);
+  }
+
+  private void finish()
+  {
+    if (finished)
+      return;
+
+    finished = true;
+
+    if (watchdog != null)
+      watchdog.cancel(false);
+
+    // Die abschließende Meldung enthält die mittlere Rate des gesamten Vorgangs
+    if (bytes != reportedBytes && !stalled)
+    {
+      long now = System.nanoTime();
+      report(now, bytes, now - startTime);
+    }
+  }
+
+  private void report(long now, long windowBytes, long windowNanos)
+  {
+    long rate = (windowNanos > 0) ? (long)(windowBytes * 1e9 / windowNanos) : 0;
+    reportedBytes = bytes;
+    reportedTime = now;
+    dh.fireProgress(type, bytes, total, rate);
+  }
+
+  private void checkStall()
+  {
+    long since = blockedSince;
+
+    if ((since == IDLE) || (System.nanoTime() - since <= stallTimeout) || stalled)
+      return;
+
+    stalled = true;
+    watchdog.cancel(false);
+    log.warn("Transfer stalled after " + bytes + " bytes, aborting.");
+
+    // Das Schließen kann selbst blockieren und darf den Watchdog nicht aufhalten
+    BackgroundTasks.executor().execute(() -> {
+      try
+      {
+        stream.close();
+      }
+      catch (IOException ex)
+      {
+        log.debug("Closing stalled stream failed.", ex);
+      }
+    });
+  }
+
+  private IOException stalledException(IOException cause)
+  {
+    return new IOException(DialogHandler.text.getString("transfer_stalled") + " "
+                           + TimeUnit.NANOSECONDS.toMillis(stallTimeout), cause);
+  }
+
+  private static final class MonitoredOutputStream extends FilterOutputStream
+  {
+    private final TransferMonitor monitor;
+
+    MonitoredOutputStream(OutputStream out, TransferMonitor monitor)
+    {
+      super(out);
+      this.monitor = monitor;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+      monitor.begin();
+
+      try
+      {
+        out.write(b);
+      }
+      catch (IOException ex)
+      {
+        throw monitor.failed(ex);
+      }
+      finally
+      {
+        monitor.end();
+      }
+
+      monitor.add(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+      monitor.begin();
+
+      try
+      {
+        out.write(b, off, len);
+      }
+      catch (IOException ex)
+      {
+        throw monitor.failed(ex);
+      }
+      finally
+      {
+        monitor.end();
+      }
+
+      monitor.add(len);
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+      monitor.begin();
+
+      try
+      {
+        out.flush();
+      }
+      catch (IOException ex)
+      {
+        throw monitor.failed(ex);
+      }
+      finally
+      {
+        monitor.end();
+      }
+    }
+
+    /**
+     * Schließt den darunterliegenden Stream, ohne vorher flush() aufzurufen.
+     */
+    @Override
+    public void close() throws IOException
+    {
+      try
+      {
+        out.close();
+      }
+      catch (IOException ex)
+      {
+        throw monitor.failed(ex);
+      }
+      finally
+      {
+        monitor.finish();
+      }
+    }
+  }
+
+  private static final class MonitoredInputStream extends FilterInputStream
+  {
+    private final TransferMonitor monitor;
+
+    MonitoredInputStream(InputStream in, TransferMonitor monitor)
+    {
+      super(in);
+      this.monitor = monitor;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+      int b;
+      monitor.begin();
+
+      try
+      {
+        b = in.read();
+      }
+      catch (IOException ex)
+      {
+        throw monitor.failed(ex);
+      }
+      finally
+      {
+        monitor.end();
+      }
+
+      if (b < 0)
+        monitor.finish();
+      else
+        monitor.add(1);
+
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+      int count;
+      monitor.begin();
+
+      try
+      {
+        count = in.read(b, off, len);
+      }
+      catch (IOException ex)
+      {
+        throw monitor.failed(ex);
+      }
+      finally
+      {
+        monitor.end();
+      }
+
+      if (count < 0)
+        monitor.finish();
+      else
+        monitor.add(count);
+
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+      long count;
+      monitor.begin();
+
+      try
+      {
+        count = in.skip(n);
+      }
+      catch (IOException ex)
+      {
+        throw monitor.failed(ex);
+      }
+      finally
+      {
+        monitor.end();
+      }
+
+      monitor.add(count);
+      return count;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      try
+      {
+        in.close();
+      }
+      finally
+      {
+        monitor.finish();
+      }
+    }
+  }
+}
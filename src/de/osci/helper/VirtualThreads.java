@@ -0,0 +1,95 @@
+package de.osci.helper;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+
+/**
+ * Unterstützung für den Betrieb der Bibliothek auf virtuellen Threads (ab JDK 21). Der Versandpfad
+ * (Signatur, Verschlüsselung, Serialisierung, Transport und Parsen der Antwort) verwendet ebenso wie die
+ * paketierte Übertragung, der ChunkSizeController und der MessageIdPool keine synchronized-Blöcke, sondern
+ * ReentrantLocks bzw. lock-freie Strukturen. Blockierende Ein-/Ausgabe in einem virtuellen Thread gibt
+ * daher den Träger-Thread frei, so dass sehr viele Nachrichten gleichzeitig unterwegs sein können, ohne dass
+ * entsprechend viele Plattform-Threads benötigt werden.
+ * <p>
+ * Da die Bibliothek weiterhin ab JDK 1.8 lauffähig ist, werden die JDK-21-Schnittstellen per Reflection
+ * angesprochen. Auf älteren Laufzeitumgebungen liefert {@link #newExecutor()} einen Executor mit
+ * herkömmlichen Threads.
+ * </p>
+ * <p>
+ * Beispiel:
+ * </p>
+ * <pre>
+ * ExecutorService executor = VirtualThreads.newExecutor();
+ * CompletableFuture&lt;ResponseToStoreDelivery&gt; rsp = storeDelivery.sendAsync(executor);
+ * </pre>
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see de.osci.osci12.messagetypes.StoreDelivery#sendAsync(java.util.concurrent.Executor)
+ */
+public class VirtualThreads
+{
+  private static Log log = LogFactory.getLog(VirtualThreads.class);
+
+  private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findFactoryMethod();
+
+  private VirtualThreads()
+  {}
+
+  /**
+   * Prüft, ob die Laufzeitumgebung virtuelle Threads anbietet.
+   *
+   * @return <code>true</code> ab JDK 21
+   */
+  public static boolean isSupported()
+  {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * Liefert einen Executor, der für jede Aufgabe einen neuen virtuellen Thread startet. Werden virtuelle
+   * Threads nicht unterstützt, wird ein Executor mit einem wachsenden Pool herkömmlicher Threads geliefert.
+   * Der Executor muss vom Aufrufer mit shutdown() beendet werden.
+   *
+   * @return Executor
+   */
+  public static ExecutorService newExecutor()
+  {
+    if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null)
+    {
+      try
+      {
+        return (ExecutorService)NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+      }
+      catch (Exception ex)
+      {
+        log.warn("Virtual thread executor could not be created, falling back to platform threads.", ex);
+      }
+    }
+
+    return Executors.newCachedThreadPool();
+  }
+
+  private static Method findFactoryMethod()
+  {
+    try
+    {
+      return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+    }
+    catch (NoSuchMethodException ex)
+    {
+      return null;
+    }
+  }
+}
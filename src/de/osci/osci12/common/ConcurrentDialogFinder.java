@@ -0,0 +1,502 @@
+package de.osci.osci12.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.helper.BackgroundTasks;
+import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
+import de.osci.osci12.extinterfaces.DialogFinder;
+import de.osci.osci12.soapheader.ControlBlockH;
+
+
+/**
+ * DialogFinder-Implementierung für Supplier und passive Empfänger mit vielen gleichzeitigen Dialogen. Die
+ * Dialoge werden über die Conversation-ID des ControlBlocks in einer ConcurrentHashMap verwaltet; die Suche
+ * kommt ohne Sperren aus, so dass auch sehr viele parallele Aufträge nicht aufeinander warten.
+ * <p>
+ * Dialoge, die länger als die Leerlaufzeit nicht gesucht wurden oder deren maximale Lebensdauer
+ * überschritten ist, werden entfernt. Die Prüfung erfolgt über ein Timer-Rad, das ein Daemon-Thread in
+ * festen Schritten weiterdreht; je Schritt werden nur die Dialoge betrachtet, deren Frist in diesem Schritt
+ * abläuft. Abgelaufene Dialoge werden außerdem bei der Suche erkannt und nicht mehr geliefert.
+ * </p>
+ * <p>
+ * Die Anzahl der Dialoge ist begrenzt. Ist sie erreicht, wartet {@link #addDialog(DialogHandler)} bis zu
+ * der eingestellten Zeit auf einen frei werdenden Platz und lehnt den Dialog dann mit einer
+ * SoapServerException ab.
+ * </p>
+ * <pre>
+ * DialogHandler.setDialogFinder(new ConcurrentDialogFinder(50000, 10 * 60 * 1000L, 8 * 60 * 60 * 1000L));
+ * </pre>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see DialogHandler#setDialogFinder(DialogFinder)
+ */
+public class ConcurrentDialogFinder extends DialogFinder implements AutoCloseable
+{
+  private static Log log = LogFactory.getLog(ConcurrentDialogFinder.class);
+
+  /** Voreinstellung für die maximale Anzahl von Dialogen. */
+  public static final int DEFAULT_MAX_DIALOGS = 100000;
+
+  /** Voreinstellung für die Leerlaufzeit in Millisekunden (10 Minuten). */
+  public static final long DEFAULT_IDLE_TIMEOUT = 10 * 60 * 1000L;
+
+  /** Voreinstellung für die maximale Lebensdauer in Millisekunden (8 Stunden). */
+  public static final long DEFAULT_MAX_LIFETIME = 8 * 60 * 60 * 1000L;
+
+  private static final int WHEEL_SIZE = 512;
+
+  private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+  // Ersatz für eine abgeschaltete Frist, kann ohne Überlauf auf die relativen Zeiten addiert werden
+  private static final long UNLIMITED = Long.MAX_VALUE / 4;
+
+  private final ConcurrentHashMap<String, Entry> dialogs = new ConcurrentHashMap<String, Entry>();
+
+  private final int maxDialogs;
+
+  private final Semaphore capacity;
+
+  private final long idleTimeout;
+
+  private final long maxLifetime;
+
+  private final long tick;
+
+  private final long origin = System.nanoTime();
+
+  private final List<ConcurrentLinkedQueue<Entry>> wheel;
+
+  private volatile long currentTick;
+
+  private volatile long addTimeout = 5000;
+
+  private final LongAdder lookups = new LongAdder();
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder evictions = new LongAdder();
+
+  private final LongAdder rejections = new LongAdder();
+
+  private final ScheduledFuture<?> ticker;
+
+  /**
+   * Legt einen DialogFinder mit den Voreinstellungen an.
+   *
+   * @see #DEFAULT_MAX_DIALOGS
+   * @see #DEFAULT_IDLE_TIMEOUT
+   * @see #DEFAULT_MAX_LIFETIME
+   */
+  public ConcurrentDialogFinder()
+  {
+    this(DEFAULT_MAX_DIALOGS, DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_LIFETIME);
+  }
+
+  /**
+   * Legt einen DialogFinder an.
+   *
+   * @param maxDialogs maximale Anzahl gleichzeitiger Dialoge
+   * @param idleTimeout Leerlaufzeit in Millisekunden, nach der ein nicht mehr gesuchter Dialog entfernt
+   *          wird, 0 für unbegrenzt
+   * @param maxLifetime maximale Lebensdauer eines Dialogs in Millisekunden, 0 für unbegrenzt
+   */
+  public ConcurrentDialogFinder(int maxDialogs, long idleTimeout, long maxLifetime)
+  {
+    if (maxDialogs < 1)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + maxDialogs);
+    if (idleTimeout < 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_secondargument") + idleTimeout);
+    if (maxLifetime < 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_thirdargument") + maxLifetime);
+
+    this.maxDialogs = maxDialogs;
+    capacity = new Semaphore(maxDialogs);
+    this.idleTimeout = (idleTimeout == 0) ? UNLIMITED : TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+    this.maxLifetime = (maxLifetime == 0) ? UNLIMITED : TimeUnit.MILLISECONDS.toNanos(maxLifetime);
+
+    // Ein Umlauf des Rades deckt etwa die kürzere der beiden Fristen ab
+    long shortest = Math.min(this.idleTimeout, this.maxLifetime);
+    tick = Math.max(TimeUnit.MILLISECONDS.toNanos(10),
+                    Math.min(TimeUnit.SECONDS.toNanos(1), shortest / WHEEL_SIZE));
+    wheel = new ArrayList<ConcurrentLinkedQueue<Entry>>(WHEEL_SIZE);
+
+    for ( int i = 0 ; i < WHEEL_SIZE ; i++ )
+      wheel.add(new ConcurrentLinkedQueue<Entry>());
+
+    if (shortest == UNLIMITED)
+      ticker = null;
+    else
+      ticker = BackgroundTasks.scheduleWeakly(this, ConcurrentDialogFinder::expire,
+                                              TimeUnit.NANOSECONDS.toMillis(tick),
+                                              "Expiry of dialogs failed.");
+  }
+
+  /**
+   * Liefert die Zeit, die {@link #addDialog(DialogHandler)} auf einen freien Platz wartet.
+   *
+   * @return Wartezeit in Millisekunden
+   */
+  public long getAddTimeout()
+  {
+    return addTimeout;
+  }
+
+  /**
+   * Setzt die Zeit, die {@link #addDialog(DialogHandler)} bei Erreichen der maximalen Anzahl von Dialogen auf
+   * einen freien Platz wartet. Voreinstellung ist 5 Sekunden.
+   *
+   * @param millis Wartezeit in Millisekunden, 0 für sofortige Ablehnung
+   */
+  public void setAddTimeout(long millis)
+  {
+    if (millis < 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + millis);
+
+    addTimeout = millis;
+  }
+
+  /**
+   * Liefert den Dialog zu der Conversation-ID des übergebenen ControlBlocks.
+   *
+   * @param controlBlock ControlBlock des Auftrags
+   * @return DialogHandler oder <code>null</code>, wenn der Dialog nicht (mehr) existiert
+   */
+  @Override
+  public DialogHandler findDialog(ControlBlockH controlBlock)
+  {
+    return findDialog(controlBlock.getConversationID());
+  }
+
+  /**
+   * Liefert den Dialog zu der übergebenen Conversation-ID.
+   *
+   * @param conversationId Conversation-ID
+   * @return DialogHandler oder <code>null</code>, wenn der Dialog nicht (mehr) existiert
+   */
+  public DialogHandler findDialog(String conversationId)
+  {
+    if (conversationId == null)
+      return null;
+
+    lookups.increment();
+    Entry entry = dialogs.get(conversationId);
+
+    if (entry == null)
+      return null;
+
+    long now = now();
+
+    if (deadline(entry) <= now)
+    {
+      evict(entry);
+      return null;
+    }
+
+    // Die Zugriffszeit wird nur einmal je Schritt des Rades geschrieben
+    if (now - entry.lastAccess > tick)
+      entry.lastAccess = now;
+
+    hits.increment();
+    return entry.dialog;
+  }
+
+  /**
+   * Entfernt den Dialog zu der Conversation-ID des übergebenen ControlBlocks.
+   *
+   * @param controlBlock ControlBlock des Dialogs
+   * @return <code>true</code>, wenn der Dialog entfernt wurde
+   */
+  @Override
+  public boolean removeDialog(ControlBlockH controlBlock)
+  {
+    return removeDialog(controlBlock.getConversationID());
+  }
+
+  /**
+   * Entfernt den Dialog zu der übergebenen Conversation-ID.
+   *
+   * @param conversationId Conversation-ID
+   * @return <code>true</code>, wenn der Dialog entfernt wurde
+   */
+  public boolean removeDialog(String conversationId)
+  {
+    if (conversationId == null)
+      return false;
+
+    Entry entry = dialogs.remove(conversationId);
+
+    if (entry == null)
+      return false;
+
+    release(entry);
+    return true;
+  }
+
+  /**
+   * Nimmt einen Dialog auf. Als Schlüssel dient die Conversation-ID im ControlBlock des DialogHandlers, ein
+   * vorhandener Dialog mit derselben Conversation-ID wird ersetzt.
+   *
+   * @param dialog DialogHandler mit gesetzter Conversation-ID
+   * @throws SoapServerException wenn die maximale Anzahl von Dialogen innerhalb der Wartezeit nicht
+   *           unterschritten wird
+   */
+  @Override
+  public void addDialog(DialogHandler dialog) throws SoapServerException
+  {
+    String conversationId = dialog.getControlblock().getConversationID();
+
+    if ((conversationId == null) || conversationId.equals(""))
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument")
+                                         + conversationId);
+
+    Entry entry = new Entry(conversationId, dialog, now());
+    Entry previous = dialogs.replace(conversationId, entry);
+
+    // Ein ersetzter Dialog gibt seinen Platz an den neuen weiter
+    if (previous != null)
+      previous.removed = true;
+    else
+    {
+      if (!acquire())
+      {
+        rejections.increment();
+        throw new SoapServerException(OSCIErrorCodes.SoapServerInternalErrorSupplier,
+                                      DialogHandler.text.getString("dialog_capacity_exceeded") + " "
+                                      + maxDialogs);
+      }
+
+      previous = dialogs.put(conversationId, entry);
+
+      if (previous != null)
+        release(previous);
+    }
+
+    if (ticker != null)
+      schedule(entry, currentTick);
+  }
+
+  /**
+   * Entfernt alle Dialoge.
+   */
+  public void clear()
+  {
+    for ( String conversationId : dialogs.keySet() )
+      removeDialog(conversationId);
+  }
+
+  /**
+   * Beendet die zeitgesteuerte Prüfung der Fristen. Abgelaufene Dialoge werden danach nur noch bei der Suche
+   * erkannt. Wird der DialogFinder nicht mehr referenziert, endet die Prüfung auch ohne Aufruf dieser
+   * Methode.
+   */
+  @Override
+  public void close()
+  {
+    if (ticker != null)
+      ticker.cancel(false);
+  }
+
+  /**
+   * Liefert die Anzahl der verwalteten Dialoge.
+   *
+   * @return Anzahl
+   */
+  public int getActiveDialogs()
+  {
+    return dialogs.size();
+  }
+
+  /**
+   * Liefert die Anzahl der Suchvorgänge seit dem Anlegen.
+   *
+   * @return Anzahl
+   */
+  public long getLookups()
+  {
+    return lookups.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der erfolgreichen Suchvorgänge seit dem Anlegen.
+   *
+   * @return Anzahl
+   */
+  public long getHits()
+  {
+    return hits.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der wegen Ablauf einer Frist entfernten Dialoge.
+   *
+   * @return Anzahl
+   */
+  public long getEvictions()
+  {
+    return evictions.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der wegen Erreichen der maximalen Anzahl abgelehnten Dialoge.
+   *
+   * @return Anzahl
+   */
+  public long getRejections()
+  {
+    return rejections.sum();
+  }
+
+  @Override
+  public String getVersion()
+  {
+    return "1.0";
+  }
+
+  @Override
+  public String getVendor()
+  {
+    return "Governikus GmbH & Co. KG";
+  }
+
+  @Override
+  public String toString()
+  {
+    return "ConcurrentDialogFinder[active=" + getActiveDialogs() + ", lookups=" + getLookups() + ", hits="
+           + getHits() + ", evictions=" + getEvictions() + ", rejections=" + getRejections() + "]";
+  }
+
+  private long now()
+  {
+    return System.nanoTime() - origin;
+  }
+
+  private long deadline(Entry entry)
+  {
+    return Math.min(entry.lastAccess + idleTimeout, entry.created + maxLifetime);
+  }
+
+  private boolean acquire()
+  {
+    if (capacity.tryAcquire())
+      return true;
+
+    try
+    {
+      return capacity.tryAcquire(addTimeout, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private void release(Entry entry)
+  {
+    entry.removed = true;
+    capacity.release();
+  }
+
+  private void evict(Entry entry)
+  {
+    if (dialogs.remove(entry.conversationId, entry))
+    {
+      release(entry);
+      evictions.increment();
+
+      if (log.isDebugEnabled())
+        log.debug("Dialog expired: " + entry.conversationId);
+    }
+  }
+
+  /**
+   * Trägt den Eintrag in das Fach des Schrittes ein, in dem seine Frist abläuft, frühestens in das des
+   * folgenden Schrittes.
+   */
+  private void schedule(Entry entry, long after)
+  {
+    long due = Math.max(deadline(entry) / tick, after + 1);
+    wheel.get((int)(due & WHEEL_MASK)).add(entry);
+  }
+
+  /**
+   * Dreht das Rad bis zum aktuellen Schritt weiter. Wird nur vom Timer-Thread aufgerufen.
+   */
+  void expire()
+  {
+    long now = now();
+    long target = now / tick;
+
+    while (currentTick < target)
+    {
+      long step = currentTick + 1;
+      currentTick = step;
+      ConcurrentLinkedQueue<Entry> bucket = wheel.get((int)(step & WHEEL_MASK));
+      List<Entry> nextRound = null;
+      Entry entry;
+
+      while ((entry = bucket.poll()) != null)
+      {
+        if (entry.removed)
+          continue;
+
+        long deadline = deadline(entry);
+
+        if (deadline <= now)
+          evict(entry);
+        else if (((Math.max(deadline / tick, step + 1) - step) & WHEEL_MASK) == 0)
+        {
+          // Gehört wieder in dieses Fach und wird erst beim nächsten Umlauf betrachtet
+          if (nextRound == null)
+            nextRound = new ArrayList<Entry>();
+
+          nextRound.add(entry);
+        }
+        else
+          schedule(entry, step);
+      }
+
+      if (nextRound != null)
+        bucket.addAll(nextRound);
+    }
+  }
+
+  private static final class Entry
+  {
+    final String conversationId;
+
+    final DialogHandler dialog;
+
+    final long created;
+
+    volatile long lastAccess;
+
+    volatile boolean removed;
+
+    Entry(String conversationId, DialogHandler dialog, long created)
+    {
+      this.conversationId = conversationId;
+      this.dialog = dialog;
+      this.created = created;
+      lastAccess = created;
+    }
+  }
+}
@@ -6,6 +6,7 @@ import java.security.Provider;
 import java.security.Security;
 import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.crypto.SecretKey;
 
@@ -15,8 +16,10 @@ import org.apache.commons.logging.LogFactory;
 import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
 import de.osci.osci12.encryption.Crypto;
 import de.osci.osci12.extinterfaces.DialogFinder;
+import de.osci.osci12.extinterfaces.MetricsListener;
 import de.osci.osci12.extinterfaces.OSCIDataSource;
 import de.osci.osci12.extinterfaces.ProgressEventHandlerI;
+import de.osci.osci12.extinterfaces.TransportFactory;
 import de.osci.osci12.extinterfaces.TransportI;
 import de.osci.osci12.messageparts.ProcessCardBundle;
 import de.osci.osci12.messagetypes.OSCIMessage;
@@ -83,6 +86,9 @@ public class DialogHandler
   /** Hashalgortihmus (Voreinstellung SHA-256) */
   private static String digestAlgorithm = Constants.DIGEST_ALGORITHM_SHA256;
 
+  /** Zusätzlich vorab zu berechnende Hashalgorithmen für Attachments */
+  private static String[] precomputedDigestAlgorithms = new String[0];
+
   // private static String digestAlgorithm = de.osci.osci12.common.Constants.DIGEST_ALGORITHM_SHA1;
   /** Symmetrischer Verschlüsselungsalgorithmus (Nachrichtenverschlüsselung) */
   private String symmetricCipherAlgorithm = Constants.DEFAULT_SYMMETRIC_CIPHER_ALGORITHM;
@@ -117,6 +123,9 @@ public class DialogHandler
   /** Ein Objekt welches das Interface TranportI implementiert */
   private TransportI transportModule;
 
+  /** Fabrik für die Transportobjekte der einzelnen Versandvorgänge */
+  private TransportFactory transportFactory;
+
   /** Nachrichtenverschluesselung. */
   private boolean encryption = true;
 
@@ -126,6 +135,15 @@ public class DialogHandler
   /** Implementierung des Interfaces ProgressEventHandlerI. */
   private ProgressEventHandlerI progressEventHandler = null;
 
+  private volatile long progressInterval = 500;
+
+  private volatile long stallTimeout = 0;
+
+  /** Empfänger der Messwerte der Versandvorgänge. */
+  private volatile MetricsListener metricsListener = null;
+
+  private volatile OSCIConfig config = null;
+
   /** Client */
   public Role client = null;
 
@@ -135,7 +153,7 @@ public class DialogHandler
   boolean disableControlBlockCheck = false;
 
   /** For internal use only */
-  static DialogFinder dialogFinder;
+  static volatile DialogFinder dialogFinder;
 
   /** For internal use only */
   static Role[] defaultSupplier;
@@ -150,7 +168,9 @@ public class DialogHandler
    */
   public static String boundary = "MIME_boundary";
 
-  private static OSCIDataSource dataBuffer = new SwapBuffer();
+  private static volatile OSCIDataSource dataBuffer = new SwapBuffer();
+
+  private static final ReentrantLock dataBufferLock = new ReentrantLock();
 
   ProcessCardBundle processCardForTimestampReception;
 
@@ -175,6 +195,7 @@ public class DialogHandler
       this.supplier = defaultSupplier[0];
 
     this.transportModule = transportModule;
+    this.transportFactory = (transportModule == null) ? null : new PrototypeTransportFactory(transportModule);
     this.client = client;
   }
 
@@ -197,6 +218,7 @@ public class DialogHandler
     }
 
     this.transportModule = transportModule;
+    this.transportFactory = (transportModule == null) ? null : new PrototypeTransportFactory(transportModule);
     this.client = client;
   }
 
@@ -352,6 +374,30 @@ public class DialogHandler
     controlblock.setResponse(cb.getResponse());
   }
 
+  /**
+   * Liefert den installierten DialogFinder.
+   *
+   * @return DialogFinder oder <code>null</code>
+   * @see #setDialogFinder(DialogFinder)
+   */
+  public static DialogFinder getDialogFinder()
+  {
+    return dialogFinder;
+  }
+
+  /**
+   * Installiert den DialogFinder, über den Supplier und passive Empfänger beim Parsen eines Auftrags den
+   * DialogHandler eines expliziten Dialogs anhand der Conversation-ID ermitteln. Die Anwendung nimmt die
+   * Dialoge nach InitDialog mit {@link DialogFinder#addDialog(DialogHandler)} auf und entfernt sie nach
+   * ExitDialog. Ohne DialogFinder (Default) werden Aufträge in expliziten Dialogen abgelehnt.
+   *
+   * @param finder DialogFinder, z.B. {@link ConcurrentDialogFinder}
+   */
+  public static void setDialogFinder(DialogFinder finder)
+  {
+    dialogFinder = finder;
+  }
+
   /**
    * Interne Methode, sollte von Anwendungen nicht aufgerufen werden.
    * 
@@ -386,6 +432,36 @@ public class DialogHandler
     return transportModule;
   }
 
+  /**
+   * Liefert die Fabrik, über die für jeden Versandvorgang ein Transportobjekt angelegt wird. Wurde keine
+   * Fabrik gesetzt, wird eine Fabrik geliefert, die das im Konstruktor übergebene Transportmodul als
+   * Prototyp verwendet.
+   *
+   * @return TransportFactory oder <code>null</code>, wenn weder Transportmodul noch Fabrik gesetzt sind
+   * @see #setTransportFactory(TransportFactory)
+   */
+  public TransportFactory getTransportFactory()
+  {
+    return transportFactory;
+  }
+
+  /**
+   * Setzt eine threadsichere Fabrik für Transportobjekte. Sie ersetzt das im Konstruktor übergebene
+   * Transportmodul für den Versand. Im Gegensatz zu {@link TransportI#newInstance()} wird
+   * {@link TransportFactory#create()} ohne Sperre aufgerufen, so dass sich nebenläufige Versandvorgänge
+   * nicht gegenseitig blockieren.
+   *
+   * @param transportFactory Fabrik für Transportobjekte
+   * @see #getTransportFactory()
+   */
+  public void setTransportFactory(TransportFactory transportFactory)
+  {
+    if (transportFactory == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + "null");
+
+    this.transportFactory = transportFactory;
+  }
+
   /**
    * Liefert <b>true</b>, wenn die Nachrichten als verschlüsselte Auftragsdaten versendet werden.
    *
@@ -451,6 +527,113 @@ public class DialogHandler
     this.progressEventHandler = progressEventHandler;
   }
 
+  /**
+   * Liefert die Konfiguration dieses Dialogs.
+   *
+   * @return Konfiguration, {@link OSCIConfig#global()}, wenn keine gesetzt ist
+   * @see #setConfig(OSCIConfig)
+   */
+  public OSCIConfig getConfig()
+  {
+    OSCIConfig c = config;
+    return (c == null) ? OSCIConfig.global() : c;
+  }
+
+  /**
+   * Ordnet diesem Dialog eine Konfiguration zu, deren Werte Vorrang vor den globalen Einstellungen (z.B.
+   * {@link #setDigestAlgorithm(String)}, {@link #setSecurityProvider(Provider)}) haben. Sie gilt beim
+   * Versand der Aufträge und beim Parsen der Antworten dieses Dialogs.
+   *
+   * @param config Konfiguration oder <code>null</code> für die globalen Einstellungen
+   */
+  public void setConfig(OSCIConfig config)
+  {
+    this.config = config;
+  }
+
+  /**
+   * Liefert den Mindestabstand zwischen zwei Fortschrittsmeldungen einer Übertragung.
+   *
+   * @return Abstand in Millisekunden
+   * @see #setProgressInterval(long)
+   */
+  public long getProgressInterval()
+  {
+    return progressInterval;
+  }
+
+  /**
+   * Setzt den Mindestabstand zwischen zwei Fortschrittsmeldungen beim Versand des Auftrags und beim Empfang
+   * der Antwort. Der registrierte ProgressEventHandlerI erhält die übertragene und die gesamte Datenmenge
+   * sowie die aktuelle Übertragungsrate höchstens in diesem Abstand und in jedem Fall nach Abschluss der
+   * Übertragung. Voreinstellung ist 500 ms.
+   *
+   * @param millis Abstand in Millisekunden, 0 für eine Meldung je Schreib- bzw. Lesezugriff
+   * @see ProgressEventHandlerI#transferProgress(int, long, long, long)
+   */
+  public void setProgressInterval(long millis)
+  {
+    if (millis < 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + millis);
+
+    progressInterval = millis;
+  }
+
+  /**
+   * Liefert das Zeitlimit, nach dem eine Übertragung ohne Fortschritt abgebrochen wird.
+   *
+   * @return Zeitlimit in Millisekunden, 0 wenn nicht überwacht wird
+   * @see #setStallTimeout(long)
+   */
+  public long getStallTimeout()
+  {
+    return stallTimeout;
+  }
+
+  /**
+   * Setzt das Zeitlimit, nach dem eine Übertragung abgebrochen wird, wenn ein Schreibzugriff auf die
+   * Verbindung bzw. ein Lesezugriff auf die Antwort des Transportmoduls so lange ohne Ergebnis blockiert.
+   * Der Stream des Transportmoduls wird dann geschlossen und der Versand mit einer IOException beendet. Das
+   * Transportmodul muss das Schließen des Streams aus einem anderen Thread zulassen. Die Wartezeit auf die
+   * Antwort des Intermediärs vor Beginn des Empfangs wird nicht überwacht, hierfür sind die Timeouts des
+   * Transportmoduls zuständig. Voreinstellung ist 0 (keine Überwachung).
+   *
+   * @param millis Zeitlimit in Millisekunden oder 0 zum Abschalten
+   * @see de.osci.helper.TransferMonitor
+   */
+  public void setStallTimeout(long millis)
+  {
+    if (millis < 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + millis);
+
+    stallTimeout = millis;
+  }
+
+  /**
+   * Liefert den registrierten Empfänger der Messwerte.
+   *
+   * @return MetricsListener oder <code>null</code>, wenn nicht gemessen wird
+   * @see #setMetricsListener(MetricsListener)
+   */
+  public MetricsListener getMetricsListener()
+  {
+    return metricsListener;
+  }
+
+  /**
+   * Registriert einen Empfänger für die Messwerte der Versandvorgänge dieses Dialogs. Nach Abschluss jedes
+   * Versandvorgangs wird ihm ein MessageMetrics-Objekt mit Dauer und Datenmenge der einzelnen
+   * Verarbeitungsschritte übergeben. Ist kein Empfänger gesetzt (Default), wird nur für eine laufende
+   * JFR-Aufzeichnung gemessen.
+   *
+   * @param metricsListener MetricsListener-Implementierung oder <code>null</code>
+   * @see MessageMetrics
+   */
+  public void setMetricsListener(MetricsListener metricsListener)
+  {
+    this.metricsListener = metricsListener;
+  }
+
   /**
    * Setzt den ControlBlock zuRück. Erlaubt die Wiederverwendung dieses Objekts in einem neuen Dialog.
    */
@@ -517,10 +700,13 @@ public class DialogHandler
    * Mit Hilfe dieser Methode kann ein Algorithmus für den verwendeten Zufallszahlengenerator gesetzt werden.
    * Dieser String wird von der Bibliothek bei der Initialisierung an die Methode
    * java.security.SecureRandom#getInstance(String) übergeben. Voreingestellt ist "SHA1PRNG".
+   * Die Instanzen des Zufallszahlen-Pools werden bei ihrer nächsten Verwendung mit dem neuen Algorithmus
+   * erzeugt.
    *
    * @param algorithm ein String-Identifier für den Algorithmus, der von dem installierten Provider
    *          unterstützt werden muss.
    * @see java.security.SecureRandom
+   * @see de.osci.helper.SecureRandomPool
    */
   public static void setSecureRandomAlgorithm(String algorithm)
   {
@@ -573,14 +759,30 @@ public class DialogHandler
   }
 
   /**
-   * Interne Methode, sollte von Anwendungen nicht aufgerufen werden.
+   * Interne Methode, sollte von Anwendungen nicht aufgerufen werden. Verwendet die Puffer-Implementierung
+   * der an den aktuellen Thread gebundenen Konfiguration.
    * 
    * @return OSCIDataSource {@link OSCIDataSource}
    * @throws IOException undocumented
+   * @see OSCIConfig#current()
    */
-  public static synchronized OSCIDataSource getNewDataBuffer() throws java.io.IOException
+  public static OSCIDataSource getNewDataBuffer() throws java.io.IOException
   {
-    return dataBuffer.newInstance();
+    return OSCIConfig.current().newDataBuffer();
+  }
+
+  static OSCIDataSource newDataBuffer(OSCIDataSource prototype) throws java.io.IOException
+  {
+    dataBufferLock.lock();
+
+    try
+    {
+      return ((prototype == null) ? dataBuffer : prototype).newInstance();
+    }
+    finally
+    {
+      dataBufferLock.unlock();
+    }
   }
 
   /**
@@ -751,6 +953,44 @@ public class DialogHandler
     digestAlgorithm = newDigestAlgorithm;
   }
 
+  /**
+   * Liefert die Hash-Algorithmen, für die beim Einstellen von Attachments zusätzlich zum eingestellten
+   * Hash-Algorithmus Hashwerte vorab berechnet werden.
+   *
+   * @return Identifier der Hash-Algorithmen
+   * @see #setPrecomputedDigestAlgorithms(String[])
+   */
+  public static String[] getPrecomputedDigestAlgorithms()
+  {
+    return precomputedDigestAlgorithms.clone();
+  }
+
+  /**
+   * Setzt Hash-Algorithmen, für die beim Einstellen von Attachments zusätzlich zum eingestellten
+   * Hash-Algorithmus Hashwerte berechnet werden. Die Berechnung erfolgt in demselben Durchlauf über die
+   * Daten, in dem diese gepuffert (und ggf. verschlüsselt) werden. Werden Attachments später mit mehreren
+   * Algorithmen referenziert (z.B. bei Signaturen mit SHA-256 und SHA-512), müssen die Daten so nicht
+   * erneut gelesen und entschlüsselt werden. Voreinstellung ist ein leeres Array.
+   *
+   * @param algorithms Identifier der Hash-Algorithmen
+   * @see #getPrecomputedDigestAlgorithms()
+   * @see #setDigestAlgorithm(String)
+   */
+  public static void setPrecomputedDigestAlgorithms(String[] algorithms)
+  {
+    if (algorithms == null)
+      algorithms = new String[0];
+
+    for ( int i = 0 ; i < algorithms.length ; i++ )
+    {
+      if (Constants.JCA_JCE_MAP.get(algorithms[i]) == null)
+        throw new IllegalArgumentException(DialogHandler.text.getString("invalid_hash_algorithm") + " "
+                                           + algorithms[i]);
+    }
+
+    precomputedDigestAlgorithms = algorithms.clone();
+  }
+
   /**
    * Liefert den gesetzten asymmetrischen Verschlüsselungsalgorithmus.
    *
@@ -793,6 +1033,24 @@ public class DialogHandler
       progressEventHandler.event(type, DialogHandler.text.getString("event_" + type), -1);
   }
 
+  /**
+   * Wird von der Bibliothek aufgerufen, um den Fortschritt einer Übertragung an den registrierten
+   * ProgressEventHandlerI zu melden.
+   *
+   * @param type Identifier des Events, {@link Constants#EVENT_SEND_MSG} oder {@link Constants#EVENT_RECEIVE_MSG}
+   * @param bytesDone bisher übertragene Bytes
+   * @param bytesTotal Gesamtgröße in Bytes oder -1, wenn nicht bekannt
+   * @param bytesPerSecond aktuelle Übertragungsrate in Bytes pro Sekunde
+   * @see de.osci.helper.TransferMonitor
+   */
+  public void fireProgress(int type, long bytesDone, long bytesTotal, long bytesPerSecond)
+  {
+    ProgressEventHandlerI handler = progressEventHandler;
+
+    if (handler != null)
+      handler.transferProgress(type, bytesDone, bytesTotal, bytesPerSecond);
+  }
+
   /**
    * Status des Dialogs: explizit/implizit
    *
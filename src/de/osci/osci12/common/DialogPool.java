@@ -0,0 +1,541 @@
+package de.osci.osci12.common;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.helper.BackgroundTasks;
+import de.osci.osci12.OSCIException;
+import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
+import de.osci.osci12.extinterfaces.TransportFactory;
+import de.osci.osci12.extinterfaces.TransportI;
+import de.osci.osci12.messagetypes.ExitDialog;
+import de.osci.osci12.messagetypes.InitDialog;
+import de.osci.osci12.messagetypes.ResponseToExitDialog;
+import de.osci.osci12.messagetypes.ResponseToInitDialog;
+import de.osci.osci12.roles.Intermed;
+import de.osci.osci12.roles.Originator;
+
+
+/**
+ * Pool initialisierter expliziter Dialoge zwischen einem Client und einem Intermediär. Anwendungen, die
+ * z.B. in mehreren Threads regelmäßig Postfächer abfragen, sparen so je Vorgang die Nachrichten InitDialog
+ * und ExitDialog, die signiert und verschlüsselt werden müssen.
+ * <p>
+ * Ein Dialog wird mit {@link #acquire()} für die Dauer eines Vorgangs exklusiv an den aufrufenden Thread
+ * übergeben und mit {@link Lease#close()} zurückgegeben. Ist kein freier Dialog vorhanden, wird ein neuer
+ * initialisiert, bis die maximale Anzahl erreicht ist; danach wartet acquire() bis zu der eingestellten Zeit
+ * auf die Rückgabe eines Dialogs.
+ * </p>
+ * <p>
+ * Schlägt ein Auftrag fehl (fehlerhafter ControlBlock, SOAP-Fault, Abbruch der Übertragung) oder wird der
+ * Dialog mit {@link Lease#invalidate()} verworfen, wird er vor der nächsten Übergabe neu initialisiert.
+ * Dialoge, die länger als die Leerlaufzeit nicht verwendet wurden, werden im Hintergrund mit ExitDialog
+ * beendet. Die Leerlaufzeit muss daher kürzer als die des Intermediärs eingestellt werden.
+ * {@link #close()} beendet alle freien Dialoge, die übrigen werden bei ihrer Rückgabe beendet.
+ * </p>
+ * <pre>
+ * try (DialogPool.Lease lease = pool.acquire())
+ * {
+ *   ResponseToFetchDelivery rsp = new FetchDelivery(lease.getDialogHandler()).send();
+ *   ...
+ * }
+ * </pre>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class DialogPool implements AutoCloseable
+{
+  private static Log log = LogFactory.getLog(DialogPool.class);
+
+  /** Voreinstellung für die Leerlaufzeit in Millisekunden (2 Minuten). */
+  public static final long DEFAULT_IDLE_TIMEOUT = 2 * 60 * 1000L;
+
+  private final Originator client;
+
+  private final Intermed supplier;
+
+  private final TransportI transport;
+
+  // Gemeinsam für alle Dialoge, damit newInstance() des Prototyps nicht nebenläufig aufgerufen wird
+  private final TransportFactory transportFactory;
+
+  private final int maxDialogs;
+
+  private final long idleTimeout;
+
+  // Begrenzt die übergebenen Dialoge; freie Dialoge entstehen nur aus zurückgegebenen, daher ist auch die
+  // Gesamtzahl begrenzt
+  private final Semaphore leases;
+
+  // Zuletzt zurückgegebene Dialoge vorne, abgelaufene sammeln sich am Ende
+  private final LinkedBlockingDeque<PooledDialog> idle = new LinkedBlockingDeque<PooledDialog>();
+
+  private volatile long acquireTimeout = 30000;
+
+  private volatile boolean closed;
+
+  private final LongAdder initializations = new LongAdder();
+
+  private final LongAdder reinitializations = new LongAdder();
+
+  private final LongAdder evictions = new LongAdder();
+
+  private final ScheduledFuture<?> evictor;
+
+  /**
+   * Legt einen Pool mit der voreingestellten Leerlaufzeit an.
+   *
+   * @param client Originator als Client, mit Signer und Decrypter
+   * @param supplier Intermediär
+   * @param transport Prototyp des Transportmoduls
+   * @param maxDialogs maximale Anzahl gleichzeitiger Dialoge
+   * @see #DEFAULT_IDLE_TIMEOUT
+   */
+  public DialogPool(Originator client, Intermed supplier, TransportI transport, int maxDialogs)
+  {
+    this(client, supplier, transport, maxDialogs, DEFAULT_IDLE_TIMEOUT);
+  }
+
+  /**
+   * Legt einen Pool an. Dialoge werden erst bei Bedarf initialisiert.
+   *
+   * @param client Originator als Client, mit Signer und Decrypter
+   * @param supplier Intermediär
+   * @param transport Prototyp des Transportmoduls
+   * @param maxDialogs maximale Anzahl gleichzeitiger Dialoge
+   * @param idleTimeout Leerlaufzeit in Millisekunden, nach der ein freier Dialog beendet wird, 0 für
+   *          unbegrenzt
+   */
+  public DialogPool(Originator client, Intermed supplier, TransportI transport, int maxDialogs,
+                    long idleTimeout)
+  {
+    if (maxDialogs < 1)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_fourthargument") + maxDialogs);
+    if (idleTimeout < 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_fifthargument") + idleTimeout);
+
+    this.client = client;
+    this.supplier = supplier;
+    this.transport = transport;
+    this.transportFactory = (transport == null) ? null : new PrototypeTransportFactory(transport);
+    this.maxDialogs = maxDialogs;
+    this.idleTimeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+    leases = new Semaphore(maxDialogs, true);
+
+    if (idleTimeout == 0)
+      evictor = null;
+    else
+      evictor = BackgroundTasks.scheduleWeakly(this, DialogPool::evict, Math.max(idleTimeout / 4, 100),
+                                               "Eviction of dialogs failed.");
+  }
+
+  /**
+   * Liefert die Zeit, die {@link #acquire()} auf einen freien Dialog wartet.
+   *
+   * @return Wartezeit in Millisekunden
+   */
+  public long getAcquireTimeout()
+  {
+    return acquireTimeout;
+  }
+
+  /**
+   * Setzt die Zeit, die {@link #acquire()} bei Erreichen der maximalen Anzahl von Dialogen auf die Rückgabe
+   * eines Dialogs wartet. Voreinstellung ist 30 Sekunden.
+   *
+   * @param millis Wartezeit in Millisekunden, 0 für sofortigen Abbruch
+   */
+  public void setAcquireTimeout(long millis)
+  {
+    if (millis < 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + millis);
+
+    acquireTimeout = millis;
+  }
+
+  /**
+   * Übergibt einen initialisierten Dialog exklusiv an den aufrufenden Thread. Der Dialog muss mit
+   * {@link Lease#close()} zurückgegeben werden.
+   *
+   * @return Lease mit dem DialogHandler
+   * @throws IOException bei Ein-/Ausgabefehlern beim Initialisieren oder wenn innerhalb der Wartezeit kein
+   *           Dialog frei wird
+   * @throws OSCIException bei OSCI-Fehlern oder einer Fehlermeldung des Intermediärs zu InitDialog
+   * @throws NoSuchAlgorithmException wenn der verwendete Security-Provider einen erforderlichen Algorithmus
+   *           nicht unterstützt
+   */
+  public Lease acquire() throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    checkOpen();
+
+    if (!tryAcquire())
+      throw new IOException(DialogHandler.text.getString("dialog_pool_exhausted") + " " + maxDialogs);
+
+    try
+    {
+      PooledDialog dialog = takeIdle();
+
+      if (dialog == null)
+      {
+        dialog = new PooledDialog(createDialogHandler());
+        initialize(dialog);
+        initializations.increment();
+      }
+      else if (dialog.invalid || !inSync(dialog.dialogHandler))
+      {
+        if (log.isDebugEnabled())
+          log.debug("Reinitializing dialog " + dialog.conversationId);
+
+        initialize(dialog);
+        reinitializations.increment();
+      }
+
+      return new Lease(dialog);
+    }
+    catch (IOException | OSCIException | NoSuchAlgorithmException | RuntimeException ex)
+    {
+      leases.release();
+      throw ex;
+    }
+  }
+
+  /**
+   * Beendet alle freien Dialoge mit ExitDialog. Übergebene Dialoge werden bei ihrer Rückgabe beendet, danach
+   * liefert {@link #acquire()} keine Dialoge mehr.
+   */
+  @Override
+  public void close()
+  {
+    closed = true;
+
+    if (evictor != null)
+      evictor.cancel(false);
+
+    PooledDialog dialog;
+
+    while ((dialog = idle.pollFirst()) != null)
+      exit(dialog);
+  }
+
+  /**
+   * Liefert die Anzahl der freien Dialoge.
+   *
+   * @return Anzahl
+   */
+  public int getIdleDialogs()
+  {
+    return idle.size();
+  }
+
+  /**
+   * Liefert die Anzahl der übergebenen Dialoge.
+   *
+   * @return Anzahl
+   */
+  public int getLeasedDialogs()
+  {
+    return maxDialogs - leases.availablePermits();
+  }
+
+  /**
+   * Liefert die Anzahl der neu angelegten Dialoge seit dem Anlegen des Pools.
+   *
+   * @return Anzahl
+   */
+  public long getInitializations()
+  {
+    return initializations.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der neu initialisierten fehlerhaften oder verworfenen Dialoge.
+   *
+   * @return Anzahl
+   */
+  public long getReinitializations()
+  {
+    return reinitializations.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der wegen Überschreitung der Leerlaufzeit beendeten Dialoge.
+   *
+   * @return Anzahl
+   */
+  public long getEvictions()
+  {
+    return evictions.sum();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "DialogPool[idle=" + getIdleDialogs() + ", leased=" + getLeasedDialogs() + ", initializations="
+           + getInitializations() + ", reinitializations=" + getReinitializations() + ", evictions="
+           + getEvictions() + "]";
+  }
+
+  /**
+   * Legt den DialogHandler für einen neuen Dialog an. Kann überschrieben werden, um weitere Einstellungen
+   * (z.B. {@link DialogHandler#setConfig(OSCIConfig)}) vorzunehmen.
+   *
+   * @return DialogHandler
+   * @throws IOException wenn das Transportmodul nicht angelegt werden kann
+   */
+  protected DialogHandler createDialogHandler() throws IOException
+  {
+    DialogHandler dh = new DialogHandler(client, supplier, transport);
+
+    if (transportFactory != null)
+      dh.setTransportFactory(transportFactory);
+
+    return dh;
+  }
+
+  private void checkOpen()
+  {
+    if (closed)
+      throw new IllegalStateException(DialogHandler.text.getString("dialog_pool_closed"));
+  }
+
+  private boolean tryAcquire()
+  {
+    if (leases.tryAcquire())
+      return true;
+
+    try
+    {
+      return leases.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private PooledDialog takeIdle()
+  {
+    PooledDialog dialog;
+
+    while ((dialog = idle.pollFirst()) != null)
+    {
+      if (!expired(dialog, System.nanoTime()))
+        return dialog;
+
+      // Alle freien Dialoge sind abgelaufen; acquire() wartet nicht auf ExitDialog
+      evictions.increment();
+      exitInBackground(dialog);
+    }
+
+    return null;
+  }
+
+  private boolean expired(PooledDialog dialog, long now)
+  {
+    return (idleTimeout > 0) && (now - dialog.lastUse > idleTimeout);
+  }
+
+  /**
+   * Prüft, ob der letzte Auftrag des Dialogs beantwortet und der ControlBlock der Antwort erfolgreich geprüft
+   * wurde. Jeder Auftrag setzt eine neue Challenge, erst die geprüfte Antwort übernimmt die des Intermediärs
+   * auch als vorherige Challenge. Nach einem Abbruch, einer SOAP-Fault oder einem fehlerhaften ControlBlock
+   * weichen beide voneinander ab.
+   */
+  private static boolean inSync(DialogHandler dh)
+  {
+    return dh.isExplicitDialog() && (dh.prevChallenge != null)
+           && dh.prevChallenge.equals(dh.getControlblock().getChallenge());
+  }
+
+  private void initialize(PooledDialog dialog) throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    DialogHandler dh = dialog.dialogHandler;
+    dh.resetControlBlock();
+    dh.prevChallenge = null;
+    dialog.invalid = true;
+    ResponseToInitDialog rsp = new InitDialog(dh).send();
+    String[][] feedback = rsp.getFeedback();
+
+    if ((feedback != null) && (feedback.length > 0) && !feedback[0][1].startsWith("0"))
+    {
+      OSCIErrorCodes code = OSCIErrorCodes.fromErrorCode(feedback[0][1]);
+      throw new OSCIErrorException((code == null) ? OSCIErrorCodes.InternalErrorSupplier : code, rsp);
+    }
+
+    dialog.invalid = false;
+    dialog.conversationId = dh.getControlblock().getConversationID();
+  }
+
+  private void release(PooledDialog dialog)
+  {
+    try
+    {
+      if (closed)
+        exit(dialog);
+      else if (!dialog.dialogHandler.isExplicitDialog() && !dialog.invalid)
+      {
+        // Von der Anwendung mit ExitDialog beendet
+        if (log.isDebugEnabled())
+          log.debug("Dialog " + dialog.conversationId + " has been closed by the application.");
+      }
+      else
+      {
+        dialog.lastUse = System.nanoTime();
+        idle.offerFirst(dialog);
+      }
+    }
+    finally
+    {
+      leases.release();
+    }
+  }
+
+  private void exit(PooledDialog dialog)
+  {
+    DialogHandler dh = dialog.dialogHandler;
+
+    // Ein fehlerhafter Dialog ist beim Intermediär nicht mehr ansprechbar
+    if (dialog.invalid || !inSync(dh))
+      return;
+
+    try
+    {
+      ResponseToExitDialog rsp = new ExitDialog(dh).send();
+      String[][] feedback = rsp.getFeedback();
+
+      if ((feedback != null) && (feedback.length > 0) && !feedback[0][1].startsWith("0"))
+        log.warn("ExitDialog for dialog " + dialog.conversationId + " failed: " + feedback[0][1]);
+    }
+    catch (Exception ex)
+    {
+      log.warn("ExitDialog for dialog " + dialog.conversationId + " failed.", ex);
+    }
+  }
+
+  /**
+   * Beendet einen Dialog in einem Hintergrund-Thread, damit weder der aufrufende Thread noch der gemeinsame
+   * Timer-Thread auf den Intermediär warten.
+   */
+  private void exitInBackground(PooledDialog dialog)
+  {
+    try
+    {
+      BackgroundTasks.executor().execute(() -> exit(dialog));
+    }
+    catch (RejectedExecutionException ex)
+    {
+      log.warn("ExitDialog for dialog " + dialog.conversationId + " rejected.", ex);
+    }
+  }
+
+  /**
+   * Entfernt die abgelaufenen freien Dialoge und übergibt sie zum Beenden an einen Hintergrund-Thread. Wird
+   * nur vom Timer-Thread aufgerufen.
+   */
+  void evict()
+  {
+    long now = System.nanoTime();
+    Iterator<PooledDialog> it = idle.descendingIterator();
+
+    while (it.hasNext())
+    {
+      PooledDialog dialog = it.next();
+
+      // Die Reihenfolge entspricht nur annähernd der letzten Verwendung, daher wird nicht abgebrochen
+      if (expired(dialog, now) && idle.removeLastOccurrence(dialog))
+      {
+        evictions.increment();
+
+        if (log.isDebugEnabled())
+          log.debug("Dialog expired: " + dialog.conversationId);
+
+        exitInBackground(dialog);
+      }
+    }
+  }
+
+  private static final class PooledDialog
+  {
+    final DialogHandler dialogHandler;
+
+    String conversationId;
+
+    volatile long lastUse;
+
+    volatile boolean invalid;
+
+    PooledDialog(DialogHandler dialogHandler)
+    {
+      this.dialogHandler = dialogHandler;
+    }
+  }
+
+  /**
+   * Exklusive Überlassung eines Dialogs. Die Methoden dürfen nur von dem Thread aufgerufen werden, der den
+   * Dialog erhalten hat.
+   */
+  public final class Lease implements AutoCloseable
+  {
+    private PooledDialog dialog;
+
+    private final DialogHandler dialogHandler;
+
+    private Lease(PooledDialog dialog)
+    {
+      this.dialog = dialog;
+      dialogHandler = dialog.dialogHandler;
+    }
+
+    /**
+     * Liefert den DialogHandler des initialisierten Dialogs.
+     *
+     * @return DialogHandler
+     */
+    public DialogHandler getDialogHandler()
+    {
+      return dialogHandler;
+    }
+
+    /**
+     * Kennzeichnet den Dialog als fehlerhaft, er wird vor der nächsten Übergabe neu initialisiert.
+     */
+    public void invalidate()
+    {
+      if (dialog != null)
+        dialog.invalid = true;
+    }
+
+    /**
+     * Gibt den Dialog an den Pool zurück. Weitere Aufrufe haben keine Wirkung.
+     */
+    @Override
+    public void close()
+    {
+      if (dialog == null)
+        return;
+
+      PooledDialog d = dialog;
+      dialog = null;
+      release(d);
+    }
+  }
+}
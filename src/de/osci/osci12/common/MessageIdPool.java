@@ -0,0 +1,436 @@
+package de.osci.osci12.common;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.helper.BackgroundTasks;
+import de.osci.osci12.OSCIException;
+import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
+import de.osci.osci12.extinterfaces.TransportFactory;
+import de.osci.osci12.extinterfaces.TransportI;
+import de.osci.osci12.messagetypes.GetMessageId;
+import de.osci.osci12.messagetypes.ResponseToGetMessageId;
+import de.osci.osci12.roles.Intermed;
+import de.osci.osci12.roles.Originator;
+
+
+/**
+ * Vorrat an Message-IDs eines Intermediärs. Jeder Zustellungs- und Abwicklungsauftrag benötigt eine zuvor mit
+ * GetMessageId angeforderte Message-ID; bei vielen Aufträgen halbiert ein im Hintergrund gefüllter Vorrat die
+ * Anzahl der Nachrichten, die der Versand abwarten muss.
+ * <p>
+ * Sinkt die Anzahl der vorrätigen Message-IDs unter die untere Marke, werden im Hintergrund so lange neue
+ * angefordert, bis die obere Marke erreicht ist. Ist der Vorrat leer, fordert {@link #take()} eine
+ * Message-ID im aufrufenden Thread an. Message-IDs, die älter als die maximale Vorhaltezeit sind, werden
+ * verworfen, weil der Intermediär nicht verwendete Message-IDs nach einiger Zeit ungültig werden lässt. Die
+ * Vorhaltezeit muss daher kürzer als diese Frist des Intermediärs eingestellt werden.
+ * </p>
+ * <p>
+ * Die Anforderung erfolgt in eigenen impliziten Dialogen, die DialogHandler der Anwendung werden nicht
+ * verwendet.
+ * </p>
+ * <pre>
+ * MessageIdPool ids = new MessageIdPool(originator, intermed, transport, 10, 50);
+ * ...
+ * StoreDelivery delivery = new StoreDelivery(dialogHandler, addressee, ids.take());
+ * </pre>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class MessageIdPool implements AutoCloseable
+{
+  private static Log log = LogFactory.getLog(MessageIdPool.class);
+
+  /** Voreinstellung für die maximale Vorhaltezeit einer Message-ID in Millisekunden (10 Minuten). */
+  public static final long DEFAULT_MAX_AGE = 10 * 60 * 1000L;
+
+  private final Originator client;
+
+  private final Intermed supplier;
+
+  private final TransportI transport;
+
+  // Gemeinsam für alle Dialoge, damit newInstance() des Prototyps nicht nebenläufig aufgerufen wird
+  private final TransportFactory transportFactory;
+
+  private final int lowWatermark;
+
+  private final int highWatermark;
+
+  private final long maxAge;
+
+  private final Executor executor;
+
+  // Älteste Message-IDs vorne, damit sie vor Ablauf der Vorhaltezeit verwendet werden
+  private final ConcurrentLinkedDeque<PooledId> ids = new ConcurrentLinkedDeque<PooledId>();
+
+  private final AtomicInteger available = new AtomicInteger();
+
+  private final AtomicBoolean refilling = new AtomicBoolean();
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private volatile boolean closed;
+
+  private final LongAdder fetched = new LongAdder();
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder expired = new LongAdder();
+
+  private volatile ScheduledFuture<?> refresher;
+
+  /**
+   * Legt einen Vorrat mit der voreingestellten Vorhaltezeit an, der im Hintergrund über einen
+   * bibliotheksinternen Thread-Pool gefüllt wird.
+   *
+   * @param client Originator als Client, mit Signer und Decrypter
+   * @param supplier Intermediär
+   * @param transport Prototyp des Transportmoduls
+   * @param lowWatermark untere Marke, ab der nachgefüllt wird
+   * @param highWatermark obere Marke, bis zu der nachgefüllt wird
+   * @see #DEFAULT_MAX_AGE
+   */
+  public MessageIdPool(Originator client, Intermed supplier, TransportI transport, int lowWatermark,
+                       int highWatermark)
+  {
+    this(client, supplier, transport, lowWatermark, highWatermark, DEFAULT_MAX_AGE, null);
+  }
+
+  /**
+   * Legt einen Vorrat an. Gefüllt wird er erst mit dem ersten Abruf oder mit {@link #refill()}.
+   *
+   * @param client Originator als Client, mit Signer und Decrypter
+   * @param supplier Intermediär
+   * @param transport Prototyp des Transportmoduls
+   * @param lowWatermark untere Marke, ab der nachgefüllt wird
+   * @param highWatermark obere Marke, bis zu der nachgefüllt wird
+   * @param maxAge maximale Vorhaltezeit einer Message-ID in Millisekunden, 0 für unbegrenzt
+   * @param executor Executor für das Nachfüllen oder <code>null</code> für den bibliotheksinternen
+   *          Thread-Pool
+   */
+  public MessageIdPool(Originator client, Intermed supplier, TransportI transport, int lowWatermark,
+                       int highWatermark, long maxAge, Executor executor)
+  {
+    if (lowWatermark < 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_fourthargument") + lowWatermark);
+    if (highWatermark < Math.max(lowWatermark, 1))
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_fifthargument") + highWatermark);
+    if (maxAge < 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_sixthargument") + maxAge);
+
+    this.client = client;
+    this.supplier = supplier;
+    this.transport = transport;
+    this.transportFactory = (transport == null) ? null : new PrototypeTransportFactory(transport);
+    this.lowWatermark = lowWatermark;
+    this.highWatermark = highWatermark;
+    this.maxAge = TimeUnit.MILLISECONDS.toNanos(maxAge);
+    this.executor = (executor == null) ? BackgroundTasks.executor() : executor;
+  }
+
+  /**
+   * Liefert eine Message-ID aus dem Vorrat. Ist der Vorrat leer, wird sie im aufrufenden Thread angefordert.
+   * Jede Message-ID wird genau einmal geliefert.
+   *
+   * @return Message-ID
+   * @throws IOException bei Ein-/Ausgabefehlern der Anforderung
+   * @throws OSCIException bei OSCI-Fehlern oder einer Fehlermeldung des Intermediärs
+   * @throws NoSuchAlgorithmException wenn der verwendete Security-Provider einen erforderlichen Algorithmus
+   *           nicht unterstützt
+   */
+  public String take() throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    String id = poll();
+
+    if (id != null)
+      return id;
+
+    misses.increment();
+    return fetch(createDialogHandler());
+  }
+
+  /**
+   * Liefert eine Message-ID aus dem Vorrat, ohne eine Anforderung abzuwarten.
+   *
+   * @return Message-ID oder <code>null</code>, wenn der Vorrat leer ist
+   */
+  public String poll()
+  {
+    if (closed)
+      throw new IllegalStateException(DialogHandler.text.getString("message_id_pool_closed"));
+
+    long now = System.nanoTime();
+    PooledId entry;
+    String id = null;
+
+    while ((entry = ids.pollFirst()) != null)
+    {
+      available.decrementAndGet();
+
+      if (!expired(entry, now))
+      {
+        id = entry.id;
+        hits.increment();
+        break;
+      }
+
+      expired.increment();
+    }
+
+    if ((id == null) || (available.get() < lowWatermark))
+      refill();
+
+    return id;
+  }
+
+  /**
+   * Beendet das Nachfüllen und verwirft die vorrätigen Message-IDs.
+   */
+  @Override
+  public void close()
+  {
+    lock.lock();
+
+    try
+    {
+      closed = true;
+
+      if (refresher != null)
+        refresher.cancel(false);
+    }
+    finally
+    {
+      lock.unlock();
+    }
+
+    ids.clear();
+    available.set(0);
+  }
+
+  /**
+   * Liefert die Anzahl der vorrätigen Message-IDs.
+   *
+   * @return Anzahl
+   */
+  public int getAvailable()
+  {
+    return available.get();
+  }
+
+  /**
+   * Liefert die Anzahl der seit dem Anlegen angeforderten Message-IDs.
+   *
+   * @return Anzahl
+   */
+  public long getFetched()
+  {
+    return fetched.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der aus dem Vorrat gelieferten Message-IDs.
+   *
+   * @return Anzahl
+   */
+  public long getHits()
+  {
+    return hits.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der Aufrufe von {@link #take()}, die bei leerem Vorrat eine Message-ID anfordern
+   * mussten.
+   *
+   * @return Anzahl
+   */
+  public long getMisses()
+  {
+    return misses.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der wegen Überschreitung der Vorhaltezeit verworfenen Message-IDs.
+   *
+   * @return Anzahl
+   */
+  public long getExpired()
+  {
+    return expired.sum();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "MessageIdPool[available=" + getAvailable() + ", fetched=" + getFetched() + ", hits=" + getHits()
+           + ", misses=" + getMisses() + ", expired=" + getExpired() + "]";
+  }
+
+  /**
+   * Legt den DialogHandler für die Anforderung von Message-IDs an. Kann überschrieben werden, um weitere
+   * Einstellungen (z.B. {@link DialogHandler#setConfig(OSCIConfig)}) vorzunehmen.
+   *
+   * @return DialogHandler
+   */
+  protected DialogHandler createDialogHandler()
+  {
+    DialogHandler dh = new DialogHandler(client, supplier, transport);
+
+    if (transportFactory != null)
+      dh.setTransportFactory(transportFactory);
+
+    return dh;
+  }
+
+  private boolean expired(PooledId entry, long now)
+  {
+    return (maxAge > 0) && (now - entry.fetchedAt > maxAge);
+  }
+
+  private String fetch(DialogHandler dh) throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    ResponseToGetMessageId rsp = new GetMessageId(dh).send();
+    String id = rsp.getMessageId();
+
+    if (id == null)
+    {
+      String[][] feedback = rsp.getFeedback();
+      OSCIErrorCodes code = ((feedback == null) || (feedback.length == 0)) ? null
+        : OSCIErrorCodes.fromErrorCode(feedback[0][1]);
+      throw new OSCIErrorException((code == null) ? OSCIErrorCodes.InternalErrorSupplier : code, rsp);
+    }
+
+    fetched.increment();
+    return id;
+  }
+
+  /**
+   * Startet das Füllen des Vorrats bis zur oberen Marke, wenn es nicht bereits läuft. Kann direkt nach dem
+   * Anlegen aufgerufen werden, damit bereits der erste Auftrag eine vorrätige Message-ID erhält.
+   */
+  public void refill()
+  {
+    if (closed)
+      return;
+
+    if ((refresher == null) && (maxAge > 0))
+      startRefresher();
+
+    if (!refilling.compareAndSet(false, true))
+      return;
+
+    try
+    {
+      executor.execute(this::fill);
+    }
+    catch (RejectedExecutionException ex)
+    {
+      refilling.set(false);
+      log.warn("Refilling message ids rejected.", ex);
+    }
+  }
+
+  private void startRefresher()
+  {
+    lock.lock();
+
+    try
+    {
+      if ((refresher == null) && !closed)
+        refresher = BackgroundTasks.scheduleWeakly(this, MessageIdPool::refresh,
+                                                   Math.max(TimeUnit.NANOSECONDS.toMillis(maxAge) / 4, 100),
+                                                   "Refreshing message ids failed.");
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  private void fill()
+  {
+    try
+    {
+      // Aufeinanderfolgende Anforderungen im selben Thread können sich einen DialogHandler teilen
+      DialogHandler dh = createDialogHandler();
+
+      while (!closed && (available.get() < highWatermark))
+      {
+        String id = fetch(dh);
+        ids.offerLast(new PooledId(id, System.nanoTime()));
+        available.incrementAndGet();
+      }
+    }
+    catch (Exception ex)
+    {
+      log.warn("Refilling message ids failed.", ex);
+    }
+    finally
+    {
+      refilling.set(false);
+    }
+
+    if (closed)
+    {
+      ids.clear();
+      available.set(0);
+    }
+  }
+
+  /**
+   * Verwirft die abgelaufenen Message-IDs und füllt bei Bedarf nach. Wird nur vom Timer-Thread aufgerufen.
+   */
+  void refresh()
+  {
+    long now = System.nanoTime();
+    PooledId entry;
+
+    // Die ältesten Message-IDs stehen vorne
+    while (((entry = ids.peekFirst()) != null) && expired(entry, now))
+    {
+      if (ids.removeFirstOccurrence(entry))
+      {
+        available.decrementAndGet();
+        expired.increment();
+      }
+    }
+
+    if (available.get() < lowWatermark)
+      refill();
+  }
+
+  private static final class PooledId
+  {
+    final String id;
+
+    final long fetchedAt;
+
+    PooledId(String id, long fetchedAt)
+    {
+      this.id = id;
+      this.fetchedAt = fetchedAt;
+    }
+  }
+}
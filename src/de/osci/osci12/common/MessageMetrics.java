@@ -0,0 +1,494 @@
+package de.osci.osci12.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.helper.FlightRecorderEvents;
+import de.osci.helper.FlightRecorderEvents.EventType;
+import de.osci.helper.FlightRecorderEvents.Span;
+import de.osci.osci12.extinterfaces.MetricsListener;
+
+
+/**
+ * Messwerte eines Versandvorgangs (Auftrag und Antwort), aufgeschlüsselt nach Verarbeitungsschritten. Die
+ * Bibliothek legt für jeden Versandvorgang ein Objekt dieser Klasse an, sofern im DialogHandler ein
+ * {@link MetricsListener} gesetzt ist, und übergibt es nach Abschluss des Vorgangs an den Listener. Bei
+ * laufender JFR-Aufzeichnung (siehe {@link FlightRecorderEvents}) wird ebenfalls gemessen, die Werte gehen dann
+ * in die Ereignisse de.osci.MessageSend bzw. de.osci.ChunkTransfer ein.
+ * <p>
+ * Für jeden Schritt ({@link Phase}) werden die Dauer in Nanosekunden und, bei streambasierten Schritten, die
+ * verarbeitete Datenmenge in Bytes erfasst. Die Dauer eines Schritts ist exklusiv, d.h. ohne die Zeit der in
+ * ihm aufgerufenen, ebenfalls gemessenen Schritte. Schreibt z.B. die Serialisierung in den verschlüsselnden
+ * Stream und dieser in die Verbindung, werden die Zeiten für Serialisierung, Verschlüsselung und Upload
+ * getrennt ausgewiesen. Wartezeiten an Übergaben zwischen Threads (Pipelining, Kanonisierung) werden keinem
+ * Schritt zugerechnet. Da Kanonisierung und Pipeline-Stufen nebenläufig laufen, kann die Summe der Schritte
+ * größer als die Gesamtdauer sein.
+ * </p>
+ * <p>
+ * Die Messung erfolgt über Abschnitte ({@link Section}), die je Thread verschachtelt werden. Gemessene Streams
+ * der Bibliothek (siehe de.osci.helper.MeteredInputStream und de.osci.helper.MeteredOutputStream) öffnen für
+ * jeden Lese- bzw. Schreibzugriff einen Abschnitt.
+ * </p>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see DialogHandler#setMetricsListener(MetricsListener)
+ */
+public final class MessageMetrics
+{
+  private static Log log = LogFactory.getLog(MessageMetrics.class);
+
+  /**
+   * Verarbeitungsschritte eines Versandvorgangs
+   */
+  public enum Phase
+  {
+    /** Zusammenstellen der Nachrichtenbestandteile */
+    COMPOSE,
+    /** Vorab-Berechnung der Nachrichtenlänge, entfällt bei Transportmodulen mit Chunked-Transfer */
+    CALC_LENGTH,
+    /** Signieren des Auftrags */
+    SIGN,
+    /** Serialisierung des Auftrags */
+    SERIALIZE,
+    /** Schlüsselerzeugung und symmetrische Verschlüsselung des Auftrags (einschließlich Base64-Kodierung) */
+    ENCRYPT,
+    /** Verbindungsaufbau und Schreiben in die Verbindung, Bytes auf der Leitung */
+    UPLOAD,
+    /** Warten auf den Beginn der Antwort nach Abschluss des Uploads */
+    SERVER_WAIT,
+    /** Lesen aus der Verbindung, Bytes auf der Leitung */
+    DOWNLOAD,
+    /** Entschlüsseln des Sitzungsschlüssels und der Antwort, Bytes im Klartext */
+    DECRYPT,
+    /** Kanonisierung und Hashwertberechnung der Antwort */
+    CANONICALIZE,
+    /** Parsen der Antwort einschließlich der Attachments */
+    PARSE,
+    /** Prüfung der Nachrichtensignatur der Antwort */
+    VERIFY
+  }
+
+  /**
+   * Größenklassen für die Auswertung. Maßgeblich ist die größere der beiden übertragenen Nachrichten.
+   */
+  public enum SizeClass
+  {
+    /** bis 64 KB */
+    SMALL(64L * 1024),
+    /** bis 1 MB */
+    MEDIUM(1024L * 1024),
+    /** bis 16 MB */
+    LARGE(16L * 1024 * 1024),
+    /** über 16 MB */
+    HUGE(Long.MAX_VALUE);
+
+    private final long limit;
+
+    private SizeClass(long limit)
+    {
+      this.limit = limit;
+    }
+
+    /**
+     * Liefert die Größenklasse zu einer Datenmenge.
+     *
+     * @param bytes Datenmenge in Bytes
+     * @return Größenklasse
+     */
+    public static SizeClass of(long bytes)
+    {
+      for ( SizeClass sizeClass : values() )
+      {
+        if (bytes <= sizeClass.limit)
+          return sizeClass;
+      }
+
+      return HUGE;
+    }
+  }
+
+  private static final ThreadLocal<Section> CURRENT = new ThreadLocal<Section>();
+
+  private static final Section NONE = new Section(null, null);
+
+  private static final int PHASES = Phase.values().length;
+
+  private final MetricsListener listener;
+
+  private final String messageType;
+
+  private final String messageId;
+
+  private final Span[] events;
+
+  private final long startTime = System.currentTimeMillis();
+
+  private final long startNanos = System.nanoTime();
+
+  private final AtomicLongArray nanos = new AtomicLongArray(PHASES);
+
+  private final AtomicLongArray bytes = new AtomicLongArray(PHASES);
+
+  private volatile long totalNanos = -1;
+
+  private volatile String responseType;
+
+  private MessageMetrics(MetricsListener listener, String messageType, String messageId, Span... events)
+  {
+    this.listener = listener;
+    this.messageType = messageType;
+    this.messageId = messageId;
+    this.events = events;
+  }
+
+  /**
+   * Beginnt die Messung eines Versandvorgangs. For internal use only.
+   *
+   * @param dh DialogHandler des Vorgangs
+   * @param messageType Nachrichtentyp des Auftrags
+   * @param messageId Nachrichten-ID des Auftrags, darf <code>null</code> sein
+   * @param transferEvent zusätzliches JFR-Ereignis des Vorgangs (paketierte Übertragung) oder
+   *          {@link Span#NONE}
+   * @return Messwerte oder <code>null</code>, wenn weder ein Listener gesetzt ist noch aufgezeichnet wird
+   */
+  public static MessageMetrics start(DialogHandler dh, String messageType, String messageId, Span transferEvent)
+  {
+    MetricsListener listener = dh.getMetricsListener();
+    Span sendEvent = FlightRecorderEvents.begin(EventType.MESSAGE_SEND);
+
+    if ((listener == null) && !sendEvent.isRecording() && !transferEvent.isRecording())
+      return null;
+
+    return new MessageMetrics(listener, messageType, messageId, sendEvent, transferEvent);
+  }
+
+  /**
+   * Liefert die Messwerte, zu denen der im aktuellen Thread geöffnete Abschnitt gehört. So können
+   * Verarbeitungsschritte, denen die Messwerte nicht übergeben werden, sich in die laufende Messung
+   * einhängen. For internal use only.
+   *
+   * @return Messwerte oder <code>null</code>, wenn im aktuellen Thread nicht gemessen wird
+   */
+  public static MessageMetrics current()
+  {
+    Section section = CURRENT.get();
+    return (section == null) ? null : section.metrics;
+  }
+
+  /**
+   * Unterbricht die Zuordnung des aktuellen Threads zur laufenden Messung, z.B. wenn im selben Thread eine
+   * Nachricht für einen anderen Kommunikationspartner verarbeitet wird. Die Zeit bis zum Aufruf von
+   * {@link #resume(Section)} wird dem unterbrochenen Abschnitt zugerechnet. For internal use only.
+   *
+   * @return unterbrochener Abschnitt oder <code>null</code>
+   */
+  public static Section suspend()
+  {
+    Section section = CURRENT.get();
+    CURRENT.remove();
+    return section;
+  }
+
+  /**
+   * Setzt eine mit {@link #suspend()} unterbrochene Messung fort. For internal use only.
+   *
+   * @param section von suspend() gelieferter Abschnitt
+   */
+  public static void resume(Section section)
+  {
+    if (section != null)
+      CURRENT.set(section);
+  }
+
+  /**
+   * Öffnet einen Abschnitt im aktuellen Thread. Der Abschnitt muss im selben Thread mit
+   * {@link Section#close()} bzw. {@link Section#end(long)} geschlossen werden. For internal use only.
+   *
+   * @param metrics Messwerte, darf <code>null</code> sein
+   * @param phase Verarbeitungsschritt
+   * @return geöffneter Abschnitt, ohne Wirkung, wenn metrics <code>null</code> ist
+   */
+  public static Section enter(MessageMetrics metrics, Phase phase)
+  {
+    if (metrics == null)
+      return NONE;
+
+    Section section = new Section(metrics, phase);
+    section.begin();
+    return section;
+  }
+
+  /**
+   * Legt einen wiederverwendbaren, noch nicht geöffneten Abschnitt an. Ist phase <code>null</code>, wird die
+   * Zeit im Abschnitt keinem Schritt zugerechnet, aber vom umgebenden Abschnitt abgezogen (Wartezeiten).
+   * For internal use only.
+   *
+   * @param phase Verarbeitungsschritt oder <code>null</code>
+   * @return Abschnitt
+   */
+  public Section section(Phase phase)
+  {
+    return new Section(this, phase);
+  }
+
+  /**
+   * Addiert Dauer und Datenmenge zu einem Schritt.
+   *
+   * @param phase Verarbeitungsschritt
+   * @param durationNanos Dauer in Nanosekunden
+   * @param byteCount Datenmenge in Bytes
+   */
+  public void add(Phase phase, long durationNanos, long byteCount)
+  {
+    nanos.addAndGet(phase.ordinal(), durationNanos);
+
+    if (byteCount > 0)
+      bytes.addAndGet(phase.ordinal(), byteCount);
+  }
+
+  /**
+   * Schließt die Messung ab und übergibt die Messwerte an den Listener. For internal use only.
+   *
+   * @param responseType Nachrichtentyp der Antwort oder <code>null</code>, wenn der Vorgang fehlgeschlagen ist
+   */
+  public void finish(String responseType)
+  {
+    this.responseType = responseType;
+    totalNanos = System.nanoTime() - startNanos;
+
+    for ( Span event : events )
+    {
+      event.setMessageId(messageId);
+      event.setMessageType(messageType);
+      event.setResponseType(responseType);
+      event.setBytes(getRequestBytes());
+      event.setResponseBytes(getResponseBytes());
+      event.commit();
+    }
+
+    if (listener == null)
+      return;
+
+    try
+    {
+      listener.messageMeasured(this);
+    }
+    catch (RuntimeException ex)
+    {
+      log.warn("MetricsListener failed.", ex);
+    }
+  }
+
+  /**
+   * Liefert den Nachrichtentyp des Auftrags (einfacher Klassenname, z.B. "StoreDelivery").
+   *
+   * @return Nachrichtentyp
+   */
+  public String getMessageType()
+  {
+    return messageType;
+  }
+
+  /**
+   * Liefert die Nachrichten-ID des Auftrags.
+   *
+   * @return Nachrichten-ID oder <code>null</code>, wenn der Auftrag keine trägt
+   */
+  public String getMessageId()
+  {
+    return messageId;
+  }
+
+  /**
+   * Liefert den Nachrichtentyp der Antwort (einfacher Klassenname).
+   *
+   * @return Nachrichtentyp oder <code>null</code>, wenn der Vorgang fehlgeschlagen ist
+   */
+  public String getResponseType()
+  {
+    return responseType;
+  }
+
+  /**
+   * Liefert <b>true</b>, wenn eine Antwort empfangen und erfolgreich geparst wurde.
+   *
+   * @return <b>true</b> bei Erfolg
+   */
+  public boolean isSuccessful()
+  {
+    return responseType != null;
+  }
+
+  /**
+   * Liefert den Beginn des Vorgangs.
+   *
+   * @return Zeitpunkt in Millisekunden seit 1970
+   */
+  public long getStartTime()
+  {
+    return startTime;
+  }
+
+  /**
+   * Liefert die Gesamtdauer des Vorgangs.
+   *
+   * @return Dauer in Nanosekunden oder -1, solange der Vorgang nicht abgeschlossen ist
+   */
+  public long getTotalNanos()
+  {
+    return totalNanos;
+  }
+
+  /**
+   * Liefert die exklusive Dauer eines Schritts.
+   *
+   * @param phase Verarbeitungsschritt
+   * @return Dauer in Nanosekunden
+   */
+  public long getNanos(Phase phase)
+  {
+    return nanos.get(phase.ordinal());
+  }
+
+  /**
+   * Liefert die in einem Schritt verarbeitete Datenmenge. Wird nur für die streambasierten Schritte
+   * {@link Phase#ENCRYPT}, {@link Phase#UPLOAD}, {@link Phase#DOWNLOAD} und {@link Phase#DECRYPT} erfasst.
+   *
+   * @param phase Verarbeitungsschritt
+   * @return Datenmenge in Bytes
+   */
+  public long getBytes(Phase phase)
+  {
+    return bytes.get(phase.ordinal());
+  }
+
+  /**
+   * Liefert die Größe des übertragenen Auftrags.
+   *
+   * @return Datenmenge in Bytes
+   */
+  public long getRequestBytes()
+  {
+    return getBytes(Phase.UPLOAD);
+  }
+
+  /**
+   * Liefert die Größe der empfangenen Antwort.
+   *
+   * @return Datenmenge in Bytes
+   */
+  public long getResponseBytes()
+  {
+    return getBytes(Phase.DOWNLOAD);
+  }
+
+  /**
+   * Liefert die Größenklasse des Vorgangs.
+   *
+   * @return Größenklasse
+   */
+  public SizeClass getSizeClass()
+  {
+    return SizeClass.of(Math.max(getRequestBytes(), getResponseBytes()));
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder(messageType);
+    sb.append(" -> ").append(responseType).append(" [").append(getSizeClass()).append("] total=");
+    sb.append(totalNanos / 1000).append("us");
+
+    for ( Phase phase : Phase.values() )
+    {
+      sb.append(' ').append(phase).append('=').append(getNanos(phase) / 1000).append("us");
+
+      if (getBytes(phase) > 0)
+        sb.append('/').append(getBytes(phase)).append('B');
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * Messabschnitt innerhalb eines Threads. Die Zeit eines Abschnitts wird bei Abschluss seinem Schritt
+   * zugerechnet, abzüglich der Zeit der in ihm geöffneten Abschnitte. Ein Abschnitt kann nacheinander
+   * mehrfach geöffnet werden, aber nicht verschachtelt mit sich selbst.
+   */
+  public static final class Section implements AutoCloseable
+  {
+    private final MessageMetrics metrics;
+
+    private final Phase phase;
+
+    private Section parent;
+
+    private long start;
+
+    private long nested;
+
+    private Section(MessageMetrics metrics, Phase phase)
+    {
+      this.metrics = metrics;
+      this.phase = phase;
+    }
+
+    /**
+     * Öffnet den Abschnitt im aktuellen Thread.
+     */
+    public void begin()
+    {
+      if (metrics == null)
+        return;
+
+      parent = CURRENT.get();
+      nested = 0;
+      CURRENT.set(this);
+      start = System.nanoTime();
+    }
+
+    /**
+     * Schließt den Abschnitt und rechnet Dauer und Datenmenge seinem Schritt zu.
+     *
+     * @param byteCount im Abschnitt verarbeitete Datenmenge in Bytes
+     */
+    public void end(long byteCount)
+    {
+      if (metrics == null)
+        return;
+
+      long elapsed = System.nanoTime() - start;
+
+      if (parent == null)
+        CURRENT.remove();
+      else
+      {
+        CURRENT.set(parent);
+        parent.nested += elapsed;
+        parent = null;
+      }
+
+      if (phase != null)
+        metrics.add(phase, elapsed - nested, byteCount);
+    }
+
+    /**
+     * Schließt den Abschnitt ohne Datenmenge.
+     */
+    @Override
+    public void close()
+    {
+      end(0);
+    }
+  }
+}
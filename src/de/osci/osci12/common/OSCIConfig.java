@@ -0,0 +1,460 @@
+package de.osci.osci12.common;
+
+import java.io.IOException;
+import java.security.Provider;
+import java.util.concurrent.Executor;
+
+import de.osci.osci12.extinterfaces.OSCIDataSource;
+import de.osci.osci12.roles.Addressee;
+import de.osci.osci12.roles.Role;
+
+
+/**
+ * Unveränderliche Zusammenstellung der kryptographischen Einstellungen, die sonst JVM-weit über die
+ * statischen Methoden des DialogHandlers gesetzt werden: Hash-, Signatur- und Zufallszahlenalgorithmus,
+ * Security-Provider, Default-Supplier, Puffer-Implementierung und vorab berechnete Hash-Algorithmen. Nicht
+ * gesetzte Werte werden bei jedem Zugriff aus den globalen Einstellungen gelesen. Das Pipelining beim Versand
+ * wird nur hier eingestellt; in der globalen Konfiguration ist es abgeschaltet.
+ * <p>
+ * Ein OSCIConfig-Objekt wird mit {@link DialogHandler#setConfig(OSCIConfig)} einem Dialog zugeordnet. Für die
+ * Dauer des Versands eines Auftrags bzw. des Parsens einer Antwort ist die Konfiguration an den ausführenden
+ * Thread gebunden; die Bibliothek liest die Einstellungen dann über {@link #current()}. So können mehrere
+ * Mandanten mit unterschiedlichen Einstellungen in einer JVM bedient werden, ohne die globalen Werte
+ * umzuschalten. Da die Objekte unveränderlich sind, erfolgt der Zugriff ohne Sperren.
+ * </p>
+ * <pre>
+ * OSCIConfig tenant = OSCIConfig.global()
+ *                               .withDigestAlgorithm(Constants.DIGEST_ALGORITHM_SHA512)
+ *                               .withSecurityProvider(hsmProvider);
+ * dialogHandler.setConfig(tenant);
+ * </pre>
+ * <p>
+ * Anwendungen, die außerhalb des Versands Nachrichtenteile mit den Einstellungen eines Mandanten erzeugen
+ * (z.B. Inhaltsdatencontainer signieren oder Attachments einstellen), binden die Konfiguration selbst:
+ * </p>
+ * <pre>
+ * OSCIConfig.Scope scope = tenant.bind();
+ * try
+ * {
+ *   container.sign(signer);
+ * }
+ * finally
+ * {
+ *   scope.close();
+ * }
+ * </pre>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see DialogHandler#setConfig(OSCIConfig)
+ */
+public final class OSCIConfig
+{
+  /** Voreinstellung für die Größe der Puffer des Versand-Pipelinings (64 KB). */
+  public static final int DEFAULT_PIPELINE_BUFFER_SIZE = 64 * 1024;
+
+  private static final OSCIConfig GLOBAL = new OSCIConfig(null, null, null, null, false, null, null, null, 0,
+                                                             DEFAULT_PIPELINE_BUFFER_SIZE, null);
+
+  private static final ThreadLocal<OSCIConfig> CURRENT = new ThreadLocal<OSCIConfig>();
+
+  private final String digestAlgorithm;
+
+  private final String signatureAlgorithm;
+
+  private final String secureRandomAlgorithm;
+
+  // null ist ein gültiger Provider (Standard-Reihenfolge der JCA), daher wird das Setzen gesondert vermerkt
+  private final Provider securityProvider;
+
+  private final boolean securityProviderSet;
+
+  private final Role[] defaultSuppliers;
+
+  private final OSCIDataSource dataBuffer;
+
+  private final String[] precomputedDigestAlgorithms;
+
+  private final int pipelineDepth;
+
+  private final int pipelineBufferSize;
+
+  private final Executor pipelineExecutor;
+
+  private OSCIConfig(String digestAlgorithm, String signatureAlgorithm, String secureRandomAlgorithm,
+                     Provider securityProvider, boolean securityProviderSet, Role[] defaultSuppliers,
+                     OSCIDataSource dataBuffer, String[] precomputedDigestAlgorithms, int pipelineDepth,
+                     int pipelineBufferSize, Executor pipelineExecutor)
+  {
+    this.digestAlgorithm = digestAlgorithm;
+    this.signatureAlgorithm = signatureAlgorithm;
+    this.secureRandomAlgorithm = secureRandomAlgorithm;
+    this.securityProvider = securityProvider;
+    this.securityProviderSet = securityProviderSet;
+    this.defaultSuppliers = defaultSuppliers;
+    this.dataBuffer = dataBuffer;
+    this.precomputedDigestAlgorithms = precomputedDigestAlgorithms;
+    this.pipelineDepth = pipelineDepth;
+    this.pipelineBufferSize = pipelineBufferSize;
+    this.pipelineExecutor = pipelineExecutor;
+  }
+
+  /**
+   * Liefert die Konfiguration, in der sämtliche Werte aus den globalen Einstellungen des DialogHandlers
+   * gelesen werden. Ausgangspunkt für mandantenspezifische Konfigurationen.
+   *
+   * @return globale Konfiguration
+   */
+  public static OSCIConfig global()
+  {
+    return GLOBAL;
+  }
+
+  /**
+   * Liefert die an den aktuellen Thread gebundene Konfiguration oder, wenn keine gebunden ist, die globale.
+   *
+   * @return Konfiguration
+   * @see #bind()
+   */
+  public static OSCIConfig current()
+  {
+    OSCIConfig config = CURRENT.get();
+    return (config == null) ? GLOBAL : config;
+  }
+
+  /**
+   * Bindet diese Konfiguration an den aktuellen Thread, bis der gelieferte Scope geschlossen wird. Bindungen
+   * können geschachtelt werden, beim Schließen wird die vorherige wiederhergestellt.
+   *
+   * @return Scope, der in einem finally-Block geschlossen wird
+   */
+  public Scope bind()
+  {
+    OSCIConfig previous = CURRENT.get();
+    CURRENT.set(this);
+    return new Scope(previous);
+  }
+
+  /**
+   * Liefert eine Kopie mit dem übergebenen Hash-Algorithmus.
+   *
+   * @param algorithm Hash-Algorithmus-Identifier oder <code>null</code> für die globale Einstellung
+   * @return neue Konfiguration
+   * @see DialogHandler#setDigestAlgorithm(String)
+   */
+  public OSCIConfig withDigestAlgorithm(String algorithm)
+  {
+    if ((algorithm != null) && (Constants.JCA_JCE_MAP.get(algorithm) == null))
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_hash_algorithm") + " "
+                                         + algorithm);
+
+    return new OSCIConfig(algorithm, signatureAlgorithm, secureRandomAlgorithm, securityProvider,
+                          securityProviderSet, defaultSuppliers, dataBuffer, precomputedDigestAlgorithms,
+                          pipelineDepth, pipelineBufferSize, pipelineExecutor);
+  }
+
+  /**
+   * Liefert eine Kopie mit dem übergebenen Signaturalgorithmus.
+   *
+   * @param algorithm Signaturalgorithmus-Identifier oder <code>null</code> für die globale Einstellung
+   * @return neue Konfiguration
+   * @see DialogHandler#setSignatureAlgorithm(String)
+   */
+  public OSCIConfig withSignatureAlgorithm(String algorithm)
+  {
+    if ((algorithm != null) && (Constants.JCA_JCE_MAP.get(algorithm) == null))
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_signature_algorithm") + " "
+                                         + algorithm);
+
+    return new OSCIConfig(digestAlgorithm, algorithm, secureRandomAlgorithm, securityProvider,
+                          securityProviderSet, defaultSuppliers, dataBuffer, precomputedDigestAlgorithms,
+                          pipelineDepth, pipelineBufferSize, pipelineExecutor);
+  }
+
+  /**
+   * Liefert eine Kopie mit dem übergebenen Algorithmus für den Zufallszahlengenerator.
+   *
+   * @param algorithm Algorithmus oder <code>null</code> für die globale Einstellung
+   * @return neue Konfiguration
+   * @see DialogHandler#setSecureRandomAlgorithm(String)
+   */
+  public OSCIConfig withSecureRandomAlgorithm(String algorithm)
+  {
+    return new OSCIConfig(digestAlgorithm, signatureAlgorithm, algorithm, securityProvider,
+                          securityProviderSet, defaultSuppliers, dataBuffer, precomputedDigestAlgorithms,
+                          pipelineDepth, pipelineBufferSize, pipelineExecutor);
+  }
+
+  /**
+   * Liefert eine Kopie mit dem übergebenen Security-Provider.
+   *
+   * @param provider Provider oder <code>null</code> für die Standard-Reihenfolge der JCA
+   * @return neue Konfiguration
+   * @see DialogHandler#setSecurityProvider(Provider)
+   * @see #withGlobalSecurityProvider()
+   */
+  public OSCIConfig withSecurityProvider(Provider provider)
+  {
+    return new OSCIConfig(digestAlgorithm, signatureAlgorithm, secureRandomAlgorithm, provider, true,
+                          defaultSuppliers, dataBuffer, precomputedDigestAlgorithms, pipelineDepth,
+                          pipelineBufferSize, pipelineExecutor);
+  }
+
+  /**
+   * Liefert eine Kopie, die den global gesetzten Security-Provider verwendet.
+   *
+   * @return neue Konfiguration
+   */
+  public OSCIConfig withGlobalSecurityProvider()
+  {
+    return new OSCIConfig(digestAlgorithm, signatureAlgorithm, secureRandomAlgorithm, null, false,
+                          defaultSuppliers, dataBuffer, precomputedDigestAlgorithms, pipelineDepth,
+                          pipelineBufferSize, pipelineExecutor);
+  }
+
+  /**
+   * Liefert eine Kopie mit den übergebenen Default-Suppliern für passive Empfänger.
+   *
+   * @param suppliers Rollenobjekte oder <code>null</code> für die globale Einstellung
+   * @return neue Konfiguration
+   * @see DialogHandler#setDefaultSuppliers(Addressee[])
+   */
+  public OSCIConfig withDefaultSuppliers(Addressee[] suppliers)
+  {
+    return new OSCIConfig(digestAlgorithm, signatureAlgorithm, secureRandomAlgorithm, securityProvider,
+                          securityProviderSet, (suppliers == null) ? null : suppliers.clone(), dataBuffer,
+                          precomputedDigestAlgorithms, pipelineDepth, pipelineBufferSize, pipelineExecutor);
+  }
+
+  /**
+   * Liefert eine Kopie mit der übergebenen Puffer-Implementierung.
+   *
+   * @param buffer Prototyp, von dem neue Puffer mit newInstance() erzeugt werden, oder <code>null</code> für
+   *          die globale Einstellung
+   * @return neue Konfiguration
+   * @see DialogHandler#setDataBuffer(OSCIDataSource)
+   */
+  public OSCIConfig withDataBuffer(OSCIDataSource buffer)
+  {
+    return new OSCIConfig(digestAlgorithm, signatureAlgorithm, secureRandomAlgorithm, securityProvider,
+                          securityProviderSet, defaultSuppliers, buffer, precomputedDigestAlgorithms,
+                          pipelineDepth, pipelineBufferSize, pipelineExecutor);
+  }
+
+  /**
+   * Liefert eine Kopie mit den übergebenen vorab zu berechnenden Hash-Algorithmen.
+   *
+   * @param algorithms Identifier der Hash-Algorithmen oder <code>null</code> für die globale Einstellung
+   * @return neue Konfiguration
+   * @see DialogHandler#setPrecomputedDigestAlgorithms(String[])
+   */
+  public OSCIConfig withPrecomputedDigestAlgorithms(String[] algorithms)
+  {
+    if (algorithms != null)
+    {
+      for ( int i = 0 ; i < algorithms.length ; i++ )
+      {
+        if (Constants.JCA_JCE_MAP.get(algorithms[i]) == null)
+          throw new IllegalArgumentException(DialogHandler.text.getString("invalid_hash_algorithm") + " "
+                                             + algorithms[i]);
+      }
+    }
+
+    return new OSCIConfig(digestAlgorithm, signatureAlgorithm, secureRandomAlgorithm, securityProvider,
+                          securityProviderSet, defaultSuppliers, dataBuffer,
+                          (algorithms == null) ? null : algorithms.clone(), pipelineDepth, pipelineBufferSize,
+                          pipelineExecutor);
+  }
+
+  /**
+   * Liefert eine Kopie mit eingeschaltetem bzw. abgeschaltetem Pipelining beim Versand. Serialisierung,
+   * Verschlüsselung und das Schreiben in die Verbindung des Transportmoduls laufen dann als eigene Stufen in
+   * getrennten Threads, die über einen begrenzten Ring von Puffern verbunden sind. Die Verschlüsselung wartet
+   * so nicht auf das Netz und umgekehrt; bei großen Nachrichten nähert sich die Versanddauer dem Maximum statt
+   * der Summe beider Zeiten. Das Transportmodul muss das Schreiben in den Verbindungs-Stream aus einem anderen
+   * Thread zulassen. Voreinstellung ist 0 (abgeschaltet).
+   *
+   * @param depth Anzahl der Puffer je Stufe (mindestens 2) oder 0 zum Abschalten
+   * @return neue Konfiguration
+   * @see #withPipelineBufferSize(int)
+   * @see #withPipelineExecutor(Executor)
+   */
+  public OSCIConfig withPipelineDepth(int depth)
+  {
+    if ((depth != 0) && (depth < 2))
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + depth);
+
+    return new OSCIConfig(digestAlgorithm, signatureAlgorithm, secureRandomAlgorithm, securityProvider,
+                          securityProviderSet, defaultSuppliers, dataBuffer, precomputedDigestAlgorithms, depth,
+                          pipelineBufferSize, pipelineExecutor);
+  }
+
+  /**
+   * Liefert eine Kopie mit der übergebenen Größe der Puffer des Versand-Pipelinings.
+   *
+   * @param size Größe in Bytes
+   * @return neue Konfiguration
+   * @see #DEFAULT_PIPELINE_BUFFER_SIZE
+   * @see #withPipelineDepth(int)
+   */
+  public OSCIConfig withPipelineBufferSize(int size)
+  {
+    if (size < 1)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + size);
+
+    return new OSCIConfig(digestAlgorithm, signatureAlgorithm, secureRandomAlgorithm, securityProvider,
+                          securityProviderSet, defaultSuppliers, dataBuffer, precomputedDigestAlgorithms,
+                          pipelineDepth, size, pipelineExecutor);
+  }
+
+  /**
+   * Liefert eine Kopie mit dem Executor, über den die Stufen des Versand-Pipelinings ausgeführt werden. Je
+   * Versandvorgang werden bis zu zwei Aufgaben gestartet, die bis zum Ende der Übertragung laufen; der
+   * Executor darf daher nicht zu klein bemessen sein.
+   *
+   * @param executor Executor oder <code>null</code> für einen internen Pool von Daemon-Threads
+   * @return neue Konfiguration
+   * @see de.osci.helper.VirtualThreads#newExecutor()
+   */
+  public OSCIConfig withPipelineExecutor(Executor executor)
+  {
+    return new OSCIConfig(digestAlgorithm, signatureAlgorithm, secureRandomAlgorithm, securityProvider,
+                          securityProviderSet, defaultSuppliers, dataBuffer, precomputedDigestAlgorithms,
+                          pipelineDepth, pipelineBufferSize, executor);
+  }
+
+  /**
+   * Liefert den Hash-Algorithmus für Signaturen und RSA-OAEP.
+   *
+   * @return Identifier des Hash-Algorithmus
+   */
+  public String getDigestAlgorithm()
+  {
+    return (digestAlgorithm == null) ? DialogHandler.getDigestAlgorithm() : digestAlgorithm;
+  }
+
+  /**
+   * Liefert den voreingestellten Signaturalgorithmus.
+   *
+   * @return Identifier des Signaturalgorithmus
+   */
+  public String getSignatureAlgorithm()
+  {
+    return (signatureAlgorithm == null) ? DialogHandler.getSignatureAlgorithm() : signatureAlgorithm;
+  }
+
+  /**
+   * Liefert den Algorithmus des Zufallszahlengenerators.
+   *
+   * @return Algorithmus
+   */
+  public String getSecureRandomAlgorithm()
+  {
+    return (secureRandomAlgorithm == null) ? DialogHandler.getSecureRandomAlgorithm() : secureRandomAlgorithm;
+  }
+
+  /**
+   * Liefert den Security-Provider für die kryptographischen Operationen.
+   *
+   * @return Provider oder <code>null</code> für die Standard-Reihenfolge der JCA
+   */
+  public Provider getSecurityProvider()
+  {
+    return securityProviderSet ? securityProvider : DialogHandler.getSecurityProvider();
+  }
+
+  /**
+   * Liefert die Default-Supplier für passive Empfänger.
+   *
+   * @return Rollenobjekte oder <code>null</code>
+   */
+  public Role[] getDefaultSuppliers()
+  {
+    return (defaultSuppliers == null) ? DialogHandler.getDefaultSuppliers() : defaultSuppliers.clone();
+  }
+
+  /**
+   * Liefert die Hash-Algorithmen, deren Hashwerte beim Einstellen von Attachments vorab berechnet werden.
+   *
+   * @return Identifier der Hash-Algorithmen
+   */
+  public String[] getPrecomputedDigestAlgorithms()
+  {
+    return (precomputedDigestAlgorithms == null) ? DialogHandler.getPrecomputedDigestAlgorithms()
+      : precomputedDigestAlgorithms.clone();
+  }
+
+  /**
+   * Liefert die Anzahl der Puffer je Stufe des Versand-Pipelinings.
+   *
+   * @return Anzahl der Puffer, 0 wenn das Pipelining abgeschaltet ist
+   * @see #withPipelineDepth(int)
+   */
+  public int getPipelineDepth()
+  {
+    return pipelineDepth;
+  }
+
+  /**
+   * Liefert die Größe der Puffer des Versand-Pipelinings.
+   *
+   * @return Größe in Bytes
+   */
+  public int getPipelineBufferSize()
+  {
+    return pipelineBufferSize;
+  }
+
+  /**
+   * Liefert den Executor, über den die Stufen des Versand-Pipelinings ausgeführt werden.
+   *
+   * @return Executor oder <code>null</code>, wenn ein interner Pool verwendet wird
+   */
+  public Executor getPipelineExecutor()
+  {
+    return pipelineExecutor;
+  }
+
+  /**
+   * Liefert einen neuen Puffer der eingestellten Implementierung.
+   *
+   * @return Puffer
+   * @throws IOException wenn der Puffer nicht angelegt werden kann
+   */
+  public OSCIDataSource newDataBuffer() throws IOException
+  {
+    return DialogHandler.newDataBuffer(dataBuffer);
+  }
+
+  /**
+   * Bindung einer Konfiguration an den aktuellen Thread
+   */
+  public static final class Scope implements AutoCloseable
+  {
+    private final OSCIConfig previous;
+
+    private Scope(OSCIConfig previous)
+    {
+      this.previous = previous;
+    }
+
+    /**
+     * Stellt die vorherige Bindung wieder her.
+     */
+    @Override
+    public void close()
+    {
+      if (previous == null)
+        CURRENT.remove();
+      else
+        CURRENT.set(previous);
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package de.osci.osci12.common;
+
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.osci.osci12.extinterfaces.TransportFactory;
+import de.osci.osci12.extinterfaces.TransportI;
+
+
+/**
+ * TransportFactory für Transportmodule, die dem DialogHandler als Prototyp übergeben wurden. Da
+ * {@link TransportI#newInstance()} nicht als threadsicher spezifiziert ist, wird die Methode wie bisher
+ * unter einer Sperre je Prototyp aufgerufen. Dialoge, die denselben Prototyp nebenläufig verwenden, teilen
+ * sich daher eine Fabrik (siehe DialogPool und MessageIdPool).
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+class PrototypeTransportFactory implements TransportFactory
+{
+  // newInstance() kann blockieren (z. B. beim Aufbau eines SSL-Kontexts); ein Monitor würde dabei den
+  // Träger-Thread eines virtuellen Threads festhalten
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final TransportI prototype;
+
+  PrototypeTransportFactory(TransportI prototype)
+  {
+    this.prototype = prototype;
+  }
+
+  public TransportI create() throws IOException
+  {
+    lock.lock();
+
+    try
+    {
+      return prototype.newInstance();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+}
@@ -10,12 +10,15 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.crypto.SecretKey;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import de.osci.helper.FlightRecorderEvents;
+import de.osci.helper.FlightRecorderEvents.EventType;
 import de.osci.helper.SymCipherInputStream;
 import de.osci.helper.SymCipherOutputStream;
 import de.osci.osci12.encryption.Crypto;
@@ -54,7 +57,7 @@ public class SwapBuffer extends OSCIDataSourceExt123
   private SwapBufferOutputStream dbos;
   private byte[] buffer;
   private File file;
-  private static SecretKey tempKey;
+  private static final AtomicReference<SecretKey> tempKey = new AtomicReference<SecretKey>();
   private static final String SYM_CIPHER_ALGO= Constants.DEFAULT_SYMMETRIC_CIPHER_ALGORITHM;
   /**
    * Limit für die Anzahl von Bytes, die im Arbeitsspeicher gepuffert werden,
@@ -221,6 +224,7 @@ public class SwapBuffer extends OSCIDataSourceExt123
         if (log.isDebugEnabled())
           log.debug("SWAPPE AUF PLATTE");
 
+        FlightRecorderEvents.Span event = FlightRecorderEvents.begin(EventType.SWAP_TO_DISK);
         String time = Long.toString(System.currentTimeMillis());
         time = time.substring(time.length() - 4);
         file = java.io.File.createTempFile(time, null, tmpDir);
@@ -247,6 +251,9 @@ public class SwapBuffer extends OSCIDataSourceExt123
           os = new FileOutputStream(file);
 
         os.write(buffer);
+        event.setBytes(buffer.length);
+        event.setAlgorithm(confidential ? SYM_CIPHER_ALGO : null);
+        event.commit();
         buffer = null;
       }
 
@@ -352,9 +359,15 @@ public class SwapBuffer extends OSCIDataSourceExt123
   }
   private static SecretKey getTempSymKey() throws NoSuchAlgorithmException
   {
-    if (tempKey == null)
-      tempKey = Crypto.createSymKey(SYM_CIPHER_ALGO);
+    SecretKey key = tempKey.get();
 
-    return tempKey;
+    if (key == null)
+    {
+      // Bei gleichzeitiger Initialisierung setzt sich genau ein Schlüssel durch
+      tempKey.compareAndSet(null, Crypto.createSymKey(SYM_CIPHER_ALGO));
+      key = tempKey.get();
+    }
+
+    return key;
   }
 }
@@ -1,18 +1,28 @@
 package de.osci.osci12.encryption;
 
+import de.osci.helper.FlightRecorderEvents;
+import de.osci.helper.FlightRecorderEvents.EventType;
+import de.osci.helper.FlightRecorderEvents.Span;
+import de.osci.helper.Tools;
 import de.osci.osci12.common.Constants;
 import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIConfig;
 import de.osci.osci12.messagetypes.OSCIMessage;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
+import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.OAEPParameterSpec;
 import javax.crypto.spec.PSource;
 import java.security.Key;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Signature;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
@@ -114,25 +124,28 @@ public class Crypto
   {
     String algo = Constants.JCA_JCE_MAP.get(algorithm);
     KeyGenerator keyGenerator;
+    Provider provider = OSCIConfig.current().getSecurityProvider();
 
-    if (DialogHandler.getSecurityProvider() == null)
+    if (provider == null)
       keyGenerator = javax.crypto.KeyGenerator.getInstance(algo.substring(0, algo.indexOf('/')));
     else
       keyGenerator = javax.crypto.KeyGenerator.getInstance(algo.substring(0, algo.indexOf('/')),
-                                                           DialogHandler.getSecurityProvider());
+                                                           provider);
+
+    SecureRandom random = Tools.getSecureRandomPool().getSecureRandom();
 
     if (algorithm.equals(Constants.SYMMETRIC_CIPHER_ALGORITHM_AES128))
-      keyGenerator.init(128);
+      keyGenerator.init(128, random);
     else if (algorithm.equals(Constants.SYMMETRIC_CIPHER_ALGORITHM_AES192))
-      keyGenerator.init(192);
+      keyGenerator.init(192, random);
     else if (algorithm.equals(Constants.SYMMETRIC_CIPHER_ALGORITHM_AES256))
-      keyGenerator.init(256);
+      keyGenerator.init(256, random);
     else if (algorithm.equals(Constants.SYMMETRIC_CIPHER_ALGORITHM_AES128_GCM))
-      keyGenerator.init(128);
+      keyGenerator.init(128, random);
     else if (algorithm.equals(Constants.SYMMETRIC_CIPHER_ALGORITHM_AES192_GCM))
-      keyGenerator.init(192);
+      keyGenerator.init(192, random);
     else if (algorithm.equals(Constants.SYMMETRIC_CIPHER_ALGORITHM_AES256_GCM))
-      keyGenerator.init(256);
+      keyGenerator.init(256, random);
 
     return keyGenerator.generateKey();
   }
@@ -175,6 +188,79 @@ public class Crypto
     return s.toString();
   }
 
+  /**
+   * Erzeugt ein MessageDigest-Objekt für den übergebenen Hash-Algorithmus-Identifier. Es wird der vom
+   * ProviderRouter zugeordnete Security-Provider verwendet, ansonsten der im DialogHandler gesetzte.
+   *
+   * @param digestAlgorithm Identifier des Hash-Algorithmus (z.B. Constants.DIGEST_ALGORITHM_SHA256)
+   * @return MessageDigest-Objekt
+   * @throws NoSuchAlgorithmException wenn der Algorithmus nicht unterstützt wird
+   * @see ProviderRouter
+   */
+  public static MessageDigest createMessageDigest(String digestAlgorithm) throws NoSuchAlgorithmException
+  {
+    String algo = getJcaName(digestAlgorithm);
+    Provider provider = ProviderRouter.getProvider(digestAlgorithm);
+
+    if (provider == null)
+      return MessageDigest.getInstance(algo);
+    else
+      return MessageDigest.getInstance(algo, provider);
+  }
+
+  /**
+   * Erzeugt ein Cipher-Objekt für den übergebenen Verschlüsselungsalgorithmus-Identifier. Es wird der vom
+   * ProviderRouter zugeordnete Security-Provider verwendet, ansonsten der im DialogHandler gesetzte.
+   *
+   * @param cipherAlgorithm Identifier des Verschlüsselungsalgorithmus (z.B.
+   *          Constants.SYMMETRIC_CIPHER_ALGORITHM_AES256_GCM)
+   * @return Cipher-Objekt
+   * @throws NoSuchAlgorithmException wenn der Algorithmus nicht unterstützt wird
+   * @throws NoSuchPaddingException wenn das Padding nicht unterstützt wird
+   * @see ProviderRouter
+   */
+  public static Cipher createCipher(String cipherAlgorithm) throws NoSuchAlgorithmException, NoSuchPaddingException
+  {
+    String algo = getJcaName(cipherAlgorithm);
+    Provider provider = ProviderRouter.getProvider(cipherAlgorithm);
+
+    if (provider == null)
+      return Cipher.getInstance(algo);
+    else
+      return Cipher.getInstance(algo, provider);
+  }
+
+  /**
+   * Erzeugt ein Signature-Objekt für den übergebenen Signaturalgorithmus-Identifier. Es wird der vom
+   * ProviderRouter zugeordnete Security-Provider verwendet, ansonsten der im DialogHandler gesetzte.
+   *
+   * @param signatureAlgorithm Identifier des Signaturalgorithmus (z.B.
+   *          Constants.SIGNATURE_ALGORITHM_RSA_SHA256)
+   * @return Signature-Objekt
+   * @throws NoSuchAlgorithmException wenn der Algorithmus nicht unterstützt wird
+   * @see ProviderRouter
+   */
+  public static Signature createSignature(String signatureAlgorithm) throws NoSuchAlgorithmException
+  {
+    String algo = getJcaName(signatureAlgorithm);
+    Provider provider = ProviderRouter.getProvider(signatureAlgorithm);
+
+    if (provider == null)
+      return Signature.getInstance(algo);
+    else
+      return Signature.getInstance(algo, provider);
+  }
+
+  private static String getJcaName(String algorithm) throws NoSuchAlgorithmException
+  {
+    String algo = Constants.JCA_JCE_MAP.get(algorithm);
+
+    if (algo == null)
+      throw new NoSuchAlgorithmException(algorithm);
+
+    return algo;
+  }
+
   /**
    * undocumented
    *
@@ -206,13 +292,7 @@ public class Crypto
     {
       // byte[] oaepParams = new byte[0];
 
-      Cipher cipher;
-
-      if (DialogHandler.getSecurityProvider() == null)
-        cipher = javax.crypto.Cipher.getInstance(Constants.JCA_JCE_MAP.get(algorithm));
-      else
-        cipher = javax.crypto.Cipher.getInstance(Constants.JCA_JCE_MAP.get(algorithm),
-                                                 DialogHandler.getSecurityProvider());
+      Cipher cipher = createCipher(algorithm);
 
       if (Constants.ASYMMETRIC_CIPHER_ALGORITHM_RSA_OAEP.equals(algorithm))
       {
@@ -222,23 +302,24 @@ public class Crypto
 
         // default
         String digestAlgorithm = Constants.JCA_JCE_MAP.get(Constants.DIGEST_ALGORITHM_SHA256);
+        String digAlgo = OSCIConfig.current().getDigestAlgorithm();
 
-        if (!Constants.DIGEST_ALGORITHM_RIPEMD160.equals(DialogHandler.getDigestAlgorithm())
-            && !Constants.DIGEST_ALGORITHM_SHA1.equals(DialogHandler.getDigestAlgorithm()))
+        if (!Constants.DIGEST_ALGORITHM_RIPEMD160.equals(digAlgo)
+            && !Constants.DIGEST_ALGORITHM_SHA1.equals(digAlgo))
         {
           // special handling for SHA-3 (for now)
-          if (Constants.DIGEST_ALGORITHM_SHA3_256.equals(DialogHandler.getDigestAlgorithm()))
+          if (Constants.DIGEST_ALGORITHM_SHA3_256.equals(digAlgo))
           {
             digestAlgorithm = Constants.JCA_JCE_MAP.get(Constants.DIGEST_ALGORITHM_SHA256);
           }
-          else if (Constants.DIGEST_ALGORITHM_SHA3_384.equals(DialogHandler.getDigestAlgorithm())
-                   || Constants.DIGEST_ALGORITHM_SHA3_512.equals(DialogHandler.getDigestAlgorithm()))
+          else if (Constants.DIGEST_ALGORITHM_SHA3_384.equals(digAlgo)
+                   || Constants.DIGEST_ALGORITHM_SHA3_512.equals(digAlgo))
           {
             digestAlgorithm = Constants.JCA_JCE_MAP.get(Constants.DIGEST_ALGORITHM_SHA512);
           }
           else
           {
-            digestAlgorithm = Constants.JCA_JCE_MAP.get(DialogHandler.getDigestAlgorithm());
+            digestAlgorithm = Constants.JCA_JCE_MAP.get(digAlgo);
           }
         }
 
@@ -252,7 +333,20 @@ public class Crypto
       else
         cipher.init(Cipher.WRAP_MODE, encryptionCert);
 
-      return cipher.wrap(key);
+      Span event = FlightRecorderEvents.begin(EventType.RSA_KEY_TRANSPORT);
+      event.setOperation("wrap");
+      event.setAlgorithm(algorithm);
+
+      try
+      {
+        byte[] wrapped = cipher.wrap(key);
+        event.setBytes(wrapped.length);
+        return wrapped;
+      }
+      finally
+      {
+        event.commit();
+      }
     }
     catch (NoSuchAlgorithmException ex)
     {
@@ -299,13 +393,7 @@ public class Crypto
   {
     try
     {
-      Cipher cipher;
-
-      if (DialogHandler.getSecurityProvider() == null)
-        cipher = javax.crypto.Cipher.getInstance(Constants.JCA_JCE_MAP.get(algorithm));
-      else
-        cipher = javax.crypto.Cipher.getInstance(Constants.JCA_JCE_MAP.get(algorithm),
-                                                 DialogHandler.getSecurityProvider());
+      Cipher cipher = createCipher(algorithm);
 
       if (algorithm.equals(Constants.ASYMMETRIC_CIPHER_ALGORITHM_RSA_OAEP))
       {
@@ -456,7 +544,7 @@ public class Crypto
 
     int keyLength = ((RSAPublicKey)encryptionCert.getPublicKey()).getModulus().bitLength();
 
-    String digAlgo = DialogHandler.getDigestAlgorithm();
+    String digAlgo = OSCIConfig.current().getDigestAlgorithm();
 
     if (keyLength < data_len + 2 + 2 * (Integer.parseInt(digAlgo.substring(digAlgo.indexOf("#sha") + 4))))
       digAlgo = Constants.DIGEST_ALGORITHM_SHA256;
@@ -6,6 +6,7 @@ import java.io.OutputStream;
 import de.osci.osci12.OSCIException;
 import de.osci.osci12.common.Constants;
 import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIConfig;
 
 
 /**
@@ -61,15 +62,17 @@ public class EncryptedKey extends EncryptedType
     if (encryptionMethodAlgorithm.equals(Constants.ASYMMETRIC_CIPHER_ALGORITHM_RSA_OAEP))
     {
       // MGF und Hashfunktionen nach DialogHandler
-      if (Constants.DIGEST_ALGORITHM_SHA512.equals(DialogHandler.getDigestAlgorithm())
-          ||Constants.DIGEST_ALGORITHM_SHA3_384.equals(DialogHandler.getDigestAlgorithm())
-          || Constants.DIGEST_ALGORITHM_SHA3_512.equals(DialogHandler.getDigestAlgorithm()))
+      String digAlgo = OSCIConfig.current().getDigestAlgorithm();
+
+      if (Constants.DIGEST_ALGORITHM_SHA512.equals(digAlgo)
+          ||Constants.DIGEST_ALGORITHM_SHA3_384.equals(digAlgo)
+          || Constants.DIGEST_ALGORITHM_SHA3_512.equals(digAlgo))
       {
         mgfAlgorithm = Constants.MASK_GENERATION_FUNCTION_1_SHA512;
         digestAlgorithm = Constants.DIGEST_ALGORITHM_SHA512;
       }
-      else if (Constants.DIGEST_ALGORITHM_SHA256.equals(DialogHandler.getDigestAlgorithm())
-               || Constants.DIGEST_ALGORITHM_SHA3_256.equals(DialogHandler.getDigestAlgorithm()))
+      else if (Constants.DIGEST_ALGORITHM_SHA256.equals(digAlgo)
+               || Constants.DIGEST_ALGORITHM_SHA3_256.equals(digAlgo))
       {
         mgfAlgorithm = Constants.MASK_GENERATION_FUNCTION_1_SHA256;
         digestAlgorithm = Constants.DIGEST_ALGORITHM_SHA256;
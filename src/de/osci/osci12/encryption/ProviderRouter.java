@@ -0,0 +1,332 @@
+package de.osci.osci12.encryption;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.security.Security;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.osci12.common.Constants;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIConfig;
+
+
+/**
+ * Ordnet den Algorithmus-Identifiern aus {@link Constants#JCA_JCE_MAP} jeweils einen Security-Provider zu.
+ * Für Algorithmen ohne Zuordnung wird wie bisher der im DialogHandler gesetzte Provider verwendet.
+ * <p>
+ * Die Zuordnung kann über {@link #setProvider(String, Provider)} tabellarisch konfiguriert oder über
+ * {@link #calibrate()} durch eine kurze Messung ermittelt werden. Kalibriert werden Hash-Algorithmen,
+ * symmetrische Verschlüsselung im CBC-Modus und RSA-Signaturen. Bei Signaturen wird die Prüfung gemessen,
+ * denn nur dafür erzeugt die Bibliothek Signature-Objekte; erstellt werden Signaturen vom Signer.
+ * ECDSA-Signaturen (CVC-ECDSA) bietet nur BouncyCastle an, sie werden nicht gemessen. AES-GCM bleibt beim
+ * konfigurierten Provider, weil die Implementierung des JDK beim Entschlüsseln den gesamten Chiffretext
+ * puffert, was bei großen Attachments nicht tragbar ist. Algorithmen, die nur von einem Provider angeboten
+ * werden (z.B. RSA-PSS unter dem Namen SHA256withRSAandMGF1), werden durch die Messung nicht verändert.
+ * </p>
+ * <p>
+ * Wird die System-Property <code>de.osci.ProviderCalibration</code> auf <code>true</code> gesetzt, erfolgt
+ * die Kalibrierung beim Laden der Klasse.
+ * </p>
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see Crypto#createCipher(String)
+ * @see Crypto#createMessageDigest(String)
+ * @see Crypto#createSignature(String)
+ */
+public class ProviderRouter
+{
+  private static Log log = LogFactory.getLog(ProviderRouter.class);
+
+  private static final int CALIBRATION_BLOCK_SIZE = 64 * 1024;
+
+  private static final int CALIBRATION_ROUNDS = 16;
+
+  private static final int WARMUP_ROUNDS = 8;
+
+  // Umfang eines SignedInfo-Elements
+  private static final int SIGNATURE_BLOCK_SIZE = 1024;
+
+  private static final int SIGNATURE_KEY_SIZE = 2048;
+
+  private static final Map<String, Provider> routes = new ConcurrentHashMap<String, Provider>();
+
+  private static final ReentrantLock calibrationLock = new ReentrantLock();
+
+  static
+  {
+    if ("true".equals(System.getProperty("de.osci.ProviderCalibration")))
+      calibrate();
+  }
+
+  private ProviderRouter()
+  {}
+
+  /**
+   * Liefert den Provider, der für den übergebenen Algorithmus verwendet wird. Ist keine Zuordnung
+   * konfiguriert, wird der Provider des DialogHandlers geliefert.
+   *
+   * @param algorithm Algorithmus-Identifier (URI)
+   * @return Provider oder <code>null</code>, wenn die Standard-Reihenfolge der JCA verwendet werden soll
+   * @see DialogHandler#getSecurityProvider()
+   */
+  public static Provider getProvider(String algorithm)
+  {
+    Provider provider = routes.get(algorithm);
+
+    if (provider == null)
+      return OSCIConfig.current().getSecurityProvider();
+
+    return provider;
+  }
+
+  /**
+   * Ordnet dem Algorithmus einen Provider zu. Mit <code>null</code> wird die Zuordnung entfernt, so dass
+   * wieder der Provider des DialogHandlers verwendet wird.
+   *
+   * @param algorithm Algorithmus-Identifier (URI)
+   * @param provider Provider
+   */
+  public static void setProvider(String algorithm, Provider provider)
+  {
+    if (Constants.JCA_JCE_MAP.get(algorithm) == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + algorithm);
+
+    if (provider == null)
+      routes.remove(algorithm);
+    else
+      routes.put(algorithm, provider);
+
+    if (log.isInfoEnabled())
+      log.info("Provider route " + algorithm + " -> " + (provider == null ? "default" : provider.getName()));
+  }
+
+  /**
+   * Entfernt sämtliche Zuordnungen.
+   */
+  public static void clear()
+  {
+    routes.clear();
+  }
+
+  /**
+   * Liefert die aktuellen Zuordnungen von Algorithmus-Identifiern zu Provider-Namen.
+   *
+   * @return Zuordnungstabelle (nicht veränderbar)
+   */
+  public static Map<String, String> getRoutes()
+  {
+    Map<String, String> result = new TreeMap<String, String>();
+
+    for ( Map.Entry<String, Provider> route : routes.entrySet() )
+      result.put(route.getKey(), route.getValue().getName());
+
+    return Collections.unmodifiableMap(result);
+  }
+
+  /**
+   * Ermittelt für jeden Hash-Algorithmus, jeden symmetrischen CBC-Algorithmus und jeden
+   * RSA-Signaturalgorithmus den schnellsten verfügbaren Provider und trägt ihn in die Zuordnungstabelle ein.
+   * Signaturen werden mit einem eigens erzeugten Schlüssel geprüft. Berücksichtigt werden die installierten Provider
+   * sowie der Provider des DialogHandlers. Die Entscheidungen werden geloggt.
+   *
+   * @return Zuordnungstabelle nach der Kalibrierung
+   */
+  public static Map<String, String> calibrate()
+  {
+    calibrationLock.lock();
+
+    try
+    {
+      return doCalibrate();
+    }
+    finally
+    {
+      calibrationLock.unlock();
+    }
+  }
+
+  private static Map<String, String> doCalibrate()
+  {
+    List<Provider> candidates = new ArrayList<Provider>();
+    Provider configured = DialogHandler.getSecurityProvider();
+
+    if (configured != null)
+      candidates.add(configured);
+
+    for ( Provider provider : Security.getProviders() )
+    {
+      if (configured == null || !configured.getName().equals(provider.getName()))
+        candidates.add(provider);
+    }
+
+    byte[] data = new byte[CALIBRATION_BLOCK_SIZE];
+    KeyPair keyPair = null;
+
+    for ( Map.Entry<String, String> entry : Constants.JCA_JCE_MAP.entrySet() )
+    {
+      String algorithm = entry.getKey();
+      String jcaName = entry.getValue();
+      boolean digest = algorithm.equals(Constants.DIGEST_ALGORITHM_SHA1)
+                       || algorithm.equals(Constants.DIGEST_ALGORITHM_SHA256)
+                       || algorithm.equals(Constants.DIGEST_ALGORITHM_SHA512)
+                       || algorithm.equals(Constants.DIGEST_ALGORITHM_RIPEMD160)
+                       || algorithm.equals(Constants.DIGEST_ALGORITHM_SHA3_256)
+                       || algorithm.equals(Constants.DIGEST_ALGORITHM_SHA3_384)
+                       || algorithm.equals(Constants.DIGEST_ALGORITHM_SHA3_512);
+      boolean cbc = jcaName.indexOf("/CBC/") > 0;
+      boolean signature = jcaName.endsWith("withRSA") || jcaName.endsWith("withRSAandMGF1");
+
+      if (!digest && !cbc && !signature)
+        continue;
+
+      if (signature && (keyPair == null))
+      {
+        try
+        {
+          KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+          generator.initialize(SIGNATURE_KEY_SIZE);
+          keyPair = generator.generateKeyPair();
+        }
+        catch (Exception ex)
+        {
+          log.warn("No RSA key for calibrating signatures.", ex);
+          continue;
+        }
+      }
+
+      Provider fastest = null;
+      long fastestTime = Long.MAX_VALUE;
+
+      for ( Provider provider : candidates )
+      {
+        long time;
+
+        try
+        {
+          if (digest)
+            time = measureDigest(jcaName, provider, data);
+          else if (cbc)
+            time = measureCipher(algorithm, jcaName, provider, data);
+          else
+            time = measureSignature(jcaName, provider, keyPair, data);
+        }
+        catch (Exception ex)
+        {
+          // Algorithmus wird von diesem Provider nicht unterstützt
+          continue;
+        }
+
+        if (log.isDebugEnabled())
+          log.debug("Calibration " + jcaName + " / " + provider.getName() + ": " + time + " ns");
+
+        if (time < fastestTime)
+        {
+          fastest = provider;
+          fastestTime = time;
+        }
+      }
+
+      if (fastest != null)
+      {
+        routes.put(algorithm, fastest);
+
+        if (log.isInfoEnabled())
+          log.info("Provider route " + algorithm + " -> " + fastest.getName() + " (" + fastestTime + " ns for "
+                   + CALIBRATION_ROUNDS + " x " + (signature ? SIGNATURE_BLOCK_SIZE : CALIBRATION_BLOCK_SIZE)
+                   + " bytes)");
+      }
+    }
+
+    return getRoutes();
+  }
+
+  private static long measureDigest(String jcaName, Provider provider, byte[] data) throws Exception
+  {
+    MessageDigest md = MessageDigest.getInstance(jcaName, provider);
+
+    for ( int i = 0 ; i < WARMUP_ROUNDS ; i++ )
+      md.digest(data);
+
+    long start = System.nanoTime();
+
+    for ( int i = 0 ; i < CALIBRATION_ROUNDS ; i++ )
+      md.digest(data);
+
+    return System.nanoTime() - start;
+  }
+
+  private static long measureCipher(String algorithm, String jcaName, Provider provider, byte[] data)
+    throws Exception
+  {
+    Cipher cipher = Cipher.getInstance(jcaName, provider);
+    javax.crypto.SecretKey key = Crypto.createSymKey(algorithm);
+    IvParameterSpec iv = new IvParameterSpec(new byte[cipher.getBlockSize()]);
+    byte[] out = new byte[data.length + cipher.getBlockSize()];
+
+    for ( int i = 0 ; i < WARMUP_ROUNDS ; i++ )
+    {
+      cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+      cipher.doFinal(data, 0, data.length, out);
+    }
+
+    long start = System.nanoTime();
+
+    for ( int i = 0 ; i < CALIBRATION_ROUNDS ; i++ )
+    {
+      cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+      cipher.doFinal(data, 0, data.length, out);
+    }
+
+    return System.nanoTime() - start;
+  }
+
+  private static long measureSignature(String jcaName, Provider provider, KeyPair keyPair, byte[] data)
+    throws Exception
+  {
+    Signature sig = Signature.getInstance(jcaName, provider);
+    sig.initSign(keyPair.getPrivate());
+    sig.update(data, 0, SIGNATURE_BLOCK_SIZE);
+    byte[] value = sig.sign();
+
+    for ( int i = 0 ; i < WARMUP_ROUNDS ; i++ )
+      verify(sig, keyPair, data, value);
+
+    long start = System.nanoTime();
+
+    for ( int i = 0 ; i < CALIBRATION_ROUNDS ; i++ )
+      verify(sig, keyPair, data, value);
+
+    return System.nanoTime() - start;
+  }
+
+  private static void verify(Signature sig, KeyPair keyPair, byte[] data, byte[] value) throws Exception
+  {
+    sig.initVerify(keyPair.getPublic());
+    sig.update(data, 0, SIGNATURE_BLOCK_SIZE);
+
+    if (!sig.verify(value))
+      throw new IllegalStateException(sig.getAlgorithm());
+  }
+}
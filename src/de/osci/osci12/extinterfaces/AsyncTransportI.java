@@ -0,0 +1,80 @@
+package de.osci.osci12.extinterfaces;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+
+/**
+ * Erweiterung des Transport-Interfaces für den asynchronen Versand von OSCI-Nachrichten. Implementierungen,
+ * die auf nicht-blockierender Ein-/Ausgabe basieren (z.B. java.net.http.HttpClient oder NIO-Kanäle), können
+ * den Verbindungsaufbau und das Eintreffen der Antwort über CompletableFutures signalisieren, so dass während
+ * der Wartezeiten kein Thread belegt wird.
+ * <p>
+ * Die Default-Implementierungen führen die blockierenden Methoden des TransportI über den übergebenen
+ * Executor aus. Transportmodule, die nur TransportI implementieren, werden von
+ * {@link de.osci.osci12.messagetypes.OSCIRequest} entsprechend behandelt.
+ * </p>
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public interface AsyncTransportI extends TransportI
+{
+  /**
+   * Baut asynchron eine Verbindung zu der übergebenen URI auf. Das Future wird mit dem OutputStream
+   * abgeschlossen, in den die Bibliothek die serialisierte OSCI-Nachricht schreibt. Mit dem Schließen des
+   * Streams gilt die Anfrage als vollständig übermittelt.
+   *
+   * @param uri URI des Kommunikationspartners
+   * @param length Länge der Übertragungsdaten (Anz d. Bytes)
+   * @param executor Executor für ggf. blockierende Arbeitsschritte
+   * @return Future mit dem Output-Stream
+   * @see TransportI#getConnection(URI, long)
+   */
+  default CompletableFuture<OutputStream> getConnectionAsync(URI uri, long length, Executor executor)
+  {
+    return CompletableFuture.supplyAsync(() -> {
+      try
+      {
+        return getConnection(uri, length);
+      }
+      catch (IOException ex)
+      {
+        throw new UncheckedIOException(ex);
+      }
+    }, executor);
+  }
+
+  /**
+   * Liefert asynchron den Response-Stream. Das Future wird abgeschlossen, sobald die Antwort des
+   * Kommunikationspartners zum Lesen bereitsteht.
+   *
+   * @param executor Executor für ggf. blockierende Arbeitsschritte
+   * @return Future mit dem InputStream der eingehenden Antwortdaten
+   * @see TransportI#getResponseStream()
+   */
+  default CompletableFuture<InputStream> getResponseStreamAsync(Executor executor)
+  {
+    return CompletableFuture.supplyAsync(() -> {
+      try
+      {
+        return getResponseStream();
+      }
+      catch (IOException ex)
+      {
+        throw new UncheckedIOException(ex);
+      }
+    }, executor);
+  }
+}
@@ -5,7 +5,10 @@ import de.osci.osci12.soapheader.ControlBlockH;
 
 
 /**
- * <p>Diese Schnittstelle wird nur noch intern verwendet.</p>
+ * <p>Über diese Schnittstelle ermitteln Supplier und passive Empfänger beim Parsen eines Auftrags den
+ * DialogHandler eines expliziten Dialogs. Die Bibliothek enthält mit
+ * {@link de.osci.osci12.common.ConcurrentDialogFinder} eine Implementierung für viele gleichzeitige
+ * Dialoge.</p>
  * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
  * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
  * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
@@ -15,7 +18,7 @@ import de.osci.osci12.soapheader.ControlBlockH;
  *
  * @author R. Lindemann / N. Büngener
  * @version 2.4.1
- * @see de.osci.osci12.common.DialogHandler
+ * @see de.osci.osci12.common.DialogHandler#setDialogFinder(DialogFinder)
  */
 public abstract class DialogFinder
 {
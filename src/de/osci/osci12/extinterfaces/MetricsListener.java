@@ -0,0 +1,40 @@
+package de.osci.osci12.extinterfaces;
+
+import de.osci.osci12.common.MessageMetrics;
+
+
+/**
+ * Anwendungen können eine Implementierung dieser Schnittstelle im DialogHandler-Objekt einer Kommunikation
+ * setzen, um für jeden Versandvorgang eine Aufschlüsselung der Verarbeitungszeit und der Datenmengen nach
+ * Verarbeitungsschritten (Zusammenstellen, Signieren, Verschlüsseln, Upload, Warten auf den Server,
+ * Download, Entschlüsseln, Kanonisieren, Parsen, Signaturprüfung) zu erhalten. Im Gegensatz zum
+ * {@link ProgressEventHandlerI} werden die Werte erst nach Abschluss des Vorgangs in einem Datensatz
+ * geliefert.
+ * <p>
+ * Ist kein Listener gesetzt, findet keine Messung statt (außer für eine laufende JFR-Aufzeichnung). Der
+ * Aufruf erfolgt in dem Thread, der den Versandvorgang abschließt, beim asynchronen Versand also in einem
+ * Thread des Executors. Implementierungen müssen daher threadsicher sein und sollten nicht blockieren.
+ * Ausnahmen des Listeners werden protokolliert und beeinflussen den Versandvorgang nicht.
+ * </p>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see de.osci.osci12.common.DialogHandler#setMetricsListener(MetricsListener)
+ */
+@FunctionalInterface
+public interface MetricsListener
+{
+  /**
+   * Wird nach Abschluss eines Versandvorgangs aufgerufen, auch wenn dieser fehlgeschlagen ist.
+   *
+   * @param metrics Messwerte des Vorgangs
+   */
+  public void messageMeasured(MessageMetrics metrics);
+}
@@ -1,11 +1,14 @@
 package de.osci.osci12.extinterfaces;
 
+import de.osci.osci12.common.DialogHandler;
+
+
 /**
  * Anwendungen können eine Implementierung dieser Schnittstelle im DialogHandler-Objekt
  * einer Kommunikation setzen, über das die Bibliothek Informationen über die Durchführung
- * von Operationen liefert. Z.Zt. bietet die Bibliothek nur eine minimale Unterstützung
- * dieser Schnittstelle, beispielsweise ohne Informationen über den prozentualen Fortschritt
- * einer Operation.
+ * von Operationen liefert. Für den Versand des Auftrags und den Empfang der Antwort wird
+ * der Fortschritt der Übertragung über {@link #transferProgress(int, long, long, long)} gemeldet,
+ * für die übrigen Operationen nur deren Beginn.
  *
  * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
  * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
@@ -46,4 +49,25 @@ public interface ProgressEventHandlerI
    * @see de.osci.osci12.common.Constants
    */
   public void event(int type, String param, int percent);
+
+  /**
+   * Wird während des Versands des Auftrags und des Empfangs der Antwort in den Abständen des
+   * Meldeintervalls sowie nach Abschluss der Übertragung aufgerufen. Der Aufruf erfolgt in dem Thread,
+   * der die Daten überträgt, beim Pipelining also in einem Thread des Pipeline-Executors. Die
+   * Default-Implementierung ruft {@link #event(int, String, int)} mit dem prozentualen Fortschritt auf,
+   * sofern die Gesamtgröße bekannt ist.
+   *
+   * @param type {@link de.osci.osci12.common.Constants#EVENT_SEND_MSG} oder
+   *          {@link de.osci.osci12.common.Constants#EVENT_RECEIVE_MSG}
+   * @param bytesDone bisher übertragene Bytes
+   * @param bytesTotal Gesamtgröße in Bytes oder -1, wenn nicht bekannt (z.B. bei chunked Übertragung)
+   * @param bytesPerSecond Übertragungsrate seit der letzten Meldung in Bytes pro Sekunde, bei der
+   *          abschließenden Meldung die mittlere Rate der gesamten Übertragung
+   * @see DialogHandler#setProgressInterval(long)
+   */
+  default void transferProgress(int type, long bytesDone, long bytesTotal, long bytesPerSecond)
+  {
+    int percent = (bytesTotal > 0) ? (int)Math.min(100, bytesDone * 100 / bytesTotal) : -1;
+    event(type, DialogHandler.text.getString("event_" + type), percent);
+  }
 }
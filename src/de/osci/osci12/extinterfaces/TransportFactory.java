@@ -0,0 +1,43 @@
+package de.osci.osci12.extinterfaces;
+
+import java.io.IOException;
+
+
+/**
+ * Fabrik für Transportmodule. Die Bibliothek fordert für jeden Versandvorgang über {@link #create()} ein
+ * eigenes TransportI-Objekt an. Implementierungen müssen threadsicher sein; die Methode wird ohne
+ * Synchronisation aus beliebig vielen Threads gleichzeitig aufgerufen, so dass sich nebenläufige
+ * Versandvorgänge beim Anlegen der Transportobjekte nicht gegenseitig blockieren.
+ * <p>
+ * Da es sich um ein funktionales Interface handelt, genügt für einfache Transportmodule eine
+ * Konstruktor-Referenz:
+ * </p>
+ * <pre>
+ * dialogHandler.setTransportFactory(HttpTransport::new);
+ * </pre>
+ * <p>
+ * Wird dem DialogHandler wie bisher ein TransportI-Objekt als Prototyp übergeben, werden neue Instanzen über
+ * {@link TransportI#newInstance()} unter einer Sperre erzeugt.
+ * </p>
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see de.osci.osci12.common.DialogHandler#setTransportFactory(TransportFactory)
+ */
+@FunctionalInterface
+public interface TransportFactory
+{
+  /**
+   * Liefert ein neues Transportobjekt für einen Versandvorgang.
+   *
+   * @return neue Instanz eines Transportmoduls
+   * @throws IOException wenn das Transportobjekt nicht angelegt werden kann
+   */
+  public TransportI create() throws IOException;
+}
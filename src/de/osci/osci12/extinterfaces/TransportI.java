@@ -66,8 +66,10 @@ public interface TransportI
   public boolean isOnline(URI uri) throws IOException;
 
   /**
-   *  Sollte die Länge des Response Streams liefern. Auch diese Methode wird
-   * von der Bibliothek z.Zt. nicht benötigt.
+   *  Sollte die Länge des Response Streams liefern. Die Bibliothek ruft diese Methode nach
+   * {@link #getResponseStream()} auf, wenn der Fortschritt des Empfangs gemeldet oder überwacht wird.
+   * Implementierungen, die eine UnsupportedOperationException werfen, werden wie eine unbekannte Länge
+   * behandelt.
    *
    *@return Anzahl der empfangenen Bytes oder <code>-1</code>, falls die Länge nicht bekannt ist.
    */
@@ -80,10 +82,25 @@ public interface TransportI
    *  schreibt.
    *
    *@param  uri              URI des Kommunikationspartners
-   *@param  length           Länge der Übertragungsdaten (Anz d. Bytes)
+   *@param  length           Länge der Übertragungsdaten (Anz d. Bytes) oder <code>-1</code>, wenn die Länge
+   *                         nicht vorab berechnet wurde (s. {@link #isChunkedTransferSupported()})
    *@return                  Output-Stream, in den die Daten geschrieben werden können
    *@exception  IOException  im Fehlerfall
    */
   public OutputStream getConnection(URI uri, long length)
                              throws IOException;
+
+  /**
+   * Gibt an, ob das Transportmodul Nachrichten ohne vorab bekannte Länge übertragen kann, z.B. per HTTP
+   * mit "Transfer-Encoding: chunked". In diesem Fall verzichtet die Bibliothek auf die Vorab-Berechnung
+   * der Nachrichtenlänge, die einen vollständigen zusätzlichen Serialisierungsdurchlauf erfordert, und ruft
+   * {@link #getConnection(URI, long)} mit der Länge <code>-1</code> auf. Die Übertragung beginnt so
+   * unmittelbar. Die Default-Implementierung liefert <code>false</code>.
+   *
+   * @return <code>true</code>, wenn getConnection() mit der Länge <code>-1</code> aufgerufen werden darf
+   */
+  default boolean isChunkedTransferSupported()
+  {
+    return false;
+  }
 }
@@ -4,6 +4,7 @@ import de.osci.helper.*;
 import de.osci.osci12.common.Constants;
 import de.osci.osci12.common.Constants.LanguageTextEntries;
 import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIConfig;
 import de.osci.osci12.encryption.Crypto;
 import de.osci.osci12.encryption.OSCICipherException;
 import de.osci.osci12.extinterfaces.OSCIDataSource;
@@ -17,8 +18,15 @@ import java.io.OutputStream;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
 
 
 /**
@@ -434,11 +442,7 @@ public class Attachment extends MessagePart
       if (transportDigestAlgorithm != null)
       {
 
-        if (DialogHandler.getSecurityProvider() == null)
-          encMsgDigest = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(transportDigestAlgorithm));
-        else
-          encMsgDigest = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(transportDigestAlgorithm),
-                                                   DialogHandler.getSecurityProvider());
+        encMsgDigest = Crypto.createMessageDigest(transportDigestAlgorithm);
         if (log.isDebugEnabled())
         {
           log.debug("Create signed output stream for attachment " + getRefID());
@@ -476,7 +480,9 @@ public class Attachment extends MessagePart
 
   /**
    * Diese Methode liest die Daten aus dem InputStream und verschlüsselt sie und ermittelt den Digest des
-   * Attachments. Das Verschlüsselte Ergebnis wird in einen OSCIDataSource geschrieben.
+   * Attachments. Das Verschlüsselte Ergebnis wird in einen OSCIDataSource geschrieben. Neben dem im
+   * DialogHandler eingestellten Hash-Algorithmus werden in demselben Durchlauf die Hashwerte für die mit
+   * DialogHandler.setPrecomputedDigestAlgorithms(String[]) gesetzten Algorithmen berechnet.
    *
    * @throws IOException
    * @throws NoSuchAlgorithmException
@@ -493,34 +499,29 @@ public class Attachment extends MessagePart
 
     swapBuffer = DialogHandler.getNewDataBuffer();
 
-    OutputStream out = swapBuffer.getOutputStream();
-    MessageDigest encMsgDigest = null;
-    MessageDigest msgDigest = null;
+    Set<String> algorithms = new LinkedHashSet<String>();
+    OSCIConfig config = OSCIConfig.current();
+    algorithms.add(config.getDigestAlgorithm());
+    algorithms.addAll(Arrays.asList(config.getPrecomputedDigestAlgorithms()));
 
-    if (DialogHandler.getSecurityProvider() == null)
-      msgDigest = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(DialogHandler.getDigestAlgorithm()));
-    else
-      msgDigest = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(DialogHandler.getDigestAlgorithm()),
-                                            DialogHandler.getSecurityProvider());
+    OutputStream out = swapBuffer.getOutputStream();
+    Hashtable<String, MessageDigest> encMsgDigests = null;
+    Hashtable<String, MessageDigest> msgDigests = createMessageDigests(algorithms);
 
     if (encrypt)
     {
-      if (DialogHandler.getSecurityProvider() == null)
-        encMsgDigest = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(DialogHandler.getDigestAlgorithm()));
-      else
-        encMsgDigest = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(DialogHandler.getDigestAlgorithm()),
-                                                 DialogHandler.getSecurityProvider());
+      encMsgDigests = createMessageDigests(algorithms);
 
       if (log.isDebugEnabled())
         log.debug("Verschlüsseltes Attachment wird erstellt");
 
-      out = new DigestOutputStream(out, encMsgDigest);
+      out = new MultiDigestOutputStream(out, encMsgDigests.values());
       out = new SymCipherOutputStream(out, secretKey, symmetricCipherAlgorithm, ivLength, true);
     }
     else if (log.isDebugEnabled())
       log.debug("Unverschlüsseltes Attachment wird erstellt");
 
-    out = new DigestOutputStream(out, msgDigest);
+    out = new MultiDigestOutputStream(out, msgDigests.values());
 
     java.io.BufferedInputStream bufferdIn = new java.io.BufferedInputStream(ins, Constants.DEFAULT_BUFFER_BLOCKSIZE);
     int count = 0;
@@ -534,17 +535,31 @@ public class Attachment extends MessagePart
     swapBuffer.getOutputStream().flush();
     out.close();
     bufferdIn.close();
-    digestValues.put(DialogHandler.getDigestAlgorithm(), msgDigest.digest());
 
-    if (encrypt)
-      encryptedDigestValues.put(DialogHandler.getDigestAlgorithm(), encMsgDigest.digest());
-    else
-      encryptedDigestValues.put(DialogHandler.getDigestAlgorithm(),
-                                digestValues.get(DialogHandler.getDigestAlgorithm()));
+    for ( String algorithm : algorithms )
+    {
+      digestValues.put(algorithm, msgDigests.get(algorithm).digest());
+
+      if (encrypt)
+        encryptedDigestValues.put(algorithm, encMsgDigests.get(algorithm).digest());
+      else
+        encryptedDigestValues.put(algorithm, digestValues.get(algorithm));
+    }
 
     length = swapBuffer.getLength();
   }
 
+  private static Hashtable<String, MessageDigest> createMessageDigests(Collection<String> algorithms)
+    throws NoSuchAlgorithmException
+  {
+    Hashtable<String, MessageDigest> digests = new Hashtable<String, MessageDigest>();
+
+    for ( String algorithm : algorithms )
+      digests.put(algorithm, Crypto.createMessageDigest(algorithm));
+
+    return digests;
+  }
+
   /**
    * hasDigestValue
    * @param digestAlgorithm Digest Algorithmus
@@ -568,7 +583,8 @@ public class Attachment extends MessagePart
 
     if (digestValues.get(digestAlgorithm) == null)
     {
-      digestValues.put(digestAlgorithm, createDigest(digestAlgorithm, encrypt));
+      createDigests(createMessageDigests(Collections.singleton(digestAlgorithm)),
+                    new Hashtable<String, MessageDigest>());
     }
 
     if (log.isDebugEnabled())
@@ -578,7 +594,62 @@ public class Attachment extends MessagePart
     return (byte[])digestValues.get(digestAlgorithm);
   }
 
-  private byte[] createDigest(String digestAlgorithm, boolean enc)
+  /**
+   * Berechnet die noch nicht vorhandenen Hashwerte des Attachments für alle übergebenen Algorithmen. Die
+   * gepufferten Daten werden hierfür nur einmal gelesen und ggf. entschlüsselt. Wird von der Bibliothek vor
+   * der Prüfung von Signaturen aufgerufen, deren Referenzen verschiedene Hash-Algorithmen verwenden.
+   *
+   * @param digestAlgorithms Identifier der Hash-Algorithmen
+   * @throws IOException bei Lesefehlern
+   * @throws NoSuchAlgorithmException wenn ein Algorithmus nicht unterstützt wird
+   * @see #getDigestValue(String)
+   */
+  public void prepareDigestValues(Collection<String> digestAlgorithms)
+    throws IOException, NoSuchAlgorithmException
+  {
+    prepareDigestValues(digestAlgorithms, false);
+  }
+
+  /**
+   * Berechnet die noch nicht vorhandenen Hashwerte des Attachments für alle übergebenen Algorithmen. Ist
+   * includeEncrypted gesetzt, werden in demselben Durchlauf auch die Hashwerte über die verschlüsselten Daten
+   * (für die Nachrichtensignatur) berechnet.
+   *
+   * @param digestAlgorithms Identifier der Hash-Algorithmen
+   * @param includeEncrypted true, wenn auch die Hashwerte über die verschlüsselten Daten berechnet werden
+   *          sollen
+   * @throws IOException bei Lesefehlern
+   * @throws NoSuchAlgorithmException wenn ein Algorithmus nicht unterstützt wird
+   * @see #getDigestValue(String)
+   * @see #getEncryptedDigestValue(String)
+   */
+  public void prepareDigestValues(Collection<String> digestAlgorithms, boolean includeEncrypted)
+    throws IOException, NoSuchAlgorithmException
+  {
+    Hashtable<String, MessageDigest> plainDigests = new Hashtable<String, MessageDigest>();
+    Hashtable<String, MessageDigest> encDigests = new Hashtable<String, MessageDigest>();
+
+    for ( String algorithm : digestAlgorithms )
+    {
+      if (digestValues.get(algorithm) == null)
+        plainDigests.put(algorithm, Crypto.createMessageDigest(algorithm));
+
+      if (includeEncrypted && (encryptedDigestValues.get(algorithm) == null))
+        encDigests.put(algorithm, Crypto.createMessageDigest(algorithm));
+    }
+
+    if (plainDigests.isEmpty() && encDigests.isEmpty())
+      return;
+
+    createDigests(plainDigests, encDigests);
+  }
+
+  /**
+   * Berechnet in einem Durchlauf über den Puffer die Hashwerte über die entschlüsselten (plainDigests) und
+   * die gepufferten, ggf. verschlüsselten Daten (encDigests) und legt sie in den Hashtabellen ab.
+   */
+  private void createDigests(Hashtable<String, MessageDigest> plainDigests,
+                             Hashtable<String, MessageDigest> encDigests)
     throws IOException, NoSuchAlgorithmException
   {
     InputStream in = null;
@@ -591,37 +662,53 @@ public class Attachment extends MessagePart
 
     in.reset();
 
-    MessageDigest msgDigest;
-
-    if (DialogHandler.getSecurityProvider() == null)
-      msgDigest = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(digestAlgorithm));
-    else
-      msgDigest = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(digestAlgorithm),
-                                            DialogHandler.getSecurityProvider());
-
     if (log.isDebugEnabled())
       log.debug("State of Attachment: " + stateOfAttachment + " Verschlüsselt: " + encrypt);
 
+    Vector<MessageDigest> rawDigests = new Vector<MessageDigest>(encDigests.values());
     InputStream inStream = in;
+    StoreInputStream teeIn = null;
 
-    if (!(stateOfAttachment == STATE_OF_ATTACHMENT_PARSING) && enc)
+    if (!(stateOfAttachment == STATE_OF_ATTACHMENT_PARSING) && encrypt && !plainDigests.isEmpty())
     {
       if (log.isDebugEnabled())
         log.debug("Das Attachment ist verschlüsselt.");
 
-      inStream = new SymCipherInputStream(in, secretKey, symmetricCipherAlgorithm, ivLength, false);
+      if (!rawDigests.isEmpty())
+      {
+        // Hashwerte über die verschlüsselten Daten werden beim Entschlüsseln mitberechnet
+        teeIn = new StoreInputStream(in, new MultiDigestOutputStream(new NullOutputStream(), rawDigests));
+        teeIn.setSave(true);
+        inStream = teeIn;
+      }
+
+      inStream = new SymCipherInputStream(inStream, secretKey, symmetricCipherAlgorithm, ivLength, false);
+      rawDigests.clear();
     }
 
-    DigestOutputStream out = new DigestOutputStream(new NullOutputStream(), msgDigest);
+    rawDigests.addAll(plainDigests.values());
+    MultiDigestOutputStream out = new MultiDigestOutputStream(new NullOutputStream(), rawDigests);
     byte[] bytes = new byte[Constants.DEFAULT_BUFFER_BLOCKSIZE];
     int count = Constants.DEFAULT_BUFFER_BLOCKSIZE;
 
     while ((count = inStream.read(bytes)) > -1)
       out.write(bytes, 0, count);
 
+    if (teeIn != null)
+    {
+      // evtl. nicht vom Cipher gelesene Restdaten
+      while (teeIn.read(bytes) > -1)
+        ;
+    }
+
     inStream.close();
     out.close();
-    return msgDigest.digest();
+
+    for ( Map.Entry<String, MessageDigest> entry : plainDigests.entrySet() )
+      digestValues.put(entry.getKey(), entry.getValue().digest());
+
+    for ( Map.Entry<String, MessageDigest> entry : encDigests.entrySet() )
+      encryptedDigestValues.put(entry.getKey(), entry.getValue().digest());
   }
 
   /**
@@ -736,7 +823,8 @@ public class Attachment extends MessagePart
   public byte[] getEncryptedDigestValue(String digestAlgorithm) throws IOException, NoSuchAlgorithmException
   {
     if (encryptedDigestValues.get(digestAlgorithm) == null)
-      encryptedDigestValues.put(digestAlgorithm, createDigest(digestAlgorithm, false));
+      createDigests(new Hashtable<String, MessageDigest>(),
+                    createMessageDigests(Collections.singleton(digestAlgorithm)));
 
     if (log.isDebugEnabled())
       log.debug(new String((byte[])encryptedDigestValues.get(digestAlgorithm)));
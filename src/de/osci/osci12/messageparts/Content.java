@@ -2,6 +2,7 @@ package de.osci.osci12.messageparts;
 
 import de.osci.helper.Base64InputStream;
 import de.osci.helper.Base64OutputStream;
+import de.osci.helper.MultiDigestOutputStream;
 import de.osci.helper.NullOutputStream;
 import de.osci.osci12.OSCIException;
 import de.osci.osci12.common.Constants;
@@ -14,9 +15,12 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.*;
-import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -307,19 +311,38 @@ public class Content extends MessagePart
   protected byte[] getDigestValue(String digestAlgorithm)
     throws NoSuchAlgorithmException, IOException, OSCIException
   {
-    if (digestValues.get(digestAlgorithm) != null)
-      return (byte[])digestValues.get(digestAlgorithm);
+    if (digestValues.get(digestAlgorithm) == null)
+      prepareDigestValues(Collections.singleton(digestAlgorithm));
 
-    MessageDigest md;
+    return (byte[])digestValues.get(digestAlgorithm);
+  }
 
-    if (DialogHandler.getSecurityProvider() == null)
-      md = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(digestAlgorithm));
-    else
-      md = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(digestAlgorithm),
-                                     DialogHandler.getSecurityProvider());
+  /**
+   * Berechnet die noch nicht vorhandenen Hashwerte des Eintrags für alle übergebenen Algorithmen in einem
+   * Durchlauf über die Daten. Dies ist insbesondere für transformierte Daten erforderlich, da der mit
+   * setTransformedData(InputStream) übergebene Stream nur einmal gelesen werden kann.
+   *
+   * @param digestAlgorithms Identifier der Hash-Algorithmen
+   * @throws NoSuchAlgorithmException wenn ein Algorithmus nicht unterstützt wird
+   * @throws IOException bei Lesefehlern
+   * @throws OSCIException bei Serialisierungsfehlern
+   */
+  protected void prepareDigestValues(Collection<String> digestAlgorithms)
+    throws NoSuchAlgorithmException, IOException, OSCIException
+  {
+    Hashtable<String, MessageDigest> mds = new Hashtable<String, MessageDigest>();
+
+    for ( String digestAlgorithm : digestAlgorithms )
+    {
+      if (digestValues.get(digestAlgorithm) == null)
+        mds.put(digestAlgorithm, Crypto.createMessageDigest(digestAlgorithm));
+    }
+
+    if (mds.isEmpty())
+      return;
 
     NullOutputStream nos = new NullOutputStream();
-    DigestOutputStream digestOut = new DigestOutputStream(nos, md);
+    MultiDigestOutputStream digestOut = new MultiDigestOutputStream(nos, mds.values());
 
     if (contentType == DATA)
     {
@@ -359,22 +382,25 @@ public class Content extends MessagePart
 
       transformedDataStream.close();
       digestOut.close();
-      digestValues.put(digestAlgorithm, md.digest());
+
+      for ( Map.Entry<String, MessageDigest> entry : mds.entrySet() )
+        digestValues.put(entry.getKey(), entry.getValue().digest());
     }
     else
     {
       writeXML(digestOut, false);
       digestOut.close();
-      digestValues.put(digestAlgorithm, md.digest());
 
-      if (log.isDebugEnabled())
-        log.debug("enter getDigestValue" + Crypto.toHex((byte[])digestValues.get(digestAlgorithm)));
+      for ( Map.Entry<String, MessageDigest> entry : mds.entrySet() )
+      {
+        digestValues.put(entry.getKey(), entry.getValue().digest());
+
+        if (log.isDebugEnabled())
+          log.debug("enter getDigestValue" + Crypto.toHex(digestValues.get(entry.getKey())));
+      }
 
       length = nos.getLength();
     }
-
-    return (byte[])digestValues.get(digestAlgorithm);
-
   }
 
   /**
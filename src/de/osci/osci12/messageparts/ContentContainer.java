@@ -20,12 +20,16 @@ import java.util.Vector;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import de.osci.helper.FlightRecorderEvents;
+import de.osci.helper.FlightRecorderEvents.EventType;
+import de.osci.helper.FlightRecorderEvents.Span;
 import de.osci.helper.ISO8601DateTimeFormat;
 import de.osci.helper.ParserHelper;
 import de.osci.helper.SymCipherOutputStream;
 import de.osci.osci12.OSCIException;
 import de.osci.osci12.common.Constants;
 import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIConfig;
 import de.osci.osci12.encryption.Crypto;
 import de.osci.osci12.extinterfaces.crypto.Signer;
 import de.osci.osci12.roles.Author;
@@ -137,6 +141,7 @@ public class ContentContainer extends MessagePart implements Serializable
       try
       {
         OSCISignature[] signatures = findSignatureObjects(signatureRole);
+        prepareDigestValues(signatures);
 
         for ( int j = 0 ; j < signatures.length ; j++ )
         {
@@ -212,11 +217,7 @@ public class ContentContainer extends MessagePart implements Serializable
             if (id.equals("#" + signatures[j].signingPropsId))
             {
               MessageDigest mdg;
-              if (DialogHandler.getSecurityProvider() == null)
-                mdg = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(signatureRef.getDigestMethodAlgorithm()));
-              else
-                mdg = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(signatureRef.getDigestMethodAlgorithm()),
-                                                DialogHandler.getSecurityProvider());
+              mdg = Crypto.createMessageDigest(signatureRef.getDigestMethodAlgorithm());
               newDigest = mdg.digest(signatures[j].signingProperties.getBytes(Constants.CHAR_ENCODING));
             }
             else
@@ -272,17 +273,28 @@ public class ContentContainer extends MessagePart implements Serializable
           // nun noch das Signed Info testen
           java.security.Signature sg;
 
-          if (DialogHandler.getSecurityProvider() == null)
-            sg = java.security.Signature.getInstance(Constants.JCA_JCE_MAP.get(signatures[j].signatureAlgorithm));
-          else
-            sg = java.security.Signature.getInstance(Constants.JCA_JCE_MAP.get(signatures[j].signatureAlgorithm),
-                                                     DialogHandler.getSecurityProvider());
+          sg = Crypto.createSignature(signatures[j].signatureAlgorithm);
 
-          // sg.initVerify(signatureRole.getSignatureCertificate());
-          sg.initVerify(c.getPublicKey());
-          sg.update(signatures[j].getSignedInfoBytes());
+          Span event = FlightRecorderEvents.begin(EventType.SIGNATURE);
+          event.setOperation("verify");
+          event.setAlgorithm(signatures[j].signatureAlgorithm);
+          event.setMessageType("ContentContainer");
+          event.setBytes(signatures[j].getSignedInfoBytes().length);
+          boolean valid;
 
-          if (!sg.verify(signatures[j].signatureValue))
+          try
+          {
+            // sg.initVerify(signatureRole.getSignatureCertificate());
+            sg.initVerify(c.getPublicKey());
+            sg.update(signatures[j].getSignedInfoBytes());
+            valid = sg.verify(signatures[j].signatureValue);
+          }
+          finally
+          {
+            event.commit();
+          }
+
+          if (!valid)
           {
             log.error("Signatur falsch !" + new String(signatures[j].getSignedInfoBytes()));
 
@@ -314,6 +326,54 @@ public class ContentContainer extends MessagePart implements Serializable
     return true;
   }
 
+  /*
+   * Sammelt die in den Signaturreferenzen verwendeten Hash-Algorithmen je referenziertem Content bzw.
+   * Attachment und lässt alle Hashwerte eines Eintrags in einem Durchlauf berechnen. Bei Signaturen mit
+   * unterschiedlichen Hash-Algorithmen müssen die Daten so nur einmal gelesen (und entschlüsselt) werden.
+   */
+  private void prepareDigestValues(OSCISignature[] signatures)
+    throws NoSuchAlgorithmException, IOException, OSCIException
+  {
+    Hashtable<String, Vector<String>> algorithms = new Hashtable<String, Vector<String>>();
+
+    for ( int j = 0 ; j < signatures.length ; j++ )
+    {
+      for ( OSCISignatureReference signatureRef : signatures[j].getReferences().values() )
+      {
+        Vector<String> algos = algorithms.get(signatureRef.getRefID());
+
+        if (algos == null)
+        {
+          algos = new Vector<String>();
+          algorithms.put(signatureRef.getRefID(), algos);
+        }
+
+        if (!algos.contains(signatureRef.getDigestMethodAlgorithm()))
+          algos.add(signatureRef.getDigestMethodAlgorithm());
+      }
+    }
+
+    for ( int i = 0 ; i < contentList.size() ; i++ )
+    {
+      Content co = contentList.get(i);
+      Vector<String> algos = algorithms.get("#" + co.getRefID());
+
+      if ((algos != null) && (algos.size() > 1))
+        co.prepareDigestValues(algos);
+    }
+
+    Enumeration<Attachment> e = attachments.elements();
+
+    while (e.hasMoreElements())
+    {
+      Attachment att = e.nextElement();
+      Vector<String> algos = algorithms.get("cid:" + att.getRefID());
+
+      if ((algos != null) && (algos.size() > 1))
+        att.prepareDigestValues(algos);
+    }
+  }
+
   /**
    * Liefert ein Array mit den Signatur-Objekten. Diesen Objekten können die verwendeten Hash- und
    * Signaturalgorithmen entnommen werden.
@@ -554,7 +614,7 @@ public class ContentContainer extends MessagePart implements Serializable
   public void sign(Role signer)
     throws OSCIException, NoSuchAlgorithmException, SignatureException, IOException
   {
-    sign(signer, DialogHandler.getDigestAlgorithm(), null);
+    sign(signer, OSCIConfig.current().getDigestAlgorithm(), null);
   }
 
   /**
@@ -23,6 +23,9 @@ import org.xml.sax.XMLReader;
 
 import de.osci.helper.Base64;
 import de.osci.helper.Canonizer;
+import de.osci.helper.FlightRecorderEvents;
+import de.osci.helper.FlightRecorderEvents.EventType;
+import de.osci.helper.FlightRecorderEvents.Span;
 import de.osci.helper.ParserHelper;
 import de.osci.helper.SymCipherInputStream;
 import de.osci.helper.Tools;
@@ -406,10 +409,22 @@ public class EncryptedDataOSCI extends MessagePart
 
     byte[] dt = Tools.readBytes(keyIn);
     byte[] decryptedKey;
-    if (encKey.getEncryptionMethodAlgorithm().equals(Constants.ASYMMETRIC_CIPHER_ALGORITHM_RSA_OAEP))
-      decryptedKey = reader.getDecrypter().decrypt(dt, encKey.mgfAlgorithm, encKey.digestAlgorithm);
-    else
-      decryptedKey = reader.getDecrypter().decrypt(dt);
+    Span event = FlightRecorderEvents.begin(EventType.RSA_KEY_TRANSPORT);
+    event.setOperation("unwrap");
+    event.setAlgorithm(encKey.getEncryptionMethodAlgorithm());
+    event.setBytes(dt.length);
+
+    try
+    {
+      if (encKey.getEncryptionMethodAlgorithm().equals(Constants.ASYMMETRIC_CIPHER_ALGORITHM_RSA_OAEP))
+        decryptedKey = reader.getDecrypter().decrypt(dt, encKey.mgfAlgorithm, encKey.digestAlgorithm);
+      else
+        decryptedKey = reader.getDecrypter().decrypt(dt);
+    }
+    finally
+    {
+      event.commit();
+    }
 
     // Unterscheidung ob es sich um eine CipherRef oder Cipher Value handelt
     if (encryptedDataObject.getCipherData().getCipherReference() != null)
@@ -5,6 +5,7 @@ import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
+import java.util.Collection;
 import java.util.Hashtable;
 import java.util.Vector;
 
@@ -15,7 +16,6 @@ import de.osci.helper.NullOutputStream;
 import de.osci.osci12.OSCIException;
 import de.osci.osci12.common.Constants;
 import de.osci.osci12.common.Constants.Namespaces;
-import de.osci.osci12.common.DialogHandler;
 import de.osci.osci12.encryption.Crypto;
 import de.osci.osci12.messagetypes.OSCIMessage;
 
@@ -157,11 +157,7 @@ public abstract class MessagePart
     if (digestValues.get(digestAlgorithm) != null)
       return (byte[])digestValues.get(digestAlgorithm);
 
-    if (DialogHandler.getSecurityProvider() == null)
-      md = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(digestAlgorithm));
-    else
-      md = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(digestAlgorithm),
-                                     DialogHandler.getSecurityProvider());
+    md = Crypto.createMessageDigest(digestAlgorithm);
 
     NullOutputStream nos = new NullOutputStream();
 //    {
@@ -197,6 +193,23 @@ public abstract class MessagePart
     return (byte[])digestValues.get(digestAlgorithm);
   }
 
+  /**
+   * Berechnet die Hashwerte des Message-Parts für alle übergebenen Algorithmen. Subklassen, deren Daten
+   * gepuffert vorliegen (Content, Attachment), überschreiben diese Methode und berechnen alle Hashwerte in
+   * einem einzigen Durchlauf über die Daten.
+   *
+   * @param digestAlgorithms Identifier der Hash-Algorithmen
+   * @throws NoSuchAlgorithmException wenn ein Algorithmus nicht unterstützt wird
+   * @throws IOException bei Lesefehlern
+   * @throws OSCIException bei Serialisierungsfehlern
+   */
+  protected void prepareDigestValues(Collection<String> digestAlgorithms)
+    throws java.security.NoSuchAlgorithmException, IOException, OSCIException
+  {
+    for ( String digestAlgorithm : digestAlgorithms )
+      getDigestValue(digestAlgorithm);
+  }
+
   /**
    * Berechnet die Länge des XML-Tags.
    * @return Länge
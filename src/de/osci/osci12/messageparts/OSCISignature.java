@@ -13,8 +13,12 @@ import java.util.Map.Entry;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import de.osci.helper.FlightRecorderEvents;
+import de.osci.helper.FlightRecorderEvents.EventType;
+import de.osci.helper.FlightRecorderEvents.Span;
 import de.osci.osci12.common.Constants;
-import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIConfig;
+import de.osci.osci12.encryption.Crypto;
 import de.osci.osci12.common.OSCIErrorException;
 import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
 import de.osci.osci12.roles.OSCIRoleException;
@@ -61,7 +65,7 @@ public class OSCISignature extends MessagePart
 
   String signingProperties;
 
-  public String signatureAlgorithm = DialogHandler.getSignatureAlgorithm();
+  public String signatureAlgorithm = OSCIConfig.current().getSignatureAlgorithm();
 
   de.osci.osci12.roles.Role signer = null;
 
@@ -95,11 +99,7 @@ public class OSCISignature extends MessagePart
     OSCISignatureReference osr = new OSCISignatureReference();
 
     MessageDigest mdg;
-    if (DialogHandler.getSecurityProvider() == null)
-      mdg = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(digAlgo));
-    else
-      mdg = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(digAlgo),
-                                      DialogHandler.getSecurityProvider());
+    mdg = Crypto.createMessageDigest(digAlgo);
 
     osr.digestValue = mdg.digest(signingProperties.getBytes(Constants.CHAR_ENCODING));
     osr.digestMethodAlgorithm = digAlgo;
@@ -215,7 +215,20 @@ public class OSCISignature extends MessagePart
     if (log.isDebugEnabled())
       log.debug("Algo: " + signatureAlgorithm);
 
-    signatureValue = signer.getSigner().sign(signedInfo, signatureAlgorithm);
+    Span event = FlightRecorderEvents.begin(EventType.SIGNATURE);
+    event.setOperation("create");
+    event.setAlgorithm(signatureAlgorithm);
+    event.setBytes(signedInfo.length);
+
+    try
+    {
+      signatureValue = signer.getSigner().sign(signedInfo, signatureAlgorithm);
+    }
+    finally
+    {
+      event.commit();
+    }
+
     signerId = "#" + signer.getSignatureCertificateId();
   }
 
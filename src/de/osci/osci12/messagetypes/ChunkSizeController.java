@@ -0,0 +1,478 @@
+package de.osci.osci12.messagetypes;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.osci12.OSCIException;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIErrorException;
+import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
+
+
+/**
+ * Ermittelt die Chunkgröße paketierter Übertragungen aus den gemessenen Laufzeiten der Chunks. Ein zu
+ * kleiner Chunk verschwendet Round-Trips und Signaturen, ein zu großer verliert bei einem Abbruch viel
+ * Fortschritt. Der Controller wird je Verbindung angelegt und von allen Übertragungen über diese Verbindung
+ * gemeinsam verwendet.
+ * <p>
+ * Die Laufzeit eines Chunks wird als feste Latenz je Chunk (Round-Trip, Signatur, Verschlüsselung) plus Größe
+ * durch Durchsatz modelliert; beide Werte werden mit abklingender Gewichtung aus den Messungen geschätzt;
+ * ändert sich die Größe nicht mehr, bleibt die zuletzt bestimmte Latenz erhalten. Die Zielgröße ist so
+ * bemessen, dass die feste Latenz höchstens den eingestellten Anteil der Laufzeit ausmacht, ein Chunk aber
+ * nicht länger als die maximale Chunk-Laufzeit dauert. Solange das Modell noch nicht bestimmt ist, wird die
+ * Größe ausgehend von einem vorsichtigen Startwert verdoppelt, soweit der gemessene Durchsatz die maximale
+ * Chunk-Laufzeit zulässt; je Entscheidung weicht sie höchstens um den Faktor zwei von der gemessenen Größe
+ * ab. Nach einem Fehler wird sie halbiert und bei erhöhter Fehlerrate nicht vergrößert. Weist der Intermediär
+ * eine Chunkgröße ab (Fehler 9902 bzw. 9903), werden die Grenzen entsprechend eingeengt.
+ * </p>
+ * <p>
+ * Innerhalb einer Nachricht müssen alle Chunks gleich groß sein, da sich ihre Position aus Nummer und Größe
+ * ergibt. Die ermittelte Größe gilt daher jeweils für die nächste Übertragung.
+ * </p>
+ * <pre>
+ * StoreDeliverySplitter splitter = new StoreDeliverySplitter(storeDelivery, controller);
+ * </pre>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see StoreDeliverySplitter#StoreDeliverySplitter(StoreDelivery, ChunkSizeController)
+ * @see PartialFetchDeliveryAssembler#setChunkSizeController(ChunkSizeController)
+ */
+public class ChunkSizeController
+{
+  private static Log log = LogFactory.getLog(ChunkSizeController.class);
+
+  /** Voreinstellung für die Start-Chunkgröße in KB. */
+  public static final long DEFAULT_INITIAL_CHUNK_SIZE = 256;
+
+  /** Voreinstellung für die minimale Chunkgröße in KB. */
+  public static final long DEFAULT_MIN_CHUNK_SIZE = 64;
+
+  /** Voreinstellung für die maximale Chunkgröße in KB. */
+  public static final long DEFAULT_MAX_CHUNK_SIZE = 64 * 1024;
+
+  /** Voreinstellung für den maximalen Anteil der festen Latenz an der Laufzeit eines Chunks. */
+  public static final double DEFAULT_TARGET_OVERHEAD = 0.1;
+
+  /** Voreinstellung für die maximale Laufzeit eines Chunks in Millisekunden. */
+  public static final long DEFAULT_MAX_CHUNK_TIME = 30 * 1000L;
+
+  // Gewicht älterer Messungen je neuer Messung
+  private static final double DECAY = 0.9;
+
+  private static final double FAILURE_THRESHOLD = 0.1;
+
+  private long minChunkSize;
+
+  private long maxChunkSize;
+
+  private long chunkSize;
+
+  private double targetOverhead = DEFAULT_TARGET_OVERHEAD;
+
+  private long maxChunkTime = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_CHUNK_TIME);
+
+  // Gewichtete Summen für die Regression Laufzeit (s) über Größe (Byte)
+  private double sw;
+
+  private double sx;
+
+  private double sy;
+
+  private double sxx;
+
+  private double sxy;
+
+  private double failureRate;
+
+  private double latency = Double.NaN;
+
+  private double throughput = Double.NaN;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * Legt einen Controller mit den voreingestellten Grenzen an.
+   */
+  public ChunkSizeController()
+  {
+    this(DEFAULT_INITIAL_CHUNK_SIZE, DEFAULT_MIN_CHUNK_SIZE, DEFAULT_MAX_CHUNK_SIZE);
+  }
+
+  /**
+   * Legt einen Controller an.
+   *
+   * @param initialChunkSize Start-Chunkgröße in KB
+   * @param minChunkSize minimale Chunkgröße in KB
+   * @param maxChunkSize maximale Chunkgröße in KB
+   */
+  public ChunkSizeController(long initialChunkSize, long minChunkSize, long maxChunkSize)
+  {
+    if (minChunkSize < 1)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_secondargument") + minChunkSize);
+    if (maxChunkSize < minChunkSize)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_thirdargument") + maxChunkSize);
+    if ((initialChunkSize < minChunkSize) || (initialChunkSize > maxChunkSize))
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument")
+                                         + initialChunkSize);
+
+    this.chunkSize = initialChunkSize;
+    this.minChunkSize = minChunkSize;
+    this.maxChunkSize = maxChunkSize;
+  }
+
+  /**
+   * Liefert die Chunkgröße für die nächste Übertragung.
+   *
+   * @return Chunkgröße in KB
+   */
+  public long getChunkSize()
+  {
+    lock.lock();
+
+    try
+    {
+      return chunkSize;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Liefert die aktuelle minimale Chunkgröße.
+   *
+   * @return Chunkgröße in KB
+   */
+  public long getMinChunkSize()
+  {
+    lock.lock();
+
+    try
+    {
+      return minChunkSize;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Liefert die aktuelle maximale Chunkgröße.
+   *
+   * @return Chunkgröße in KB
+   */
+  public long getMaxChunkSize()
+  {
+    lock.lock();
+
+    try
+    {
+      return maxChunkSize;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Setzt den maximalen Anteil der festen Latenz an der Laufzeit eines Chunks.
+   *
+   * @param targetOverhead Anteil zwischen 0 und 1 (ausschließlich)
+   * @see #DEFAULT_TARGET_OVERHEAD
+   */
+  public void setTargetOverhead(double targetOverhead)
+  {
+    lock.lock();
+
+    try
+    {
+      if (!(targetOverhead > 0) || !(targetOverhead < 1))
+        throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument")
+                                           + targetOverhead);
+
+      this.targetOverhead = targetOverhead;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Setzt die maximale Laufzeit eines Chunks. Sie begrenzt den Fortschritt, der bei einem Abbruch verloren
+   * geht.
+   *
+   * @param millis Laufzeit in Millisekunden
+   * @see #DEFAULT_MAX_CHUNK_TIME
+   */
+  public void setMaxChunkTime(long millis)
+  {
+    lock.lock();
+
+    try
+    {
+      if (millis <= 0)
+        throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + millis);
+
+      this.maxChunkTime = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Meldet einen erfolgreich übertragenen Chunk.
+   *
+   * @param bytes Größe des Chunks in Byte
+   * @param nanos Laufzeit des Auftrags in Nanosekunden
+   */
+  public void chunkTransmitted(long bytes, long nanos)
+  {
+    lock.lock();
+
+    try
+    {
+      if ((bytes <= 0) || (nanos <= 0))
+        return;
+
+      double x = bytes;
+      double y = nanos / 1e9;
+      sw = sw * DECAY + 1;
+      sx = sx * DECAY + x;
+      sy = sy * DECAY + y;
+      sxx = sxx * DECAY + x * x;
+      sxy = sxy * DECAY + x * y;
+      failureRate *= DECAY;
+
+      estimate();
+      // Schritte beziehen sich auf die gemessene Größe, Chunks einer älteren Größe treiben sie nicht
+      // weiter
+      long observed = Math.max(1, bytes / 1024);
+      // Größe, die beim geschätzten Durchsatz in der maximalen Laufzeit übertragen wird; ohne Modell enthält
+      // der Durchsatz die Latenz und ist daher vorsichtig bemessen
+      long upper = (long)(throughput * maxChunkTime / 1e9 / 1024);
+      long target;
+      String reason;
+
+      if (failureRate > FAILURE_THRESHOLD)
+      {
+        target = chunkSize;
+        reason = "failure rate " + Math.round(failureRate * 100) + "%";
+      }
+      else if (Double.isNaN(latency))
+      {
+        target = Math.max(chunkSize, observed * 2);
+
+        if (target > upper)
+          target = Math.max(observed / 2, upper);
+
+        reason = "no model yet";
+      }
+      else
+      {
+        // Laufzeit = latency + size / throughput, Anteil der Latenz <= targetOverhead. Die Latenz bestimmt
+        // nur die Untergrenze, parallele Übertragungen verfälschen sie nach unten; verkleinert wird nur wegen
+        // der maximalen Laufzeit
+        long lower = (long)(latency * throughput * (1 - targetOverhead) / targetOverhead / 1024);
+        target = Math.max(chunkSize, Math.min(observed * 2, lower));
+
+        if (target > upper)
+          target = Math.max(observed / 2, upper);
+
+        reason = "latency " + Math.round(latency * 1000) + " ms, throughput " + Math.round(throughput / 1024)
+                 + " KB/s";
+      }
+
+      adjust(target, reason);
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Meldet eine fehlgeschlagene Übertragung eines Chunks.
+   *
+   * @param bytes Größe des Chunks in Byte
+   */
+  public void chunkFailed(long bytes)
+  {
+    lock.lock();
+
+    try
+    {
+      failureRate = failureRate * DECAY + (1 - DECAY);
+      adjust(Math.min(chunkSize, Math.max(1, bytes / 1024) / 2),
+             "transmission of " + bytes + " bytes failed");
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wertet eine Exception einer Übertragung aus. Abweisungen der Chunkgröße durch den Intermediär engen die
+   * Grenzen ein, andere Fehlermeldungen des Intermediärs werden nicht gewertet, alle übrigen Fehler als
+   * fehlgeschlagene Übertragung.
+   *
+   * @param bytes Größe des Chunks in Byte
+   * @param ex Exception der Übertragung
+   */
+  public void chunkFailed(long bytes, Exception ex)
+  {
+    lock.lock();
+
+    try
+    {
+      Object code = (ex instanceof OSCIException) ? ((OSCIException)ex).getErrorCodeObject() : null;
+
+      if (code == OSCIErrorCodes.WrongMaxChunkSize)
+      {
+        maxChunkSize = Math.max(minChunkSize, chunkSize / 2);
+        adjust(maxChunkSize, "rejected by intermediary as too large");
+      }
+      else if (code == OSCIErrorCodes.WrongMinChunkSize)
+      {
+        minChunkSize = Math.min(maxChunkSize, chunkSize * 2);
+        adjust(minChunkSize, "rejected by intermediary as too small");
+      }
+      else if (!(ex instanceof OSCIErrorException))
+        chunkFailed(bytes);
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Liefert die geschätzte feste Latenz je Chunk.
+   *
+   * @return Latenz in Millisekunden oder -1, wenn noch nicht bestimmt
+   */
+  public long getLatency()
+  {
+    lock.lock();
+
+    try
+    {
+      return Double.isNaN(latency) ? -1 : Math.round(latency * 1000);
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Liefert den geschätzten Durchsatz.
+   *
+   * @return Durchsatz in Byte je Sekunde oder -1, wenn noch nicht bestimmt
+   */
+  public long getThroughput()
+  {
+    lock.lock();
+
+    try
+    {
+      return Double.isNaN(throughput) ? -1 : Math.round(throughput);
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Liefert die abklingend gewichtete Fehlerrate der Übertragungen.
+   *
+   * @return Fehlerrate zwischen 0 und 1
+   */
+  public double getFailureRate()
+  {
+    lock.lock();
+
+    try
+    {
+      return failureRate;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    lock.lock();
+
+    try
+    {
+      return "ChunkSizeController[chunkSize=" + chunkSize + " KB, limits=" + minChunkSize + ".."
+             + maxChunkSize + " KB, latency=" + getLatency() + " ms, throughput=" + getThroughput()
+             + " B/s, failureRate=" + Math.round(failureRate * 100) + "%]";
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  private void estimate()
+  {
+    double mx = sx / sw;
+    double my = sy / sw;
+    double var = sxx / sw - mx * mx;
+    double cov = sxy / sw - mx * my;
+
+    // Ohne ausreichend unterschiedliche Größen ist die Latenz nicht von der Übertragungszeit zu trennen. Eine
+    // bereits geschätzte Latenz bleibt erhalten, sonst würde die Größe bei gleichbleibenden Chunks erneut
+    // verdoppelt
+    if ((sw < 2) || (var <= 0.01 * mx * mx) || (cov <= 0))
+    {
+      if (!Double.isNaN(latency) && (my > latency))
+        throughput = mx / (my - latency);
+      else
+      {
+        latency = Double.NaN;
+        throughput = sx / sy;
+      }
+
+      return;
+    }
+
+    double secondsPerByte = cov / var;
+    latency = Math.max(0, my - secondsPerByte * mx);
+    throughput = 1 / secondsPerByte;
+  }
+
+  private void adjust(long target, String reason)
+  {
+    long previous = chunkSize;
+    chunkSize = Math.max(minChunkSize, Math.min(maxChunkSize, target));
+
+    if (chunkSize != previous)
+      log.info("Chunk size " + previous + " -> " + chunkSize + " KB (" + reason + ")");
+    else if (log.isDebugEnabled())
+      log.debug("Chunk size " + chunkSize + " KB kept (" + reason + ")");
+  }
+}
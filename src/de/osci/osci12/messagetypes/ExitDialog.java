@@ -3,6 +3,8 @@ package de.osci.osci12.messagetypes;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import de.osci.helper.Tools;
 import de.osci.osci12.OSCIException;
@@ -77,6 +79,19 @@ public class ExitDialog extends OSCIRequest
     return (ResponseToExitDialog) transmit(null, null);
   }
 
+  /**
+   * Versendet die Nachricht asynchron über den übergebenen Executor, siehe
+   * {@link OSCIRequest#transmitAsync(java.io.OutputStream, java.io.OutputStream, Executor)}.
+   *
+   * @param executor Executor für die Verarbeitungsschritte
+   * @return Future mit dem Antwortnachricht-Objekt
+   * @see #send()
+   */
+  public CompletableFuture<ResponseToExitDialog> sendAsync(Executor executor)
+  {
+    return transmitAsync(null, null, executor).thenApply(rsp -> (ResponseToExitDialog)rsp);
+  }
+
   /**
    * undocumented
    *
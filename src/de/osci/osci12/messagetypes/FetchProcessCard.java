@@ -3,6 +3,8 @@ package de.osci.osci12.messagetypes;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import de.osci.helper.Tools;
 import de.osci.osci12.OSCIException;
@@ -110,6 +112,38 @@ public class FetchProcessCard extends OSCIRequest
     return (ResponseToFetchProcessCard) transmit(storeOutput, storeInput);
   }
 
+  /**
+   * Versendet die Nachricht asynchron über den übergebenen Executor, siehe
+   * {@link OSCIRequest#transmitAsync(OutputStream, OutputStream, Executor)}.
+   *
+   * @param executor Executor für die Verarbeitungsschritte
+   * @return Future mit dem Antwortnachricht-Objekt
+   * @see #send()
+   */
+  public CompletableFuture<ResponseToFetchProcessCard> sendAsync(Executor executor)
+  {
+    return transmitAsync(null, null, executor).thenApply(rsp -> (ResponseToFetchProcessCard)rsp);
+  }
+
+  /**
+   * Versendet die Nachricht asynchron wie {@link #sendAsync(Executor)}. Die aus- und eingehenden Daten werden
+   * zusätzlich in die übergebenen Streams geschrieben (unverschlüsselte Auftragsdaten). Diese Parameter dürfen
+   * null sein.
+   *
+   * @param storeOutput Stream, in den die versendete Nachricht geschrieben wird
+   * @param storeInput Stream, in den die empfangene Antwortnachricht geschrieben wird
+   * @param executor Executor für die Verarbeitungsschritte
+   * @return Future mit dem Antwortnachricht-Objekt
+   * @see #send(OutputStream, OutputStream)
+   * @see #sendAsync(Executor)
+   */
+  public CompletableFuture<ResponseToFetchProcessCard> sendAsync(OutputStream storeOutput,
+                                                                 OutputStream storeInput,
+                                                                 Executor executor)
+  {
+    return transmitAsync(storeOutput, storeInput, executor).thenApply(rsp -> (ResponseToFetchProcessCard)rsp);
+  }
+
   /**
    * Setzt die Auswahlregel für die abzuholende Nachricht. Der Inhalt des
    * übergebenen Strings hängt vom gewählten Auswahlmodus ab und kann
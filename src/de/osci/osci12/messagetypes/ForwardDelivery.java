@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import de.osci.helper.Tools;
 import de.osci.osci12.OSCIException;
@@ -136,6 +138,38 @@ public class ForwardDelivery extends OSCIRequest implements ContentPackageI
     return (ResponseToForwardDelivery) transmit(storeOutput, storeInput);
   }
 
+  /**
+   * Versendet die Nachricht asynchron über den übergebenen Executor, siehe
+   * {@link OSCIRequest#transmitAsync(OutputStream, OutputStream, Executor)}.
+   *
+   * @param executor Executor für die Verarbeitungsschritte
+   * @return Future mit dem Antwortnachricht-Objekt
+   * @see #send()
+   */
+  public CompletableFuture<ResponseToForwardDelivery> sendAsync(Executor executor)
+  {
+    return transmitAsync(null, null, executor).thenApply(rsp -> (ResponseToForwardDelivery)rsp);
+  }
+
+  /**
+   * Versendet die Nachricht asynchron wie {@link #sendAsync(Executor)}. Die aus- und eingehenden Daten werden
+   * zusätzlich in die übergebenen Streams geschrieben (unverschlüsselte Auftragsdaten). Diese Parameter dürfen
+   * null sein.
+   *
+   * @param storeOutput Stream, in den die versendete Nachricht geschrieben wird
+   * @param storeInput Stream, in den die empfangene Antwortnachricht geschrieben wird
+   * @param executor Executor für die Verarbeitungsschritte
+   * @return Future mit dem Antwortnachricht-Objekt
+   * @see #send(OutputStream, OutputStream)
+   * @see #sendAsync(Executor)
+   */
+  public CompletableFuture<ResponseToForwardDelivery> sendAsync(OutputStream storeOutput,
+                                                                OutputStream storeInput,
+                                                                Executor executor)
+  {
+    return transmitAsync(storeOutput, storeInput, executor).thenApply(rsp -> (ResponseToForwardDelivery)rsp);
+  }
+
   /**
    * Setzt die gewünschte Qualität des Zeitstempels, mit dem der Intermediär
    * den Eingang des Auftrags im Laufzettel protokolliert.
@@ -2,6 +2,8 @@ package de.osci.osci12.messagetypes;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import de.osci.helper.Tools;
 import de.osci.osci12.OSCIException;
@@ -83,6 +85,19 @@ public class GetMessageId extends OSCIRequest
     return (ResponseToGetMessageId) transmit(null, null);
   }
 
+  /**
+   * Versendet die Nachricht asynchron über den übergebenen Executor, siehe
+   * {@link OSCIRequest#transmitAsync(java.io.OutputStream, java.io.OutputStream, Executor)}.
+   *
+   * @param executor Executor für die Verarbeitungsschritte
+   * @return Future mit dem Antwortnachricht-Objekt
+   * @see #send()
+   */
+  public CompletableFuture<ResponseToGetMessageId> sendAsync(Executor executor)
+  {
+    return transmitAsync(null, null, executor).thenApply(rsp -> (ResponseToGetMessageId)rsp);
+  }
+
   /**
    * undocumented
    *
@@ -23,8 +23,12 @@ import org.xml.sax.XMLReader;
 
 import de.osci.helper.Base64InputStream;
 import de.osci.helper.Canonizer;
+import de.osci.helper.FlightRecorderEvents;
+import de.osci.helper.FlightRecorderEvents.EventType;
+import de.osci.helper.FlightRecorderEvents.Span;
 import de.osci.helper.MIMEParser;
 import de.osci.helper.MIMEPartInputStream;
+import de.osci.helper.MeteredInputStream;
 import de.osci.helper.ParserHelper;
 import de.osci.helper.StoreInputStream;
 import de.osci.helper.SymCipherInputStream;
@@ -32,6 +36,9 @@ import de.osci.osci12.OSCIException;
 import de.osci.osci12.common.Constants;
 import de.osci.osci12.common.Constants.OSCIFeatures;
 import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.MessageMetrics;
+import de.osci.osci12.common.MessageMetrics.Phase;
+import de.osci.osci12.common.OSCIConfig;
 import de.osci.osci12.common.OSCIErrorException;
 import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
 import de.osci.osci12.common.SoapClientException;
@@ -102,7 +109,9 @@ abstract class IncomingMSGParser
       if (log.isDebugEnabled())
         log.debug("Aktivierung des SAXParsers. ");
 
-      reader.parse(new InputSource(builder.hashNCanStream));
+      // Das Warten auf den kanonisierenden Thread zählt nicht zum Parsen
+      reader.parse(new InputSource(MeteredInputStream.wrap(builder.hashNCanStream, MessageMetrics.current(),
+                                                           null)));
 
       if (builder.hashNCanStream.getCanException() != null)
         throw new IOException();
@@ -171,7 +180,24 @@ abstract class IncomingMSGParser
   OSCIMessage parseStream(InputStream in, DialogHandler dial, boolean request, OutputStream storeStream)
     throws IOException, OSCIException, NoSuchAlgorithmException
   {
-    return parseStream(in, dial, request, false, storeStream);
+    Span event = FlightRecorderEvents.begin(EventType.MESSAGE_PARSE);
+    // Ohne Dialog (eingehende Aufträge beim Supplier) gilt die bereits gebundene bzw. globale Konfiguration
+    OSCIConfig config = (dial == null) ? OSCIConfig.current() : dial.getConfig();
+
+    OSCIConfig.Scope scope = config.bind();
+
+    try
+    {
+      OSCIMessage msg = parseStream(event.count(in), dial, request, false, storeStream);
+      event.setMessageId(msg.messageId);
+      event.setMessageType(msg.getClass().getSimpleName());
+      return msg;
+    }
+    finally
+    {
+      scope.close();
+      event.commit();
+    }
   }
 
   OSCIMessage parseStream(InputStream in,
@@ -303,14 +329,30 @@ abstract class IncomingMSGParser
         inKey.close();
 
         byte[] decryptedKey;
-        if (ed.getKeyInfo().getEncryptedKeys()[0].getEncryptionMethodAlgorithm()
-                                                 .equals(Constants.ASYMMETRIC_CIPHER_ALGORITHM_RSA_OAEP))
-          decryptedKey = role.getDecrypter()
-                             .decrypt(bos.toByteArray(),
-                                      ed.getKeyInfo().getEncryptedKeys()[0].mgfAlgorithm,
-                                      ed.getKeyInfo().getEncryptedKeys()[0].digestAlgorithm);
-        else
-          decryptedKey = role.getDecrypter().decrypt(bos.toByteArray());
+        MessageMetrics metrics = MessageMetrics.current();
+        Span event = FlightRecorderEvents.begin(EventType.RSA_KEY_TRANSPORT);
+        event.setOperation("unwrap");
+        event.setAlgorithm(ed.getKeyInfo().getEncryptedKeys()[0].getEncryptionMethodAlgorithm());
+        event.setBytes(bos.size());
+
+        MessageMetrics.Section section = MessageMetrics.enter(metrics, Phase.DECRYPT);
+
+        try
+        {
+          if (ed.getKeyInfo().getEncryptedKeys()[0].getEncryptionMethodAlgorithm()
+                                                   .equals(Constants.ASYMMETRIC_CIPHER_ALGORITHM_RSA_OAEP))
+            decryptedKey = role.getDecrypter()
+                               .decrypt(bos.toByteArray(),
+                                        ed.getKeyInfo().getEncryptedKeys()[0].mgfAlgorithm,
+                                        ed.getKeyInfo().getEncryptedKeys()[0].digestAlgorithm);
+          else
+            decryptedKey = role.getDecrypter().decrypt(bos.toByteArray());
+        }
+        finally
+        {
+          section.close();
+          event.commit();
+        }
         InputStream input;
 
         // Zweite Bedingung f. Abwärtskompatibilität
@@ -338,7 +380,7 @@ abstract class IncomingMSGParser
         if (log.isDebugEnabled())
           log.debug("#################### Encrypted OSCI-Msg wurde komplett verarbeitet, nun wird der Transportumschlag geöffnet und die eigentliche OSCI-Nachricht betrachtet ####################");
 
-        msg = parseStream(cin, dial, request, true, storeStream);
+        msg = parseStream(MeteredInputStream.wrap(cin, metrics, Phase.DECRYPT), dial, request, true, storeStream);
         msg.setBase64Encoding(b64);
         msg.dialogHandler.setEncryption(true);
 
@@ -420,7 +462,18 @@ abstract class IncomingMSGParser
       // Nachrich signiert?
       if ((msg.dialogHandler.isCheckSignatures()) && (msg.signatureHeader != null))
       {
-        boolean sigErg = checkMsgHashes(msg);
+        boolean sigErg;
+
+        MessageMetrics.Section section = MessageMetrics.enter(MessageMetrics.current(), Phase.VERIFY);
+
+        try
+        {
+          sigErg = checkMsgHashes(msg);
+        }
+        finally
+        {
+          section.close();
+        }
 
         if (!sigErg)
         {
@@ -507,11 +560,7 @@ abstract class IncomingMSGParser
 
       java.security.Signature sg;
 
-      if (DialogHandler.getSecurityProvider() == null)
-        sg = java.security.Signature.getInstance(Constants.JCA_JCE_MAP.get(sig.signatureAlgorithm));
-      else
-        sg = java.security.Signature.getInstance(Constants.JCA_JCE_MAP.get(sig.signatureAlgorithm),
-                                                 DialogHandler.getSecurityProvider());
+      sg = Crypto.createSignature(sig.signatureAlgorithm);
 
       X509Certificate c;
 
@@ -528,13 +577,30 @@ abstract class IncomingMSGParser
         return false;
       }
 
-      sg.initVerify(c.getPublicKey());
-      sg.update(sig.getSignedInfoBytes());
+      Span event = FlightRecorderEvents.begin(EventType.SIGNATURE);
+      event.setOperation("verify");
+      event.setAlgorithm(sig.signatureAlgorithm);
+      event.setMessageId(msg.messageId);
+      event.setMessageType(msg.getClass().getSimpleName());
+      event.setBytes(sig.getSignedInfoBytes().length);
+      boolean valid;
 
-      if (log.isDebugEnabled())
-        log.debug("vor check signature" + new String(sig.getSignedInfoBytes()));
+      try
+      {
+        sg.initVerify(c.getPublicKey());
+        sg.update(sig.getSignedInfoBytes());
+
+        if (log.isDebugEnabled())
+          log.debug("vor check signature" + new String(sig.getSignedInfoBytes()));
+
+        valid = sg.verify(sig.signatureValue);
+      }
+      finally
+      {
+        event.commit();
+      }
 
-      if (!sg.verify(sig.signatureValue))
+      if (!valid)
         return false;
 
       if (log.isDebugEnabled())
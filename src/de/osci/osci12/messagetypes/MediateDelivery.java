@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import de.osci.helper.Tools;
 import de.osci.osci12.OSCIException;
@@ -123,6 +125,38 @@ public class MediateDelivery extends OSCIRequest implements ContentPackageI
     return (ResponseToMediateDelivery) transmit(storeOutput, storeInput);
   }
 
+  /**
+   * Versendet die Nachricht asynchron über den übergebenen Executor, siehe
+   * {@link OSCIRequest#transmitAsync(OutputStream, OutputStream, Executor)}.
+   *
+   * @param executor Executor für die Verarbeitungsschritte
+   * @return Future mit dem Antwortnachricht-Objekt
+   * @see #send()
+   */
+  public CompletableFuture<ResponseToMediateDelivery> sendAsync(Executor executor)
+  {
+    return transmitAsync(null, null, executor).thenApply(rsp -> (ResponseToMediateDelivery)rsp);
+  }
+
+  /**
+   * Versendet die Nachricht asynchron wie {@link #sendAsync(Executor)}. Die aus- und eingehenden Daten werden
+   * zusätzlich in die übergebenen Streams geschrieben (unverschlüsselte Auftragsdaten). Diese Parameter dürfen
+   * null sein.
+   *
+   * @param storeOutput Stream, in den die versendete Nachricht geschrieben wird
+   * @param storeInput Stream, in den die empfangene Antwortnachricht geschrieben wird
+   * @param executor Executor für die Verarbeitungsschritte
+   * @return Future mit dem Antwortnachricht-Objekt
+   * @see #send(OutputStream, OutputStream)
+   * @see #sendAsync(Executor)
+   */
+  public CompletableFuture<ResponseToMediateDelivery> sendAsync(OutputStream storeOutput,
+                                                                OutputStream storeInput,
+                                                                Executor executor)
+  {
+    return transmitAsync(storeOutput, storeInput, executor).thenApply(rsp -> (ResponseToMediateDelivery)rsp);
+  }
+
   /**
    * Fügt der Nachricht einen Inhaltsdatencontainer hinzu. Diese Methode
    * sollte erst aufgerufen werden, wenn der Container vollständig erstellt wurde.
@@ -349,6 +383,7 @@ public class MediateDelivery extends OSCIRequest implements ContentPackageI
   /**
    * Setzt die Message-ID der Nachricht.
    * @param messageId Message Id
+   * @see de.osci.osci12.common.MessageIdPool#take()
    */
   public void setMessageId(String messageId)
   {
@@ -249,9 +249,14 @@ class OSCIEnvelopeBuilder extends DefaultHandler
       }
       else
       {
-        log.error("Falsche OSCI-Nachricht. Nachrichtentyp nicht bekannt! Nachrichtentypt ist:\n" + schemaLocation +
-                  "\n" + (XSD_RSP_FETCH_PROCESS_CARD));
-        throw new SAXException(DialogHandler.text.getString("sax_exception_msgtype"));
+        childBuilder = createBuilder(schemaLocation);
+
+        if (childBuilder == null)
+        {
+          log.error("Falsche OSCI-Nachricht. Nachrichtentyp nicht bekannt! Nachrichtentypt ist:\n" + schemaLocation +
+                    "\n" + (XSD_RSP_FETCH_PROCESS_CARD));
+          throw new SAXException(DialogHandler.text.getString("sax_exception_msgtype"));
+        }
       }
 
       this.xmlReader.setContentHandler(childBuilder);
@@ -275,6 +280,19 @@ class OSCIEnvelopeBuilder extends DefaultHandler
     }
   }
 
+  /**
+   * Liefert einen Parser für Nachrichtentypen, die hier nicht behandelt werden (z.B. Aufträge an den
+   * Intermediär). Unterklassen können diese Methode überschreiben.
+   *
+   * @param schemaLocation Inhalt des Attributs xsi:schemaLocation
+   * @return Parser für die Nachricht oder <code>null</code>, wenn der Nachrichtentyp nicht unterstützt wird
+   * @throws NoSuchAlgorithmException wenn beim Anlegen des Nachrichtenobjekts ein Algorithmus fehlt
+   */
+  OSCIMessageBuilder createBuilder(String schemaLocation) throws NoSuchAlgorithmException
+  {
+    return null;
+  }
+
   /**
    * undocumented
    */
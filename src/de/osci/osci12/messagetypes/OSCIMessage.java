@@ -7,6 +7,7 @@ import de.osci.osci12.OSCIException;
 import de.osci.osci12.common.Constants;
 import de.osci.osci12.common.Constants.LanguageTextEntries;
 import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIConfig;
 import de.osci.osci12.encryption.Crypto;
 import de.osci.osci12.messageparts.Attachment;
 import de.osci.osci12.messageparts.Body;
@@ -77,7 +78,8 @@ public abstract class OSCIMessage
   public Hashtable<String, String> parsedMsgPartsIds;
   // private String signatureAlgorithm = DialogHandler.getSignatureAlgorithm();
 
-  private String digestAlgorithm = DialogHandler.getDigestAlgorithm();
+  // null: beim Signieren aus der Konfiguration des Dialogs
+  private String digestAlgorithm = null;
 
   /** Konstante, die einen undefinierten Nachrichtentyp anzeigt. */
   public static final int TYPE_UNDEFINED = 0;
@@ -878,6 +880,9 @@ public abstract class OSCIMessage
     if ((stateOfMsg & STATE_COMPOSED) == 0)
       compose();
 
+    if (digestAlgorithm == null)
+      digestAlgorithm = ((dialogHandler == null) ? OSCIConfig.current() : dialogHandler.getConfig()).getDigestAlgorithm();
+
     String name = "";
 
     if (this instanceof OSCIRequest)
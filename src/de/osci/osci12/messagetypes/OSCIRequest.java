@@ -1,16 +1,37 @@
 package de.osci.osci12.messagetypes;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.helper.FlightRecorderEvents;
+import de.osci.helper.FlightRecorderEvents.EventType;
+import de.osci.helper.FlightRecorderEvents.Span;
+import de.osci.helper.MeteredInputStream;
+import de.osci.helper.MeteredOutputStream;
+import de.osci.helper.PipelinedOutputStream;
 import de.osci.helper.StoreOutputStream;
+import de.osci.helper.TransferMonitor;
 import de.osci.osci12.OSCIException;
 import de.osci.osci12.common.Constants;
 import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.MessageMetrics;
+import de.osci.osci12.common.OSCIConfig;
+import de.osci.osci12.common.MessageMetrics.Phase;
 import de.osci.osci12.common.Constants.OSCIFeatures;
+import de.osci.osci12.extinterfaces.AsyncTransportI;
+import de.osci.osci12.extinterfaces.TransportI;
+import de.osci.osci12.messageparts.ChunkInformation;
 import de.osci.osci12.soapheader.DesiredLanguagesH;
 import de.osci.osci12.soapheader.FeatureDescriptionH;
 
@@ -30,7 +51,7 @@ import de.osci.osci12.soapheader.FeatureDescriptionH;
  */
 public abstract class OSCIRequest extends OSCIMessage
 {
-  //  private static Log log = LogFactory.getLog(OSCIRequest.class);
+  private static Log log = LogFactory.getLog(OSCIRequest.class);
   protected java.net.URI uriReceiver;
 
   // todo: falls ein statisches Parserobjekt unperformant ist, evtl. eine getInstance()-Methode in den Parser einbauen
@@ -81,81 +102,538 @@ public abstract class OSCIRequest extends OSCIMessage
                                  OSCIException,
                                  NoSuchAlgorithmException
   {
-    de.osci.osci12.extinterfaces.TransportI transport;
+    TransportI transport = newTransport();
+    URI uri = getReceiverUri();
+    MessageMetrics metrics = startMetrics();
+    OSCIMessage rsp = null;
+
+    OSCIConfig.Scope scope = dialogHandler.getConfig().bind();
+
+    try
+    {
+      prepareTransmission(metrics);
+
+      OutputStream out = null;
+      dialogHandler.fireEvent(Constants.EVENT_SEND_MSG);
 
-    synchronized (dialogHandler.getTransportModule())
+      try
+      {
+        SOAPMessageEncrypted sme = createEncryptedMessage(outp, metrics);
+        out = connect(transport, uri, calcTransmissionLength(transport, sme, metrics), metrics);
+        writeTransmission(sme, out, outp, metrics);
+      }
+      finally
+      {
+        if (out != null)
+          out.close();
+        if (outp != null)
+          outp.close();
+      }
+      dialogHandler.fireEvent(Constants.EVENT_RECEIVE_MSG);
+
+      InputStream in = null;
+
+      try
+      {
+        in = receive(transport, metrics);
+        rsp = parseResponse(in, inp, metrics);
+        return rsp;
+      }
+      finally
+      {
+        if (in != null)
+          in.close();
+        if (inp != null)
+          inp.close();
+      }
+    }
+    finally
+    {
+      scope.close();
+      finishMetrics(metrics, rsp);
+    }
+  }
+
+  /**
+   * Asynchrone Variante von {@link #transmit(OutputStream, OutputStream)}, auf der die sendAsync-Methoden der
+   * Auftragsklassen beruhen. Zusammenstellen, Signieren, Verschlüsseln und Parsen werden über den übergebenen
+   * Executor ausgeführt. Implementiert das Transportmodul {@link AsyncTransportI}, werden Verbindungsaufbau
+   * und Empfang der Antwort nicht-blockierend abgewickelt, ansonsten ebenfalls über den Executor.
+   * <p>
+   * Das zurückgegebene Future wird mit der Antwortnachricht abgeschlossen, im Fehlerfall mit der beim Aufbau
+   * oder Versand aufgetretenen IOException, OSCIException bzw. NoSuchAlgorithmException. Fehlermeldungen vom
+   * Intermediär müssen dem Feedback der Antwortnachricht entnommen werden.
+   * </p>
+   *
+   * @param outp Stream, in den die versendete Nachricht geschrieben wird, darf null sein
+   * @param inp Stream, in den die empfangene Antwortnachricht geschrieben wird, darf null sein
+   * @param executor Executor für die Verarbeitungsschritte
+   * @return Future mit der Antwortnachricht
+   */
+  protected CompletableFuture<OSCIMessage> transmitAsync(OutputStream outp,
+                                                         OutputStream inp,
+                                                         Executor executor)
+  {
+    if (executor == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_thirdargument") + "null");
+
+    final CompletableFuture<OSCIMessage> result = new CompletableFuture<OSCIMessage>();
+    final TransportI transport;
+    final URI uri;
+
+    try
     {
-      transport = dialogHandler.getTransportModule().newInstance();
+      transport = newTransport();
+      uri = getReceiverUri();
     }
+    catch (Exception ex)
+    {
+      result.completeExceptionally(ex);
+      return result;
+    }
+
+    final SOAPMessageEncrypted[] sme = new SOAPMessageEncrypted[1];
+    final MessageMetrics metrics = startMetrics();
+    // Die Verarbeitungsschritte laufen in Threads des Executors, die Konfiguration wird jeweils gebunden
+    final OSCIConfig config = dialogHandler.getConfig();
+
+    CompletableFuture<Long> prepared = CompletableFuture.supplyAsync(() -> {
+      OSCIConfig.Scope scope = config.bind();
+
+      try
+      {
+        prepareTransmission(metrics);
+        dialogHandler.fireEvent(Constants.EVENT_SEND_MSG);
+        sme[0] = createEncryptedMessage(outp, metrics);
+        return calcTransmissionLength(transport, sme[0], metrics);
+      }
+      catch (Exception ex)
+      {
+        throw new CompletionException(ex);
+      }
+      finally
+      {
+        scope.close();
+      }
+    }, executor);
+
+    CompletableFuture<OutputStream> connected = prepared.thenCompose(length -> {
+      if (transport instanceof AsyncTransportI)
+      {
+        long begin = System.nanoTime();
+        return ((AsyncTransportI)transport).getConnectionAsync(uri, length, executor).thenApply(out -> {
+          addElapsed(metrics, Phase.UPLOAD, begin);
+          return monitorUpload(out, length, metrics);
+        });
+      }
+
+      return CompletableFuture.supplyAsync(() -> {
+        OSCIConfig.Scope scope = config.bind();
+
+        try
+        {
+          return connect(transport, uri, length, metrics);
+        }
+        catch (IOException ex)
+        {
+          throw new CompletionException(ex);
+        }
+        finally
+        {
+          scope.close();
+        }
+      }, executor);
+    });
+
+    CompletableFuture<Void> sent = connected.thenAcceptAsync(out -> {
+      OSCIConfig.Scope scope = config.bind();
+
+      try
+      {
+        try
+        {
+          writeTransmission(sme[0], out, outp, metrics);
+        }
+        finally
+        {
+          out.close();
+        }
+
+        dialogHandler.fireEvent(Constants.EVENT_RECEIVE_MSG);
+      }
+      catch (Exception ex)
+      {
+        throw new CompletionException(ex);
+      }
+      finally
+      {
+        scope.close();
+      }
+    }, executor);
+
+    CompletableFuture<InputStream> received = sent.thenCompose(v -> {
+      if (transport instanceof AsyncTransportI)
+      {
+        long begin = System.nanoTime();
+        return ((AsyncTransportI)transport).getResponseStreamAsync(executor).thenApply(in -> {
+          addElapsed(metrics, Phase.SERVER_WAIT, begin);
+          return monitorDownload(in, transport, metrics);
+        });
+      }
+
+      return CompletableFuture.supplyAsync(() -> {
+        OSCIConfig.Scope scope = config.bind();
+
+        try
+        {
+          return receive(transport, metrics);
+        }
+        catch (IOException ex)
+        {
+          throw new CompletionException(ex);
+        }
+        finally
+        {
+          scope.close();
+        }
+      }, executor);
+    });
+
+    received.thenApplyAsync(in -> {
+      OSCIConfig.Scope scope = config.bind();
+
+      try
+      {
+        try
+        {
+          return parseResponse(in, inp, metrics);
+        }
+        finally
+        {
+          in.close();
+        }
+      }
+      catch (Exception ex)
+      {
+        throw new CompletionException(ex);
+      }
+      finally
+      {
+        scope.close();
+      }
+    }, executor).whenComplete((rsp, ex) -> {
+      closeQuietly(outp);
+      closeQuietly(inp);
+      finishMetrics(metrics, (ex == null) ? rsp : null);
+
+      if (ex == null)
+        result.complete(rsp);
+      else
+        result.completeExceptionally(unwrap(ex));
+    });
+
+    return result;
+  }
+
+  private TransportI newTransport() throws IOException
+  {
+    return dialogHandler.getTransportFactory().create();
+  }
 
+  private URI getReceiverUri()
+  {
     boolean intermed = ((this instanceof AcceptDelivery) || (this instanceof ProcessDelivery));
-    URI uri;
 
     if (!intermed)
-      uri = ((de.osci.osci12.roles.Intermed) dialogHandler.getSupplier()).getUri();
+      return ((de.osci.osci12.roles.Intermed) dialogHandler.getSupplier()).getUri();
     else
-      uri = uriReceiver;
+      return uriReceiver;
+  }
 
+  private void prepareTransmission(MessageMetrics metrics) throws IOException, OSCIException,
+    NoSuchAlgorithmException
+  {
     dialogHandler.fireEvent(Constants.EVENT_CONNECT);
+
+    MessageMetrics.Section composeSection = MessageMetrics.enter(metrics, Phase.COMPOSE);
+
+    try
+    {
+      if ((stateOfMsg & STATE_COMPOSED) == 0)
+        compose();
+    }
+    finally
+    {
+      composeSection.close();
+    }
+
     dialogHandler.fireEvent(Constants.EVENT_SIGN_MSG);
 
     if (dialogHandler.isCreateSignatures())
-      sign();
+    {
+      MessageMetrics.Section signSection = MessageMetrics.enter(metrics, Phase.SIGN);
+
+      try
+      {
+        sign();
+      }
+      finally
+      {
+        signSection.close();
+      }
+    }
+  }
+
+  private SOAPMessageEncrypted createEncryptedMessage(OutputStream outp, MessageMetrics metrics)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    if (!dialogHandler.isEncryption())
+      return null;
+
+    MessageMetrics.Section section = MessageMetrics.enter(metrics, Phase.ENCRYPT);
+
+    try
+    {
+      SOAPMessageEncrypted sme = new SOAPMessageEncrypted(this, outp);
+      sme.metrics = metrics;
+      return sme;
+    }
+    finally
+    {
+      section.close();
+    }
+  }
+
+  private long calcTransmissionLength(TransportI transport, SOAPMessageEncrypted sme, MessageMetrics metrics)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    // Ohne Längenangabe entfällt der zusätzliche Serialisierungsdurchlauf
+    if (transport.isChunkedTransferSupported())
+      return -1;
 
-    OutputStream out = null;
-    dialogHandler.fireEvent(Constants.EVENT_SEND_MSG);
+    MessageMetrics.Section section = MessageMetrics.enter(metrics, Phase.CALC_LENGTH);
 
     try
     {
-    	if (dialogHandler.isEncryption())
-    	{
-    		SOAPMessageEncrypted sme = new SOAPMessageEncrypted(this, outp);
-    		out = transport.getConnection(uri, sme.calcLength());
-    		sme.writeXML(out);
-    	}
-    	else
-    	{
-    		out = transport.getConnection(uri, calcLength());
-
-    		if (outp != null)
-    		{
-    			StoreOutputStream sos = new StoreOutputStream(out, outp);
-    			writeXML(sos);
-    			sos.close();
-    		}
-    		else
-    			writeXML(out);
-    	}
+      if (sme != null)
+        return sme.calcLength();
+
+      return calcLength();
     }
     finally
     {
-    	if (out != null)
-    		out.close();
-    	if (outp != null)
-    	  outp.close();
+      section.close();
     }
-    dialogHandler.fireEvent(Constants.EVENT_RECEIVE_MSG);
+  }
+
+  private OutputStream connect(TransportI transport, URI uri, long length, MessageMetrics metrics)
+    throws IOException
+  {
+    MessageMetrics.Section section = MessageMetrics.enter(metrics, Phase.UPLOAD);
+
+    try
+    {
+      return monitorUpload(transport.getConnection(uri, length), length, metrics);
+    }
+    finally
+    {
+      section.close();
+    }
+  }
 
-    InputStream in = null;
+  private InputStream receive(TransportI transport, MessageMetrics metrics) throws IOException
+  {
+    MessageMetrics.Section section = MessageMetrics.enter(metrics, Phase.SERVER_WAIT);
+
+    try
+    {
+      return monitorDownload(transport.getResponseStream(), transport, metrics);
+    }
+    finally
+    {
+      section.close();
+    }
+  }
+
+  private OutputStream monitorUpload(OutputStream out, long length, MessageMetrics metrics)
+  {
+    out = TransferMonitor.wrap(out, dialogHandler, Constants.EVENT_SEND_MSG, length);
+    return MeteredOutputStream.wrap(out, metrics, Phase.UPLOAD);
+  }
+
+  private InputStream monitorDownload(InputStream in, TransportI transport, MessageMetrics metrics)
+  {
+    if (TransferMonitor.isMonitored(dialogHandler))
+    {
+      long length = -1;
+
+      try
+      {
+        length = transport.getContentLength();
+      }
+      catch (UnsupportedOperationException ex)
+      {
+        log.debug("Content length not provided by transport module.");
+      }
+
+      in = TransferMonitor.wrap(in, dialogHandler, Constants.EVENT_RECEIVE_MSG, length);
+    }
+
+    return MeteredInputStream.wrap(in, metrics, Phase.DOWNLOAD);
+  }
+
+  private void writeTransmission(SOAPMessageEncrypted sme, OutputStream out, OutputStream outp,
+                                 MessageMetrics metrics)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    MessageMetrics.Section section = MessageMetrics.enter(metrics, Phase.SERIALIZE);
+
+    try
+    {
+      OSCIConfig config = dialogHandler.getConfig();
+
+      if (config.getPipelineDepth() == 0)
+      {
+        writeStages(sme, out, outp);
+        return;
+      }
+
+      // Das Schreiben in die Verbindung läuft als eigene Stufe, die Verbindung selbst wird vom Aufrufer
+      // geschlossen
+      PipelinedOutputStream pipe = new PipelinedOutputStream(out, config.getPipelineDepth(),
+                                                             config.getPipelineBufferSize(),
+                                                             config.getPipelineExecutor());
+
+      try
+      {
+        writeStages(sme, MeteredOutputStream.wrap(new FinishingOutputStream(pipe), metrics, null), outp);
+        pipe.finish();
+      }
+      finally
+      {
+        pipe.abort();
+      }
+    }
+    finally
+    {
+      section.close();
+    }
+  }
+
+  private void writeStages(SOAPMessageEncrypted sme, OutputStream out, OutputStream outp)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    if (sme != null)
+      sme.writeXML(out);
+    else if (outp != null)
+    {
+      StoreOutputStream sos = new StoreOutputStream(out, outp);
+      writeXML(sos);
+      sos.close();
+    }
+    else
+      writeXML(out);
+  }
+
+  private OSCIMessage parseResponse(InputStream in, OutputStream inp, MessageMetrics metrics)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
     OSCIMessage rsp;
 
+    MessageMetrics.Section section = MessageMetrics.enter(metrics, Phase.PARSE);
+
     try
     {
-      in = transport.getResponseStream();
       rsp = parser.parseStream(in, dialogHandler, false, inp);
-      dialogHandler.fireEvent(Constants.EVENT_ACTION_COMPLETE);
     }
     finally
     {
-      if (in != null)
-        in.close();
-      if (inp != null)
-        inp.close();
+      section.close();
     }
 
+    dialogHandler.fireEvent(Constants.EVENT_ACTION_COMPLETE);
+
     return rsp;
   }
 
+  private MessageMetrics startMetrics()
+  {
+    Span transferEvent = Span.NONE;
+    ChunkInformation chunk = null;
+
+    if (this instanceof PartialStoreDelivery)
+      chunk = ((PartialStoreDelivery)this).getChunkInformation();
+    else if (this instanceof PartialFetchDelivery)
+      chunk = ((PartialFetchDelivery)this).getChunkInformation();
+
+    if (chunk != null)
+    {
+      transferEvent = FlightRecorderEvents.begin(EventType.CHUNK_TRANSFER);
+      transferEvent.setChunk(chunk.getChunkNumber(), chunk.getTotalChunkNumbers());
+    }
+
+    return MessageMetrics.start(dialogHandler, getClass().getSimpleName(), messageId, transferEvent);
+  }
+
+  private static void addElapsed(MessageMetrics metrics, Phase phase, long begin)
+  {
+    if (metrics != null)
+      metrics.add(phase, System.nanoTime() - begin, 0);
+  }
+
+  private static void finishMetrics(MessageMetrics metrics, OSCIMessage rsp)
+  {
+    if (metrics != null)
+      metrics.finish((rsp == null) ? null : rsp.getClass().getSimpleName());
+  }
+
+  private static void closeQuietly(OutputStream stream)
+  {
+    if (stream == null)
+      return;
+
+    try
+    {
+      stream.close();
+    }
+    catch (IOException ex)
+    {
+      log.debug("Closing stream failed.", ex);
+    }
+  }
+
+  /**
+   * Sicht auf die Pipeline zur Verbindung, bei der close() nur die restlichen Daten übergibt. Die Verbindung
+   * selbst wird wie bisher nach dem Schreiben vom Aufrufer geschlossen.
+   */
+  private static class FinishingOutputStream extends FilterOutputStream
+  {
+    FinishingOutputStream(PipelinedOutputStream out)
+    {
+      super(out);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      ((PipelinedOutputStream)out).finish();
+    }
+  }
+
+  private static Throwable unwrap(Throwable ex)
+  {
+    while (((ex instanceof CompletionException) || (ex instanceof UncheckedIOException)) && (ex.getCause() != null))
+      ex = ex.getCause();
+
+    return ex;
+  }
+
   /**
    * Bringt eine Client-Signatur an.
    * @throws IOException bei Schreib-/Leseproblemen
@@ -0,0 +1,822 @@
+package de.osci.osci12.messagetypes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.helper.BackgroundTasks;
+import de.osci.osci12.OSCIException;
+import de.osci.osci12.common.Constants;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.DialogPool;
+import de.osci.osci12.common.OSCIErrorException;
+import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
+import de.osci.osci12.encryption.Crypto;
+import de.osci.osci12.messageparts.ChunkInformation;
+import de.osci.osci12.messageparts.ChunkInformation.CheckInstance;
+import de.osci.osci12.messagetypes.PartialTransferJournal.Checkpoint;
+
+
+/**
+ * Holt eine Zustellung mit PartialFetchDelivery ab und fordert die Chunks dabei gleichzeitig über mehrere
+ * Dialoge eines DialogPools an. Die Chunks werden in ihrer Reihenfolge zu einem Stream zusammengesetzt, aus
+ * dem die ResponseToFetchDelivery im aufrufenden Thread geparst wird, während spätere Chunks noch
+ * übertragen werden. Die Antwort muss so weder vollständig zwischengespeichert werden, noch wartet der
+ * Client vor jedem Chunk auf die Antwort zum vorherigen.
+ * <p>
+ * Der erste Chunk wird allein angefordert, seine Antwort liefert die Anzahl der Chunks. Danach werden
+ * höchstens so viele Chunks im Voraus angefordert, wie das eingestellte Fenster zulässt; gezählt wird ab dem
+ * Chunk, der gerade gelesen wird. Der letzte Chunk wird erst angefordert, wenn alle übrigen vorliegen, da
+ * der Intermediär die Abholung damit abschließt. Chunks werden ausschließlich über die Message-ID
+ * ausgewählt, damit jeder Dialog dieselbe Zustellung erhält.
+ * </p>
+ * <p>
+ * Schlägt die Übertragung eines Chunks fehl, wird der Dialog verworfen und der Chunk bis zu der
+ * eingestellten Anzahl von Wiederholungen erneut angefordert. Fehlermeldungen des Intermediärs zu einem
+ * Chunk brechen die Abholung mit einer OSCIErrorException ab.
+ * </p>
+ * <p>
+ * Mit einem {@link PartialTransferJournal} werden die Chunks in eine lokale Datei geschrieben und im Journal
+ * vermerkt. Eine abgebrochene Abholung wird mit demselben Aufruf fortgesetzt; angefordert werden nur die
+ * fehlenden Chunks, die vorhandenen werden beim Lesen gegen ihre Hashwerte geprüft.
+ * </p>
+ * <pre>
+ * PartialFetchDeliveryAssembler assembler = new PartialFetchDeliveryAssembler(pool, 1000, 4);
+ * ResponseToFetchDelivery rsp = assembler.fetch(messageId);
+ * </pre>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see PartialFetchDelivery
+ * @see DialogPool
+ */
+public class PartialFetchDeliveryAssembler
+{
+  private static Log log = LogFactory.getLog(PartialFetchDeliveryAssembler.class);
+
+  /** Voreinstellung für die Anzahl der Wiederholungen eines fehlgeschlagenen Chunks. */
+  public static final int DEFAULT_MAX_RETRIES = 3;
+
+  private final DialogPool pool;
+
+  private final long chunkSize;
+
+  private final int window;
+
+  private final Executor executor;
+
+  private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+
+  private volatile ChunkSizeController controller;
+
+  private final LongAdder fetchedChunks = new LongAdder();
+
+  private final LongAdder retries = new LongAdder();
+
+  /**
+   * Legt einen Assembler an, der die Chunks über einen bibliotheksinternen Thread-Pool anfordert.
+   *
+   * @param pool Pool expliziter Dialoge des Empfängers; er sollte mindestens <code>window</code> Dialoge
+   *          zulassen
+   * @param chunkSize Größe eines Chunks in KB
+   * @param window maximale Anzahl im Voraus angeforderter Chunks
+   */
+  public PartialFetchDeliveryAssembler(DialogPool pool, long chunkSize, int window)
+  {
+    this(pool, chunkSize, window, null);
+  }
+
+  /**
+   * Legt einen Assembler an.
+   *
+   * @param pool Pool expliziter Dialoge des Empfängers; er sollte mindestens <code>window</code> Dialoge
+   *          zulassen
+   * @param chunkSize Größe eines Chunks in KB
+   * @param window maximale Anzahl im Voraus angeforderter Chunks
+   * @param executor Executor für die Anforderungen oder <code>null</code> für den bibliotheksinternen
+   *          Thread-Pool
+   */
+  public PartialFetchDeliveryAssembler(DialogPool pool, long chunkSize, int window, Executor executor)
+  {
+    if (pool == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + " null");
+    if (chunkSize <= 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_secondargument") + chunkSize);
+    if (window < 1)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_thirdargument") + window);
+
+    this.pool = pool;
+    this.chunkSize = chunkSize;
+    this.window = window;
+    this.executor = (executor == null) ? BackgroundTasks.executor() : executor;
+  }
+
+  /**
+   * Liefert die Anzahl der Wiederholungen eines fehlgeschlagenen Chunks.
+   *
+   * @return Anzahl der Wiederholungen
+   */
+  public int getMaxRetries()
+  {
+    return maxRetries;
+  }
+
+  /**
+   * Setzt die Anzahl der Wiederholungen eines fehlgeschlagenen Chunks.
+   *
+   * @param maxRetries Anzahl der Wiederholungen, 0 für keine Wiederholung
+   * @see #DEFAULT_MAX_RETRIES
+   */
+  public void setMaxRetries(int maxRetries)
+  {
+    if (maxRetries < 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + maxRetries);
+
+    this.maxRetries = maxRetries;
+  }
+
+  /**
+   * Liefert den Controller für die Chunkgröße.
+   *
+   * @return Controller oder <code>null</code>
+   */
+  public ChunkSizeController getChunkSizeController()
+  {
+    return controller;
+  }
+
+  /**
+   * Setzt einen Controller, der die Chunkgröße jeder Abholung festlegt und dem die Laufzeiten der Chunks
+   * gemeldet werden. Ohne Controller gilt die im Konstruktor übergebene Chunkgröße.
+   *
+   * @param controller Controller oder <code>null</code>
+   */
+  public void setChunkSizeController(ChunkSizeController controller)
+  {
+    this.controller = controller;
+  }
+
+  /**
+   * Holt die Zustellung mit der übergebenen Message-ID ab. Passt sie in einen Chunk oder meldet der
+   * Intermediär zum ersten Chunk einen Fehler, wird dessen Antwort unverändert geliefert; das Feedback ist
+   * dann wie bei FetchDelivery auszuwerten.
+   *
+   * @param messageId Message-ID der Zustellung
+   * @return Antwortnachricht mit der Zustellung
+   * @throws IOException bei Ein-/Ausgabefehlern, auch nach den Wiederholungen
+   * @throws OSCIException bei OSCI-Fehlern oder Fehlermeldungen des Intermediärs zu einem späteren Chunk
+   * @throws NoSuchAlgorithmException wenn ein benötigter Algorithmus nicht unterstützt wird
+   */
+  public ResponseToFetchDelivery fetch(String messageId)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    if (messageId == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + " null");
+
+    ChunkSizeController controller = this.controller;
+    long size = (controller == null) ? chunkSize : controller.getChunkSize();
+    ResponseToFetchAbstract first = fetchWithRetry(messageId, size, 1, new ArrayList<Integer>(), controller);
+
+    if (first instanceof ResponseToFetchDelivery)
+      return (ResponseToFetchDelivery)first;
+
+    ResponseToPartialFetchDelivery chunkRsp = (ResponseToPartialFetchDelivery)first;
+    Assembly assembly = new Assembly(messageId, size, chunkRsp.getChunkInformation().getTotalChunkNumbers(),
+                                     controller, null, null);
+    assembly.complete(1, chunkRsp.getChunkBlob());
+    return assembly.parse();
+  }
+
+  /**
+   * Holt die Zustellung mit der übergebenen Message-ID ab und legt die Chunks in einer lokalen Datei ab. Der
+   * Fortschritt wird im Journal festgehalten; ist die Abholung dort bereits eingetragen, wird sie fortgesetzt
+   * und nur die fehlenden Chunks werden angefordert. Die Chunkgröße ergibt sich dann aus dem Journal. Nach dem
+   * Abschluss wird die Datei gelöscht.
+   *
+   * @param messageId Message-ID der Zustellung
+   * @param journal Journal der Übertragungen
+   * @param target lokale Datei für die Chunks
+   * @return Antwortnachricht mit der Zustellung
+   * @throws IOException bei Ein-/Ausgabefehlern, auch nach den Wiederholungen, oder wenn der Plan oder die
+   *           lokalen Daten vom Journal abweichen
+   * @throws OSCIException bei OSCI-Fehlern oder Fehlermeldungen des Intermediärs zu einem späteren Chunk
+   * @throws NoSuchAlgorithmException wenn ein benötigter Algorithmus nicht unterstützt wird
+   * @see #fetch(String)
+   */
+  public ResponseToFetchDelivery fetch(String messageId, PartialTransferJournal journal, File target)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    if (messageId == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + " null");
+
+    ChunkSizeController controller = this.controller;
+    Checkpoint checkpoint = journal.getCheckpoint(messageId);
+    ResponseToPartialFetchDelivery first = null;
+
+    if (checkpoint == null)
+    {
+      long size = (controller == null) ? chunkSize : controller.getChunkSize();
+      ResponseToFetchAbstract rsp = fetchWithRetry(messageId, size, 1, new ArrayList<Integer>(), controller);
+
+      if (rsp instanceof ResponseToFetchDelivery)
+        return (ResponseToFetchDelivery)rsp;
+
+      first = (ResponseToPartialFetchDelivery)rsp;
+      checkpoint = journal.begin(messageId, size, first.getChunkInformation(), target);
+    }
+    else if ((checkpoint.getCheckInstance() != CheckInstance.ResponsePartialFetchDelivery)
+             || !checkpoint.getFile().equals(target.getAbsoluteFile()))
+      throw new IOException(DialogHandler.text.getString("partial_transfer_plan_mismatch") + " " + messageId);
+
+    ResponseToFetchDelivery rsp;
+
+    try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                                                StandardOpenOption.READ, StandardOpenOption.WRITE))
+    {
+      Assembly assembly = new Assembly(messageId, checkpoint.getChunkSize(), checkpoint.getTotalChunkNumbers(),
+                                       controller, checkpoint, channel);
+
+      if (first != null)
+        assembly.complete(1, assembly.store(1, first.getChunkBlob()));
+
+      rsp = assembly.parse();
+    }
+
+    checkpoint.finish();
+    return rsp;
+  }
+
+  /**
+   * Liefert die Anzahl der empfangenen Chunks.
+   *
+   * @return Anzahl
+   */
+  public long getFetchedChunks()
+  {
+    return fetchedChunks.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der wiederholten Anforderungen.
+   *
+   * @return Anzahl
+   */
+  public long getRetries()
+  {
+    return retries.sum();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "PartialFetchDeliveryAssembler[window=" + window + ", fetched=" + getFetchedChunks() + ", retries="
+           + getRetries() + "]";
+  }
+
+  /**
+   * Fordert einen Chunk mit PartialFetchDelivery an. Kann überschrieben werden, um die Nachricht vor dem
+   * Versand anzupassen. Fehlermeldungen des Intermediärs werden vom Aufrufer ausgewertet.
+   *
+   * @param dh DialogHandler des Dialogs
+   * @param messageId Message-ID der Zustellung
+   * @param chunkInformation ChunkInformation mit Chunkgröße, Nummer und bereits empfangenen Chunks
+   * @return Antwortnachricht
+   * @throws IOException bei Ein-/Ausgabefehlern
+   * @throws OSCIException bei OSCI-Fehlern
+   * @throws NoSuchAlgorithmException wenn ein benötigter Algorithmus nicht unterstützt wird
+   */
+  protected ResponseToFetchAbstract fetchChunk(DialogHandler dh, String messageId,
+                                               ChunkInformation chunkInformation)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    PartialFetchDelivery partialFetch = new PartialFetchDelivery(dh, chunkInformation);
+    partialFetch.setSelectionMode(OSCIMessage.SELECT_BY_MESSAGE_ID);
+    partialFetch.setSelectionRule(messageId);
+    return partialFetch.send();
+  }
+
+  private ResponseToFetchAbstract fetchWithRetry(String messageId, long size, int chunkNumber,
+                                                 List<Integer> received, ChunkSizeController controller)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    for ( int attempt = 0 ; ; attempt++ )
+    {
+      try (DialogPool.Lease lease = pool.acquire())
+      {
+        try
+        {
+          long start = System.nanoTime();
+          ResponseToFetchAbstract rsp = fetchChunk(lease.getDialogHandler(), messageId,
+                                                   new ChunkInformation(size, chunkNumber, received));
+          long nanos = System.nanoTime() - start;
+
+          if (rsp instanceof ResponseToPartialFetchDelivery)
+          {
+            String[][] feedback = rsp.getFeedback();
+
+            if ((feedback != null) && (feedback.length > 0) && !feedback[0][1].startsWith("0"))
+            {
+              OSCIErrorCodes code = OSCIErrorCodes.fromErrorCode(feedback[0][1]);
+              throw new OSCIErrorException((code == null) ? OSCIErrorCodes.InternalErrorSupplier : code, rsp);
+            }
+
+            // Nur volle Chunks sind als Messung verwertbar
+            ChunkInformation chunkInformation = ((ResponseToPartialFetchDelivery)rsp).getChunkInformation();
+
+            if ((controller != null) && (chunkNumber < chunkInformation.getTotalChunkNumbers()))
+              controller.chunkTransmitted(size * 1024, nanos);
+          }
+          else if (chunkNumber > 1)
+          {
+            String[][] feedback = rsp.getFeedback();
+            OSCIErrorCodes code = ((feedback != null) && (feedback.length > 0))
+              ? OSCIErrorCodes.fromErrorCode(feedback[0][1]) : null;
+            throw new OSCIErrorException((code == null) ? OSCIErrorCodes.InternalErrorSupplier : code, rsp);
+          }
+
+          fetchedChunks.increment();
+          return rsp;
+        }
+        catch (OSCIErrorException ex)
+        {
+          if (controller != null)
+            controller.chunkFailed(size * 1024, ex);
+
+          throw ex;
+        }
+        catch (IOException | OSCIException ex)
+        {
+          lease.invalidate();
+
+          if (controller != null)
+            controller.chunkFailed(size * 1024, ex);
+
+          if (attempt >= maxRetries)
+            throw ex;
+
+          log.warn("Fetching chunk " + chunkNumber + " failed, retrying.", ex);
+          retries.increment();
+        }
+      }
+    }
+  }
+
+  /**
+   * Zustand einer einzelnen Abholung
+   */
+  private final class Assembly
+  {
+    private final String messageId;
+
+    private final long size;
+
+    private final ChunkSizeController controller;
+
+    private final int totalChunks;
+
+    // Nur bei Abholungen mit Journal
+    private final Checkpoint checkpoint;
+
+    private final FileChannel channel;
+
+    // Index = Chunknummer, gelesene Chunks werden freigegeben
+    private final List<CompletableFuture<InputStream>> chunks;
+
+    private final List<Integer> received = new ArrayList<Integer>();
+
+    private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+    private final AssembledInputStream stream = new AssembledInputStream();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Nächster anzufordernder und gerade gelesener Chunk, geschützt durch lock
+    private int next = 1;
+
+    private int reading = 1;
+
+    Assembly(String messageId,
+             long size,
+             int totalChunks,
+             ChunkSizeController controller,
+             Checkpoint checkpoint,
+             FileChannel channel)
+      throws IOException
+    {
+      this.messageId = messageId;
+      this.size = size;
+      this.controller = controller;
+      this.totalChunks = totalChunks;
+      this.checkpoint = checkpoint;
+      this.channel = channel;
+      chunks = new ArrayList<CompletableFuture<InputStream>>(totalChunks + 1);
+
+      for ( int i = 0 ; i <= totalChunks ; i++ )
+        chunks.add(new CompletableFuture<InputStream>());
+
+      if (checkpoint == null)
+        return;
+
+      // Bereits abgelegte Chunks werden aus der Datei gelesen und dabei geprüft
+      for ( Integer chunkNumber : checkpoint.getAcknowledgedChunks() )
+      {
+        long offset = offset(chunkNumber);
+        long length = (chunkNumber < totalChunks) ? size * 1024 : channel.size() - offset;
+        complete(chunkNumber, new ChunkFileInputStream(chunkNumber, offset, length,
+                                                       checkpoint.getDigest(chunkNumber)));
+      }
+
+      if (log.isDebugEnabled())
+        log.debug("Resuming fetch of " + messageId + " with " + received.size() + " of " + totalChunks
+                  + " chunks present.");
+    }
+
+    void complete(int chunkNumber, InputStream chunk)
+    {
+      lock.lock();
+
+      try
+      {
+        received.add(chunkNumber);
+        chunks.get(chunkNumber).complete(chunk);
+      }
+      finally
+      {
+        lock.unlock();
+      }
+    }
+
+    ResponseToFetchDelivery parse() throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      try (InputStream in = stream)
+      {
+        schedule();
+        ResponseToFetchDelivery rsp = ResponseToFetchDelivery.parseResponseToFetchDelivery(in);
+
+        // Der letzte Chunk schließt die Abholung ab und wird auch dann angefordert, wenn der Parser ihn nicht
+        // mehr benötigt
+        byte[] buffer = new byte[8192];
+
+        while (in.read(buffer) >= 0)
+        {
+          // Rest verwerfen
+        }
+
+        return rsp;
+      }
+      catch (IOException | OSCIException | RuntimeException ex)
+      {
+        checkFailure();
+        throw ex;
+      }
+    }
+
+    /**
+     * Schreibt einen Chunk in die Datei und vermerkt ihn im Journal, sobald er auf dem Datenträger liegt.
+     *
+     * @return Stream auf die abgelegten Daten
+     */
+    InputStream store(int chunkNumber, InputStream blob) throws IOException, NoSuchAlgorithmException
+    {
+      MessageDigest md = Crypto.createMessageDigest(Constants.DIGEST_ALGORITHM_SHA256);
+      long offset = offset(chunkNumber);
+      long length = 0;
+      byte[] buffer = new byte[8192];
+
+      try (InputStream in = blob)
+      {
+        int count;
+
+        while ((count = in.read(buffer)) >= 0)
+        {
+          md.update(buffer, 0, count);
+          ByteBuffer data = ByteBuffer.wrap(buffer, 0, count);
+
+          while (data.hasRemaining())
+            length += channel.write(data, offset + length);
+        }
+      }
+
+      channel.force(false);
+      checkpoint.chunkAcknowledged(chunkNumber, md.digest());
+      return new ChunkFileInputStream(chunkNumber, offset, length, null);
+    }
+
+    private long offset(int chunkNumber)
+    {
+      return (chunkNumber - 1) * size * 1024;
+    }
+
+    void schedule()
+    {
+      List<CompletableFuture<InputStream>> scheduled = new ArrayList<CompletableFuture<InputStream>>();
+      List<Runnable> loads = new ArrayList<Runnable>();
+
+      lock.lock();
+
+      try
+      {
+        while ((failure.get() == null) && (next <= totalChunks) && (next < reading + window))
+        {
+          CompletableFuture<InputStream> chunk = chunks.get(next);
+
+          // Bereits abgelegt oder gelesen
+          if ((chunk == null) || chunk.isDone())
+          {
+            next++;
+            continue;
+          }
+
+          if ((next == totalChunks) && !previousDone())
+            break;
+
+          int chunkNumber = next++;
+          List<Integer> snapshot = new ArrayList<Integer>(received);
+          scheduled.add(chunk);
+          loads.add(() -> load(chunkNumber, chunk, snapshot));
+        }
+      }
+      finally
+      {
+        lock.unlock();
+      }
+
+      // Außerhalb der Sperre, da der Executor blockieren oder die Aufgabe im aufrufenden Thread ausführen kann
+      for ( int i = 0 ; i < loads.size() ; i++ )
+      {
+        try
+        {
+          executor.execute(loads.get(i));
+        }
+        catch (RejectedExecutionException ex)
+        {
+          failure.compareAndSet(null, ex);
+
+          // Die übrigen Chunks werden nicht mehr angefordert, der lesende Thread darf nicht auf sie warten
+          for ( int j = i ; j < loads.size() ; j++ )
+            scheduled.get(j).completeExceptionally(ex);
+
+          return;
+        }
+      }
+    }
+
+    private boolean previousDone()
+    {
+      for ( int i = 1 ; i < totalChunks ; i++ )
+      {
+        CompletableFuture<InputStream> chunk = chunks.get(i);
+
+        if ((chunk != null) && !chunk.isDone())
+          return false;
+      }
+
+      return true;
+    }
+
+    private void load(int chunkNumber, CompletableFuture<InputStream> chunk, List<Integer> snapshot)
+    {
+      try
+      {
+        ResponseToPartialFetchDelivery rsp = (ResponseToPartialFetchDelivery)fetchWithRetry(messageId, size,
+                                                                                             chunkNumber,
+                                                                                             snapshot,
+                                                                                             controller);
+        InputStream blob = rsp.getChunkBlob();
+
+        if (checkpoint != null)
+        {
+          checkpoint.checkPlan(rsp.getChunkInformation());
+          blob = store(chunkNumber, blob);
+        }
+
+        lock.lock();
+
+        try
+        {
+          received.add(chunkNumber);
+        }
+        finally
+        {
+          lock.unlock();
+        }
+
+        chunk.complete(blob);
+      }
+      catch (Exception ex)
+      {
+        failure.compareAndSet(null, ex);
+        chunk.completeExceptionally(ex);
+      }
+      finally
+      {
+        schedule();
+      }
+    }
+
+    void advance(int chunkNumber)
+    {
+      lock.lock();
+
+      try
+      {
+        chunks.set(chunkNumber, null);
+        reading = chunkNumber + 1;
+      }
+      finally
+      {
+        lock.unlock();
+      }
+    }
+
+    void checkFailure() throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      Exception ex = failure.get();
+
+      if (ex == null)
+        return;
+
+      if (ex instanceof IOException)
+        throw (IOException)ex;
+
+      if (ex instanceof OSCIException)
+        throw (OSCIException)ex;
+
+      if (ex instanceof NoSuchAlgorithmException)
+        throw (NoSuchAlgorithmException)ex;
+
+      throw (RuntimeException)ex;
+    }
+
+    /**
+     * Liest einen Chunk positionsweise aus der Datei und prüft am Ende ggf. seinen Hashwert
+     */
+    private final class ChunkFileInputStream extends InputStream
+    {
+      private final int chunkNumber;
+
+      private final byte[] digest;
+
+      private final MessageDigest md;
+
+      private long position;
+
+      private long remaining;
+
+      ChunkFileInputStream(int chunkNumber, long offset, long length, byte[] digest)
+        throws IOException
+      {
+        this.chunkNumber = chunkNumber;
+        this.digest = digest;
+        position = offset;
+        remaining = length;
+
+        try
+        {
+          md = (digest == null) ? null : Crypto.createMessageDigest(Constants.DIGEST_ALGORITHM_SHA256);
+        }
+        catch (NoSuchAlgorithmException ex)
+        {
+          throw new IOException(ex);
+        }
+      }
+
+      @Override
+      public int read() throws IOException
+      {
+        byte[] b = new byte[1];
+        return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException
+      {
+        if (remaining == 0)
+          return -1;
+
+        int count = channel.read(ByteBuffer.wrap(b, off, (int)Math.min(len, remaining)), position);
+
+        if (count < 0)
+          throw new IOException(DialogHandler.text.getString("partial_transfer_chunk_corrupt") + " "
+                                + chunkNumber);
+
+        position += count;
+        remaining -= count;
+
+        if (md != null)
+        {
+          md.update(b, off, count);
+
+          if ((remaining == 0) && !MessageDigest.isEqual(md.digest(), digest))
+            throw new IOException(DialogHandler.text.getString("partial_transfer_chunk_corrupt") + " "
+                                  + chunkNumber);
+        }
+
+        return count;
+      }
+    }
+
+    /**
+     * Liefert die Chunks in ihrer Reihenfolge und gibt gelesene Chunks frei
+     */
+    private final class AssembledInputStream extends InputStream
+    {
+      private int index = 1;
+
+      private InputStream current;
+
+      @Override
+      public int read() throws IOException
+      {
+        byte[] b = new byte[1];
+        return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException
+      {
+        while (index <= totalChunks)
+        {
+          if (current == null)
+            current = await(index);
+
+          int count = current.read(b, off, len);
+
+          if (count >= 0)
+            return count;
+
+          current.close();
+          current = null;
+          advance(index++);
+          schedule();
+        }
+
+        return -1;
+      }
+
+      private InputStream await(int chunkNumber) throws IOException
+      {
+        CompletableFuture<InputStream> chunk;
+
+        lock.lock();
+
+        try
+        {
+          chunk = chunks.get(chunkNumber);
+        }
+        finally
+        {
+          lock.unlock();
+        }
+
+        try
+        {
+          return chunk.get();
+        }
+        catch (InterruptedException ex)
+        {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+        catch (ExecutionException ex)
+        {
+          throw new IOException(ex.getCause());
+        }
+      }
+
+      @Override
+      public void close() throws IOException
+      {
+        if (current != null)
+          current.close();
+
+        current = null;
+      }
+    }
+  }
+}
@@ -5,6 +5,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import eu.osci.ws._2014._10.transport.MessageMetaData;
 import org.apache.commons.logging.Log;
@@ -271,6 +273,42 @@ public class PartialStoreDelivery extends OSCIRequest implements ContentPackageI
     return (ResponseToPartialStoreDelivery)transmit(storeOutput, storeInput);
   }
 
+  /**
+   * Versendet die Nachricht asynchron über den übergebenen Executor, siehe
+   * {@link OSCIRequest#transmitAsync(OutputStream, OutputStream, Executor)}.
+   *
+   * @param executor Executor für die Verarbeitungsschritte
+   * @return Future mit dem Antwortnachricht-Objekt
+   * @see #send()
+   */
+  public CompletableFuture<ResponseToPartialStoreDelivery> sendAsync(Executor executor)
+  {
+    if (base64)
+      throw new IllegalStateException("Base64 should be disabled!");
+    return transmitAsync(null, null, executor).thenApply(rsp -> (ResponseToPartialStoreDelivery)rsp);
+  }
+
+  /**
+   * Versendet die Nachricht asynchron wie {@link #sendAsync(Executor)}. Die aus- und eingehenden Daten werden
+   * zusätzlich in die übergebenen Streams geschrieben (unverschlüsselte Auftragsdaten). Diese Parameter dürfen
+   * null sein.
+   *
+   * @param storeOutput Stream, in den die versendete Nachricht geschrieben wird
+   * @param storeInput Stream, in den die empfangene Antwortnachricht geschrieben wird
+   * @param executor Executor für die Verarbeitungsschritte
+   * @return Future mit dem Antwortnachricht-Objekt
+   * @see #send(OutputStream, OutputStream)
+   * @see #sendAsync(Executor)
+   */
+  public CompletableFuture<ResponseToPartialStoreDelivery> sendAsync(OutputStream storeOutput,
+                                                                     OutputStream storeInput,
+                                                                     Executor executor)
+  {
+    if (base64)
+      throw new IllegalStateException("Base64 should be disabled!");
+    return transmitAsync(storeOutput, storeInput, executor).thenApply(rsp -> (ResponseToPartialStoreDelivery)rsp);
+  }
+
   /**
    * Bringt eine Client-Signatur an.
    *
@@ -0,0 +1,715 @@
+package de.osci.osci12.messagetypes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.helper.BackgroundTasks;
+import de.osci.osci12.OSCIException;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIErrorException;
+import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
+import de.osci.osci12.messageparts.ChunkInformation;
+import de.osci.osci12.messageparts.MessagePartsFactory;
+
+
+/**
+ * Speicher für die Chunks eingehender PartialStoreDelivery-Nachrichten auf Seite des Intermediärs. Je
+ * Message-ID wird beim ersten Chunk eine Datei in der Größe aller Chunks angelegt; Dateisysteme mit
+ * Unterstützung für lückenhafte Dateien belegen Blöcke erst, wenn sie beschrieben werden. Jeder Chunk wird
+ * an die Position geschrieben, die sich aus seiner Nummer und der Chunkgröße ergibt. Chunks dürfen daher in
+ * beliebiger Reihenfolge und gleichzeitig eintreffen; nur das Vermerken in der Liste der empfangenen Chunks
+ * ist synchronisiert.
+ * <p>
+ * Aus der Liste der empfangenen Chunks wird die ChunkInformation für die ResponseToPartialStoreDelivery
+ * gebildet. Sobald alle Chunks vorliegen, wird die zusammengesetzte StoreDelivery dem übergebenen
+ * {@link CompletionHandler} als Stream übergeben, der die Datei abschnittsweise in den Speicher abbildet;
+ * danach wird die Datei gelöscht. Verstöße gegen den Plan der Übertragung werden mit einer
+ * OSCIErrorException mit dem Fehlercode für die Rückmeldung abgewiesen. Die Message-IDs der zuletzt
+ * abgeschlossenen Übertragungen werden vorgehalten, damit verspätete oder wiederholte Chunks keine neue
+ * Übertragung beginnen.
+ * </p>
+ * <p>
+ * Chunkgröße und Gesamtgröße sind in der Voreinstellung begrenzt, da die Datei bereits mit dem ersten Chunk
+ * in der angekündigten Größe angelegt wird. Übertragungen, für die länger als die Leerlaufzeit kein Chunk
+ * eingetroffen ist, werden im Hintergrund verworfen; die Datei wird dabei geschlossen und gelöscht.
+ * </p>
+ * <pre>
+ * ChunkInformation rspChunkInformation = chunkStore.receive(messageId, request.getChunkInformation(),
+ *                                                           blob.getStream(), (id, in) -&gt; parse(in));
+ * response.setChunkInformation(rspChunkInformation);
+ * </pre>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see PartialStoreDelivery
+ * @see ResponseToPartialStoreDelivery#setChunkInformation(ChunkInformation)
+ */
+public class PartialStoreDeliveryChunkStore
+{
+  private static Log log = LogFactory.getLog(PartialStoreDeliveryChunkStore.class);
+
+  // Größe der Abschnitte, in denen die Datei beim Lesen abgebildet wird
+  private static final long MAPPING_SIZE = 64L * 1024 * 1024;
+
+  // Anzahl der vorgehaltenen Message-IDs abgeschlossener Übertragungen
+  private static final int COMPLETED_HISTORY = 1024;
+
+  /** Voreinstellung für die maximale Chunkgröße in KB (64 MB). */
+  public static final long DEFAULT_MAX_CHUNK_SIZE = 64 * 1024;
+
+  /** Voreinstellung für die maximale Gesamtgröße einer Nachricht in KB (1 GB). */
+  public static final long DEFAULT_MAX_MESSAGE_SIZE = 1024 * 1024;
+
+  /** Voreinstellung für die Leerlaufzeit einer Übertragung in Millisekunden (30 Minuten). */
+  public static final long DEFAULT_IDLE_TIMEOUT = 30 * 60 * 1000L;
+
+  private final File directory;
+
+  private final Map<String, Transfer> transfers = new ConcurrentHashMap<String, Transfer>();
+
+  private final Set<String> completed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final Queue<String> completedOrder = new ConcurrentLinkedQueue<String>();
+
+  private volatile long minChunkSize = 1;
+
+  private volatile long maxChunkSize = DEFAULT_MAX_CHUNK_SIZE;
+
+  private volatile long maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+
+  private volatile long idleTimeout = TimeUnit.MILLISECONDS.toNanos(DEFAULT_IDLE_TIMEOUT);
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  // Wird mit der ersten Übertragung gestartet, geschützt durch lock
+  private volatile ScheduledFuture<?> expiry;
+
+  /**
+   * Nimmt die vollständig empfangene StoreDelivery entgegen.
+   */
+  public interface CompletionHandler
+  {
+    /**
+     * Wird in dem Thread aufgerufen, dessen Chunk die Nachricht vervollständigt. Der Stream ist nur während
+     * des Aufrufs gültig.
+     *
+     * @param messageId Message-ID der StoreDelivery
+     * @param storeDelivery serialisierte StoreDelivery
+     * @throws IOException bei Ein-/Ausgabefehlern
+     * @throws OSCIException bei OSCI-Fehlern
+     * @throws NoSuchAlgorithmException wenn ein benötigter Algorithmus nicht unterstützt wird
+     */
+    void completed(String messageId, InputStream storeDelivery)
+      throws IOException, OSCIException, NoSuchAlgorithmException;
+  }
+
+  /**
+   * Legt einen Speicher an.
+   *
+   * @param directory Verzeichnis für die Dateien oder <code>null</code> für das temporäre Verzeichnis des
+   *          Systems
+   */
+  public PartialStoreDeliveryChunkStore(File directory)
+  {
+    this.directory = directory;
+  }
+
+  /**
+   * Setzt die Grenzen, die beim ersten Chunk einer Nachricht geprüft werden.
+   *
+   * @param minChunkSize minimale Chunkgröße in KB, gilt nicht für Nachrichten aus einem Chunk
+   * @param maxChunkSize maximale Chunkgröße in KB
+   * @param maxMessageSize maximale Gesamtgröße einer Nachricht in KB
+   * @see #DEFAULT_MAX_CHUNK_SIZE
+   * @see #DEFAULT_MAX_MESSAGE_SIZE
+   */
+  public void setLimits(long minChunkSize, long maxChunkSize, long maxMessageSize)
+  {
+    if (minChunkSize < 1)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + minChunkSize);
+    if (maxChunkSize < minChunkSize)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_secondargument") + maxChunkSize);
+    if (maxMessageSize < 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_thirdargument") + maxMessageSize);
+
+    this.minChunkSize = minChunkSize;
+    this.maxChunkSize = maxChunkSize;
+    this.maxMessageSize = maxMessageSize;
+  }
+
+  /**
+   * Setzt die Zeit, nach der eine Übertragung ohne neuen Chunk verworfen wird. Sie muss länger als die
+   * Übertragung eines Chunks einschließlich der Wiederholungen des Clients sein.
+   *
+   * @param millis Leerlaufzeit in Millisekunden, 0 für unbegrenzt
+   * @see #DEFAULT_IDLE_TIMEOUT
+   */
+  public void setIdleTimeout(long millis)
+  {
+    if (millis < 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + millis);
+
+    lock.lock();
+
+    try
+    {
+      idleTimeout = TimeUnit.MILLISECONDS.toNanos(millis);
+
+      // Der Abstand der Prüfungen richtet sich nach der Leerlaufzeit
+      if (expiry != null)
+      {
+        expiry.cancel(false);
+        expiry = null;
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+
+    if (!transfers.isEmpty())
+      startExpiry();
+  }
+
+  /**
+   * Legt einen Chunk ab. Der erste Chunk einer Message-ID legt den Plan der Übertragung fest, weitere Chunks
+   * müssen ihm entsprechen. Vervollständigt der Chunk die Nachricht, wird der Handler aufgerufen, bevor die
+   * Methode zurückkehrt. Chunks einer zuletzt abgeschlossenen Übertragung werden als doppelt abgewiesen.
+   *
+   * @param messageId Message-ID der StoreDelivery
+   * @param chunkInformation ChunkInformation der PartialStoreDelivery
+   * @param chunk Daten des Chunks
+   * @param handler Empfänger der vollständigen Nachricht
+   * @return ChunkInformation für die ResponseToPartialStoreDelivery
+   * @throws OSCIErrorException mit den Fehlercodes DuplicateChunk, WrongChunkNumber, WrongChunkInformation,
+   *           WrongMinChunkSize, WrongMaxChunkSize oder WrongMaxMessageSize
+   * @throws IOException bei Ein-/Ausgabefehlern
+   * @throws OSCIException bei OSCI-Fehlern des Handlers
+   * @throws NoSuchAlgorithmException wenn ein vom Handler benötigter Algorithmus nicht unterstützt wird
+   */
+  public ChunkInformation receive(String messageId,
+                                  ChunkInformation chunkInformation,
+                                  InputStream chunk,
+                                  CompletionHandler handler)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    Transfer transfer = transfers.get(messageId);
+
+    if (transfer == null)
+    {
+      if (completed.contains(messageId))
+        throw new OSCIErrorException(OSCIErrorCodes.DuplicateChunk);
+
+      Transfer created = new Transfer(messageId, chunkInformation);
+      transfer = transfers.putIfAbsent(messageId, created);
+
+      if (transfer == null)
+      {
+        transfer = created;
+
+        if (expiry == null)
+          startExpiry();
+      }
+      else
+        created.discard();
+    }
+
+    int chunkNumber = transfer.write(chunkInformation, chunk);
+
+    ChunkInformation rspChunkInformation = transfer.createChunkInformation(chunkNumber);
+
+    if (!transfer.isComplete())
+      return rspChunkInformation;
+
+    // Vor dem Entfernen vermerkt, damit ein verspäteter Chunk keine neue Übertragung beginnt. Treffen die
+    // letzten Chunks gleichzeitig ein, schließt nur ein Thread die Übertragung ab
+    remember(messageId);
+
+    if (!transfers.remove(messageId, transfer))
+      return rspChunkInformation;
+
+    try
+    {
+      transfer.complete(handler);
+    }
+    catch (IOException | OSCIException | NoSuchAlgorithmException | RuntimeException ex)
+    {
+      // Nach einem Fehler des Handlers darf die Nachricht erneut übertragen werden
+      completed.remove(messageId);
+      throw ex;
+    }
+    finally
+    {
+      transfer.discard();
+    }
+
+    return rspChunkInformation;
+  }
+
+  /**
+   * Liefert die ChunkInformation mit den empfangenen Chunks, z.B. für eine Abfrage mit InfoOnly oder für die
+   * Antwort auf einen abgewiesenen Chunk.
+   *
+   * @param messageId Message-ID der StoreDelivery
+   * @return ChunkInformation oder <code>null</code>, wenn für die Message-ID keine Übertragung offen ist
+   */
+  public ChunkInformation getChunkInformation(String messageId)
+  {
+    Transfer transfer = transfers.get(messageId);
+    return (transfer == null) ? null : transfer.createChunkInformation(0);
+  }
+
+  /**
+   * Liefert die Message-IDs der offenen Übertragungen.
+   *
+   * @return Message-IDs
+   */
+  public Set<String> getMessageIds()
+  {
+    return Collections.unmodifiableSet(transfers.keySet());
+  }
+
+  /**
+   * Verwirft eine offene Übertragung, z.B. nach Ablauf einer Frist.
+   *
+   * @param messageId Message-ID der StoreDelivery
+   */
+  public void discard(String messageId)
+  {
+    Transfer transfer = transfers.remove(messageId);
+
+    if (transfer != null)
+      transfer.discard();
+  }
+
+  /**
+   * Verwirft alle offenen Übertragungen und die vorgehaltenen Message-IDs abgeschlossener Übertragungen.
+   */
+  public void clear()
+  {
+    for ( String messageId : new ArrayList<String>(transfers.keySet()) )
+      discard(messageId);
+
+    completed.clear();
+    completedOrder.clear();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "PartialStoreDeliveryChunkStore[directory=" + directory + ", open=" + transfers.size() + "]";
+  }
+
+  private void startExpiry()
+  {
+    lock.lock();
+
+    try
+    {
+      long timeout = idleTimeout;
+
+      if ((expiry == null) && (timeout > 0))
+        expiry = BackgroundTasks.scheduleWeakly(this, PartialStoreDeliveryChunkStore::expire,
+                                                Math.max(TimeUnit.NANOSECONDS.toMillis(timeout) / 4, 100),
+                                                "Expiry of chunk transfers failed.");
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Entfernt die Übertragungen, für die länger als die Leerlaufzeit kein Chunk eingetroffen ist, und
+   * übergibt sie zum Schließen und Löschen der Datei an einen Hintergrund-Thread. Wird nur vom Timer-Thread
+   * aufgerufen.
+   */
+  void expire()
+  {
+    long timeout = idleTimeout;
+
+    if (timeout == 0)
+      return;
+
+    long now = System.nanoTime();
+
+    for ( Map.Entry<String, Transfer> entry : transfers.entrySet() )
+    {
+      Transfer transfer = entry.getValue();
+
+      if (transfer.isIdle(now, timeout) && transfers.remove(entry.getKey(), transfer))
+      {
+        log.info("Discarding idle transfer of " + entry.getKey() + ".");
+        BackgroundTasks.executor().execute(transfer::discard);
+      }
+    }
+  }
+
+  private void remember(String messageId)
+  {
+    if (!completed.add(messageId))
+      return;
+
+    completedOrder.add(messageId);
+
+    while (completedOrder.size() > COMPLETED_HISTORY)
+    {
+      String eldest = completedOrder.poll();
+
+      if (eldest != null)
+        completed.remove(eldest);
+    }
+  }
+
+  /**
+   * Zustand einer Übertragung
+   */
+  private final class Transfer
+  {
+    private final String messageId;
+
+    private final long chunkSize;
+
+    private final long totalMessageSize;
+
+    private final int totalChunks;
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Empfangene und gerade geschriebene Chunks, geschützt durch lock
+    private final BitSet received = new BitSet();
+
+    private final BitSet claimed = new BitSet();
+
+    private long lastLength;
+
+    // Zeitpunkt des letzten Chunks
+    private volatile long lastAccess = System.nanoTime();
+
+    Transfer(String messageId, ChunkInformation chunkInformation) throws IOException, OSCIErrorException
+    {
+      this.messageId = messageId;
+      chunkSize = chunkInformation.getChunkSize();
+      totalMessageSize = chunkInformation.getTotalMessageSize();
+      totalChunks = chunkInformation.getTotalChunkNumbers();
+      long chunkBytes = chunkSize * 1024;
+
+      if ((chunkSize <= 0) || (totalChunks < 1))
+        throw new OSCIErrorException(OSCIErrorCodes.WrongChunkInformation);
+      if (chunkSize > maxChunkSize)
+        throw new OSCIErrorException(OSCIErrorCodes.WrongMaxChunkSize);
+      if ((chunkSize < minChunkSize) && (totalChunks > 1))
+        throw new OSCIErrorException(OSCIErrorCodes.WrongMinChunkSize);
+      if (totalMessageSize > maxMessageSize)
+        throw new OSCIErrorException(OSCIErrorCodes.WrongMaxMessageSize);
+
+      // Die Gesamtgröße ist auf KB abgerundet, die Anzahl der Chunks muss dazu passen
+      long minChunks = Math.max(1, (totalMessageSize * 1024 + chunkBytes - 1) / chunkBytes);
+      long maxChunks = (totalMessageSize * 1024 + 1023 + chunkBytes - 1) / chunkBytes;
+
+      if ((totalChunks < minChunks) || (totalChunks > maxChunks))
+        throw new OSCIErrorException(OSCIErrorCodes.WrongChunkInformation);
+
+      file = File.createTempFile("osci-chunks", ".part", directory);
+
+      try
+      {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Vorbelegen über das letzte Byte, die Lücke davor belegt das Dateisystem erst beim Schreiben
+        channel.write(ByteBuffer.allocate(1), totalChunks * chunkBytes - 1);
+      }
+      catch (IOException ex)
+      {
+        if (!file.delete())
+          file.deleteOnExit();
+
+        throw ex;
+      }
+
+      if (log.isDebugEnabled())
+        log.debug("Receiving " + totalChunks + " chunks of " + chunkSize + " KB for " + messageId + " in "
+                  + file);
+    }
+
+    /**
+     * Schreibt einen Chunk an seine Position und vermerkt ihn danach als empfangen.
+     *
+     * @return Nummer des Chunks
+     */
+    int write(ChunkInformation chunkInformation, InputStream chunk) throws IOException, OSCIErrorException
+    {
+      int chunkNumber = chunkInformation.getChunkNumber();
+
+      if ((chunkNumber < 1) || (chunkNumber > totalChunks))
+        throw new OSCIErrorException(OSCIErrorCodes.WrongChunkNumber);
+
+      if ((chunkInformation.getChunkSize() != chunkSize)
+          || (chunkInformation.getTotalChunkNumbers() != totalChunks)
+          || (chunkInformation.getTotalMessageSize() != totalMessageSize))
+        throw new OSCIErrorException(OSCIErrorCodes.WrongChunkInformation);
+
+      lock.lock();
+
+      try
+      {
+        if (claimed.get(chunkNumber))
+          throw new OSCIErrorException(OSCIErrorCodes.DuplicateChunk);
+
+        claimed.set(chunkNumber);
+        lastAccess = System.nanoTime();
+      }
+      finally
+      {
+        lock.unlock();
+      }
+
+      long chunkBytes = chunkSize * 1024;
+      long offset = (chunkNumber - 1) * chunkBytes;
+      long length = 0;
+
+      try
+      {
+        byte[] buffer = new byte[8192];
+        int count;
+
+        while ((count = chunk.read(buffer)) >= 0)
+        {
+          if (length + count > chunkBytes)
+            throw new OSCIErrorException(OSCIErrorCodes.WrongChunkInformation);
+
+          ByteBuffer data = ByteBuffer.wrap(buffer, 0, count);
+
+          while (data.hasRemaining())
+            length += channel.write(data, offset + length);
+        }
+
+        // Nur der letzte Chunk darf kürzer sein
+        if ((length == 0) || ((chunkNumber < totalChunks) && (length != chunkBytes)))
+          throw new OSCIErrorException(OSCIErrorCodes.WrongChunkInformation);
+      }
+      catch (IOException | OSCIErrorException ex)
+      {
+        lock.lock();
+
+        try
+        {
+          claimed.clear(chunkNumber);
+          lastAccess = System.nanoTime();
+        }
+        finally
+        {
+          lock.unlock();
+        }
+
+        throw ex;
+      }
+
+      lock.lock();
+
+      try
+      {
+        received.set(chunkNumber);
+        lastAccess = System.nanoTime();
+
+        if (chunkNumber == totalChunks)
+          lastLength = length;
+      }
+      finally
+      {
+        lock.unlock();
+      }
+
+      return chunkNumber;
+    }
+
+    boolean isComplete()
+    {
+      lock.lock();
+
+      try
+      {
+        return received.cardinality() == totalChunks;
+      }
+      finally
+      {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Prüft, ob länger als die Leerlaufzeit kein Chunk eingetroffen ist und gerade keiner geschrieben wird.
+     */
+    boolean isIdle(long now, long timeout)
+    {
+      lock.lock();
+
+      try
+      {
+        return (claimed.cardinality() == received.cardinality()) && (now - lastAccess > timeout);
+      }
+      finally
+      {
+        lock.unlock();
+      }
+    }
+
+    ChunkInformation createChunkInformation(int chunkNumber)
+    {
+      lock.lock();
+
+      try
+      {
+        ChunkInformation rspChunkInformation =
+          MessagePartsFactory.creatChunkInformation(ChunkInformation.CheckInstance.ResponsePartialStoreDelivery);
+        List<Integer> receivedChunks = new ArrayList<Integer>(received.cardinality());
+
+        for ( int i = received.nextSetBit(0) ; i >= 0 ; i = received.nextSetBit(i + 1) )
+          receivedChunks.add(i);
+
+        rspChunkInformation.setTotalChunkNumbers(totalChunks);
+        rspChunkInformation.setReceivedChunks(receivedChunks);
+
+        if (chunkNumber > 0)
+          rspChunkInformation.setChunkNumber(chunkNumber);
+
+        return rspChunkInformation;
+      }
+      finally
+      {
+        lock.unlock();
+      }
+    }
+
+    void complete(CompletionHandler handler) throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      long length = (totalChunks - 1) * chunkSize * 1024 + lastLength;
+
+      if (log.isDebugEnabled())
+        log.debug("Received all " + totalChunks + " chunks for " + messageId + ", " + length + " bytes.");
+
+      handler.completed(messageId, new MappedInputStream(channel, length));
+    }
+
+    void discard()
+    {
+      try
+      {
+        channel.close();
+      }
+      catch (IOException ex)
+      {
+        log.debug("Closing " + file + " failed.", ex);
+      }
+
+      if (!file.delete() && file.exists())
+        log.warn("Could not delete " + file);
+    }
+  }
+
+  /**
+   * Liest eine Datei über abschnittsweise in den Speicher abgebildete Bereiche
+   */
+  private static final class MappedInputStream extends InputStream
+  {
+    private final FileChannel channel;
+
+    private final long length;
+
+    private long position;
+
+    private MappedByteBuffer buffer;
+
+    MappedInputStream(FileChannel channel, long length)
+    {
+      this.channel = channel;
+      this.length = length;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+      return next() ? (buffer.get() & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+      if (len == 0)
+        return 0;
+
+      if (!next())
+        return -1;
+
+      int count = Math.min(len, buffer.remaining());
+      buffer.get(b, off, count);
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+      long skipped = 0;
+
+      while ((skipped < n) && next())
+      {
+        int count = (int)Math.min(n - skipped, buffer.remaining());
+        buffer.position(buffer.position() + count);
+        skipped += count;
+      }
+
+      return skipped;
+    }
+
+    @Override
+    public int available()
+    {
+      return (buffer == null) ? 0 : buffer.remaining();
+    }
+
+    private boolean next() throws IOException
+    {
+      if ((buffer != null) && buffer.hasRemaining())
+        return true;
+
+      if (position >= length)
+        return false;
+
+      long size = Math.min(MAPPING_SIZE, length - position);
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+      position += size;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,833 @@
+package de.osci.osci12.messagetypes;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.helper.BackgroundTasks;
+import de.osci.osci12.OSCIException;
+import de.osci.osci12.common.Constants;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.DialogPool;
+import de.osci.osci12.common.OSCIConfig;
+import de.osci.osci12.common.OSCIErrorException;
+import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
+import de.osci.osci12.encryption.Crypto;
+import de.osci.osci12.extinterfaces.OSCIDataSource;
+import de.osci.osci12.messageparts.ChunkInformation;
+import de.osci.osci12.messageparts.ChunkInformation.CheckInstance;
+import de.osci.osci12.messagetypes.PartialTransferJournal.Checkpoint;
+import de.osci.osci12.roles.Addressee;
+
+
+/**
+ * Versendet die Chunks einer zerlegten StoreDelivery gleichzeitig über mehrere Dialoge eines DialogPools.
+ * Bei Verbindungen mit hoher Bandbreite und Latenz steigt der Durchsatz damit annähernd um die Anzahl der
+ * parallelen Übertragungen.
+ * <p>
+ * Der erste Chunk wird allein versendet, damit der Intermediär die Übertragung anlegt, bevor weitere Chunks
+ * eintreffen. Die folgenden werden, begrenzt durch die eingestellte Parallelität, aus dem Serialisieren der
+ * Nachricht heraus übergeben; vorgehalten werden nur Chunks, deren Empfang der Intermediär noch nicht
+ * bestätigt hat. Bestätigt ist ein Chunk, wenn er in der Liste receivedChunks der ChunkInformation einer
+ * Antwort enthalten ist oder fehlerfrei beantwortet wurde.
+ * </p>
+ * <p>
+ * Schlägt die Übertragung eines Chunks fehl, wird der Dialog verworfen. Fehlende Chunks werden nach einer
+ * Abfrage des Empfangsstands mit einer PartialStoreDelivery (InfoOnly) erneut gesendet, höchstens in der
+ * eingestellten Anzahl von Runden. Der letzte Chunk wird erst versendet, wenn alle übrigen bestätigt sind;
+ * seine Antwort enthält die Rückmeldung und den Laufzettel der gesamten Nachricht.
+ * </p>
+ * <p>
+ * Mit einem {@link PartialTransferJournal} wird die Nachricht zunächst in eine Spooldatei geschrieben, aus
+ * der die Chunks gelesen werden. Nach einem Abbruch des Prozesses setzt
+ * {@link #resume(String, PartialTransferJournal)} die Übertragung ohne die StoreDelivery fort und sendet nur
+ * die Chunks, deren Empfang der Intermediär noch nicht bestätigt hat.
+ * </p>
+ * <pre>
+ * PartialStoreDeliveryUploader uploader = new PartialStoreDeliveryUploader(pool, addressee, 4);
+ * ResponseToPartialStoreDelivery rsp = uploader.upload(new StoreDeliverySplitter(storeDelivery, 1000));
+ * </pre>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see StoreDeliverySplitter
+ * @see DialogPool
+ */
+public class PartialStoreDeliveryUploader
+{
+  private static Log log = LogFactory.getLog(PartialStoreDeliveryUploader.class);
+
+  /** Voreinstellung für die Anzahl der Runden, in denen fehlende Chunks erneut gesendet werden. */
+  public static final int DEFAULT_MAX_ROUNDS = 3;
+
+  private final DialogPool pool;
+
+  private final Addressee addressee;
+
+  private final int parallelism;
+
+  private final Executor executor;
+
+  private volatile int maxRounds = DEFAULT_MAX_ROUNDS;
+
+  private final LongAdder sentChunks = new LongAdder();
+
+  private final LongAdder retransmittedChunks = new LongAdder();
+
+  private final LongAdder failedTransmissions = new LongAdder();
+
+  /**
+   * Legt einen Uploader an, der die Chunks über einen bibliotheksinternen Thread-Pool versendet.
+   *
+   * @param pool Pool expliziter Dialoge; er sollte mindestens <code>parallelism</code> Dialoge zulassen
+   * @param addressee Empfänger der Nachrichten
+   * @param parallelism maximale Anzahl gleichzeitig übertragener Chunks
+   */
+  public PartialStoreDeliveryUploader(DialogPool pool, Addressee addressee, int parallelism)
+  {
+    this(pool, addressee, parallelism, null);
+  }
+
+  /**
+   * Legt einen Uploader an.
+   *
+   * @param pool Pool expliziter Dialoge; er sollte mindestens <code>parallelism</code> Dialoge zulassen
+   * @param addressee Empfänger der Nachrichten
+   * @param parallelism maximale Anzahl gleichzeitig übertragener Chunks
+   * @param executor Executor für die Übertragungen oder <code>null</code> für den bibliotheksinternen
+   *          Thread-Pool
+   */
+  public PartialStoreDeliveryUploader(DialogPool pool, Addressee addressee, int parallelism, Executor executor)
+  {
+    if (pool == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + " null");
+    if (addressee == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_secondargument") + " null");
+    if (parallelism < 1)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_thirdargument") + parallelism);
+
+    this.pool = pool;
+    this.addressee = addressee;
+    this.parallelism = parallelism;
+    this.executor = (executor == null) ? BackgroundTasks.executor() : executor;
+  }
+
+  /**
+   * Liefert die Anzahl der Runden, in denen fehlende Chunks erneut gesendet werden.
+   *
+   * @return Anzahl der Runden
+   */
+  public int getMaxRounds()
+  {
+    return maxRounds;
+  }
+
+  /**
+   * Setzt die Anzahl der Runden, in denen fehlende Chunks erneut gesendet werden. Sie gilt ebenso für die
+   * Wiederholungen des letzten Chunks.
+   *
+   * @param maxRounds Anzahl der Runden, 0 für keine Wiederholung
+   * @see #DEFAULT_MAX_ROUNDS
+   */
+  public void setMaxRounds(int maxRounds)
+  {
+    if (maxRounds < 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + maxRounds);
+
+    this.maxRounds = maxRounds;
+  }
+
+  /**
+   * Zerlegt die StoreDelivery und versendet die Chunks parallel.
+   *
+   * @param splitter Splitter der zu versendenden StoreDelivery
+   * @return Antwort auf den letzten Chunk
+   * @throws IOException bei Ein-/Ausgabefehlern oder wenn Chunks auch nach den Wiederholungen nicht
+   *           bestätigt sind
+   * @throws OSCIException bei OSCI-Fehlern oder Fehlermeldungen des Intermediärs
+   * @throws NoSuchAlgorithmException wenn ein benötigter Algorithmus nicht unterstützt wird
+   */
+  public ResponseToPartialStoreDelivery upload(StoreDeliverySplitter splitter)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    Upload upload = new Upload(splitter.getStoreDelivery().getMessageId(), splitter.getChunkSizeController());
+    return upload.run(splitter);
+  }
+
+  /**
+   * Zerlegt die StoreDelivery in eine Spooldatei und versendet die Chunks parallel aus dieser Datei. Der
+   * Fortschritt wird im Journal festgehalten, nach einem Abbruch wird die Übertragung mit
+   * {@link #resume(String, PartialTransferJournal)} fortgesetzt. Ist die Übertragung bereits eingetragen und
+   * die Spooldatei vollständig, wird sie ohne erneutes Serialisieren fortgesetzt; der Plan des Splitters
+   * muss dann mit dem Journal übereinstimmen. Nach dem Abschluss wird die Spooldatei gelöscht.
+   *
+   * @param splitter Splitter der zu versendenden StoreDelivery
+   * @param journal Journal der Übertragungen
+   * @param spool Spooldatei für die serialisierte Nachricht
+   * @return Antwort auf den letzten Chunk
+   * @throws IOException bei Ein-/Ausgabefehlern, wenn Chunks auch nach den Wiederholungen nicht bestätigt
+   *           sind oder der Plan vom Journal abweicht
+   * @throws OSCIException bei OSCI-Fehlern oder Fehlermeldungen des Intermediärs
+   * @throws NoSuchAlgorithmException wenn ein benötigter Algorithmus nicht unterstützt wird
+   */
+  public ResponseToPartialStoreDelivery upload(StoreDeliverySplitter splitter,
+                                               PartialTransferJournal journal,
+                                               File spool)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    ChunkInformation plan = new ChunkInformation(splitter.getChunkSize(), 1, splitter.getTotalLength() / 1024,
+                                                 splitter.getTotalChunkNumbers());
+    Checkpoint checkpoint = journal.begin(splitter.getStoreDelivery().getMessageId(), splitter.getChunkSize(),
+                                          plan, spool);
+
+    if (!checkpoint.isStored())
+      spool(splitter, checkpoint);
+
+    return new Upload(checkpoint.getMessageId(), splitter.getChunkSizeController()).run(checkpoint);
+  }
+
+  /**
+   * Setzt eine abgebrochene Übertragung aus ihrer Spooldatei fort. Der Empfangsstand wird beim Intermediär
+   * abgefragt; kennt er die Übertragung nicht mehr, werden alle Chunks erneut gesendet.
+   *
+   * @param messageId Message-ID der StoreDelivery
+   * @param journal Journal der Übertragungen
+   * @return Antwort auf den letzten Chunk
+   * @throws IOException bei Ein-/Ausgabefehlern, wenn die Übertragung nicht im Journal eingetragen ist, die
+   *           Spooldatei nicht zum Journal passt oder Chunks auch nach den Wiederholungen nicht bestätigt sind
+   * @throws OSCIException bei OSCI-Fehlern oder Fehlermeldungen des Intermediärs
+   * @throws NoSuchAlgorithmException wenn ein benötigter Algorithmus nicht unterstützt wird
+   */
+  public ResponseToPartialStoreDelivery resume(String messageId, PartialTransferJournal journal)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    Checkpoint checkpoint = journal.getCheckpoint(messageId);
+
+    if ((checkpoint == null) || (checkpoint.getCheckInstance() != CheckInstance.PartialStoreDelivery)
+        || !checkpoint.isStored())
+      throw new IOException(DialogHandler.text.getString("partial_transfer_unknown") + " " + messageId);
+
+    return new Upload(messageId, null).run(checkpoint);
+  }
+
+  /**
+   * Liefert die Anzahl der beantworteten Chunk-Übertragungen.
+   *
+   * @return Anzahl
+   */
+  public long getSentChunks()
+  {
+    return sentChunks.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der erneut gesendeten Chunks.
+   *
+   * @return Anzahl
+   */
+  public long getRetransmittedChunks()
+  {
+    return retransmittedChunks.sum();
+  }
+
+  /**
+   * Liefert die Anzahl der fehlgeschlagenen Chunk-Übertragungen.
+   *
+   * @return Anzahl
+   */
+  public long getFailedTransmissions()
+  {
+    return failedTransmissions.sum();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "PartialStoreDeliveryUploader[parallelism=" + parallelism + ", sent=" + getSentChunks()
+           + ", retransmitted=" + getRetransmittedChunks() + ", failed=" + getFailedTransmissions() + "]";
+  }
+
+  /**
+   * Versendet einen Chunk als PartialStoreDelivery. Kann überschrieben werden, um die Nachricht vor dem
+   * Versand anzupassen. Fehlermeldungen des Intermediärs werden vom Aufrufer ausgewertet.
+   *
+   * @param dh DialogHandler des Dialogs
+   * @param messageId Message-ID der StoreDelivery
+   * @param chunkInformation ChunkInformation des Chunks
+   * @param chunk Daten des Chunks
+   * @return Antwortnachricht
+   * @throws IOException bei Ein-/Ausgabefehlern
+   * @throws OSCIException bei OSCI-Fehlern
+   * @throws NoSuchAlgorithmException wenn ein benötigter Algorithmus nicht unterstützt wird
+   */
+  protected ResponseToPartialStoreDelivery sendChunk(DialogHandler dh,
+                                                     String messageId,
+                                                     ChunkInformation chunkInformation,
+                                                     OSCIDataSource chunk)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    PartialStoreDelivery partialStore = new PartialStoreDelivery(dh, addressee, chunkInformation, messageId);
+
+    try (InputStream in = chunk.getInputStream())
+    {
+      partialStore.setChunkBlob(in);
+    }
+
+    return partialStore.send();
+  }
+
+  /**
+   * Schreibt die Nachricht in die Spooldatei und trägt die Hashwerte der Chunks erst ein, wenn die Datei
+   * vollständig auf dem Datenträger liegt.
+   */
+  private static void spool(StoreDeliverySplitter splitter, Checkpoint checkpoint)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    MessageDigest md = Crypto.createMessageDigest(Constants.DIGEST_ALGORITHM_SHA256);
+    List<byte[]> digests = new ArrayList<byte[]>();
+
+    try (FileOutputStream file = new FileOutputStream(checkpoint.getFile()))
+    {
+      OutputStream out = new DigestOutputStream(new BufferedOutputStream(file), md);
+      byte[] buffer = new byte[8192];
+
+      splitter.split((chunkInformation, chunk) -> {
+        try (InputStream in = chunk.getInputStream())
+        {
+          int count;
+
+          while ((count = in.read(buffer)) > -1)
+            out.write(buffer, 0, count);
+        }
+
+        digests.add(md.digest());
+      });
+
+      out.flush();
+      file.getFD().sync();
+    }
+
+    for ( int i = 0 ; i < digests.size() ; i++ )
+      checkpoint.chunkStored(i + 1, digests.get(i));
+  }
+
+  private static boolean isOk(ResponseToPartialStoreDelivery rsp)
+  {
+    String[][] feedback = rsp.getFeedback();
+    return (feedback == null) || (feedback.length == 0) || feedback[0][1].startsWith("0");
+  }
+
+  private static OSCIErrorException errorOf(ResponseToPartialStoreDelivery rsp)
+  {
+    OSCIErrorCodes code = OSCIErrorCodes.fromErrorCode(rsp.getFeedback()[0][1]);
+    return new OSCIErrorException((code == null) ? OSCIErrorCodes.InternalErrorSupplier : code, rsp);
+  }
+
+  private static final class Chunk
+  {
+    final ChunkInformation chunkInformation;
+
+    final OSCIDataSource data;
+
+    // Die Länge des Puffers ist nach dem Lesen nicht mehr verfügbar
+    final long length;
+
+    Chunk(ChunkInformation chunkInformation, OSCIDataSource data)
+    {
+      this.chunkInformation = chunkInformation;
+      this.data = data;
+      length = data.getLength();
+    }
+
+    int number()
+    {
+      return chunkInformation.getChunkNumber();
+    }
+  }
+
+  /**
+   * Zustand einer einzelnen Übertragung
+   */
+  private final class Upload
+  {
+    private final String messageId;
+
+    private final ChunkSizeController controller;
+
+    // Noch nicht bestätigte Chunks ohne den letzten
+    private final Map<Integer, Chunk> pending = new ConcurrentHashMap<Integer, Chunk>();
+
+    private final Semaphore window = new Semaphore(parallelism);
+
+    private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+    private Checkpoint checkpoint;
+
+    private Chunk last;
+
+    private OSCIConfig config;
+
+    Upload(String messageId, ChunkSizeController controller)
+    {
+      this.messageId = messageId;
+      this.controller = controller;
+    }
+
+    ResponseToPartialStoreDelivery run(StoreDeliverySplitter splitter)
+      throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      try
+      {
+        splitter.split((chunkInformation, data) -> offer(new Chunk(chunkInformation, data)));
+      }
+      finally
+      {
+        awaitAll();
+      }
+
+      return complete();
+    }
+
+    ResponseToPartialStoreDelivery run(Checkpoint checkpoint)
+      throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      this.checkpoint = checkpoint;
+      int totalChunks = checkpoint.getTotalChunkNumbers();
+      Set<Integer> acknowledged = new HashSet<Integer>(checkpoint.getAcknowledgedChunks());
+
+      // Maßgeblich ist der Stand des Intermediärs, das Journal kann ihm nachlaufen oder vorauseilen
+      if (!acknowledged.isEmpty())
+      {
+        List<Integer> received = query();
+
+        if (received != null)
+        {
+          acknowledged = new HashSet<Integer>(received);
+          journal(received);
+        }
+      }
+
+      try (RandomAccessFile spool = new RandomAccessFile(checkpoint.getFile(), "r"))
+      {
+        for ( int chunkNumber = 1 ; chunkNumber <= totalChunks ; chunkNumber++ )
+        {
+          if ((chunkNumber < totalChunks) && acknowledged.contains(chunkNumber))
+            continue;
+
+          offer(read(spool, chunkNumber));
+        }
+      }
+      finally
+      {
+        awaitAll();
+      }
+
+      if (log.isDebugEnabled())
+        log.debug("Resumed upload of " + messageId + " with " + (totalChunks - acknowledged.size())
+                  + " of " + totalChunks + " chunks.");
+
+      return complete();
+    }
+
+    private void offer(Chunk chunk) throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      checkFailure();
+
+      if (chunk.number() == chunk.chunkInformation.getTotalChunkNumbers())
+      {
+        last = chunk;
+        return;
+      }
+
+      pending.put(chunk.number(), chunk);
+
+      if (chunk.number() == 1)
+        transmitFirst(chunk);
+      else
+        submit(chunk);
+    }
+
+    private ResponseToPartialStoreDelivery complete() throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      checkFailure();
+
+      for ( int round = 1 ; !pending.isEmpty() && (round <= maxRounds) ; round++ )
+      {
+        refresh();
+
+        for ( Chunk chunk : new ArrayList<Chunk>(pending.values()) )
+        {
+          retransmittedChunks.increment();
+          submit(chunk);
+        }
+
+        awaitAll();
+        checkFailure();
+      }
+
+      if (!pending.isEmpty())
+        throw new IOException(DialogHandler.text.getString("partial_store_incomplete") + " "
+                              + new TreeSet<Integer>(pending.keySet()));
+
+      ResponseToPartialStoreDelivery rsp = transmitLast();
+
+      if (checkpoint != null)
+        checkpoint.finish();
+
+      return rsp;
+    }
+
+    /**
+     * Liest einen Chunk aus der Spooldatei und prüft ihn gegen den Hashwert im Journal.
+     */
+    private Chunk read(RandomAccessFile spool, int chunkNumber)
+      throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      long chunkBytes = checkpoint.getChunkSize() * 1024;
+      long offset = (chunkNumber - 1) * chunkBytes;
+      long length = (chunkNumber < checkpoint.getTotalChunkNumbers()) ? chunkBytes : spool.length() - offset;
+      MessageDigest md = Crypto.createMessageDigest(Constants.DIGEST_ALGORITHM_SHA256);
+      OSCIDataSource data = config().newDataBuffer();
+      byte[] buffer = new byte[8192];
+
+      spool.seek(offset);
+
+      try (OutputStream out = new DigestOutputStream(data.getOutputStream(), md))
+      {
+        while (length > 0)
+        {
+          int count = spool.read(buffer, 0, (int)Math.min(buffer.length, length));
+
+          if (count < 0)
+            break;
+
+          out.write(buffer, 0, count);
+          length -= count;
+        }
+      }
+
+      if ((length != 0) || !MessageDigest.isEqual(md.digest(), checkpoint.getDigest(chunkNumber)))
+        throw new IOException(DialogHandler.text.getString("partial_transfer_chunk_corrupt") + " " + chunkNumber);
+
+      return new Chunk(new ChunkInformation(checkpoint.getChunkSize(), chunkNumber,
+                                            checkpoint.getTotalMessageSize(), checkpoint.getTotalChunkNumbers()),
+                       data);
+    }
+
+    /**
+     * Liefert die Konfiguration der Dialoge des Pools, über die die Chunks versendet werden.
+     */
+    private OSCIConfig config() throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      if (config == null)
+      {
+        try (DialogPool.Lease lease = pool.acquire())
+        {
+          config = lease.getDialogHandler().getConfig();
+        }
+      }
+
+      return config;
+    }
+
+    private void transmitFirst(Chunk chunk) throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      for ( int attempt = 0 ; !transmit(chunk) ; attempt++ )
+      {
+        checkFailure();
+
+        if (attempt >= maxRounds)
+          throw new IOException(DialogHandler.text.getString("partial_store_incomplete") + " [1]");
+
+        retransmittedChunks.increment();
+      }
+    }
+
+    private ResponseToPartialStoreDelivery transmitLast()
+      throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      for ( int attempt = 0 ; ; attempt++ )
+      {
+        try (DialogPool.Lease lease = pool.acquire())
+        {
+          try
+          {
+            long start = System.nanoTime();
+            ResponseToPartialStoreDelivery rsp = sendChunk(lease.getDialogHandler(), messageId,
+                                                           last.chunkInformation, last.data);
+            sentChunks.increment();
+            transmitted(last, start);
+
+            if (!isOk(rsp))
+              throw errorOf(rsp);
+
+            return rsp;
+          }
+          catch (OSCIErrorException ex)
+          {
+            failed(last, ex);
+            throw ex;
+          }
+          catch (IOException | OSCIException ex)
+          {
+            lease.invalidate();
+            failedTransmissions.increment();
+            failed(last, ex);
+
+            if (attempt >= maxRounds)
+              throw ex;
+
+            log.warn("Transmission of last chunk " + last.number() + " failed, retrying.", ex);
+            retransmittedChunks.increment();
+          }
+        }
+      }
+    }
+
+    private void submit(Chunk chunk) throws IOException
+    {
+      try
+      {
+        window.acquire();
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+
+      try
+      {
+        executor.execute(() -> {
+          try
+          {
+            transmit(chunk);
+          }
+          finally
+          {
+            window.release();
+          }
+        });
+      }
+      catch (RuntimeException ex)
+      {
+        window.release();
+        throw ex;
+      }
+    }
+
+    private void awaitAll() throws IOException
+    {
+      try
+      {
+        window.acquire(parallelism);
+        window.release(parallelism);
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+
+    /**
+     * Überträgt einen Chunk. Ein-/Ausgabe- und OSCI-Fehler gelten als vorübergehend, der Chunk bleibt dann
+     * offen. Alle übrigen Fehler beenden die Übertragung.
+     */
+    private boolean transmit(Chunk chunk)
+    {
+      DialogPool.Lease lease = null;
+
+      try
+      {
+        lease = pool.acquire();
+        long start = System.nanoTime();
+        ResponseToPartialStoreDelivery rsp = sendChunk(lease.getDialogHandler(), messageId,
+                                                       chunk.chunkInformation, chunk.data);
+        sentChunks.increment();
+        transmitted(chunk, start);
+        acknowledge(rsp);
+
+        if (isOk(rsp))
+        {
+          pending.remove(chunk.number());
+          journal(Collections.singletonList(chunk.number()));
+          return true;
+        }
+
+        // z.B. DuplicateChunk: der Intermediär hat den Chunk bereits
+        if (!pending.containsKey(chunk.number()))
+          return true;
+
+        OSCIErrorException error = errorOf(rsp);
+        failed(chunk, error);
+        failure.compareAndSet(null, error);
+        return false;
+      }
+      catch (IOException | OSCIException ex)
+      {
+        if (lease != null)
+          lease.invalidate();
+
+        failedTransmissions.increment();
+        failed(chunk, ex);
+        log.warn("Transmission of chunk " + chunk.number() + " failed.", ex);
+        return false;
+      }
+      catch (NoSuchAlgorithmException | RuntimeException ex)
+      {
+        failure.compareAndSet(null, ex);
+        return false;
+      }
+      finally
+      {
+        if (lease != null)
+          lease.close();
+      }
+    }
+
+    /**
+     * Fragt den Empfangsstand beim Intermediär ab.
+     */
+    private void refresh()
+    {
+      List<Integer> received = query();
+
+      if (received != null)
+        acknowledge(received);
+    }
+
+    /**
+     * Fragt die empfangenen Chunks beim Intermediär ab.
+     *
+     * @return empfangene Chunks, eine leere Liste, wenn der Intermediär die Übertragung nicht kennt, oder
+     *         <code>null</code>, wenn die Abfrage fehlgeschlagen ist
+     */
+    private List<Integer> query()
+    {
+      try (DialogPool.Lease lease = pool.acquire())
+      {
+        try
+        {
+          ResponseToPartialStoreDelivery rsp = new PartialStoreDelivery(lease.getDialogHandler(), addressee,
+                                                                        true, messageId).send();
+
+          if (!isOk(rsp) || (rsp.getChunkInformation() == null))
+            return Collections.emptyList();
+
+          return rsp.getChunkInformation().getReceivedChunks();
+        }
+        catch (IOException | OSCIException ex)
+        {
+          lease.invalidate();
+          throw ex;
+        }
+      }
+      catch (Exception ex)
+      {
+        log.warn("Querying received chunks failed.", ex);
+        return null;
+      }
+    }
+
+    private void transmitted(Chunk chunk, long start)
+    {
+      if (controller != null)
+        controller.chunkTransmitted(chunk.length, System.nanoTime() - start);
+    }
+
+    private void failed(Chunk chunk, Exception ex)
+    {
+      if (controller != null)
+        controller.chunkFailed(chunk.length, ex);
+    }
+
+    private void acknowledge(ResponseToPartialStoreDelivery rsp)
+    {
+      ChunkInformation chunkInformation = rsp.getChunkInformation();
+
+      if (chunkInformation != null)
+        acknowledge(chunkInformation.getReceivedChunks());
+    }
+
+    private void acknowledge(List<Integer> received)
+    {
+      for ( Integer number : received )
+        pending.remove(number);
+
+      journal(received);
+    }
+
+    /**
+     * Trägt bestätigte Chunks in das Journal ein. Ein Fehler beim Schreiben beendet die Übertragung.
+     */
+    private void journal(List<Integer> received)
+    {
+      if (checkpoint == null)
+        return;
+
+      try
+      {
+        for ( Integer number : received )
+        {
+          // -1 steht für "noch keine Chunks empfangen"
+          if ((number > 0) && (number < checkpoint.getTotalChunkNumbers()))
+            checkpoint.chunkAcknowledged(number);
+        }
+      }
+      catch (IOException ex)
+      {
+        failure.compareAndSet(null, ex);
+      }
+    }
+
+    private void checkFailure() throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      Exception ex = failure.get();
+
+      if (ex == null)
+        return;
+
+      if (ex instanceof IOException)
+        throw (IOException)ex;
+
+      if (ex instanceof OSCIException)
+        throw (OSCIException)ex;
+
+      if (ex instanceof NoSuchAlgorithmException)
+        throw (NoSuchAlgorithmException)ex;
+
+      throw (RuntimeException)ex;
+    }
+  }
+}
@@ -0,0 +1,788 @@
+package de.osci.osci12.messagetypes;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.helper.Base64;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.messageparts.ChunkInformation;
+import de.osci.osci12.messageparts.ChunkInformation.CheckInstance;
+
+
+/**
+ * Journal für die Wiederaufnahme paketierter Übertragungen nach einem Abbruch des Prozesses. Je Message-ID
+ * werden der Plan der Übertragung (Chunkgröße, Gesamtgröße, Anzahl der Chunks und die lokale Datei), die
+ * Hashwerte der lokal abgelegten Chunks und die vom Intermediär bestätigten Chunks festgehalten.
+ * <p>
+ * Das Journal ist eine Textdatei, an die jeder Eintrag angehängt und sofort auf den Datenträger geschrieben
+ * wird. Das Schreiben auf den Datenträger erfolgt außerhalb der Sperre des Zustands; gleichzeitige Einträge
+ * mehrerer Threads werden mit einem gemeinsamen force() geschrieben. Da die Einträge in der Reihenfolge der
+ * Änderungen angehängt werden, enthält die Datei nach einem Abbruch stets einen Anfang der Änderungen. Beim
+ * Öffnen wird sie einmal gelesen; ein beim Abbruch unvollständig geschriebener letzter Eintrag
+ * wird verworfen. Enthält die Datei überwiegend Einträge abgeschlossener Übertragungen, wird sie mit dem
+ * aktuellen Stand neu geschrieben. Der Aufwand der Wiederaufnahme hängt damit nur von den offenen
+ * Übertragungen ab.
+ * </p>
+ * <p>
+ * Wird eine Übertragung mit einem Plan begonnen, der vom Journal abweicht, wird sie mit einer IOException
+ * abgewiesen. Verglichen werden die Chunkgröße und die Attribute, die laut {@link CheckInstance} des Plans
+ * Pflicht sind.
+ * </p>
+ * <pre>
+ * try (PartialTransferJournal journal = new PartialTransferJournal(new File("transfers.journal")))
+ * {
+ *   for (String messageId : journal.getMessageIds())
+ *     if (journal.getCheckpoint(messageId).getCheckInstance() == CheckInstance.PartialStoreDelivery)
+ *       uploader.resume(messageId, journal);
+ * }
+ * </pre>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see PartialStoreDeliveryUploader#upload(StoreDeliverySplitter, PartialTransferJournal, File)
+ * @see PartialFetchDeliveryAssembler#fetch(String, PartialTransferJournal, File)
+ */
+public class PartialTransferJournal implements Closeable
+{
+  private static Log log = LogFactory.getLog(PartialTransferJournal.class);
+
+  private static final String PLAN = "P";
+
+  private static final String STORED = "C";
+
+  private static final String ACKNOWLEDGED = "A";
+
+  private static final String DONE = "D";
+
+  private final File file;
+
+  private final Map<String, Checkpoint> checkpoints = new LinkedHashMap<String, Checkpoint>();
+
+  // Sperrt den Zustand im Speicher und das Anhängen, damit die Einträge in der Reihenfolge der Änderungen
+  // in der Datei stehen
+  private final ReentrantLock stateLock = new ReentrantLock();
+
+  // Nur ein Thread schreibt auf den Datenträger, die übrigen übernehmen sein Ergebnis
+  private final ReentrantLock forceLock = new ReentrantLock();
+
+  private volatile FileChannel channel;
+
+  // Ende des zuletzt angehängten bzw. auf den Datenträger geschriebenen Eintrags
+  private volatile long written;
+
+  private volatile long forced;
+
+  /**
+   * Öffnet das Journal und liest den Stand der offenen Übertragungen. Die Datei wird angelegt, wenn sie
+   * nicht existiert.
+   *
+   * @param file Datei des Journals
+   * @throws IOException bei Ein-/Ausgabefehlern oder wenn die Datei beschädigt ist
+   */
+  public PartialTransferJournal(File file) throws IOException
+  {
+    if (file == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + " null");
+
+    this.file = file;
+    int records = replay();
+
+    if (records > 2 * liveRecords())
+      compact();
+
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                               StandardOpenOption.APPEND);
+    written = channel.size();
+    forced = written;
+  }
+
+  /**
+   * Liefert die Message-IDs der offenen Übertragungen.
+   *
+   * @return Message-IDs in der Reihenfolge, in der die Übertragungen begonnen wurden
+   */
+  public Set<String> getMessageIds()
+  {
+    stateLock.lock();
+
+    try
+    {
+      return Collections.unmodifiableSet(new LinkedHashSet<String>(checkpoints.keySet()));
+    }
+    finally
+    {
+      stateLock.unlock();
+    }
+  }
+
+  /**
+   * Liefert den Stand einer offenen Übertragung.
+   *
+   * @param messageId Message-ID
+   * @return Stand oder <code>null</code>, wenn keine Übertragung offen ist
+   */
+  public Checkpoint getCheckpoint(String messageId)
+  {
+    stateLock.lock();
+
+    try
+    {
+      return checkpoints.get(messageId);
+    }
+    finally
+    {
+      stateLock.unlock();
+    }
+  }
+
+  /**
+   * Beginnt eine Übertragung oder setzt eine offene fort. Ist die Übertragung bereits im Journal
+   * eingetragen, muss der Plan übereinstimmen.
+   *
+   * @param messageId Message-ID
+   * @param chunkSize Chunkgröße in KB
+   * @param plan ChunkInformation mit den Gesamtwerten der Übertragung; ihre CheckInstance legt fest, welche
+   *          Werte verglichen werden
+   * @param data lokale Datei mit den Daten der Übertragung
+   * @return Stand der Übertragung
+   * @throws IOException bei Ein-/Ausgabefehlern oder wenn der Plan vom Journal abweicht
+   */
+  public Checkpoint begin(String messageId, long chunkSize, ChunkInformation plan, File data)
+    throws IOException
+  {
+    if ((messageId == null) || (messageId.indexOf(' ') >= 0) || (messageId.indexOf('\n') >= 0))
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_firstargument") + messageId);
+    if (chunkSize <= 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_secondargument") + chunkSize);
+    if (plan == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_thirdargument") + " null");
+    if (data == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString("invalid_fourthargument") + " null");
+
+    Checkpoint checkpoint;
+    long position;
+
+    stateLock.lock();
+
+    try
+    {
+      checkpoint = checkpoints.get(messageId);
+
+      if (checkpoint != null)
+      {
+        if ((checkpoint.chunkSize != chunkSize) || !checkpoint.file.equals(data.getAbsoluteFile()))
+          throw new IOException(DialogHandler.text.getString("partial_transfer_plan_mismatch") + " "
+                                + messageId);
+
+        checkpoint.checkPlan(plan);
+        // Der Eintrag kann von einem anderen Thread stammen, der ihn noch nicht geschrieben hat
+        position = written;
+      }
+      else
+      {
+        checkpoint = new Checkpoint(messageId, plan.getCheckInstance(), chunkSize, plan.getTotalMessageSize(),
+                                    plan.getTotalChunkNumbers(), data.getAbsoluteFile());
+        position = append(PLAN + " " + messageId + " " + checkpoint.checkInstance.name() + " " + chunkSize
+                          + " " + checkpoint.totalMessageSize + " " + checkpoint.totalChunkNumbers + " "
+                          + checkpoint.file.getPath());
+        checkpoints.put(messageId, checkpoint);
+      }
+    }
+    finally
+    {
+      stateLock.unlock();
+    }
+
+    force(position);
+    return checkpoint;
+  }
+
+  /**
+   * Schließt das Journal.
+   *
+   * @throws IOException bei Ein-/Ausgabefehlern
+   */
+  @Override
+  public void close() throws IOException
+  {
+    stateLock.lock();
+
+    try
+    {
+      if (channel != null)
+        channel.close();
+
+      channel = null;
+    }
+    finally
+    {
+      stateLock.unlock();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    stateLock.lock();
+
+    try
+    {
+      return "PartialTransferJournal[file=" + file + ", open=" + checkpoints.size() + "]";
+    }
+    finally
+    {
+      stateLock.unlock();
+    }
+  }
+
+  /**
+   * Hängt einen Eintrag an, ohne ihn auf den Datenträger zu schreiben. Wird mit gesperrtem Zustand
+   * aufgerufen.
+   *
+   * @return Ende des Eintrags in der Datei
+   * @see #force(long)
+   */
+  private long append(String record) throws IOException
+  {
+    if (channel == null)
+      throw new IOException(DialogHandler.text.getString("partial_transfer_journal_closed") + " " + file);
+
+    ByteBuffer buffer = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+
+    while (buffer.hasRemaining())
+      written += channel.write(buffer);
+
+    return written;
+  }
+
+  /**
+   * Schreibt die Datei mindestens bis zur übergebenen Position auf den Datenträger. Wird ohne gesperrten
+   * Zustand aufgerufen; wartet bereits ein anderer Thread auf force(), wird dessen Ergebnis übernommen.
+   */
+  private void force(long position) throws IOException
+  {
+    if (forced >= position)
+      return;
+
+    forceLock.lock();
+
+    try
+    {
+      if (forced >= position)
+        return;
+
+      FileChannel ch = channel;
+
+      if (ch == null)
+        throw new IOException(DialogHandler.text.getString("partial_transfer_journal_closed") + " " + file);
+
+      // Alles bis hierher Angehängte wird mitgeschrieben
+      long target = written;
+      ch.force(false);
+      forced = target;
+    }
+    finally
+    {
+      forceLock.unlock();
+    }
+  }
+
+  /**
+   * Liest die Datei und verwirft einen unvollständigen letzten Eintrag.
+   *
+   * @return Anzahl der gelesenen Einträge
+   */
+  private int replay() throws IOException
+  {
+    if (!file.exists())
+      return 0;
+
+    byte[] content = Files.readAllBytes(file.toPath());
+    int complete = content.length;
+
+    while ((complete > 0) && (content[complete - 1] != '\n'))
+      complete--;
+
+    if (complete < content.length)
+    {
+      log.warn("Discarding incomplete record at the end of " + file);
+
+      try (FileChannel truncate = FileChannel.open(file.toPath(), StandardOpenOption.WRITE))
+      {
+        truncate.truncate(complete);
+      }
+    }
+
+    int records = 0;
+
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content, 0,
+                                                                                               complete),
+                                                                      StandardCharsets.UTF_8)))
+    {
+      String line;
+
+      while ((line = in.readLine()) != null)
+      {
+        records++;
+
+        try
+        {
+          apply(line);
+        }
+        catch (RuntimeException ex)
+        {
+          throw new IOException(DialogHandler.text.getString("partial_transfer_journal_corrupt") + " " + file
+                                + ":" + records, ex);
+        }
+      }
+    }
+
+    return records;
+  }
+
+  private void apply(String line) throws IOException
+  {
+    String[] fields = line.split(" ", 7);
+    Checkpoint checkpoint = checkpoints.get(fields[1]);
+
+    switch (fields[0])
+    {
+      case PLAN:
+        checkpoints.put(fields[1], new Checkpoint(fields[1], CheckInstance.valueOf(fields[2]),
+                                                  Long.parseLong(fields[3]), Long.parseLong(fields[4]),
+                                                  Integer.parseInt(fields[5]), new File(fields[6])));
+        break;
+
+      case STORED:
+        if (checkpoint != null)
+          checkpoint.digests.put(Integer.valueOf(fields[2]), Base64.decode(fields[3]));
+        break;
+
+      case ACKNOWLEDGED:
+        if (checkpoint != null)
+        {
+          int chunkNumber = Integer.parseInt(fields[2]);
+          checkpoint.acknowledged.set(chunkNumber);
+
+          if (fields.length > 3)
+            checkpoint.digests.put(chunkNumber, Base64.decode(fields[3]));
+        }
+        break;
+
+      case DONE:
+        checkpoints.remove(fields[1]);
+        break;
+
+      default:
+        throw new IllegalArgumentException(fields[0]);
+    }
+  }
+
+  private int liveRecords()
+  {
+    int records = 0;
+
+    for ( Checkpoint checkpoint : checkpoints.values() )
+      records += 1 + checkpoint.digests.size() + checkpoint.acknowledged.cardinality();
+
+    return records;
+  }
+
+  /**
+   * Schreibt den aktuellen Stand in eine neue Datei und ersetzt das Journal damit.
+   */
+  private void compact() throws IOException
+  {
+    File tmp = new File(file.getPath() + ".tmp");
+
+    try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                            StandardOpenOption.TRUNCATE_EXISTING);
+      Writer writer = new OutputStreamWriter(Channels.newOutputStream(out),
+                                             StandardCharsets.UTF_8))
+    {
+      for ( Checkpoint checkpoint : checkpoints.values() )
+      {
+        writer.write(PLAN + " " + checkpoint.messageId + " " + checkpoint.checkInstance.name() + " "
+                     + checkpoint.chunkSize + " " + checkpoint.totalMessageSize + " "
+                     + checkpoint.totalChunkNumbers + " " + checkpoint.file.getPath() + "\n");
+
+        for ( Map.Entry<Integer, byte[]> digest : checkpoint.digests.entrySet() )
+          writer.write(STORED + " " + checkpoint.messageId + " " + digest.getKey() + " "
+                       + Base64.encode(digest.getValue()) + "\n");
+
+        for ( Integer chunkNumber : checkpoint.getAcknowledgedChunks() )
+          writer.write(ACKNOWLEDGED + " " + checkpoint.messageId + " " + chunkNumber + "\n");
+      }
+
+      writer.flush();
+      out.force(false);
+    }
+
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    if (log.isDebugEnabled())
+      log.debug("Compacted " + file + " to " + checkpoints.size() + " open transfers.");
+  }
+
+  /**
+   * Stand einer offenen Übertragung. Alle Änderungen werden sofort in das Journal geschrieben.
+   */
+  public final class Checkpoint
+  {
+    private final String messageId;
+
+    private final CheckInstance checkInstance;
+
+    private final long chunkSize;
+
+    private final long totalMessageSize;
+
+    private final int totalChunkNumbers;
+
+    private final File file;
+
+    private final Map<Integer, byte[]> digests = new HashMap<Integer, byte[]>();
+
+    private final BitSet acknowledged = new BitSet();
+
+    Checkpoint(String messageId,
+               CheckInstance checkInstance,
+               long chunkSize,
+               long totalMessageSize,
+               int totalChunkNumbers,
+               File file)
+    {
+      this.messageId = messageId;
+      this.checkInstance = checkInstance;
+      this.chunkSize = chunkSize;
+      this.totalMessageSize = totalMessageSize;
+      this.totalChunkNumbers = totalChunkNumbers;
+      this.file = file;
+    }
+
+    /**
+     * @return Message-ID der Übertragung
+     */
+    public String getMessageId()
+    {
+      return messageId;
+    }
+
+    /**
+     * @return CheckInstance des Plans
+     */
+    public CheckInstance getCheckInstance()
+    {
+      return checkInstance;
+    }
+
+    /**
+     * @return Chunkgröße in KB
+     */
+    public long getChunkSize()
+    {
+      return chunkSize;
+    }
+
+    /**
+     * @return Gesamtgröße der Nachricht in KB
+     */
+    public long getTotalMessageSize()
+    {
+      return totalMessageSize;
+    }
+
+    /**
+     * @return Anzahl der Chunks
+     */
+    public int getTotalChunkNumbers()
+    {
+      return totalChunkNumbers;
+    }
+
+    /**
+     * @return lokale Datei mit den Daten der Übertragung
+     */
+    public File getFile()
+    {
+      return file;
+    }
+
+    /**
+     * Prüft, ob eine ChunkInformation zum Plan passt. Verglichen werden die Attribute, die laut
+     * CheckInstance Pflicht sind.
+     *
+     * @param chunkInformation ChunkInformation eines Plans oder einer Antwort
+     * @throws IOException wenn die ChunkInformation vom Plan abweicht
+     */
+    public void checkPlan(ChunkInformation chunkInformation) throws IOException
+    {
+      CheckInstance instance = chunkInformation.getCheckInstance();
+
+      if ((instance != checkInstance)
+          || (instance.isChunkSizeCheck() && (chunkInformation.getChunkSize() != chunkSize))
+          || (instance.isTotalMessageSizeCheck() && (chunkInformation.getTotalMessageSize() != totalMessageSize))
+          || (instance.isTotalChunkNumberCheck()
+              && (chunkInformation.getTotalChunkNumbers() != totalChunkNumbers)))
+        throw new IOException(DialogHandler.text.getString("partial_transfer_plan_mismatch") + " " + messageId);
+    }
+
+    /**
+     * Liefert den Hashwert der lokal abgelegten Daten eines Chunks.
+     *
+     * @param chunkNumber Nummer des Chunks
+     * @return SHA-256-Hashwert oder <code>null</code>, wenn der Chunk nicht abgelegt ist
+     */
+    public byte[] getDigest(int chunkNumber)
+    {
+      stateLock.lock();
+
+      try
+      {
+        byte[] digest = digests.get(chunkNumber);
+        return (digest == null) ? null : digest.clone();
+      }
+      finally
+      {
+        stateLock.unlock();
+      }
+    }
+
+    /**
+     * @return <code>true</code>, wenn alle Chunks lokal abgelegt sind
+     */
+    public boolean isStored()
+    {
+      stateLock.lock();
+
+      try
+      {
+        return digests.size() == totalChunkNumbers;
+      }
+      finally
+      {
+        stateLock.unlock();
+      }
+    }
+
+    /**
+     * @param chunkNumber Nummer des Chunks
+     * @return <code>true</code>, wenn der Empfang des Chunks bestätigt ist
+     */
+    public boolean isAcknowledged(int chunkNumber)
+    {
+      stateLock.lock();
+
+      try
+      {
+        return acknowledged.get(chunkNumber);
+      }
+      finally
+      {
+        stateLock.unlock();
+      }
+    }
+
+    /**
+     * @return Nummern der bestätigten Chunks in aufsteigender Reihenfolge
+     */
+    public List<Integer> getAcknowledgedChunks()
+    {
+      stateLock.lock();
+
+      try
+      {
+        List<Integer> chunks = new ArrayList<Integer>(acknowledged.cardinality());
+
+        for ( int i = acknowledged.nextSetBit(0) ; i >= 0 ; i = acknowledged.nextSetBit(i + 1) )
+          chunks.add(i);
+
+        return chunks;
+      }
+      finally
+      {
+        stateLock.unlock();
+      }
+    }
+
+    /**
+     * @return Nummer des ersten nicht bestätigten Chunks, bei vollständig bestätigter Übertragung die Anzahl
+     *         der Chunks plus eins
+     */
+    public int getFirstUnacknowledged()
+    {
+      stateLock.lock();
+
+      try
+      {
+        return acknowledged.nextClearBit(1);
+      }
+      finally
+      {
+        stateLock.unlock();
+      }
+    }
+
+    /**
+     * Vermerkt einen lokal abgelegten Chunk. Die Daten müssen bereits auf den Datenträger geschrieben sein.
+     *
+     * @param chunkNumber Nummer des Chunks
+     * @param digest SHA-256-Hashwert der Daten
+     * @throws IOException bei Ein-/Ausgabefehlern
+     */
+    public void chunkStored(int chunkNumber, byte[] digest) throws IOException
+    {
+      long position;
+
+      stateLock.lock();
+
+      try
+      {
+        position = append(STORED + " " + messageId + " " + chunkNumber + " " + Base64.encode(digest));
+        digests.put(chunkNumber, digest.clone());
+      }
+      finally
+      {
+        stateLock.unlock();
+      }
+
+      force(position);
+    }
+
+    /**
+     * Vermerkt einen vom Intermediär bestätigten Chunk. Bereits vermerkte Chunks werden nicht erneut
+     * eingetragen.
+     *
+     * @param chunkNumber Nummer des Chunks
+     * @throws IOException bei Ein-/Ausgabefehlern
+     */
+    public void chunkAcknowledged(int chunkNumber) throws IOException
+    {
+      long position;
+
+      stateLock.lock();
+
+      try
+      {
+        if (acknowledged.get(chunkNumber))
+          position = written;
+        else
+        {
+          position = append(ACKNOWLEDGED + " " + messageId + " " + chunkNumber);
+          acknowledged.set(chunkNumber);
+        }
+      }
+      finally
+      {
+        stateLock.unlock();
+      }
+
+      force(position);
+    }
+
+    /**
+     * Vermerkt einen empfangenen und lokal abgelegten Chunk in einem Eintrag. Die Daten müssen bereits auf
+     * den Datenträger geschrieben sein.
+     *
+     * @param chunkNumber Nummer des Chunks
+     * @param digest SHA-256-Hashwert der Daten
+     * @throws IOException bei Ein-/Ausgabefehlern
+     */
+    public void chunkAcknowledged(int chunkNumber, byte[] digest) throws IOException
+    {
+      long position;
+
+      stateLock.lock();
+
+      try
+      {
+        position = append(ACKNOWLEDGED + " " + messageId + " " + chunkNumber + " " + Base64.encode(digest));
+        acknowledged.set(chunkNumber);
+        digests.put(chunkNumber, digest.clone());
+      }
+      finally
+      {
+        stateLock.unlock();
+      }
+
+      force(position);
+    }
+
+    /**
+     * Schließt die Übertragung ab und entfernt sie aus dem Journal. Die lokale Datei wird gelöscht.
+     *
+     * @throws IOException bei Ein-/Ausgabefehlern
+     */
+    public void finish() throws IOException
+    {
+      long position;
+
+      stateLock.lock();
+
+      try
+      {
+        position = append(DONE + " " + messageId);
+        checkpoints.remove(messageId);
+      }
+      finally
+      {
+        stateLock.unlock();
+      }
+
+      force(position);
+
+      if (!file.delete() && file.exists())
+        log.warn("Could not delete " + file);
+    }
+
+    @Override
+    public String toString()
+    {
+      stateLock.lock();
+
+      try
+      {
+        return "Checkpoint[messageId=" + messageId + ", chunkSize=" + chunkSize + " KB, chunks="
+               + totalChunkNumbers + ", stored=" + digests.size() + ", acknowledged="
+               + getAcknowledgedChunks() + "]";
+      }
+      finally
+      {
+        stateLock.unlock();
+      }
+    }
+  }
+}
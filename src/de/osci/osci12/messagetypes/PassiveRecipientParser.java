@@ -11,6 +11,7 @@ import org.xml.sax.XMLReader;
 
 import de.osci.osci12.OSCIException;
 import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIConfig;
 import de.osci.osci12.common.OSCIErrorException;
 import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
 import de.osci.osci12.signature.OSCISignatureException;
@@ -84,7 +85,7 @@ public class PassiveRecipientParser extends de.osci.osci12.messagetypes.Incoming
   {
     try
     {
-      defaultSupplier = DialogHandler.getDefaultSuppliers();
+      defaultSupplier = OSCIConfig.current().getDefaultSuppliers();
 
       return (OSCIRequest) super.parseStream(input, null, true, storeStream);
     }
@@ -14,11 +14,17 @@ import org.apache.commons.logging.LogFactory;
 
 import de.osci.helper.Base64;
 import de.osci.helper.Base64OutputStream;
+import de.osci.helper.CertificateCache;
+import de.osci.helper.MeteredOutputStream;
 import de.osci.helper.StoreOutputStream;
+import de.osci.helper.PipelinedOutputStream;
 import de.osci.helper.SymCipherOutputStream;
 import de.osci.osci12.OSCIException;
 import de.osci.osci12.common.Constants;
 import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIConfig;
+import de.osci.osci12.common.MessageMetrics;
+import de.osci.osci12.common.MessageMetrics.Phase;
 import de.osci.osci12.encryption.Crypto;
 import de.osci.osci12.encryption.EncryptedData;
 
@@ -82,6 +88,9 @@ class SOAPMessageEncrypted extends OSCIMessage
 
   private X509Certificate cipherCert;
 
+  /** Messwerte des Versandvorgangs, falls gemessen wird */
+  MessageMetrics metrics;
+
   static
   {
     try
@@ -185,7 +194,7 @@ class SOAPMessageEncrypted extends OSCIMessage
 
     try
     {
-      len += Base64.calcB64Length(cipherCert.getEncoded().length);
+      len += Base64.calcB64Length(CertificateCache.get(cipherCert).getEncodedLength());
     }
     catch (CertificateEncodingException ex)
     {
@@ -258,17 +267,19 @@ class SOAPMessageEncrypted extends OSCIMessage
     if (Constants.ASYMMETRIC_CIPHER_ALGORITHM_RSA_OAEP.equals(msg.getDialogHandler()
                                                                  .getAsymmetricCipherAlgorithm()))
     {
-      if (Constants.DIGEST_ALGORITHM_SHA512.equals(DialogHandler.getDigestAlgorithm())
-          || Constants.DIGEST_ALGORITHM_SHA3_384.equals(DialogHandler.getDigestAlgorithm())
-          || Constants.DIGEST_ALGORITHM_SHA3_512.equals(DialogHandler.getDigestAlgorithm()))
+      String digAlgo = OSCIConfig.current().getDigestAlgorithm();
+
+      if (Constants.DIGEST_ALGORITHM_SHA512.equals(digAlgo)
+          || Constants.DIGEST_ALGORITHM_SHA3_384.equals(digAlgo)
+          || Constants.DIGEST_ALGORITHM_SHA3_512.equals(digAlgo))
       {
         ret = Constants.ASYMMETRIC_CIPHER_ALGORITHM_RSA_OAEP
               + "\"><xenc11:MGF xmlns:xenc11=\"http://www.w3.org/2009/xmlenc11#\" Algorithm=\""
               + Constants.MASK_GENERATION_FUNCTION_1_SHA512 + "\"></xenc11:MGF>";
         ret += "<ds:DigestMethod Algorithm=\"" + Constants.DIGEST_ALGORITHM_SHA512 + "\"></ds:DigestMethod>";
       }
-      else if (Constants.DIGEST_ALGORITHM_SHA256.equals(DialogHandler.getDigestAlgorithm())
-               || Constants.DIGEST_ALGORITHM_SHA3_256.equals(DialogHandler.getDigestAlgorithm()))
+      else if (Constants.DIGEST_ALGORITHM_SHA256.equals(digAlgo)
+               || Constants.DIGEST_ALGORITHM_SHA3_256.equals(digAlgo))
       {
         ret = Constants.ASYMMETRIC_CIPHER_ALGORITHM_RSA_OAEP
               + "\"><xenc11:MGF xmlns:xenc11=\"http://www.w3.org/2009/xmlenc11#\" Algorithm=\""
@@ -327,7 +338,7 @@ class SOAPMessageEncrypted extends OSCIMessage
 
     try
     {
-      out.write(Base64.encode(cipherCert.getEncoded()).getBytes(Constants.CHAR_ENCODING));
+      out.write(CertificateCache.get(cipherCert).getBase64().getBytes(Constants.CHAR_ENCODING));
     }
     catch (CertificateEncodingException ex)
     {
@@ -355,16 +366,37 @@ class SOAPMessageEncrypted extends OSCIMessage
     else
       tdesOut = new SymCipherOutputStream(out, symKey, symmetricCipherAlgorithm, ivLength, true);
 
-    if (storeStream == null)
+    OutputStream encOut = MeteredOutputStream.wrap(tdesOut, metrics, Phase.ENCRYPT);
+    PipelinedOutputStream pipe = null;
+
+    // Serialisierung und Verschlüsselung als getrennte Stufen
+    OSCIConfig config = msg.dialogHandler.getConfig();
+
+    if (config.getPipelineDepth() > 0)
     {
-      msg.writeXML(tdesOut);
-      tdesOut.close();
+      pipe = new PipelinedOutputStream(encOut, config.getPipelineDepth(), config.getPipelineBufferSize(),
+                                       config.getPipelineExecutor());
+      encOut = MeteredOutputStream.wrap(pipe, metrics, null);
     }
-    else
+
+    try
+    {
+      if (storeStream == null)
+      {
+        msg.writeXML(encOut);
+        encOut.close();
+      }
+      else
+      {
+        StoreOutputStream sos = new StoreOutputStream(encOut, storeStream);
+        msg.writeXML(sos);
+        sos.close();
+      }
+    }
+    finally
     {
-      StoreOutputStream sos = new StoreOutputStream(tdesOut, storeStream);
-      msg.writeXML(sos);
-      sos.close();
+      if (pipe != null)
+        pipe.abort();
     }
 
     if (msg.base64)
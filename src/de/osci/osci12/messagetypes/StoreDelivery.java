@@ -3,6 +3,8 @@ package de.osci.osci12.messagetypes;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import eu.osci.ws._2014._10.transport.MessageMetaData;
 import org.apache.commons.logging.Log;
@@ -73,6 +75,7 @@ public class StoreDelivery extends OSCIRequest implements ContentPackageI
    * @throws NoSuchAlgorithmException wenn der verwendete Security-Provider einen erforderlichen Algorithmus
    *           nicht unterstützt (Erzeugung einer Zufallszahl)
    * @see de.osci.osci12.common.DialogHandler
+   * @see de.osci.osci12.common.MessageIdPool#take()
    */
   public StoreDelivery(DialogHandler dh, Addressee addressee, String messageId)
     throws OSCIRoleException, NoSuchAlgorithmException
@@ -345,6 +348,38 @@ public class StoreDelivery extends OSCIRequest implements ContentPackageI
     return (ResponseToStoreDelivery)transmit(storeOutput, storeInput);
   }
 
+  /**
+   * Versendet die Nachricht asynchron über den übergebenen Executor, siehe
+   * {@link OSCIRequest#transmitAsync(OutputStream, OutputStream, Executor)}.
+   *
+   * @param executor Executor für die Verarbeitungsschritte
+   * @return Future mit dem Antwortnachricht-Objekt
+   * @see #send()
+   */
+  public CompletableFuture<ResponseToStoreDelivery> sendAsync(Executor executor)
+  {
+    return transmitAsync(null, null, executor).thenApply(rsp -> (ResponseToStoreDelivery)rsp);
+  }
+
+  /**
+   * Versendet die Nachricht asynchron wie {@link #sendAsync(Executor)}. Die aus- und eingehenden Daten werden
+   * zusätzlich in die übergebenen Streams geschrieben (unverschlüsselte Auftragsdaten). Diese Parameter dürfen
+   * null sein.
+   *
+   * @param storeOutput Stream, in den die versendete Nachricht geschrieben wird
+   * @param storeInput Stream, in den die empfangene Antwortnachricht geschrieben wird
+   * @param executor Executor für die Verarbeitungsschritte
+   * @return Future mit dem Antwortnachricht-Objekt
+   * @see #send(OutputStream, OutputStream)
+   * @see #sendAsync(Executor)
+   */
+  public CompletableFuture<ResponseToStoreDelivery> sendAsync(OutputStream storeOutput,
+                                                              OutputStream storeInput,
+                                                              Executor executor)
+  {
+    return transmitAsync(storeOutput, storeInput, executor).thenApply(rsp -> (ResponseToStoreDelivery)rsp);
+  }
+
   /**
    * Schreibt die komplette Nachricht in den OutputStream. Diese Methode ist für Verwendung mit
    * PartialStoreDelivery gedacht und sollte nicht zum Versenden verwendet werden.
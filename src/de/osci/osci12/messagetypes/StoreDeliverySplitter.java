@@ -0,0 +1,407 @@
+package de.osci.osci12.messagetypes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.osci.osci12.OSCIException;
+import de.osci.osci12.common.Constants.LanguageTextEntries;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIErrorException;
+import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
+import de.osci.osci12.extinterfaces.OSCIDataSource;
+import de.osci.osci12.messageparts.ChunkInformation;
+import de.osci.osci12.roles.Addressee;
+
+
+/**
+ * Zerlegt eine StoreDelivery-Nachricht für den paketierten Versand mit PartialStoreDelivery. Die Nachricht
+ * wird in einem Durchlauf serialisiert und dabei direkt in Abschnitte (Chunks) der eingestellten Größe
+ * geschrieben. Jeder Chunk wird in einem eigenen OSCIDataSource-Objekt des Dialogs der StoreDelivery
+ * abgelegt und übergeben, sobald er vollständig ist. Die komplette Nachricht muss so weder im Speicher noch
+ * in temporären Dateien vorgehalten werden; der Bedarf ist nur von der Chunkgröße abhängig.
+ * <p>
+ * Anzahl und Gesamtgröße der Chunks, die in jeder ChunkInformation anzugeben sind, werden vorab aus der
+ * berechneten Länge der Nachricht ermittelt. Weicht die geschriebene Nachricht davon ab, wird der Vorgang
+ * mit einer IOException abgebrochen.
+ * </p>
+ * <pre>
+ * StoreDeliverySplitter splitter = new StoreDeliverySplitter(storeDelivery, 1000);
+ * ResponseToPartialStoreDelivery rsp = splitter.send(dialogHandler, addressee);
+ * </pre>
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ * @see PartialStoreDelivery
+ * @see StoreDelivery#writeMessage(OutputStream)
+ */
+public class StoreDeliverySplitter
+{
+  private static Log log = LogFactory.getLog(StoreDeliverySplitter.class);
+
+  private final StoreDelivery storeDelivery;
+
+  private final long chunkSize;
+
+  private final ChunkSizeController controller;
+
+  private long totalLength = -1;
+
+  /**
+   * Empfängt die Chunks einer zerlegten StoreDelivery in aufsteigender Reihenfolge.
+   */
+  public interface ChunkHandler
+  {
+    /**
+     * Wird für jeden vollständig geschriebenen Chunk aufgerufen. Die Nachricht wird erst nach der Rückkehr
+     * weiter serialisiert. Der Datenpuffer wird vom Splitter danach nicht mehr verwendet.
+     *
+     * @param chunkInformation ChunkInformation des Chunks für eine PartialStoreDelivery
+     * @param chunk Daten des Chunks
+     * @throws IOException bei Ein-/Ausgabefehlern
+     * @throws OSCIException bei OSCI-Fehlern
+     * @throws NoSuchAlgorithmException wenn ein benötigter Algorithmus nicht unterstützt wird
+     */
+    void handleChunk(ChunkInformation chunkInformation, OSCIDataSource chunk)
+      throws IOException, OSCIException, NoSuchAlgorithmException;
+  }
+
+  /**
+   * Legt einen Splitter für die übergebene Nachricht an.
+   *
+   * @param storeDelivery zu zerlegende Nachricht, sie muss vollständig aufgebaut sein
+   * @param chunkSize Größe eines Chunks in KB
+   */
+  public StoreDeliverySplitter(StoreDelivery storeDelivery, long chunkSize)
+  {
+    if (storeDelivery == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString(LanguageTextEntries.invalid_firstargument.name())
+                                         + " null");
+
+    if (chunkSize <= 0)
+      throw new IllegalArgumentException(DialogHandler.text.getString(LanguageTextEntries.invalid_secondargument.name())
+                                         + " " + chunkSize);
+
+    this.storeDelivery = storeDelivery;
+    this.chunkSize = chunkSize;
+    this.controller = null;
+  }
+
+  /**
+   * Legt einen Splitter an, der die Chunkgröße vom übergebenen Controller übernimmt und ihm die Laufzeiten
+   * der versendeten Chunks meldet.
+   *
+   * @param storeDelivery zu zerlegende Nachricht, sie muss vollständig aufgebaut sein
+   * @param controller Controller für die Chunkgröße
+   */
+  public StoreDeliverySplitter(StoreDelivery storeDelivery, ChunkSizeController controller)
+  {
+    if (storeDelivery == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString(LanguageTextEntries.invalid_firstargument.name())
+                                         + " null");
+
+    if (controller == null)
+      throw new IllegalArgumentException(DialogHandler.text.getString(LanguageTextEntries.invalid_secondargument.name())
+                                         + " null");
+
+    this.storeDelivery = storeDelivery;
+    this.chunkSize = controller.getChunkSize();
+    this.controller = controller;
+  }
+
+  /**
+   * Liefert die zu zerlegende Nachricht.
+   *
+   * @return StoreDelivery
+   */
+  public StoreDelivery getStoreDelivery()
+  {
+    return storeDelivery;
+  }
+
+  /**
+   * Liefert den Controller für die Chunkgröße.
+   *
+   * @return Controller oder <code>null</code>, wenn die Chunkgröße fest eingestellt wurde
+   */
+  public ChunkSizeController getChunkSizeController()
+  {
+    return controller;
+  }
+
+  /**
+   * Liefert die Größe eines Chunks in KB.
+   *
+   * @return Chunkgröße
+   */
+  public long getChunkSize()
+  {
+    return chunkSize;
+  }
+
+  /**
+   * Liefert die Länge der serialisierten StoreDelivery in Byte. Die Nachricht wird dazu ggf. aufgebaut.
+   *
+   * @return Länge der Nachricht
+   * @throws IOException bei Ein-/Ausgabefehlern
+   * @throws OSCIException bei OSCI-Fehlern
+   * @throws NoSuchAlgorithmException wenn ein benötigter Algorithmus nicht unterstützt wird
+   */
+  public long getTotalLength() throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    if (totalLength < 0)
+      totalLength = storeDelivery.calcLength();
+
+    return totalLength;
+  }
+
+  /**
+   * Liefert die Anzahl der Chunks, in die die Nachricht zerlegt wird.
+   *
+   * @return Anzahl der Chunks
+   * @throws IOException bei Ein-/Ausgabefehlern
+   * @throws OSCIException bei OSCI-Fehlern
+   * @throws NoSuchAlgorithmException wenn ein benötigter Algorithmus nicht unterstützt wird
+   */
+  public int getTotalChunkNumbers() throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    long chunkBytes = chunkSize * 1024;
+    return (int)((getTotalLength() + chunkBytes - 1) / chunkBytes);
+  }
+
+  /**
+   * Serialisiert die StoreDelivery und übergibt die Chunks nacheinander an den Handler.
+   *
+   * @param handler Empfänger der Chunks
+   * @throws IOException bei Ein-/Ausgabefehlern oder wenn die Länge der geschriebenen Nachricht von der
+   *           berechneten abweicht
+   * @throws OSCIException bei OSCI-Fehlern
+   * @throws NoSuchAlgorithmException wenn ein benötigter Algorithmus nicht unterstützt wird
+   */
+  public void split(ChunkHandler handler) throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    ChunkOutputStream out = new ChunkOutputStream(handler, getTotalLength(), getTotalChunkNumbers());
+
+    try
+    {
+      storeDelivery.writeMessage(out);
+    }
+    catch (HandlerException ex)
+    {
+      ex.rethrow();
+    }
+
+    out.finish();
+  }
+
+  /**
+   * Zerlegt die StoreDelivery und versendet jeden Chunk als PartialStoreDelivery im übergebenen Dialog.
+   * Meldet der Intermediär für einen Chunk einen Fehler, wird der Versand mit einer OSCIErrorException
+   * abgebrochen, die die Antwortnachricht enthält. Die Antwort auf den letzten Chunk enthält die Rückmeldung
+   * und den Laufzettel der gesamten Nachricht.
+   *
+   * @param dh DialogHandler eines expliziten Dialogs, in dem die Chunks versendet werden
+   * @param addressee Empfänger der Nachricht
+   * @return Antwort auf den letzten Chunk
+   * @throws IOException bei Ein-/Ausgabefehlern
+   * @throws OSCIException bei OSCI-Fehlern oder Fehlermeldungen des Intermediärs
+   * @throws NoSuchAlgorithmException wenn ein benötigter Algorithmus nicht unterstützt wird
+   */
+  public ResponseToPartialStoreDelivery send(DialogHandler dh, Addressee addressee)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    ResponseToPartialStoreDelivery[] last = new ResponseToPartialStoreDelivery[1];
+
+    split((chunkInformation, chunk) -> {
+      // Die Länge des Puffers ist nach dem Lesen nicht mehr verfügbar
+      long bytes = chunk.getLength();
+      long start = System.nanoTime();
+
+      try
+      {
+        last[0] = sendChunk(dh, addressee, chunkInformation, chunk);
+      }
+      catch (IOException | OSCIException ex)
+      {
+        if (controller != null)
+          controller.chunkFailed(bytes, ex);
+
+        throw ex;
+      }
+
+      if (controller != null)
+        controller.chunkTransmitted(bytes, System.nanoTime() - start);
+    });
+
+    return last[0];
+  }
+
+  /**
+   * Versendet einen Chunk als PartialStoreDelivery. Kann überschrieben werden, um die Nachricht vor dem
+   * Versand anzupassen.
+   *
+   * @param dh DialogHandler des Dialogs
+   * @param addressee Empfänger der Nachricht
+   * @param chunkInformation ChunkInformation des Chunks
+   * @param chunk Daten des Chunks
+   * @return Antwortnachricht
+   * @throws IOException bei Ein-/Ausgabefehlern
+   * @throws OSCIException bei OSCI-Fehlern oder Fehlermeldungen des Intermediärs
+   * @throws NoSuchAlgorithmException wenn ein benötigter Algorithmus nicht unterstützt wird
+   */
+  protected ResponseToPartialStoreDelivery sendChunk(DialogHandler dh,
+                                                     Addressee addressee,
+                                                     ChunkInformation chunkInformation,
+                                                     OSCIDataSource chunk)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    PartialStoreDelivery partialStore = new PartialStoreDelivery(dh, addressee, chunkInformation,
+                                                                 storeDelivery.getMessageId());
+
+    try (InputStream in = chunk.getInputStream())
+    {
+      partialStore.setChunkBlob(in);
+    }
+
+    ResponseToPartialStoreDelivery rsp = partialStore.send();
+    String[][] feedback = rsp.getFeedback();
+
+    if ((feedback != null) && (feedback.length > 0) && !feedback[0][1].startsWith("0"))
+    {
+      OSCIErrorCodes code = OSCIErrorCodes.fromErrorCode(feedback[0][1]);
+      throw new OSCIErrorException((code == null) ? OSCIErrorCodes.InternalErrorSupplier : code, rsp);
+    }
+
+    return rsp;
+  }
+
+  /**
+   * Transportiert Exceptions des Handlers durch den OutputStream.
+   */
+  private static final class HandlerException extends IOException
+  {
+    private static final long serialVersionUID = 1L;
+
+    HandlerException(Exception cause)
+    {
+      super(cause);
+    }
+
+    void rethrow() throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      Throwable cause = getCause();
+
+      if (cause instanceof OSCIException)
+        throw (OSCIException)cause;
+
+      if (cause instanceof NoSuchAlgorithmException)
+        throw (NoSuchAlgorithmException)cause;
+
+      throw (IOException)cause;
+    }
+  }
+
+  private final class ChunkOutputStream extends OutputStream
+  {
+    private final ChunkHandler handler;
+
+    private final long total;
+
+    private final int totalChunks;
+
+    private final long chunkBytes = chunkSize * 1024;
+
+    private int chunkNumber;
+
+    private long written;
+
+    private long limit;
+
+    private OSCIDataSource chunk;
+
+    private OutputStream chunkOut;
+
+    ChunkOutputStream(ChunkHandler handler, long total, int totalChunks)
+    {
+      this.handler = handler;
+      this.total = total;
+      this.totalChunks = totalChunks;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+      write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+      while (len > 0)
+      {
+        if (chunk == null)
+          nextChunk();
+
+        int count = (int)Math.min(len, limit - written);
+        chunkOut.write(b, off, count);
+        written += count;
+        off += count;
+        len -= count;
+
+        if (written == limit)
+          completeChunk();
+      }
+    }
+
+    private void nextChunk() throws IOException
+    {
+      if (chunkNumber == totalChunks)
+        throw new IOException(DialogHandler.text.getString("store_delivery_length_mismatch") + " " + total);
+
+      chunkNumber++;
+      limit = Math.min(written + chunkBytes, total);
+      chunk = storeDelivery.dialogHandler.getConfig().newDataBuffer();
+      chunkOut = chunk.getOutputStream();
+    }
+
+    private void completeChunk() throws IOException
+    {
+      chunkOut.close();
+      ChunkInformation chunkInformation = new ChunkInformation(chunkSize, chunkNumber, total / 1024,
+                                                               totalChunks);
+
+      if (log.isDebugEnabled())
+        log.debug("Chunk " + chunkNumber + " von " + totalChunks + " geschrieben: " + chunk.getLength());
+
+      OSCIDataSource completed = chunk;
+      chunk = null;
+      chunkOut = null;
+
+      try
+      {
+        handler.handleChunk(chunkInformation, completed);
+      }
+      catch (IOException | OSCIException | NoSuchAlgorithmException ex)
+      {
+        throw new HandlerException(ex);
+      }
+    }
+
+    void finish() throws IOException
+    {
+      if ((chunk != null) || (chunkNumber != totalChunks))
+        throw new IOException(DialogHandler.text.getString("store_delivery_length_mismatch") + " " + total);
+    }
+  }
+}
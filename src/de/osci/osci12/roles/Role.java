@@ -1,16 +1,16 @@
 package de.osci.osci12.roles;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import de.osci.osci12.common.Constants;
+import de.osci.helper.CertificateCache;
 import de.osci.osci12.common.DialogHandler;
-import de.osci.osci12.encryption.Crypto;
+import de.osci.osci12.common.OSCIConfig;
 import de.osci.osci12.extinterfaces.crypto.Decrypter;
 import de.osci.osci12.extinterfaces.crypto.Signer;
 
@@ -37,7 +37,6 @@ public abstract class Role
 
   private static Log log = LogFactory.getLog(Role.class);
 
-  private static MessageDigest md;
 
   protected Signer signer = null;
 
@@ -60,6 +59,13 @@ public abstract class Role
 
   private String signatureHash;
 
+  private static final int MAX_CACHED_FRAGMENTS = 64;
+
+  // Bereits serialisierte Nachrichtenfragmente zu den Zertifikaten dieser Rolle, geschützt durch fragmentLock
+  private final FragmentCache fragmentCache = new FragmentCache();
+
+  private final ReentrantLock fragmentLock = new ReentrantLock();
+
   // Signaturalgoritmus
   protected String signatureAlgorithm;
 
@@ -161,37 +167,15 @@ public abstract class Role
 
   /**
    * Helfermethode für die Berechnung des Hashwertes von Zertfifkaten. Wird vom Anwender normalerweise nicht
-   * benötigt.
+   * benötigt. Der Hashwert wird aus dem Zertifikat-Cache geliefert.
    *
    * @param cert zu hashendes Zertifkat
    * @return hexadezimaler Hashwert
-   * @throws NoSuchAlgorithmException wenn Hashalgorithmus nicht verfügbar
-   * @throws CertificateEncodingException bei Codierungsfehlern
+   * @see CertificateCache#getHash(X509Certificate)
    */
-  private static synchronized String hashCertificate(X509Certificate cert)
+  private static String hashCertificate(X509Certificate cert)
   {
-    if (cert == null)
-      return "no_hash_available";
-
-    try
-    {
-      if (md == null)
-      {
-        if (DialogHandler.getSecurityProvider() == null)
-          md = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(Constants.DIGEST_ALGORITHM_SHA256));
-        else
-          md = MessageDigest.getInstance(Constants.JCA_JCE_MAP.get(Constants.DIGEST_ALGORITHM_SHA256),
-                                         DialogHandler.getSecurityProvider());
-      }
-
-      md.reset();
-
-      return Crypto.toHex(md.digest(cert.getEncoded()));
-    }
-    catch (Exception ex)
-    {
-      return "no_hash_available";
-    }
+    return CertificateCache.getHash(cert);
   }
 
   /**
@@ -254,6 +238,7 @@ public abstract class Role
   {
     this.signer = signer;
     signatureHash = null;
+    clearCachedFragments();
   }
 
   /**
@@ -268,6 +253,7 @@ public abstract class Role
   {
     this.decrypter = decrypter;
     cipherHash = null;
+    clearCachedFragments();
   }
 
   /**
@@ -279,6 +265,7 @@ public abstract class Role
   {
     this.signatureCertificate = signatureCertificate;
     signatureHash = hashCertificate(signatureCertificate);
+    clearCachedFragments();
   }
 
   /**
@@ -318,6 +305,7 @@ public abstract class Role
   {
     this.cipherCertificate = cipherCertificate;
     cipherHash = hashCertificate(cipherCertificate);
+    clearCachedFragments();
   }
 
   /**
@@ -367,16 +355,97 @@ public abstract class Role
     {
       signatureAlgorithm = signer.getAlgorithm();
       if (signatureAlgorithm == null)
-        signatureAlgorithm = DialogHandler.getSignatureAlgorithm();
+        signatureAlgorithm = OSCIConfig.current().getSignatureAlgorithm();
     }
     catch (AbstractMethodError ame)
     {
+      String defaultAlgorithm = OSCIConfig.current().getSignatureAlgorithm();
       log.warn("No implementaion of Signer.getAlgorithm() found in Role '" + id
                + "', probably old Signer implementaion (< 1.3) in use. Defaulting to "
-               + DialogHandler.getSignatureAlgorithm());
-      signatureAlgorithm = DialogHandler.getSignatureAlgorithm();
+               + defaultAlgorithm);
+      signatureAlgorithm = defaultAlgorithm;
     }
 
     return signatureAlgorithm;
   }
+
+  /**
+   * Liefert ein zwischengespeichertes, bereits serialisiertes Nachrichtenfragment zu den Zertifikaten dieser
+   * Rolle (z.B. ein CipherCertificate-Element oder den Hashwert eines Zertifikats-Headers). Der Cache wird
+   * geleert, sobald Zertifikate, Signer oder Decrypter der Rolle neu gesetzt werden. Wird vom Anwender
+   * normalerweise nicht benötigt.
+   *
+   * @param key Schlüssel des Fragmentes
+   * @return Fragment oder <code>null</code>, wenn nicht vorhanden
+   * @see #putCachedFragment(String, byte[])
+   */
+  public byte[] getCachedFragment(String key)
+  {
+    fragmentLock.lock();
+
+    try
+    {
+      return fragmentCache.get(key);
+    }
+    finally
+    {
+      fragmentLock.unlock();
+    }
+  }
+
+  /**
+   * Legt ein serialisiertes Nachrichtenfragment zu den Zertifikaten dieser Rolle im Cache ab. Das Array darf
+   * danach nicht mehr verändert werden. Ist der Cache voll, wird das am längsten nicht verwendete Fragment
+   * verdrängt. Wird vom Anwender normalerweise nicht benötigt.
+   *
+   * @param key Schlüssel des Fragmentes
+   * @param fragment Fragment
+   * @see #getCachedFragment(String)
+   */
+  public void putCachedFragment(String key, byte[] fragment)
+  {
+    fragmentLock.lock();
+
+    try
+    {
+      fragmentCache.put(key, fragment);
+    }
+    finally
+    {
+      fragmentLock.unlock();
+    }
+  }
+
+  private void clearCachedFragments()
+  {
+    fragmentLock.lock();
+
+    try
+    {
+      fragmentCache.clear();
+    }
+    finally
+    {
+      fragmentLock.unlock();
+    }
+  }
+
+  /**
+   * Fragmente in der Reihenfolge ihrer Verwendung, begrenzt auf MAX_CACHED_FRAGMENTS
+   */
+  private static final class FragmentCache extends LinkedHashMap<String, byte[]>
+  {
+    private static final long serialVersionUID = 1L;
+
+    FragmentCache()
+    {
+      super(16, 0.75f, true);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest)
+    {
+      return size() > MAX_CACHED_FRAGMENTS;
+    }
+  }
 }
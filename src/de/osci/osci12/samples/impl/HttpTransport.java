@@ -33,6 +33,7 @@ public class HttpTransport implements TransportI
 {
   private static Log log = LogFactory.getLog(HttpTransport.class);
   URLConnection con;
+  private boolean chunkedTransfer = false;
   ResourceBundle text = ResourceBundle.getBundle("de.osci.osci12.extinterfaces.language.Text", Locale.getDefault());
 
   /**
@@ -68,7 +69,34 @@ public class HttpTransport implements TransportI
    */
   public TransportI newInstance()
   {
-    return new HttpTransport();
+    HttpTransport transport = new HttpTransport();
+    transport.chunkedTransfer = chunkedTransfer;
+
+    return transport;
+  }
+
+  /**
+   * Schaltet die Übertragung mit "Transfer-Encoding: chunked" ein. Die Bibliothek berechnet die
+   * Nachrichtenlänge dann nicht mehr vorab. Der Kommunikationspartner muss chunked-Requests annehmen.
+   * Voreinstellung ist <code>false</code>.
+   *
+   * @param chunkedTransfer <code>true</code> für chunked Transfer-Encoding
+   */
+  public void setChunkedTransfer(boolean chunkedTransfer)
+  {
+    this.chunkedTransfer = chunkedTransfer;
+  }
+
+  /**
+   * Liefert <code>true</code>, wenn die Übertragung mit "Transfer-Encoding: chunked" eingeschaltet ist.
+   *
+   * @return <code>true</code>, wenn Nachrichten ohne vorab bekannte Länge übertragen werden
+   * @see #setChunkedTransfer(boolean)
+   */
+  @Override
+  public boolean isChunkedTransferSupported()
+  {
+    return chunkedTransfer;
   }
 
   /**
@@ -112,14 +140,13 @@ public class HttpTransport implements TransportI
   }
 
   /**
-   * undocumented
+   * Liefert die Länge der Antwort aus dem Header "Content-Length".
    *
-   * @return undocumented
+   * @return Länge in Bytes oder -1, wenn nicht bekannt
    */
   public long getContentLength()
   {
-    /**@todo Diese de.osci.osci12.extinterfaces.transport.TransportI-Methode implementieren*/
-    throw new java.lang.UnsupportedOperationException("Methode getContentLength() noch nicht implementiert.");
+    return (con == null) ? -1 : con.getContentLengthLong();
   }
 
   /**
@@ -142,7 +169,10 @@ public class HttpTransport implements TransportI
         httpCon.setRequestMethod("POST");
         httpCon.setRequestProperty("Content-Type", "text/xml");
         httpCon.setRequestProperty("charset", "utf-8");
-        httpCon.setRequestProperty("Content-Length", Long.toString(laenge));
+        if (laenge < 0)
+          httpCon.setChunkedStreamingMode(0);
+        else
+          httpCon.setRequestProperty("Content-Length", Long.toString(laenge));
         httpCon.setUseCaches(false);
         httpCon.setDoOutput(true);
 
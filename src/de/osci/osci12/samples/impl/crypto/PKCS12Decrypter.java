@@ -15,7 +15,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import de.osci.osci12.common.Constants;
-import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIConfig;
 import de.osci.osci12.encryption.OSCICipherException;
 
 
@@ -105,10 +105,10 @@ public class PKCS12Decrypter extends de.osci.osci12.extinterfaces.crypto.Decrypt
   {
     this.pin = pin.toCharArray();
 
-    if (DialogHandler.getSecurityProvider() == null)
+    if (OSCIConfig.current().getSecurityProvider() == null)
       keyStore = java.security.KeyStore.getInstance("PKCS12");
     else
-      keyStore = java.security.KeyStore.getInstance("PKCS12", DialogHandler.getSecurityProvider());
+      keyStore = java.security.KeyStore.getInstance("PKCS12", OSCIConfig.current().getSecurityProvider());
 
     keyStore.load(in, this.pin);
 
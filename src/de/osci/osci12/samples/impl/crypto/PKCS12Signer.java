@@ -16,6 +16,7 @@ import org.apache.commons.logging.LogFactory;
 
 import de.osci.osci12.common.Constants;
 import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIConfig;
 
 
 /**
@@ -122,11 +123,11 @@ public class PKCS12Signer extends de.osci.osci12.extinterfaces.crypto.Signer
   {
     this.pin = pin.toCharArray();
 
-    if (DialogHandler.getSecurityProvider() == null)
+    if (OSCIConfig.current().getSecurityProvider() == null)
       keyStore = java.security.KeyStore.getInstance("PKCS12");
     else
     {
-      keyStore = java.security.KeyStore.getInstance("PKCS12", DialogHandler.getSecurityProvider());
+      keyStore = java.security.KeyStore.getInstance("PKCS12", OSCIConfig.current().getSecurityProvider());
     }
 
     keyStore.load(in, this.pin);
@@ -168,7 +169,7 @@ public class PKCS12Signer extends de.osci.osci12.extinterfaces.crypto.Signer
   }
 
   /**
-   * Liefert den im {@link DialogHandler} gesetzten Default-Signaturalgorithmus.
+   * Liefert den für den aktuellen Dialog ({@link OSCIConfig#current()}) gesetzten Default-Signaturalgorithmus.
    * Falls dieser Algorithmus nicht zu dem Privatschlüssel (RSA/ECDSA) oder dem
    * gesetzten usePSSforRSAkey-Flag passt, wird der Algorithmus entsprechend
    * angepasst.
@@ -178,7 +179,7 @@ public class PKCS12Signer extends de.osci.osci12.extinterfaces.crypto.Signer
    */
   public String getAlgorithm()
   {
-    String algo = DialogHandler.getSignatureAlgorithm();
+    String algo = OSCIConfig.current().getSignatureAlgorithm();
     try
     {
       String synKeyType = keyStore.getKey(alias, this.pin).getAlgorithm();
@@ -239,11 +240,11 @@ public class PKCS12Signer extends de.osci.osci12.extinterfaces.crypto.Signer
       if (log.isDebugEnabled())
         log.debug("Algorithm: " + algorithm);
 
-      if (DialogHandler.getSecurityProvider() == null)
+      if (OSCIConfig.current().getSecurityProvider() == null)
         sigengine = java.security.Signature.getInstance((String)Constants.JCA_JCE_MAP.get(algorithm));
       else
         sigengine = java.security.Signature.getInstance((String)Constants.JCA_JCE_MAP.get(algorithm),
-                                                        DialogHandler.getSecurityProvider());
+                                                        OSCIConfig.current().getSecurityProvider());
 
       sigengine.initSign(((java.security.PrivateKey)keyStore.getKey(alias, pin)));
       sigengine.update(data);
@@ -115,7 +115,7 @@ class X509DataBuilder extends DefaultHandler
       {
         java.io.ByteArrayInputStream bytesStream = new java.io.ByteArrayInputStream(currentElement.toString().getBytes(de.osci.osci12.common.Constants.CHAR_ENCODING));
         Base64InputStream base64In = new Base64InputStream(bytesStream);
-        x509Data = new X509Data(de.osci.helper.Tools.createCertificate(base64In));
+        x509Data = new X509Data(de.osci.helper.CertificateCache.getCertificate(base64In));
       }
       else if (localName.equals("X509IssuerSerial") && uri.equals(DS_XMLNS))
       {
@@ -1,12 +1,18 @@
 package de.osci.osci12.soapheader;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.Hashtable;
 
 import de.osci.helper.Base64OutputStream;
+import de.osci.helper.CertificateCache;
+import de.osci.osci12.OSCIException;
 import de.osci.osci12.common.Constants;
 import de.osci.osci12.common.Constants.LanguageTextEntries;
 import de.osci.osci12.common.DialogHandler;
@@ -36,6 +42,8 @@ public abstract class CertificateH extends HeaderEntry
   protected Hashtable<String, X509Certificate> certificates = new Hashtable<String, X509Certificate>();
   protected byte[] tmpBuffer;
 
+  private static final String LENGTH_SUFFIX = "#length";
+
   /**
    * undocumented
    *
@@ -53,45 +61,7 @@ public abstract class CertificateH extends HeaderEntry
     if (role == null)
       throw new IllegalArgumentException(DialogHandler.text.getString(LanguageTextEntries.invalid_firstargument.name()) + " null");
 
-    String name = ""; // = role.getClass().getName().substring(role.getClass().getName().lastIndexOf('.') + 1);
-    role.getCipherCertificate(); // Test, ob vorhanden
-
-    if (role instanceof Intermed)
-      name = "Intermediary";
-    else if (role instanceof Originator)
-      name = "Originator";
-    else if (role instanceof Addressee)
-      name = "Addressee";
-    else if (role instanceof de.osci.osci12.roles.Reader)
-      name = "OtherReader";
-    else if (role instanceof Author)
-      name = "OtherAuthor";
-    else
-      throw new IllegalArgumentException(DialogHandler.text.getString(LanguageTextEntries.invalid_firstargument.name()) + role);
-
-    /*
-       if (name.equals("Reader") || name.equals("Author"))
-         name = "Other" + name;
-       else if (name.equals("Intermed"))
-         name = "Intermediary";
-     */
-    out.write(("<" + osciNSPrefix + ":CipherCertificate" + name + " Id=\"" + role.getCipherCertificateId() + "\"><" +
-              dsNSPrefix + ":X509Data><" + dsNSPrefix + ":X509Certificate>").getBytes(Constants.CHAR_ENCODING));
-
-    try
-    {
-      Base64OutputStream base64Out = new Base64OutputStream(out, true);
-      base64Out.write(role.getCipherCertificate().getEncoded());
-      base64Out.flush();
-    }
-    catch (CertificateEncodingException ex)
-    {
-      throw new IOException(de.osci.osci12.common.DialogHandler.text.getString("cert_gen_error") + " - " +
-                            ex.getClass() + ": " + ex.getMessage());
-    }
-
-    out.write(("</" + dsNSPrefix + ":X509Certificate></" + dsNSPrefix + ":X509Data></" + osciNSPrefix +
-              ":CipherCertificate" + name + ">").getBytes(Constants.CHAR_ENCODING));
+    out.write(getCertificateFragment(role, true));
     //    out.flush();
   }
 
@@ -118,21 +88,143 @@ public abstract class CertificateH extends HeaderEntry
                                   throws OSCIRoleException,
                                          IOException
   {
-    String name = ""; // = role.getClass().getName().substring(role.getClass().getName().lastIndexOf('.') + 1);
-    role.getSignatureCertificate(); // Test, ob vorhanden
+    out.write(getCertificateFragment(role, false));
+  }
 
-    if (role instanceof Intermed)
-      name = "Intermediary";
-    else if (role instanceof Originator)
-      name = "Originator";
-    else if (role instanceof Addressee)
-      name = "Addressee";
-    else if (role instanceof Reader)
-      name = "OtherReader";
-    else if (role instanceof Author)
-      name = "OtherAuthor";
+  /**
+   * Liefert die Rolle, in deren Fragment-Cache die Hashwerte dieses Headers abgelegt werden, oder
+   * <code>null</code>, wenn der Header keine Rollen enthält.
+   *
+   * @return Rollenobjekt
+   */
+  protected abstract Role getCacheRole();
+
+  /**
+   * Liefert einen Schlüssel, der die Serialisierung dieses Headers eindeutig bestimmt.
+   *
+   * @return Schlüssel
+   * @throws OSCIRoleException wenn ein Zertifikat nicht verfügbar ist
+   * @see #appendCacheKey(StringBuilder, Role, boolean)
+   */
+  protected abstract String getCacheKey() throws OSCIRoleException;
+
+  /**
+   * Hängt die Bestandteile eines Zertifikats-Elementes an den Cache-Schlüssel an.
+   *
+   * @param key Schlüssel
+   * @param role Rollenobjekt
+   * @param cipher <code>true</code> für das Verschlüsselungs-, <code>false</code> für das Signaturzertifikat
+   * @throws OSCIRoleException wenn das Zertifikat nicht verfügbar ist
+   */
+  protected void appendCacheKey(StringBuilder key, Role role, boolean cipher) throws OSCIRoleException
+  {
+    X509Certificate cert = cipher ? role.getCipherCertificate() : role.getSignatureCertificate();
+    key.append('|').append(getFragmentKey(role, cipher)).append('|').append(CertificateCache.getHash(cert));
+  }
+
+  /**
+   * Liefert den Hashwert des Headers. Da sich die Header bei wiederholtem Versand mit denselben Rollen nicht
+   * ändern, werden der Wert und die Länge des Headers im Fragment-Cache der Rolle abgelegt und bei weiteren
+   * Nachrichten von dort geliefert.
+   *
+   * @param digestAlgorithm Hash-Algorithmus
+   * @return Hashwert
+   */
+  @Override
+  protected byte[] getDigestValue(String digestAlgorithm) throws NoSuchAlgorithmException,
+                                                             IOException,
+                                                             OSCIException
+  {
+    if (digestValues.get(digestAlgorithm) != null)
+      return digestValues.get(digestAlgorithm);
+
+    Role cacheRole = getCacheRole();
+
+    if (cacheRole == null)
+      return super.getDigestValue(digestAlgorithm);
+
+    String key = getCacheKey();
+    byte[] digest = cacheRole.getCachedFragment(key + "#" + digestAlgorithm);
+
+    if (digest == null)
+    {
+      digest = super.getDigestValue(digestAlgorithm);
+      cacheRole.putCachedFragment(key + "#" + digestAlgorithm, digest);
+      storeLength(cacheRole, key);
+    }
     else
-      throw new IllegalArgumentException(DialogHandler.text.getString(LanguageTextEntries.invalid_firstargument.name()) + role);
+    {
+      digestValues.put(digestAlgorithm, digest);
+      restoreLength(cacheRole, key);
+    }
+
+    return digest;
+  }
+
+  /**
+   * Liefert die Länge des Headers, bei wiederholtem Versand mit denselben Rollen aus dem Fragment-Cache.
+   *
+   * @return Länge
+   */
+  @Override
+  public long getLength() throws IOException, OSCIException
+  {
+    if (length > -1)
+      return length;
+
+    Role cacheRole = getCacheRole();
+
+    if (cacheRole == null)
+      return super.getLength();
+
+    String key = getCacheKey();
+
+    if (!restoreLength(cacheRole, key))
+    {
+      super.getLength();
+      storeLength(cacheRole, key);
+    }
+
+    return length;
+  }
+
+  private void storeLength(Role cacheRole, String key)
+  {
+    cacheRole.putCachedFragment(key + LENGTH_SUFFIX, ByteBuffer.allocate(8).putLong(length).array());
+  }
+
+  private boolean restoreLength(Role cacheRole, String key)
+  {
+    byte[] cached = cacheRole.getCachedFragment(key + LENGTH_SUFFIX);
+
+    if (cached == null)
+      return false;
+
+    length = ByteBuffer.wrap(cached).getLong();
+    return true;
+  }
+
+  private String getFragmentKey(Role role, boolean cipher)
+  {
+    return (cipher ? "CipherCertificate" : "SignatureCertificate") + getRoleName(role) + "|"
+           + (cipher ? role.getCipherCertificateId() : role.getSignatureCertificateId()) + "|" + soapNSPrefix
+           + "|" + osciNSPrefix + "|" + dsNSPrefix + "|" + new String(ns, StandardCharsets.UTF_8);
+  }
+
+  private byte[] getCertificateFragment(Role role, boolean cipher) throws OSCIRoleException, IOException
+  {
+    // Test, ob vorhanden
+    X509Certificate cert = cipher ? role.getCipherCertificate() : role.getSignatureCertificate();
+    String key = getFragmentKey(role, cipher);
+    byte[] fragment = role.getCachedFragment(key);
+
+    if (fragment != null)
+      return fragment;
+
+    String name = getRoleName(role);
+    String element = cipher ? "CipherCertificate" : "SignatureCertificate";
+    String id = cipher ? role.getCipherCertificateId() : role.getSignatureCertificateId();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
 
     /*
        if (name.equals("Reader") || name.equals("Author"))
@@ -140,13 +232,13 @@ public abstract class CertificateH extends HeaderEntry
        else if (name.equals("Intermed"))
          name = "Intermediary";
      */
-    out.write(("<" + osciNSPrefix + ":SignatureCertificate" + name + " Id=\"" + role.getSignatureCertificateId() +
-              "\"><" + dsNSPrefix + ":X509Data><" + dsNSPrefix + ":X509Certificate>").getBytes(Constants.CHAR_ENCODING));
+    out.write(("<" + osciNSPrefix + ":" + element + name + " Id=\"" + id + "\"><" + dsNSPrefix + ":X509Data><" +
+              dsNSPrefix + ":X509Certificate>").getBytes(Constants.CHAR_ENCODING));
 
     try
     {
       Base64OutputStream base64Out = new Base64OutputStream(out, true);
-      base64Out.write(role.getSignatureCertificate().getEncoded());
+      base64Out.write(cert.getEncoded());
       base64Out.flush();
     }
     catch (CertificateEncodingException ex)
@@ -155,7 +247,29 @@ public abstract class CertificateH extends HeaderEntry
                             ex.getClass() + ": " + ex.getMessage());
     }
 
-    out.write(("</" + dsNSPrefix + ":X509Certificate></" + dsNSPrefix + ":X509Data></" + osciNSPrefix +
-              ":SignatureCertificate" + name + ">").getBytes(Constants.CHAR_ENCODING));
+    out.write(("</" + dsNSPrefix + ":X509Certificate></" + dsNSPrefix + ":X509Data></" + osciNSPrefix + ":" +
+              element + name + ">").getBytes(Constants.CHAR_ENCODING));
+
+    fragment = out.toByteArray();
+    role.putCachedFragment(key, fragment);
+
+    return fragment;
+  }
+
+  private static String getRoleName(Role role)
+  {
+    // = role.getClass().getName().substring(role.getClass().getName().lastIndexOf('.') + 1);
+    if (role instanceof Intermed)
+      return "Intermediary";
+    else if (role instanceof Originator)
+      return "Originator";
+    else if (role instanceof Addressee)
+      return "Addressee";
+    else if (role instanceof Reader)
+      return "OtherReader";
+    else if (role instanceof Author)
+      return "OtherAuthor";
+    else
+      throw new IllegalArgumentException(DialogHandler.text.getString(LanguageTextEntries.invalid_firstargument.name()) + role);
   }
 }
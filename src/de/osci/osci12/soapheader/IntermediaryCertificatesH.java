@@ -9,6 +9,7 @@ import org.apache.commons.logging.LogFactory;
 import de.osci.osci12.common.Constants;
 import de.osci.osci12.roles.Intermed;
 import de.osci.osci12.roles.OSCIRoleException;
+import de.osci.osci12.roles.Role;
 
 
 /**
@@ -85,6 +86,27 @@ public class IntermediaryCertificatesH extends CertificateH
     out.write(("</" + osciNSPrefix + ":IntermediaryCertificates>").getBytes(Constants.CHAR_ENCODING));
   }
 
+  @Override
+  protected Role getCacheRole()
+  {
+    return (cipherCertificateIntermediary != null) ? cipherCertificateIntermediary
+      : signaturCertificateIntermediary;
+  }
+
+  @Override
+  protected String getCacheKey() throws OSCIRoleException
+  {
+    StringBuilder key = new StringBuilder("IntermediaryCertificates");
+
+    if (cipherCertificateIntermediary != null)
+      appendCacheKey(key, cipherCertificateIntermediary, true);
+
+    if (signaturCertificateIntermediary != null)
+      appendCacheKey(key, signaturCertificateIntermediary, false);
+
+    return key.toString();
+  }
+
   /**
    * undocumented
    *
@@ -10,6 +10,7 @@ import de.osci.osci12.roles.Author;
 import de.osci.osci12.roles.OSCIRoleException;
 import de.osci.osci12.roles.Originator;
 import de.osci.osci12.roles.Reader;
+import de.osci.osci12.roles.Role;
 
 
 /**
@@ -258,6 +259,57 @@ public class NonIntermediaryCertificatesH extends CertificateH
     out.write(("</" + osciNSPrefix + ":NonIntermediaryCertificates>").getBytes(Constants.CHAR_ENCODING));
   }
 
+  @Override
+  protected Role getCacheRole()
+  {
+    if (cipherCertificateOriginator != null)
+      return cipherCertificateOriginator;
+    else if (signatureCertificateOriginator != null)
+      return signatureCertificateOriginator;
+    else if (cipherCertificateAddressee != null)
+      return cipherCertificateAddressee;
+    else
+      return signatureCertificateAddressee;
+  }
+
+  @Override
+  protected String getCacheKey() throws OSCIRoleException
+  {
+    StringBuilder key = new StringBuilder("NonIntermediaryCertificates");
+
+    if (cipherCertificateOriginator != null)
+      appendCacheKey(key, cipherCertificateOriginator, true);
+
+    if (cipherCertificatesOtherAuthors != null)
+    {
+      for ( int i = 0 ; i < cipherCertificatesOtherAuthors.length ; i++ )
+        appendCacheKey(key, cipherCertificatesOtherAuthors[i], true);
+    }
+
+    if (cipherCertificateAddressee != null)
+      appendCacheKey(key, cipherCertificateAddressee, true);
+
+    if (cipherCertificatesOtherReaders != null)
+    {
+      for ( int i = 0 ; i < cipherCertificatesOtherReaders.length ; i++ )
+        appendCacheKey(key, cipherCertificatesOtherReaders[i], true);
+    }
+
+    if (signatureCertificateOriginator != null)
+      appendCacheKey(key, signatureCertificateOriginator, false);
+
+    if (signatureCertificateAddressee != null)
+      appendCacheKey(key, signatureCertificateAddressee, false);
+
+    if (signatureCertificatesOtherAuthors != null)
+    {
+      for ( int i = 0 ; i < signatureCertificatesOtherAuthors.length ; i++ )
+        appendCacheKey(key, signatureCertificatesOtherAuthors[i], false);
+    }
+
+    return key.toString();
+  }
+
   /**
    * undocumented
    *
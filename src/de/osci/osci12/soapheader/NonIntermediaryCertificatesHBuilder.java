@@ -268,7 +268,7 @@ public class NonIntermediaryCertificatesHBuilder extends de.osci.osci12.messagep
       {
         ByteArrayInputStream byteStream = new ByteArrayInputStream(currentElement.toString().getBytes(de.osci.osci12.common.Constants.CHAR_ENCODING));
         Base64InputStream base64In = new Base64InputStream(byteStream);
-        cert = de.osci.helper.Tools.createCertificate(base64In);
+        cert = de.osci.helper.CertificateCache.getCertificate(base64In);
 
         if (typ == CIPHER_CERTIFICATE_ORIGINATOR)
         {
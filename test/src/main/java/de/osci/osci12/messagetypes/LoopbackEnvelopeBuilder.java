@@ -0,0 +1,68 @@
+package de.osci.osci12.messagetypes;
+
+import org.xml.sax.XMLReader;
+
+import de.osci.osci12.common.DialogHandler;
+
+
+/**
+ * Envelope-Parser des {@link LoopbackIntermed}. Ergänzt den OSCIEnvelopeBuilder um die Aufträge, die von
+ * einem Intermediär entgegengenommen werden.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+class LoopbackEnvelopeBuilder extends OSCIEnvelopeBuilder
+{
+  //  Arrays stehen für {Response,challenge,conversationID,SequenzNumber}, vgl. ControlBlockHBuilder
+  private static final int[] CHECK_INIT_DIALOG = {0, 1, 0, 0};
+
+  private static final int[] CHECK_IMPLICIT_DIALOG = {-1, 1, -1, 1};
+
+  private static final int[] CHECK_EXPLICIT_DIALOG = {1, 1, 1, 1};
+
+  private final LoopbackIntermed intermed;
+
+  /**
+   * Creates a new LoopbackEnvelopeBuilder object.
+   *
+   * @param xmlReader undocumented
+   * @param dh DialogHandler mit dem Intermediär als Supplier
+   * @param intermed Intermediär, der die Dialoge verwaltet
+   */
+  LoopbackEnvelopeBuilder(XMLReader xmlReader, DialogHandler dh, LoopbackIntermed intermed)
+  {
+    super(xmlReader, dh);
+    this.intermed = intermed;
+  }
+
+  @Override
+  OSCIMessageBuilder createBuilder(String schemaLocation)
+  {
+    if (schemaLocation.equals(XSD_INIT_DIALOG))
+      return new LoopbackRequestBuilder(this, intermed, new InitDialog(), CHECK_INIT_DIALOG);
+    else if (schemaLocation.equals(XSD_EXIT_DIALOG))
+      return new LoopbackRequestBuilder(this, intermed, new ExitDialog(), CHECK_EXPLICIT_DIALOG);
+    else if (schemaLocation.equals(XSD_GET_MSG_ID))
+      return new LoopbackRequestBuilder(this, intermed, new GetMessageId(), CHECK_IMPLICIT_DIALOG);
+    else if (schemaLocation.equals(XSD_STORE_DELIVERY))
+      return new LoopbackRequestBuilder(this, intermed, new StoreDelivery(), CHECK_IMPLICIT_DIALOG);
+    else if (schemaLocation.equals(XSD_FETCH_DELIVERY))
+      return new LoopbackRequestBuilder(this, intermed, new FetchDelivery(), CHECK_EXPLICIT_DIALOG);
+    else if (schemaLocation.equals(XSD_FETCH_PROCESS_CARD))
+      return new LoopbackRequestBuilder(this, intermed, new FetchProcessCard(), CHECK_EXPLICIT_DIALOG);
+    else if (schemaLocation.equals(XSD_PARTIAL_STORE_DELIVERY))
+      return new LoopbackRequestBuilder(this, intermed, new PartialStoreDelivery(), CHECK_IMPLICIT_DIALOG);
+    else if (schemaLocation.equals(XSD_PARTIAL_FETCH_DELIVERY))
+      return new LoopbackRequestBuilder(this, intermed, new PartialFetchDelivery(), CHECK_EXPLICIT_DIALOG);
+
+    return null;
+  }
+}
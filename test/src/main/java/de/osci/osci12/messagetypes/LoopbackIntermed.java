@@ -0,0 +1,948 @@
+package de.osci.osci12.messagetypes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xml.sax.SAXException;
+
+import de.osci.osci12.OSCIException;
+import de.osci.osci12.common.CommonFactory;
+import de.osci.osci12.common.ConcurrentDialogFinder;
+import de.osci.osci12.common.Constants.CommonTags;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.MessageMetrics;
+import de.osci.osci12.common.OSCIErrorException;
+import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
+import de.osci.osci12.common.OSCIExceptionCodes.OSCIOkCodes;
+import de.osci.osci12.common.SoapClientException;
+import de.osci.osci12.common.SoapServerException;
+import de.osci.osci12.extinterfaces.OSCIDataSource;
+import de.osci.osci12.extinterfaces.TransportFactory;
+import de.osci.osci12.extinterfaces.TransportI;
+import de.osci.osci12.extinterfaces.crypto.Decrypter;
+import de.osci.osci12.extinterfaces.crypto.Signer;
+import de.osci.osci12.messageparts.Attachment;
+import de.osci.osci12.messageparts.ChunkInformation;
+import de.osci.osci12.messageparts.MessagePartsFactory;
+import de.osci.osci12.messageparts.ProcessCardBundle;
+import de.osci.osci12.messageparts.Timestamp;
+import de.osci.osci12.roles.Addressee;
+import de.osci.osci12.roles.Intermed;
+import de.osci.osci12.roles.OSCIRoleException;
+import de.osci.osci12.roles.Originator;
+import de.osci.osci12.roles.Role;
+
+
+/**
+ * In-Process-Intermediär für Integrationstests und Lastmessungen ohne Netzwerk und ohne externen
+ * OSCI-Manager. Die Aufträge werden über ein Transportmodul entgegengenommen, das die serialisierte Nachricht
+ * direkt an einen Parser dieser Klasse übergibt; die Antwort wird ebenso im Speicher zurückgeliefert. Damit
+ * durchläuft eine Nachricht auf Client-Seite den vollständigen Versandpfad (Signatur, Verschlüsselung,
+ * Serialisierung, Parsen und Prüfen der Antwort), während auf der Gegenseite Entschlüsselung,
+ * Signaturprüfung und die Prüfung der ControlBlocks erfolgen.
+ * <p>
+ * Unterstützt werden die Auftragstypen InitDialog, ExitDialog, GetMessageId, StoreDelivery, FetchDelivery,
+ * FetchProcessCard, PartialStoreDelivery und PartialFetchDelivery. Zustellungen werden in einem Postfach im
+ * Hauptspeicher abgelegt (Inhaltsdaten in Puffern von {@link DialogHandler#getNewDataBuffer()}). Alle
+ * Zustände werden in nebenläufigen Datenstrukturen gehalten, so dass beliebig viele Clients gleichzeitig
+ * senden und abholen können. Die Chunks von PartialStoreDelivery-Nachrichten werden bis zur Vervollständigung
+ * in einem {@link PartialStoreDeliveryChunkStore} im temporären Verzeichnis abgelegt.
+ * </p>
+ * <p>
+ * Gegenüber einem echten Intermediär gelten folgende Vereinfachungen: Zertifikate werden nicht geprüft
+ * (die Laufzettel enthalten keine Prüfprotokolle), Zeitstempel sind stets vom Typ "plain", und der Inhalt
+ * des Postfachs geht mit dem Objekt verloren. Die Klasse gehört daher zum Testmodul und ist nicht Bestandteil
+ * der ausgelieferten Bibliothek.
+ * </p>
+ * <p>
+ * Beispiel:
+ * </p>
+ * <pre>
+ * LoopbackIntermed loopback = new LoopbackIntermed(signer, decrypter);
+ * DialogHandler dh = new DialogHandler(originator, loopback.getIntermed(), loopback.newTransport());
+ * dh.setTransportFactory(loopback.getTransportFactory());
+ * </pre>
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class LoopbackIntermed
+{
+  private static Log log = LogFactory.getLog(LoopbackIntermed.class);
+
+  /**
+   * URI, unter der der Loopback-Intermediär im Intermed-Objekt der Clients eingetragen ist
+   */
+  public static final URI LOOPBACK_URI = URI.create("loopback://localhost/osci-manager");
+
+  private static final String PARTIAL_SUFFIX = "_Partial";
+
+  private final Intermed supplier;
+
+  private final Intermed intermed;
+
+  private final ConcurrentDialogFinder dialogs = new ConcurrentDialogFinder();
+
+  private final Set<String> issuedMessageIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final Map<String, Delivery> deliveries = new ConcurrentHashMap<String, Delivery>();
+
+  private final Queue<Delivery> mailbox = new ConcurrentLinkedQueue<Delivery>();
+
+  private final PartialStoreDeliveryChunkStore chunkStore = new PartialStoreDeliveryChunkStore(null);
+
+  private final Map<String, PartialFetch> partialFetches = new ConcurrentHashMap<String, PartialFetch>();
+
+  private volatile boolean chunkedTransfer = true;
+
+  /**
+   * Legt einen Intermediär an, der mit den übergebenen Schlüsseln signiert und entschlüsselt.
+   *
+   * @param signer Signer für die Signatur der Antworten
+   * @param decrypter Decrypter für die Entschlüsselung der Aufträge
+   * @throws OSCIRoleException wenn eines der Zertifikate nicht ermittelt werden kann
+   */
+  public LoopbackIntermed(Signer signer, Decrypter decrypter) throws OSCIRoleException
+  {
+    supplier = new Intermed(signer, decrypter);
+    intermed = new Intermed(supplier.getSignatureCertificate(), supplier.getCipherCertificate(), LOOPBACK_URI);
+  }
+
+  /**
+   * Liefert das Rollenobjekt, das Clients als Supplier in ihren DialogHandler eintragen. Es enthält nur die
+   * Zertifikate des Intermediärs.
+   *
+   * @return Intermed-Objekt für Clients
+   */
+  public Intermed getIntermed()
+  {
+    return intermed;
+  }
+
+  /**
+   * Liefert ein neues Transportmodul, welches die Aufträge an diesen Intermediär übergibt.
+   *
+   * @return Transportmodul
+   */
+  public TransportI newTransport()
+  {
+    return new LoopbackTransport();
+  }
+
+  /**
+   * Liefert eine Fabrik für Transportmodule dieses Intermediärs.
+   *
+   * @return TransportFactory
+   * @see DialogHandler#setTransportFactory(TransportFactory)
+   */
+  public TransportFactory getTransportFactory()
+  {
+    return LoopbackTransport::new;
+  }
+
+  /**
+   * Legt fest, ob die Transportmodule angeben, die Nachricht ohne vorherige Längenberechnung übertragen zu
+   * können. Default ist <code>true</code>.
+   *
+   * @param chunkedTransfer <code>false</code>, um die Längenberechnung des Clients mitzumessen
+   * @see TransportI#isChunkedTransferSupported()
+   */
+  public void setChunkedTransfer(boolean chunkedTransfer)
+  {
+    this.chunkedTransfer = chunkedTransfer;
+  }
+
+  /**
+   * Liefert die Anzahl der Zustellungen, die noch nicht abgeholt wurden.
+   *
+   * @return Anzahl
+   */
+  public int getPendingDeliveries()
+  {
+    return mailbox.size();
+  }
+
+  /**
+   * Liefert die Anzahl der offenen expliziten Dialoge.
+   *
+   * @return Anzahl
+   */
+  public int getOpenDialogs()
+  {
+    return dialogs.getActiveDialogs();
+  }
+
+  /**
+   * Verwirft alle Dialoge, Zustellungen und unvollständigen paketierten Übertragungen.
+   */
+  public void clear()
+  {
+    dialogs.clear();
+    issuedMessageIds.clear();
+    deliveries.clear();
+    mailbox.clear();
+    chunkStore.clear();
+    partialFetches.clear();
+  }
+
+  /**
+   * Verarbeitet einen Auftrag und schreibt die Antwort bzw. einen SOAP-Fault in den übergebenen Stream.
+   *
+   * @param in serialisierter Auftrag
+   * @param out Stream für die Antwortnachricht
+   * @throws IOException bei Schreibfehlern
+   */
+  public void process(InputStream in, OutputStream out) throws IOException
+  {
+    // Die Verarbeitung im Intermediär zählt in den Messwerten des Clients als Wartezeit auf den Server
+    MessageMetrics.Section clientSection = MessageMetrics.suspend();
+
+    try
+    {
+      respond(in, out);
+    }
+    finally
+    {
+      MessageMetrics.resume(clientSection);
+    }
+  }
+
+  private void respond(InputStream in, OutputStream out) throws IOException
+  {
+    OSCIRequest request;
+    OSCIResponseTo response;
+
+    try
+    {
+      request = new LoopbackMessageParser(this).parseStream(in, createDialogHandler());
+      response = dispatch(request);
+      prepare(request, response);
+    }
+    catch (OSCIException ex)
+    {
+      log.warn("Request rejected: " + ex.getErrorCode(), ex);
+      new SOAPFault(ex.getErrorCode()).writeToStream(out);
+      return;
+    }
+    catch (Exception ex)
+    {
+      log.error("Request could not be processed.", ex);
+      new SOAPFault(OSCIErrorCodes.SoapServerInternalErrorSupplier.getOSCICode()).writeToStream(out);
+      return;
+    }
+
+    try
+    {
+      if (response.dialogHandler.isEncryption())
+        new SOAPMessageEncrypted(response, null).writeXML(out);
+      else
+        response.writeXML(out);
+    }
+    catch (IOException ex)
+    {
+      throw ex;
+    }
+    catch (Exception ex)
+    {
+      throw new IOException(ex);
+    }
+  }
+
+  /**
+   * Liefert einen neuen DialogHandler mit diesem Intermediär als Supplier.
+   */
+  DialogHandler createDialogHandler()
+  {
+    return new DialogHandler((Originator)null, supplier, null);
+  }
+
+  /**
+   * Liefert den DialogHandler des expliziten Dialogs mit der übergebenen Conversation-ID. Ohne
+   * Conversation-ID wird der übergebene DialogHandler für einen impliziten Dialog geliefert.
+   *
+   * @param conversationId Conversation-ID aus dem ControlBlock
+   * @param dh DialogHandler für implizite Dialoge
+   * @return DialogHandler
+   * @throws SAXException mit einer SoapClientException, wenn der Dialog nicht existiert
+   */
+  DialogHandler findDialog(String conversationId, DialogHandler dh) throws SAXException
+  {
+    if ((conversationId == null) || conversationId.equals(""))
+      return dh;
+
+    DialogHandler dialog = dialogs.findDialog(conversationId);
+
+    if (dialog == null)
+      throw new SAXException(new SoapClientException(OSCIErrorCodes.WrongControlBlock));
+
+    return dialog;
+  }
+
+  private OSCIResponseTo dispatch(OSCIRequest request) throws Exception
+  {
+    if (log.isDebugEnabled())
+      log.debug("Request: " + request.getClass().getSimpleName());
+
+    switch (request.getMessageType())
+    {
+      case OSCIMessage.INIT_DIALOG:
+        return initDialog((InitDialog)request);
+      case OSCIMessage.EXIT_DIALOG:
+        return exitDialog((ExitDialog)request);
+      case OSCIMessage.GET_MESSAGE_ID:
+        return getMessageId((GetMessageId)request);
+      case OSCIMessage.STORE_DELIVERY:
+        return storeDelivery((StoreDelivery)request);
+      case OSCIMessage.FETCH_DELIVERY:
+        return fetchDelivery((FetchDelivery)request);
+      case OSCIMessage.FETCH_PROCESS_CARD:
+        return fetchProcessCard((FetchProcessCard)request);
+      case OSCIMessage.PARTIAL_STORE_DELIVERY:
+        return partialStoreDelivery((PartialStoreDelivery)request);
+      case OSCIMessage.PARTIAL_FETCH_DELIVERY:
+        return partialFetchDelivery((PartialFetchDelivery)request);
+      default:
+        throw new SoapClientException(OSCIErrorCodes.NoValidRequestData);
+    }
+  }
+
+  private OSCIResponseTo initDialog(InitDialog request) throws NoSuchAlgorithmException, SoapServerException
+  {
+    String conversationId = UUID.randomUUID().toString();
+    request.dialogHandler.getControlblock().setConversationID(conversationId);
+    dialogs.addDialog(request.dialogHandler);
+    return new ResponseToInitDialog(request);
+  }
+
+  private OSCIResponseTo exitDialog(ExitDialog request)
+  {
+    String conversationId = request.dialogHandler.getControlblock().getConversationID();
+    dialogs.removeDialog(conversationId);
+    partialFetches.remove(conversationId);
+    ResponseToExitDialog response = new ResponseToExitDialog(request.dialogHandler);
+    response.setFeedback(new String[]{OSCIOkCodes.Ok.getOSCICode()});
+    return response;
+  }
+
+  private OSCIResponseTo getMessageId(GetMessageId request) throws NoSuchAlgorithmException
+  {
+    String messageId = UUID.randomUUID().toString();
+    issuedMessageIds.add(messageId);
+    ResponseToGetMessageId response = new ResponseToGetMessageId(request.dialogHandler);
+    response.setMessageId(messageId);
+    response.setFeedback(new String[]{OSCIOkCodes.Ok.getOSCICode()});
+    return response;
+  }
+
+  private OSCIResponseTo storeDelivery(StoreDelivery request) throws NoSuchAlgorithmException
+  {
+    ResponseToStoreDelivery response = new ResponseToStoreDelivery(request.dialogHandler, false);
+
+    if (!issuedMessageIds.remove(request.getMessageId()))
+    {
+      response.setFeedback(new String[]{OSCIErrorCodes.IllegalMessageId.getOSCICode()});
+      return response;
+    }
+
+    response.processCardBundle = deliver(request).createProcessCardBundle();
+    response.setFeedback(new String[]{OSCIOkCodes.Ok.getOSCICode()});
+    return response;
+  }
+
+  private OSCIResponseTo fetchDelivery(FetchDelivery request) throws Exception
+  {
+    Delivery delivery = claim(request);
+
+    if (delivery == null)
+      return new ResponseToFetchDelivery(request, null);
+
+    ResponseToFetchDelivery response = new ResponseToFetchDelivery(request, delivery.release());
+    response.processCardBundle = delivery.createProcessCardBundle();
+    response.setFeedback(new String[]{OSCIOkCodes.Ok.getOSCICode()});
+    return response;
+  }
+
+  private OSCIResponseTo fetchProcessCard(FetchProcessCard request) throws Exception
+  {
+    Role client = request.dialogHandler.getClient();
+    int role = request.getRoleForSelection();
+    Date since = null;
+
+    if ((request.getSelectionMode() == OSCIMessage.SELECT_BY_DATE_OF_RECEPTION)
+        || (request.getSelectionMode() == OSCIMessage.SELECT_BY_RECENT_MODIFICATION))
+      since = parseDate(request.getSelectionRule());
+
+    List<Delivery> candidates = new ArrayList<Delivery>();
+
+    if (request.getSelectionMode() == OSCIMessage.SELECT_BY_MESSAGE_ID)
+    {
+      for ( String messageId : request.getSelectionRule().split(";") )
+      {
+        Delivery delivery = deliveries.get(messageId);
+
+        if (delivery != null)
+          candidates.add(delivery);
+      }
+    }
+    else
+      candidates.addAll(deliveries.values());
+
+    Vector<ProcessCardBundle> result = new Vector<ProcessCardBundle>();
+
+    for ( Delivery delivery : candidates )
+    {
+      boolean asAddressee = sameRole(delivery.addressee, client);
+      boolean asOriginator = sameRole(delivery.originator, client);
+
+      if (!(asAddressee && (role != OSCIMessage.SELECT_ORIGINATOR))
+          && !(asOriginator && (role != OSCIMessage.SELECT_ADDRESSEE)))
+        continue;
+
+      if (request.isSelectNoReception() && (delivery.reception != null))
+        continue;
+
+      if ((request.getSelectionMode() == OSCIMessage.SELECT_BY_DATE_OF_RECEPTION)
+          && delivery.creation.before(since))
+        continue;
+
+      if ((request.getSelectionMode() == OSCIMessage.SELECT_BY_RECENT_MODIFICATION)
+          && delivery.getRecentModification().before(since))
+        continue;
+
+      result.add(delivery.createProcessCardBundle());
+
+      if ((request.getQuantityLimit() > 0) && (result.size() >= request.getQuantityLimit()))
+        break;
+    }
+
+    ResponseToFetchProcessCard response = new ResponseToFetchProcessCard(request);
+
+    if (result.isEmpty())
+      response.setFeedback(new String[]{OSCIErrorCodes.NoProcessCardsPresent.getOSCICode()});
+    else
+    {
+      response.processCardBundles = result.toArray(new ProcessCardBundle[0]);
+      response.setFeedback(new String[]{OSCIOkCodes.Ok.getOSCICode()});
+    }
+
+    return response;
+  }
+
+  private OSCIResponseTo partialStoreDelivery(PartialStoreDelivery request) throws Exception
+  {
+    // Die Message-ID der PartialStoreDelivery trägt das Suffix "_Partial"
+    String messageId = request.getMessageId();
+
+    if (messageId.endsWith(PARTIAL_SUFFIX))
+      messageId = messageId.substring(0, messageId.length() - PARTIAL_SUFFIX.length());
+
+    ResponseToPartialStoreDelivery response = new ResponseToPartialStoreDelivery(request.dialogHandler, null,
+                                                                                 false);
+    ChunkInformation received = chunkStore.getChunkInformation(messageId);
+
+    if ((received == null) && (request.isInfoOnly() || !issuedMessageIds.remove(messageId)))
+    {
+      response.setFeedback(new String[]{OSCIErrorCodes.IllegalMessageId.getOSCICode()});
+      return response;
+    }
+
+    if (request.isInfoOnly())
+    {
+      response.chunkInformation = received;
+      response.setFeedback(new String[]{OSCIOkCodes.Ok.getOSCICode()});
+      return response;
+    }
+
+    Attachment[] blob = request.getAttachments();
+
+    if (blob.length != 1)
+      throw new SoapClientException(OSCIErrorCodes.NoValidRequestData);
+
+    StoreDelivery[] completed = new StoreDelivery[1];
+
+    try (InputStream in = blob[0].getStream())
+    {
+      response.chunkInformation = chunkStore.receive(messageId, request.getChunkInformation(), in,
+                                                     (id, storeDelivery) -> {
+                                                       completed[0] = parseStoreDelivery(storeDelivery);
+                                                     });
+    }
+    catch (OSCIErrorException ex)
+    {
+      received = chunkStore.getChunkInformation(messageId);
+
+      if (received != null)
+      {
+        received.setChunkNumber(request.getChunkInformation().getChunkNumber());
+        response.chunkInformation = received;
+      }
+
+      response.setFeedback(new String[]{ex.getErrorCode()});
+      return response;
+    }
+
+    if (completed[0] != null)
+    {
+      if (!messageId.equals(completed[0].getMessageId()))
+      {
+        response.setInsideFeedback(new String[]{OSCIErrorCodes.IllegalMessageId.getOSCICode()});
+        response.setFeedback(new String[]{OSCIErrorCodes.ContainingInsideFeedbackError.getOSCICode()});
+        return response;
+      }
+
+      response.processCardBundle = deliver(completed[0]).createProcessCardBundle();
+      response.setInsideFeedback(new String[]{OSCIOkCodes.Ok.getOSCICode()});
+    }
+
+    response.setFeedback(new String[]{OSCIOkCodes.Ok.getOSCICode()});
+    return response;
+  }
+
+  private OSCIResponseTo partialFetchDelivery(PartialFetchDelivery request) throws Exception
+  {
+    DialogHandler dh = request.dialogHandler;
+    // Abholungen mit Message-ID können über mehrere Dialoge des Empfängers verteilt werden
+    boolean byMessageId = (request.getSelectionMode() == OSCIMessage.SELECT_BY_MESSAGE_ID);
+    String key = byMessageId ? request.getSelectionRule() : dh.getControlblock().getConversationID();
+    ChunkInformation chunkInformation = request.getChunkInformation();
+    PartialFetch fetch = partialFetches.get(key);
+
+    if ((fetch != null) && !sameRole(fetch.delivery.addressee, dh.getClient()))
+      fetch = null;
+
+    if ((fetch == null) || ((chunkInformation.getChunkNumber() == 1) && !byMessageId))
+    {
+      Delivery delivery = claim(request);
+
+      if (delivery == null)
+      {
+        if (!byMessageId)
+          partialFetches.remove(key);
+
+        return new ResponseToFetchDelivery(request, null);
+      }
+
+      // Die Antwort wird einmal unverschlüsselt serialisiert und dann in Teilen ausgeliefert
+      FetchDelivery inner = new FetchDelivery();
+      inner.dialogHandler = copyDialogHandler(dh);
+      inner.setSelectionMode(request.getSelectionMode());
+      inner.setSelectionRule(request.getSelectionRule());
+
+      ResponseToFetchDelivery innerResponse = new ResponseToFetchDelivery(inner, delivery.release());
+      innerResponse.processCardBundle = delivery.createProcessCardBundle();
+      innerResponse.setFeedback(new String[]{OSCIOkCodes.Ok.getOSCICode()});
+
+      if (request.signatureHeader != null)
+        innerResponse.sign();
+
+      OSCIDataSource buffer = DialogHandler.getNewDataBuffer();
+
+      try (OutputStream out = buffer.getOutputStream())
+      {
+        innerResponse.writeXML(out);
+      }
+
+      fetch = new PartialFetch(delivery, buffer, buffer.getLength());
+      partialFetches.put(key, fetch);
+    }
+
+    long chunkSize = chunkInformation.getChunkSize() * 1024;
+    long length = fetch.length;
+    int totalChunks = (int)((length + chunkSize - 1) / chunkSize);
+    int chunkNumber = chunkInformation.getChunkNumber();
+
+    if ((chunkNumber < 1) || (chunkNumber > totalChunks))
+    {
+      ResponseToFetchDelivery response = new ResponseToFetchDelivery(request, null);
+      response.setFeedback(new String[]{OSCIErrorCodes.WrongChunkNumber.getOSCICode()});
+      return response;
+    }
+
+    if (chunkNumber == totalChunks)
+      partialFetches.remove(key);
+
+    if (totalChunks == 1)
+    {
+      // Passt die Zustellung in einen Chunk, wird direkt mit einer ResponseToFetchDelivery geantwortet
+      ResponseToFetchDelivery response = new ResponseToFetchDelivery(request, fetch.delivery.storeDelivery);
+      response.processCardBundle = fetch.delivery.createProcessCardBundle();
+      response.setFeedback(new String[]{OSCIOkCodes.Ok.getOSCICode()});
+      fetch.delivery.storeDelivery = null;
+      return response;
+    }
+
+    OSCIDataSource chunk = DialogHandler.getNewDataBuffer();
+
+    synchronized (fetch)
+    {
+      InputStream in = fetch.buffer.getInputStream();
+      in.reset();
+
+      try (OutputStream out = chunk.getOutputStream())
+      {
+        skip(in, (chunkNumber - 1) * chunkSize);
+        copy(in, out, chunkSize);
+      }
+    }
+
+    if (chunkNumber == totalChunks)
+      fetch.delivery.storeDelivery = null;
+
+    ResponseToPartialFetchDelivery response = new ResponseToPartialFetchDelivery(request,
+                                                                                 fetch.delivery.addressee,
+                                                                                 fetch.delivery.originator,
+                                                                                 chunk.getInputStream());
+    ChunkInformation rspChunkInformation = MessagePartsFactory.creatChunkInformation(ChunkInformation.CheckInstance.ResponsePartialFetchDelivery);
+    rspChunkInformation.setChunkNumber(chunkNumber);
+    rspChunkInformation.setTotalChunkNumbers(totalChunks);
+    rspChunkInformation.setTotalMessageSize((length + 1023) / 1024);
+    response.setChunkInformation(rspChunkInformation);
+    response.setMessageId(fetch.delivery.messageId);
+    response.setFeedback(new String[]{OSCIOkCodes.Ok.getOSCICode()});
+    return response;
+  }
+
+  /**
+   * Trägt in implizite Dialoge eine Conversation-ID ein (die Antworten müssen eine enthalten) und signiert
+   * die Antwort, wenn der Auftrag signiert war.
+   */
+  private void prepare(OSCIRequest request, OSCIResponseTo response) throws Exception
+  {
+    DialogHandler dh = response.dialogHandler;
+
+    if (dh.getControlblock().getConversationID() == null)
+      dh.getControlblock().setConversationID(UUID.randomUUID().toString());
+
+    if ((request.signatureHeader != null) && supplier.hasSignaturePrivateKey())
+      response.sign();
+  }
+
+  private Delivery deliver(StoreDelivery storeDelivery)
+  {
+    Delivery delivery = new Delivery(storeDelivery);
+    deliveries.put(delivery.messageId, delivery);
+    mailbox.add(delivery);
+
+    if (log.isDebugEnabled())
+      log.debug("Delivery stored: " + delivery.messageId);
+
+    return delivery;
+  }
+
+  /**
+   * Reserviert die älteste noch nicht abgeholte Zustellung an den Client, die der Auswahlregel entspricht.
+   */
+  private Delivery claim(FetchRequestAbstract request) throws Exception
+  {
+    Role client = request.dialogHandler.getClient();
+
+    if (request.getSelectionMode() == OSCIMessage.SELECT_BY_MESSAGE_ID)
+    {
+      Delivery delivery = deliveries.get(request.getSelectionRule());
+
+      if ((delivery != null) && sameRole(delivery.addressee, client) && delivery.claimed.compareAndSet(false, true))
+      {
+        mailbox.remove(delivery);
+        return delivery;
+      }
+
+      return null;
+    }
+
+    Date since = null;
+
+    if (request.getSelectionMode() == OSCIMessage.SELECT_BY_DATE_OF_RECEPTION)
+      since = parseDate(request.getSelectionRule());
+
+    for ( Iterator<Delivery> it = mailbox.iterator() ; it.hasNext() ; )
+    {
+      Delivery delivery = it.next();
+
+      if (!sameRole(delivery.addressee, client) || ((since != null) && delivery.creation.before(since)))
+        continue;
+
+      if (delivery.claimed.compareAndSet(false, true))
+      {
+        it.remove();
+        return delivery;
+      }
+    }
+
+    return null;
+  }
+
+  private StoreDelivery parseStoreDelivery(InputStream in)
+    throws IOException, OSCIException, NoSuchAlgorithmException
+  {
+    DialogHandler dh = createDialogHandler();
+    CommonFactory.setDisableControlBlockCheck(dh, true);
+    OSCIRequest request = new LoopbackMessageParser(this).parseStream(in, dh);
+
+    if (!(request instanceof StoreDelivery))
+      throw new SoapClientException(OSCIErrorCodes.NoValidRequestData);
+
+    return (StoreDelivery)request;
+  }
+
+  private DialogHandler copyDialogHandler(DialogHandler dh)
+  {
+    DialogHandler copy = createDialogHandler();
+    copy.client = dh.getClient();
+    copy.prevChallenge = dh.prevChallenge;
+    copy.getControlblock().setConversationID(dh.getControlblock().getConversationID());
+    copy.getControlblock().setSequenceNumber(dh.getControlblock().getSequenceNumber());
+    copy.setEncryption(false);
+    return copy;
+  }
+
+  private static Date parseDate(String date) throws SoapClientException
+  {
+    try
+    {
+      return OSCIMessage.parseISO8601(date);
+    }
+    catch (ParseException | RuntimeException ex)
+    {
+      throw new SoapClientException(OSCIErrorCodes.NoValidRequestData);
+    }
+  }
+
+  /**
+   * Vergleicht zwei Rollen anhand der Verschlüsselungs- bzw. Signaturzertifikate.
+   */
+  private static boolean sameRole(Role a, Role b)
+  {
+    if ((a == null) || (b == null))
+      return false;
+
+    try
+    {
+      if (a.hasCipherCertificate() && b.hasCipherCertificate())
+        return a.getCipherCertificate().equals(b.getCipherCertificate());
+
+      if (a.hasSignatureCertificate() && b.hasSignatureCertificate())
+        return a.getSignatureCertificate().equals(b.getSignatureCertificate());
+    }
+    catch (OSCIRoleException ex)
+    {
+      log.debug("Role comparison failed.", ex);
+    }
+
+    return false;
+  }
+
+  private static void copy(InputStream in, OutputStream out) throws IOException
+  {
+    copy(in, out, Long.MAX_VALUE);
+  }
+
+  private static void copy(InputStream in, OutputStream out, long max) throws IOException
+  {
+    byte[] buf = new byte[8192];
+    int n;
+
+    while ((max > 0) && ((n = in.read(buf, 0, (int)Math.min(buf.length, max))) > -1))
+    {
+      out.write(buf, 0, n);
+      max -= n;
+    }
+  }
+
+  private static void skip(InputStream in, long n) throws IOException
+  {
+    byte[] buf = new byte[8192];
+
+    while (n > 0)
+    {
+      int read = in.read(buf, 0, (int)Math.min(buf.length, n));
+
+      if (read < 0)
+        throw new IOException(DialogHandler.text.getString("msg_format_error"));
+
+      n -= read;
+    }
+  }
+
+  /**
+   * Zustellung im Postfach
+   */
+  private static final class Delivery
+  {
+    final String messageId;
+
+    final String subject;
+
+    final Date creation;
+
+    final Addressee addressee;
+
+    final Originator originator;
+
+    final AtomicBoolean claimed = new AtomicBoolean();
+
+    volatile StoreDelivery storeDelivery;
+
+    volatile Date reception;
+
+    Delivery(StoreDelivery storeDelivery)
+    {
+      this.storeDelivery = storeDelivery;
+      messageId = storeDelivery.getMessageId();
+      subject = storeDelivery.getSubject();
+      addressee = storeDelivery.addressee;
+      originator = storeDelivery.originator;
+      creation = new Date();
+    }
+
+    /**
+     * Vermerkt den Empfang und liefert die Zustellung.
+     */
+    StoreDelivery release()
+    {
+      reception = new Date();
+      return storeDelivery;
+    }
+
+    Date getRecentModification()
+    {
+      Date received = reception;
+      return (received == null) ? creation : received;
+    }
+
+    ProcessCardBundle createProcessCardBundle()
+    {
+      Date received = reception;
+      Timestamp timestampCreation = new Timestamp(Timestamp.PROCESS_CARD_CREATION, null,
+                                                  OSCIMessage.formatISO8601(creation));
+      Timestamp timestampReception = (received == null) ? null
+        : new Timestamp(Timestamp.PROCESS_CARD_RECEPTION, null, OSCIMessage.formatISO8601(received));
+
+      return MessagePartsFactory.createProcessCardBundle(CommonTags.ProcessCardBundle.getElementName(),
+                                                         messageId,
+                                                         OSCIMessage.formatISO8601(getRecentModification()),
+                                                         timestampCreation,
+                                                         null,
+                                                         timestampReception,
+                                                         subject,
+                                                         null);
+    }
+  }
+
+  /**
+   * Zustand einer paketierten Abholung
+   */
+  private static final class PartialFetch
+  {
+    final Delivery delivery;
+
+    final OSCIDataSource buffer;
+
+    // Die Länge des Puffers wird beim Zurücksetzen des Streams verworfen
+    final long length;
+
+    PartialFetch(Delivery delivery, OSCIDataSource buffer, long length)
+    {
+      this.delivery = delivery;
+      this.buffer = buffer;
+      this.length = length;
+    }
+  }
+
+  /**
+   * Transportmodul, das die Aufträge im Speicher an den Intermediär übergibt
+   */
+  private final class LoopbackTransport implements TransportI
+  {
+    private OSCIDataSource request;
+
+    private OSCIDataSource response;
+
+    private long contentLength = -1;
+
+    public String getVersion()
+    {
+      return "1.0";
+    }
+
+    public String getVendor()
+    {
+      return "Governikus GmbH & Co. KG";
+    }
+
+    public TransportI newInstance()
+    {
+      return new LoopbackTransport();
+    }
+
+    public boolean isOnline(URI uri)
+    {
+      return true;
+    }
+
+    public boolean isChunkedTransferSupported()
+    {
+      return chunkedTransfer;
+    }
+
+    public OutputStream getConnection(URI uri, long length) throws IOException
+    {
+      request = DialogHandler.getNewDataBuffer();
+      response = null;
+      contentLength = -1;
+      return request.getOutputStream();
+    }
+
+    public InputStream getResponseStream() throws IOException
+    {
+      if (request == null)
+        throw new IOException(DialogHandler.text.getString("msg_format_error"));
+
+      response = DialogHandler.getNewDataBuffer();
+
+      try (InputStream in = request.getInputStream(); OutputStream out = response.getOutputStream())
+      {
+        in.reset();
+        process(in, out);
+      }
+      finally
+      {
+        request = null;
+      }
+
+      contentLength = response.getLength();
+      InputStream in = response.getInputStream();
+      in.reset();
+      return in;
+    }
+
+    public long getContentLength()
+    {
+      return contentLength;
+    }
+  }
+}
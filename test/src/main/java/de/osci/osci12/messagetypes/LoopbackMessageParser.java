@@ -0,0 +1,69 @@
+package de.osci.osci12.messagetypes;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.xml.sax.XMLReader;
+
+import de.osci.osci12.OSCIException;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIErrorException;
+import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
+import de.osci.osci12.signature.OSCISignatureException;
+
+
+/**
+ * Eintrittspunkt für Aufträge, die beim {@link LoopbackIntermed} eingehen. Im Unterschied zum
+ * PassiveRecipientParser werden die Nachrichten mit dem Schlüssel des übergebenen DialogHandlers
+ * entschlüsselt und nicht mit den global registrierten Default-Suppliern.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+class LoopbackMessageParser extends PassiveRecipientParser
+{
+  private final LoopbackIntermed intermed;
+
+  LoopbackMessageParser(LoopbackIntermed intermed)
+  {
+    this.intermed = intermed;
+  }
+
+  @Override
+  OSCIEnvelopeBuilder getParser(XMLReader reader, DialogHandler dh)
+  {
+    return new LoopbackEnvelopeBuilder(reader, dh, intermed);
+  }
+
+  /**
+   * Parst einen Auftrag.
+   *
+   * @param input InputStream der eingehenden Daten
+   * @param dh DialogHandler, dessen Supplier die Nachricht entschlüsselt
+   * @return eingelesener Auftrag
+   * @throws IOException bei Leseproblemen
+   * @throws OSCIException bei OSCI-Fehlern
+   * @throws java.security.NoSuchAlgorithmException undocumented
+   */
+  OSCIRequest parseStream(InputStream input, DialogHandler dh)
+    throws IOException,
+           OSCIException,
+           java.security.NoSuchAlgorithmException
+  {
+    try
+    {
+      return (OSCIRequest)super.parseStream(input, dh, true, null);
+    }
+    catch (OSCISignatureException ex)
+    {
+      throw new OSCIErrorException(OSCIErrorCodes.SignatureInvalid);
+    }
+  }
+}
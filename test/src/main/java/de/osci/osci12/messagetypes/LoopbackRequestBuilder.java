@@ -0,0 +1,292 @@
+package de.osci.osci12.messagetypes;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import de.osci.helper.ParserHelper;
+import de.osci.osci12.common.Constants;
+import de.osci.osci12.common.Constants.CommonTags;
+import de.osci.osci12.common.Constants.HeaderTags;
+import de.osci.osci12.common.Constants.Namespaces;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.messageparts.ChunkInformation.CheckInstance;
+import de.osci.osci12.messageparts.ChunkInformationBuilder;
+import de.osci.osci12.messageparts.MessagePartsFactory;
+import de.osci.osci12.soapheader.ControlBlockHBuilder;
+import de.osci.osci12.soapheader.DesiredLanguagesH;
+import de.osci.osci12.soapheader.FeatureDescriptionHBuilder;
+import de.osci.osci12.soapheader.IntermediaryCertificatesHBuilder;
+import de.osci.osci12.soapheader.NonIntermediaryCertificatesHBuilder;
+import de.osci.osci12.soapheader.QualityOfTimestampHBuilder;
+
+
+/**
+ * Parser für die Aufträge an den Intermediär (InitDialog, ExitDialog, GetMessageId, StoreDelivery,
+ * FetchDelivery, FetchProcessCard, PartialStoreDelivery und PartialFetchDelivery). Wird vom
+ * {@link LoopbackIntermed} verwendet.
+ * <p>
+ * Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany
+ * </p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>
+ * Diese Bibliothek kann von jedermann nach Maßgabe der European Union Public Licence genutzt
+ * werden.
+ * </p>
+ * Die Lizenzbestimmungen können unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ * </p>
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+class LoopbackRequestBuilder extends OSCIMessageBuilder
+{
+  private static Log log = LogFactory.getLog(LoopbackRequestBuilder.class);
+
+  private final LoopbackIntermed intermed;
+
+  /**
+   * Prüfvektor für den ControlBlock {Response, Challenge, ConversationId, SequenceNumber}
+   */
+  private final int[] controlBlockCheck;
+
+  private boolean insideSelectionRule = false;
+
+  private StringBuilder selectedMessageIds = null;
+
+  private ChunkInformationBuilder chunkInformationBuilder = null;
+
+  /**
+   * Legt einen Parser für den übergebenen (leeren) Auftrag an.
+   *
+   * @param parentBuilder Parent-Objekt
+   * @param intermed Intermediär, der die Dialoge verwaltet
+   * @param request Auftragsobjekt, welches befüllt wird
+   * @param controlBlockCheck Prüfvektor für den ControlBlock
+   */
+  LoopbackRequestBuilder(OSCIEnvelopeBuilder parentBuilder,
+                         LoopbackIntermed intermed,
+                         OSCIRequest request,
+                         int[] controlBlockCheck)
+  {
+    super(parentBuilder);
+    this.intermed = intermed;
+    this.controlBlockCheck = controlBlockCheck;
+    msg = request;
+    msg.dialogHandler = intermed.createDialogHandler();
+  }
+
+  /**
+   * Description of the Method
+   *
+   * @param uri Description of Parameter
+   * @param localName Description of Parameter
+   * @param qName Description of Parameter
+   * @param attributes Description of Parameter
+   * @exception SAXException Description of Exception
+   */
+  @Override
+  public void startElement(String uri, String localName, String qName, Attributes attributes)
+    throws SAXException
+  {
+    if (log.isDebugEnabled())
+      log.debug("Start-Element: " + localName + ":" + uri);
+
+    if (ParserHelper.isElement(CommonTags.MessageId, localName, uri)
+        || (localName.equals("ReceptionOfDelivery") && uri.equals(OSCI_XMLNS))
+        || (localName.equals("RecentModification") && uri.equals(OSCI_XMLNS)))
+    {
+      currentElement = new StringBuffer();
+
+      if (msg instanceof FetchProcessCard)
+      {
+        FetchProcessCard fpc = (FetchProcessCard)msg;
+
+        if ("true".equals(attributes.getValue("NoReception")))
+          fpc.setSelectNoReceptionOnly(true);
+
+        if ("Addressee".equals(attributes.getValue("Role")))
+          fpc.setRoleForSelection(OSCIMessage.SELECT_ADDRESSEE);
+        else if ("Originator".equals(attributes.getValue("Role")))
+          fpc.setRoleForSelection(OSCIMessage.SELECT_ORIGINATOR);
+      }
+    }
+    else if (localName.equals("SelectionRule") && uri.equals(OSCI_XMLNS))
+      insideSelectionRule = true;
+    else if (localName.equals("Quantity") && uri.equals(OSCI_XMLNS))
+    {
+      try
+      {
+        ((FetchProcessCard)msg).setQuantityLimit(Long.parseLong(attributes.getValue("Limit")));
+      }
+      catch (RuntimeException ex)
+      {
+        throw new SAXException(DialogHandler.text.getString("unexpected_entry") + ": " + localName);
+      }
+    }
+    else if (insideBody)
+    {
+      if (ParserHelper.isElement(CommonTags.ContentPackage, localName, uri))
+        setContentPackageHandler(localName);
+      else if (!uri.equals(OSCI_XMLNS))
+        throw new SAXException(DialogHandler.text.getString("unexpected_entry") + ": " + localName);
+    }
+    else if (insideHeader)
+    {
+      // ### Auswerten des ControlBlock Headers###
+      if (ParserHelper.isElement(HeaderTags.ControlBlock, localName, uri))
+      {
+        msg.dialogHandler = intermed.findDialog(attributes.getValue("ConversationId"), msg.dialogHandler);
+        parentBuilder.xmlReader.setContentHandler(new ControlBlockHBuilder(this, attributes, controlBlockCheck));
+      }
+      // ### Auswerten des ClientSignature Headers###
+      else if (ParserHelper.isElement(HeaderTags.ClientSignature, localName, uri))
+        parentBuilder.xmlReader.setContentHandler(MessagePartsFactory.createOsciSignatureBuilder(parentBuilder.xmlReader,
+                                                                                                 this,
+                                                                                                 attributes));
+      else if (ParserHelper.isElement(HeaderTags.DesiredLanguages, localName, uri))
+      {
+        msg.desiredLanguagesH = new DesiredLanguagesH(this, attributes.getValue("Id"),
+                                                      attributes.getValue("LanguagesList"));
+        msg.desiredLanguagesH.setRefID(attributes.getValue("Id"));
+        msg.desiredLanguagesH.setNSPrefixes(msg);
+        msg.dialogHandler.setLanguageList(attributes.getValue("LanguagesList"));
+      }
+      else if (ParserHelper.isElement(HeaderTags.QualityOfTimestamp, localName, uri))
+        parentBuilder.xmlReader.setContentHandler(new QualityOfTimestampHBuilder(this, attributes));
+      else if (ParserHelper.isElement(HeaderTags.IntermediaryCertificates, localName, uri))
+      {
+        int[] check = {-1, -1};
+        parentBuilder.xmlReader.setContentHandler(new IntermediaryCertificatesHBuilder(this, attributes,
+                                                                                       check));
+      }
+      else if (ParserHelper.isElement(HeaderTags.NonIntermediaryCertificates, localName, uri))
+      {
+        int[] check = {-1, -1, -1, -1, -1, -1, -1};
+        parentBuilder.xmlReader.setContentHandler(new NonIntermediaryCertificatesHBuilder(this, attributes,
+                                                                                          check));
+      }
+      else if (ParserHelper.isElement(HeaderTags.FeatureDescription, localName, uri))
+      {
+        FeatureDescriptionHBuilder featureBuilder = new FeatureDescriptionHBuilder(this, attributes);
+        parentBuilder.xmlReader.setContentHandler(featureBuilder);
+        featureBuilder.startElement(uri, localName, qName, attributes);
+      }
+      else if (ParserHelper.isElement(HeaderTags.storeDelivery, localName, uri)
+               || ParserHelper.isElement(HeaderTags.fetchDelivery, localName, uri)
+               || ParserHelper.isElement(HeaderTags.partialStoreDelivery, localName, uri)
+               || ParserHelper.isElement(HeaderTags.partialFetchDelivery, localName, uri))
+        addFoundMsgPartIds(attributes.getValue("Id"), uri + ":" + localName);
+      else if (localName.equals("Subject") && uri.equals(OSCI_XMLNS))
+        currentElement = new StringBuffer();
+      else if (localName.equals("InfoOnly") && uri.equals(Namespaces.OSCI2017.getUri()))
+        ((PartialStoreDelivery)msg).setInfoOnly(true);
+      else if (ParserHelper.isElement(CommonTags.ChunkInformation, localName, uri))
+      {
+        CheckInstance checkInstance = (msg instanceof PartialStoreDelivery) ? CheckInstance.PartialStoreDelivery
+          : CheckInstance.PartialFetchDelivery;
+        chunkInformationBuilder = new ChunkInformationBuilder(parentBuilder.xmlReader, this, checkInstance);
+        parentBuilder.xmlReader.setContentHandler(chunkInformationBuilder);
+        chunkInformationBuilder.startElement(uri, localName, qName, attributes);
+      }
+      else
+        startCustomSoapHeader(uri, localName, qName, attributes);
+    }
+    else
+      super.startElement(uri, localName, qName, attributes);
+  }
+
+  /**
+   * Description of the Method
+   *
+   * @param uri Description of Parameter
+   * @param localName Description of Parameter
+   * @param qName Description of Parameter
+   * @exception SAXException Description of Exception
+   */
+  @Override
+  public void endElement(String uri, String localName, String qName) throws SAXException
+  {
+    if (log.isDebugEnabled())
+      log.debug("End-Element: " + localName);
+
+    try
+    {
+      if (ParserHelper.isElement(CommonTags.MessageId, localName, uri))
+      {
+        String messageId = new String(de.osci.helper.Base64.decode(currentElement.toString()),
+                                      Constants.CHAR_ENCODING);
+
+        if (!insideSelectionRule)
+          msg.messageId = messageId;
+        else if (msg instanceof FetchProcessCard)
+        {
+          // Beim Laufzettelabholauftrag sind mehrere Message-IDs erlaubt
+          if (selectedMessageIds == null)
+            selectedMessageIds = new StringBuilder(messageId);
+          else
+            selectedMessageIds.append(';').append(messageId);
+
+          ((FetchProcessCard)msg).setSelectionMode(OSCIMessage.SELECT_BY_MESSAGE_ID);
+          ((FetchProcessCard)msg).setSelectionRule(selectedMessageIds.toString());
+        }
+        else
+        {
+          ((FetchRequestAbstract)msg).setSelectionMode(OSCIMessage.SELECT_BY_MESSAGE_ID);
+          ((FetchRequestAbstract)msg).setSelectionRule(messageId);
+        }
+      }
+      else if (localName.equals("ReceptionOfDelivery") && uri.equals(OSCI_XMLNS))
+      {
+        if (msg instanceof FetchProcessCard)
+        {
+          ((FetchProcessCard)msg).setSelectionMode(OSCIMessage.SELECT_BY_DATE_OF_RECEPTION);
+          ((FetchProcessCard)msg).setSelectionRule(currentElement.toString());
+        }
+        else
+        {
+          ((FetchRequestAbstract)msg).setSelectionMode(OSCIMessage.SELECT_BY_DATE_OF_RECEPTION);
+          ((FetchRequestAbstract)msg).setSelectionRule(currentElement.toString());
+        }
+      }
+      else if (localName.equals("RecentModification") && uri.equals(OSCI_XMLNS))
+      {
+        ((FetchProcessCard)msg).setSelectionMode(OSCIMessage.SELECT_BY_RECENT_MODIFICATION);
+        ((FetchProcessCard)msg).setSelectionRule(currentElement.toString());
+      }
+      else if (localName.equals("SelectionRule") && uri.equals(OSCI_XMLNS))
+        insideSelectionRule = false;
+      else if (localName.equals("Subject") && uri.equals(OSCI_XMLNS))
+      {
+        if (msg instanceof StoreDelivery)
+          ((StoreDelivery)msg).setSubject(currentElement.toString());
+        else
+          ((PartialStoreDelivery)msg).setSubject(currentElement.toString());
+      }
+      else if (ParserHelper.isElement(CommonTags.ChunkInformation, localName, uri))
+      {
+        if (msg instanceof PartialStoreDelivery)
+          ((PartialStoreDelivery)msg).setChunkInformation(chunkInformationBuilder.getChunkInformationObject());
+        else
+          ((PartialFetchDelivery)msg).setChunkInformation(chunkInformationBuilder.getChunkInformationObject());
+      }
+      else
+        super.endElement(uri, localName, qName);
+    }
+    catch (SAXException ex)
+    {
+      throw ex;
+    }
+    catch (ClassCastException ex)
+    {
+      throw new SAXException(DialogHandler.text.getString("unexpected_entry") + ": " + localName);
+    }
+    catch (Exception ex)
+    {
+      throw new SAXException(ex);
+    }
+
+    currentElement = null;
+  }
+}
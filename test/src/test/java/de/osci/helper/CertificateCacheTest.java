@@ -0,0 +1,170 @@
+package de.osci.helper;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.osci.osci12.encryption.Crypto;
+
+
+/**
+ * Tests für {@link CertificateCache}.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class CertificateCacheTest
+{
+  private static final String CERTS = "/de/osci/osci12/samples/zertifikate/";
+
+  private static final String[] NAMES = {"alice_cipher_4096.cer", "alice_signature_4096.cer",
+                                         "bob_cipher_4096.cer", "bob_signature_4096.cer"};
+
+  @BeforeEach
+  public void setUp()
+  {
+    CertificateCache.clear();
+  }
+
+  @AfterEach
+  public void tearDown()
+  {
+    CertificateCache.setMaxSize(CertificateCache.DEFAULT_MAX_SIZE);
+    CertificateCache.clear();
+  }
+
+  @Test
+  public void repeatedLookupsShareOneEntry() throws Exception
+  {
+    byte[] der = encoded(NAMES[0]);
+    long hits = CertificateCache.getHitCount();
+    long misses = CertificateCache.getMissCount();
+
+    CertificateCache.Entry first = CertificateCache.get(der);
+    CertificateCache.Entry second = CertificateCache.get(der.clone());
+    CertificateCache.Entry byCertificate = CertificateCache.get(first.getCertificate());
+
+    assertSame(first, second);
+    assertSame(first, byCertificate);
+    assertSame(first.getCertificate(), CertificateCache.getCertificate(new ByteArrayInputStream(der)));
+    assertEquals(misses + 1, CertificateCache.getMissCount());
+    assertEquals(hits + 3, CertificateCache.getHitCount());
+    assertEquals(1, CertificateCache.getSize());
+  }
+
+  @Test
+  public void entryHoldsDerivedRepresentations() throws Exception
+  {
+    byte[] der = encoded(NAMES[1]);
+    CertificateCache.Entry entry = CertificateCache.get(der);
+
+    assertArrayEquals(der, entry.getEncoded());
+    assertEquals(der.length, entry.getEncodedLength());
+    assertEquals(Crypto.toHex(MessageDigest.getInstance("SHA-256").digest(der)), entry.getHash());
+    assertEquals(entry.getHash(), CertificateCache.getHash(entry.getCertificate()));
+    assertArrayEquals(der, Base64.decode(entry.getBase64()));
+  }
+
+  @Test
+  public void callerArrayDoesNotAlterCache() throws Exception
+  {
+    byte[] der = encoded(NAMES[2]);
+    X509Certificate cert = CertificateCache.getCertificate(der);
+
+    der[der.length / 2] ^= 0x55;
+
+    assertArrayEquals(cert.getEncoded(), CertificateCache.get(cert).getEncoded());
+    assertEquals(1, CertificateCache.getSize());
+  }
+
+  @Test
+  public void sizeIsBounded() throws Exception
+  {
+    for ( String name : NAMES )
+      CertificateCache.get(encoded(name));
+
+    assertEquals(NAMES.length, CertificateCache.getSize());
+
+    CertificateCache.setMaxSize(2);
+    assertEquals(2, CertificateCache.getSize());
+
+    CertificateCache.get(encoded(NAMES[0]));
+    CertificateCache.get(encoded(NAMES[1]));
+    CertificateCache.get(encoded(NAMES[2]));
+    assertEquals(2, CertificateCache.getSize());
+
+    assertThrows(IllegalArgumentException.class, () -> CertificateCache.setMaxSize(0));
+  }
+
+  @Test
+  public void invalidEncodingIsRejected()
+  {
+    assertThrows(CertificateException.class, () -> CertificateCache.get(new byte[]{0x30, 0x03, 0x02, 0x01}));
+    assertEquals(0, CertificateCache.getSize());
+  }
+
+  @Test
+  public void concurrentLookupsConvergeOnOneCertificate() throws Exception
+  {
+    final byte[] der = encoded(NAMES[3]);
+    final int threads = 16;
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<X509Certificate>> results = new ArrayList<Future<X509Certificate>>();
+
+    try
+    {
+      for ( int i = 0 ; i < threads ; i++ )
+      {
+        results.add(executor.submit(() -> {
+          start.await();
+          return CertificateCache.getCertificate(der.clone());
+        }));
+      }
+
+      start.countDown();
+      X509Certificate cached = CertificateCache.getCertificate(der);
+
+      for ( Future<X509Certificate> result : results )
+        assertSame(cached, result.get());
+
+      assertEquals(1, CertificateCache.getSize());
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+
+  private static byte[] encoded(String name) throws Exception
+  {
+    try (InputStream in = CertificateCacheTest.class.getResourceAsStream(CERTS + name))
+    {
+      return Tools.createCertificate(in).getEncoded();
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package de.osci.helper;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Abbruch des {@link PipelinedOutputStream}: Scheitert der Erzeuger, kehrt abort() erst zurück, wenn der
+ * schreibende Thread beendet ist, so dass der Zielstrom anschließend wie in OSCIRequest geschlossen werden
+ * kann, ohne dass noch in ihn geschrieben wird.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class PipelinedOutputStreamTest
+{
+  private static final int BUFFER_SIZE = 16;
+
+  // Dauer eines Schreibvorgangs im Zielstrom in Millisekunden
+  private static final long WRITE_MILLIS = 200;
+
+  private final DrainExecutor executor = new DrainExecutor();
+
+  @AfterEach
+  public void tearDown() throws InterruptedException
+  {
+    executor.join();
+  }
+
+  @Test
+  public void dataIsWrittenInOrder() throws IOException
+  {
+    ByteArrayOutputStream target = new ByteArrayOutputStream();
+    byte[] data = new byte[10 * BUFFER_SIZE + 3];
+
+    for ( int i = 0 ; i < data.length ; i++ )
+      data[i] = (byte)i;
+
+    try (PipelinedOutputStream pipe = new PipelinedOutputStream(target, 3, BUFFER_SIZE, executor))
+    {
+      pipe.write(data, 0, 5);
+      pipe.write(data[5]);
+      pipe.write(data, 6, data.length - 6);
+    }
+
+    assertArrayEquals(data, target.toByteArray());
+  }
+
+  @Test
+  public void failingProducerClosesTargetAfterDrain() throws Exception
+  {
+    SlowStream target = new SlowStream();
+    PipelinedOutputStream pipe = new PipelinedOutputStream(target, 2, BUFFER_SIZE, executor);
+
+    // Wie OSCIRequest.writeTransmission: Der Erzeuger scheitert, abort() im finally, danach schließt der
+    // Aufrufer die Verbindung
+    IOException ex = assertThrows(IOException.class, () -> {
+      try
+      {
+        try
+        {
+          pipe.write(new byte[4 * BUFFER_SIZE]);
+          throw new IOException("producer failed");
+        }
+        finally
+        {
+          pipe.abort();
+        }
+      }
+      finally
+      {
+        target.close();
+      }
+    });
+
+    assertEquals("producer failed", ex.getMessage());
+    executor.join();
+    assertTrue(target.writes.get() > 0);
+    assertFalse(target.closedWhileWriting.get(), "target closed during a write");
+    assertEquals(0, target.writesAfterClose.get());
+  }
+
+  @Test
+  public void abortAfterInterruptedFinishWaitsForDrain() throws Exception
+  {
+    SlowStream target = new SlowStream();
+    PipelinedOutputStream pipe = new PipelinedOutputStream(target, 2, BUFFER_SIZE, executor);
+    pipe.write(new byte[2 * BUFFER_SIZE]);
+
+    // finish() bricht beim Einstellen der Endemarkierung ab, abort() muss sie nachholen und warten
+    Thread.currentThread().interrupt();
+    assertThrows(InterruptedIOException.class, pipe::finish);
+    pipe.abort();
+    target.close();
+
+    assertTrue(Thread.interrupted(), "interrupt status lost");
+    assertFalse(target.closedWhileWriting.get(), "target closed during a write");
+    executor.join();
+    assertEquals(0, target.writesAfterClose.get());
+  }
+
+  /**
+   * Zielstrom mit langsamen Schreibvorgängen, der festhält, ob während oder nach dem Schließen geschrieben
+   * wurde.
+   */
+  private static final class SlowStream extends OutputStream
+  {
+    final AtomicInteger writes = new AtomicInteger();
+
+    final AtomicBoolean closedWhileWriting = new AtomicBoolean();
+
+    final AtomicInteger writesAfterClose = new AtomicInteger();
+
+    private final AtomicInteger writing = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    @Override
+    public void write(int b) throws IOException
+    {
+      write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+      if (closed)
+        writesAfterClose.incrementAndGet();
+
+      writing.incrementAndGet();
+
+      try
+      {
+        Thread.sleep(WRITE_MILLIS);
+        writes.incrementAndGet();
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+      finally
+      {
+        writing.decrementAndGet();
+      }
+    }
+
+    @Override
+    public void close()
+    {
+      if (writing.get() > 0)
+        closedWhileWriting.set(true);
+
+      closed = true;
+    }
+  }
+
+  /**
+   * Startet den schreibenden Thread einzeln, damit der Test auf sein Ende warten kann.
+   */
+  private static final class DrainExecutor implements Executor
+  {
+    private Thread thread;
+
+    @Override
+    public void execute(Runnable command)
+    {
+      thread = new Thread(command, "pipeline-test-drain");
+      thread.start();
+    }
+
+    void join() throws InterruptedException
+    {
+      if (thread != null)
+        thread.join(10 * 1000);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package de.osci.helper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests für {@link SecureRandomPool}.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class SecureRandomPoolTest
+{
+  @Test
+  public void stripeCountIsRoundedToPowerOfTwo()
+  {
+    assertEquals(1, new SecureRandomPool(1).getStripeCount());
+    assertEquals(8, new SecureRandomPool(5).getStripeCount());
+    assertEquals(16, new SecureRandomPool(16).getStripeCount());
+  }
+
+  @Test
+  public void countsAcquisitionsAndBytes() throws Exception
+  {
+    SecureRandomPool pool = new SecureRandomPool(2);
+    byte[] a = new byte[32];
+    byte[] b = new byte[32];
+
+    pool.nextBytes(a);
+    pool.nextBytes(b);
+    pool.getSecureRandom().nextBytes(new byte[16]);
+
+    assertFalse(ByteBuffer.wrap(a).equals(ByteBuffer.wrap(b)));
+    assertEquals(3, pool.getAcquisitionCount());
+    assertEquals(80, pool.getGeneratedBytes());
+  }
+
+  @Test
+  public void reseedsAfterInterval() throws Exception
+  {
+    SecureRandomPool pool = new SecureRandomPool(1);
+    pool.setReseedInterval(64);
+
+    // Die erste Anforderung legt die Instanz an, jede weitere erreicht das Intervall
+    for ( int i = 0 ; i < 5 ; i++ )
+      pool.nextBytes(new byte[64]);
+
+    assertEquals(4, pool.getReseedCount());
+
+    pool.setReseedInterval(0);
+
+    for ( int i = 0 ; i < 5 ; i++ )
+      pool.nextBytes(new byte[64]);
+
+    assertEquals(4, pool.getReseedCount());
+  }
+
+  @Test
+  public void concurrentRequestsYieldDistinctValues() throws Exception
+  {
+    final SecureRandomPool pool = new SecureRandomPool(4);
+    final int threads = 16;
+    final int perThread = 2000;
+    pool.setReseedInterval(4096);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<List<ByteBuffer>>> results = new ArrayList<Future<List<ByteBuffer>>>();
+
+    try
+    {
+      for ( int t = 0 ; t < threads ; t++ )
+      {
+        results.add(executor.submit(new Callable<List<ByteBuffer>>()
+        {
+          @Override
+          public List<ByteBuffer> call() throws Exception
+          {
+            List<ByteBuffer> values = new ArrayList<ByteBuffer>();
+
+            for ( int i = 0 ; i < perThread ; i++ )
+            {
+              byte[] value = new byte[16];
+              pool.nextBytes(value);
+              values.add(ByteBuffer.wrap(value));
+            }
+
+            return values;
+          }
+        }));
+      }
+
+      Set<ByteBuffer> values = new HashSet<ByteBuffer>();
+
+      for ( Future<List<ByteBuffer>> result : results )
+        values.addAll(result.get());
+
+      assertEquals(threads * perThread, values.size());
+      assertEquals(threads * perThread, pool.getAcquisitionCount());
+      assertEquals(threads * perThread * 16L, pool.getGeneratedBytes());
+      assertTrue(pool.getReseedCount() > 0);
+      assertTrue(pool.getContentionCount() <= pool.getAcquisitionCount());
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+}
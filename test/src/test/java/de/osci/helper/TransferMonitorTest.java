@@ -0,0 +1,395 @@
+package de.osci.helper;
+
+import static de.osci.osci12.messagetypes.LoopbackFixture.check;
+import static de.osci.osci12.messagetypes.LoopbackFixture.random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.osci.osci12.common.Constants;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.extinterfaces.ProgressEventHandlerI;
+import de.osci.osci12.extinterfaces.TransportI;
+import de.osci.osci12.messagetypes.GetMessageId;
+import de.osci.osci12.messagetypes.LoopbackFixture;
+import de.osci.osci12.messagetypes.ResponseToStoreDelivery;
+
+
+/**
+ * Überwachung der Übertragung durch den {@link TransferMonitor} über den LoopbackIntermed: Blockiert das
+ * Transportmodul beim Senden oder Empfangen, wird der Auftrag nach dem Zeitlimit mit einer IOException
+ * abgebrochen; die abschließende Fortschrittsmeldung enthält die vollständig übertragene Byteanzahl.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class TransferMonitorTest
+{
+  // Zeitlimit in Millisekunden
+  private static final long STALL_TIMEOUT = 300;
+
+  // Spielraum für Watchdog-Periode und Abbruch
+  private static final long TOLERANCE = 2000;
+
+  private LoopbackFixture fixture;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    fixture = new LoopbackFixture();
+  }
+
+  @Test
+  public void stalledResponseIsAborted() throws Exception
+  {
+    assertStallAborted(Block.RESPONSE);
+  }
+
+  @Test
+  public void stalledRequestIsAborted() throws Exception
+  {
+    assertStallAborted(Block.REQUEST);
+  }
+
+  @Test
+  public void finalProgressReportsFullByteCount() throws Exception
+  {
+    AtomicLong sent = new AtomicLong();
+    AtomicLong received = new AtomicLong();
+    fixture.setTransportDecorator(transport -> new ObservedTransport(transport, null, sent, received));
+    RecordingHandler progress = new RecordingHandler();
+    DialogHandler dh = fixture.newDialog(fixture.alice);
+    dh.setProgressEventHandler(progress);
+    // Zwischenmeldungen nur in großen Abständen, damit die abschließende Meldung geprüft wird
+    dh.setProgressInterval(60 * 1000);
+    String messageId = new GetMessageId(dh).send().getMessageId();
+    progress.reports.clear();
+    sent.set(0);
+    received.set(0);
+
+    ResponseToStoreDelivery rsp = fixture.createStoreDelivery(dh, messageId, random(256 * 1024)).send();
+    check(rsp.getFeedback(), "StoreDelivery");
+
+    assertTrue(sent.get() > 256 * 1024, "sent: " + sent);
+    assertFinalReport(progress, Constants.EVENT_SEND_MSG, sent.get());
+    assertFinalReport(progress, Constants.EVENT_RECEIVE_MSG, received.get());
+  }
+
+  private void assertStallAborted(Block block) throws Exception
+  {
+    CountDownLatch closed = new CountDownLatch(1);
+    fixture.setTransportDecorator(transport -> new ObservedTransport(transport, block, closed));
+    DialogHandler dh = fixture.newDialog(fixture.alice);
+    dh.setStallTimeout(STALL_TIMEOUT);
+
+    long start = System.nanoTime();
+    IOException ex = assertThrows(IOException.class, () -> new GetMessageId(dh).send());
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    assertTrue(stalled(ex), () -> "not a stall: " + ex);
+    assertTrue(elapsed >= STALL_TIMEOUT, "aborted after " + elapsed + " ms");
+    assertTrue(elapsed < STALL_TIMEOUT + TOLERANCE, "aborted after " + elapsed + " ms");
+    assertEquals(0, closed.getCount(), "blocked stream not closed");
+  }
+
+  private static boolean stalled(Throwable ex)
+  {
+    String text = DialogHandler.text.getString("transfer_stalled");
+
+    for ( Throwable t = ex ; t != null ; t = t.getCause() )
+    {
+      if ((t.getMessage() != null) && t.getMessage().startsWith(text))
+        return true;
+    }
+
+    return false;
+  }
+
+  private static void assertFinalReport(RecordingHandler progress, int type, long bytes)
+  {
+    long[] last = null;
+
+    for ( long[] report : progress.reports )
+    {
+      if (report[0] == type)
+      {
+        assertTrue((last == null) || (report[1] >= last[1]), "progress not monotonic");
+        last = report;
+      }
+    }
+
+    assertTrue(last != null, "no report of type " + type);
+    assertEquals(bytes, last[1], "bytes of type " + type);
+
+    if (last[2] >= 0)
+      assertEquals(last[2], last[1], "total of type " + type);
+
+    assertTrue(last[3] > 0, "rate of type " + type);
+  }
+
+  private enum Block
+  {
+    REQUEST, RESPONSE
+  }
+
+  /**
+   * Zeichnet die Fortschrittsmeldungen als {type, bytesDone, bytesTotal, bytesPerSecond} auf.
+   */
+  private static final class RecordingHandler implements ProgressEventHandlerI
+  {
+    final List<long[]> reports = new CopyOnWriteArrayList<long[]>();
+
+    public String getVersion()
+    {
+      return "1.0";
+    }
+
+    public String getVendor()
+    {
+      return "Test";
+    }
+
+    public void event(int type, String param, int percent)
+    {
+      // nur Übertragungen
+    }
+
+    @Override
+    public void transferProgress(int type, long bytesDone, long bytesTotal, long bytesPerSecond)
+    {
+      reports.add(new long[]{type, bytesDone, bytesTotal, bytesPerSecond});
+    }
+  }
+
+  /**
+   * Transportmodul, das die übertragenen Bytes zählt oder beim Senden bzw. Empfangen blockiert, bis der
+   * Stream geschlossen wird.
+   */
+  private static final class ObservedTransport implements TransportI
+  {
+    private final TransportI transport;
+
+    private final Block block;
+
+    private final CountDownLatch closed;
+
+    private final AtomicLong sent;
+
+    private final AtomicLong received;
+
+    ObservedTransport(TransportI transport, Block block, CountDownLatch closed)
+    {
+      this(transport, block, closed, new AtomicLong(), new AtomicLong());
+    }
+
+    ObservedTransport(TransportI transport, Block block, AtomicLong sent, AtomicLong received)
+    {
+      this(transport, block, new CountDownLatch(1), sent, received);
+    }
+
+    private ObservedTransport(TransportI transport, Block block, CountDownLatch closed, AtomicLong sent,
+                              AtomicLong received)
+    {
+      this.transport = transport;
+      this.block = block;
+      this.closed = closed;
+      this.sent = sent;
+      this.received = received;
+    }
+
+    public String getVersion()
+    {
+      return transport.getVersion();
+    }
+
+    public String getVendor()
+    {
+      return transport.getVendor();
+    }
+
+    public TransportI newInstance() throws IOException
+    {
+      return new ObservedTransport(transport.newInstance(), block, closed, sent, received);
+    }
+
+    public boolean isOnline(URI uri) throws IOException
+    {
+      return transport.isOnline(uri);
+    }
+
+    public boolean isChunkedTransferSupported()
+    {
+      return transport.isChunkedTransferSupported();
+    }
+
+    public OutputStream getConnection(URI uri, long length) throws IOException
+    {
+      OutputStream out = transport.getConnection(uri, length);
+
+      if (block == Block.REQUEST)
+        return new BlockingOutputStream(out, closed);
+
+      return new FilterOutputStream(out)
+      {
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+          out.write(b, off, len);
+          sent.addAndGet(len);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+          out.write(b);
+          sent.incrementAndGet();
+        }
+      };
+    }
+
+    public InputStream getResponseStream() throws IOException
+    {
+      InputStream in = transport.getResponseStream();
+
+      if (block == Block.RESPONSE)
+        return new BlockingInputStream(in, closed);
+
+      return new FilterInputStream(in)
+      {
+        @Override
+        public int read() throws IOException
+        {
+          int b = in.read();
+
+          if (b >= 0)
+            received.incrementAndGet();
+
+          return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+          int count = in.read(b, off, len);
+
+          if (count > 0)
+            received.addAndGet(count);
+
+          return count;
+        }
+      };
+    }
+
+    public long getContentLength()
+    {
+      return transport.getContentLength();
+    }
+  }
+
+  /**
+   * Blockiert jeden Schreibzugriff, bis der Stream geschlossen wird.
+   */
+  private static final class BlockingOutputStream extends FilterOutputStream
+  {
+    private final CountDownLatch closed;
+
+    BlockingOutputStream(OutputStream out, CountDownLatch closed)
+    {
+      super(out);
+      this.closed = closed;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+      await(closed);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+      await(closed);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      closed.countDown();
+      super.close();
+    }
+  }
+
+  /**
+   * Blockiert jeden Lesezugriff, bis der Stream geschlossen wird.
+   */
+  private static final class BlockingInputStream extends FilterInputStream
+  {
+    private final CountDownLatch closed;
+
+    BlockingInputStream(InputStream in, CountDownLatch closed)
+    {
+      super(in);
+      this.closed = closed;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+      await(closed);
+      return -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+      await(closed);
+      return -1;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      closed.countDown();
+      super.close();
+    }
+  }
+
+  private static void await(CountDownLatch closed) throws IOException
+  {
+    try
+    {
+      if (!closed.await(30, TimeUnit.SECONDS))
+        throw new IOException("never closed");
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new IOException(ex);
+    }
+
+    throw new IOException("Stream closed");
+  }
+}
@@ -0,0 +1,141 @@
+package de.osci.osci12.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import de.osci.osci12.roles.Intermed;
+import de.osci.osci12.roles.Originator;
+
+
+/**
+ * Fristen, Kapazität und Zähler des {@link ConcurrentDialogFinder}.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class ConcurrentDialogFinderTest
+{
+  @Test
+  public void idleDialogIsEvictedByTimer() throws Exception
+  {
+    try (ConcurrentDialogFinder finder = new ConcurrentDialogFinder(10, 100, 0))
+    {
+      DialogHandler dialog = dialog("idle");
+      finder.addDialog(dialog);
+      assertSame(dialog, finder.findDialog("idle"));
+
+      // Ohne Suche räumt das Timer-Rad den Dialog ab
+      assertTrue(await(() -> finder.getActiveDialogs() == 0, 2000));
+      assertEquals(1, finder.getEvictions());
+      assertNull(finder.findDialog("idle"));
+      assertEquals(1, finder.getHits());
+      assertEquals(2, finder.getLookups());
+    }
+  }
+
+  @Test
+  public void lookupsKeepDialogAlive() throws Exception
+  {
+    try (ConcurrentDialogFinder finder = new ConcurrentDialogFinder(10, 300, 0))
+    {
+      finder.addDialog(dialog("busy"));
+      long end = System.currentTimeMillis() + 900;
+
+      while (System.currentTimeMillis() < end)
+      {
+        assertTrue(finder.findDialog("busy") != null);
+        Thread.sleep(30);
+      }
+
+      assertEquals(0, finder.getEvictions());
+      assertTrue(await(() -> finder.getActiveDialogs() == 0, 2000));
+    }
+  }
+
+  @Test
+  public void maxLifetimeEndsDialogDespiteLookups() throws Exception
+  {
+    try (ConcurrentDialogFinder finder = new ConcurrentDialogFinder(10, 0, 200))
+    {
+      finder.addDialog(dialog("old"));
+
+      assertTrue(await(() -> finder.findDialog("old") == null, 2000));
+      assertEquals(1, finder.getEvictions());
+      assertEquals(0, finder.getActiveDialogs());
+    }
+  }
+
+  @Test
+  public void expiredDialogIsNotFoundWithoutTimer() throws Exception
+  {
+    ConcurrentDialogFinder finder = new ConcurrentDialogFinder(10, 50, 0);
+    finder.close();
+    finder.addDialog(dialog("stale"));
+
+    Thread.sleep(150);
+    assertEquals(1, finder.getActiveDialogs());
+    assertNull(finder.findDialog("stale"));
+    assertEquals(0, finder.getActiveDialogs());
+    assertEquals(1, finder.getEvictions());
+  }
+
+  @Test
+  public void capacityIsLimitedAndReleased() throws Exception
+  {
+    try (ConcurrentDialogFinder finder = new ConcurrentDialogFinder(1, 0, 0))
+    {
+      finder.setAddTimeout(0);
+      finder.addDialog(dialog("first"));
+
+      assertThrows(SoapServerException.class, () -> finder.addDialog(dialog("second")));
+      assertEquals(1, finder.getRejections());
+
+      assertTrue(finder.removeDialog("first"));
+      assertFalse(finder.removeDialog("first"));
+      finder.addDialog(dialog("second"));
+      assertEquals(1, finder.getActiveDialogs());
+
+      // Ersetzen eines Dialogs mit derselben Conversation-ID belegt keinen weiteren Platz
+      DialogHandler replacement = dialog("second");
+      finder.addDialog(replacement);
+      assertSame(replacement, finder.findDialog("second"));
+    }
+  }
+
+  private static DialogHandler dialog(String conversationId)
+  {
+    DialogHandler dialog = new DialogHandler((Originator)null, (Intermed)null, null);
+    dialog.getControlblock().setConversationID(conversationId);
+    return dialog;
+  }
+
+  private static boolean await(BooleanSupplier condition, long millis) throws InterruptedException
+  {
+    long end = System.currentTimeMillis() + millis;
+
+    while (!condition.getAsBoolean())
+    {
+      if (System.currentTimeMillis() > end)
+        return false;
+
+      Thread.sleep(10);
+    }
+
+    return true;
+  }
+}
@@ -0,0 +1,228 @@
+package de.osci.osci12.common;
+
+import static de.osci.osci12.messagetypes.LoopbackFixture.attachment;
+import static de.osci.osci12.messagetypes.LoopbackFixture.check;
+import static de.osci.osci12.messagetypes.LoopbackFixture.random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.osci.osci12.OSCIException;
+import de.osci.osci12.extinterfaces.TransportI;
+import de.osci.osci12.messagetypes.FetchDelivery;
+import de.osci.osci12.messagetypes.LoopbackFixture;
+import de.osci.osci12.messagetypes.OSCIMessage;
+import de.osci.osci12.messagetypes.ResponseToFetchDelivery;
+
+
+/**
+ * Neuinitialisierung, Leerlauf und Schließen des {@link DialogPool} über den LoopbackIntermed.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class DialogPoolTest
+{
+  private LoopbackFixture fixture;
+
+  // Threads, in denen Verbindungen aufgebaut wurden
+  private final List<String> connections = new CopyOnWriteArrayList<String>();
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    fixture = new LoopbackFixture();
+  }
+
+  @Test
+  public void failedRequestReinitializesDialog() throws Exception
+  {
+    try (DialogPool pool = newPool(1, 0))
+    {
+      // Der Intermediär vergisst den Dialog, der Auftrag scheitert mit einem SOAP-Fault
+      try (DialogPool.Lease lease = pool.acquire())
+      {
+        fixture.loopback.clear();
+        assertThrows(OSCIException.class, () -> new FetchDelivery(lease.getDialogHandler()).send());
+      }
+
+      byte[] data = random(1024);
+      String messageId = fixture.store(data);
+
+      String conversationId;
+
+      try (DialogPool.Lease lease = pool.acquire())
+      {
+        assertEquals(1, pool.getInitializations());
+        assertEquals(1, pool.getReinitializations());
+        assertArrayEquals(data, fetch(lease, messageId));
+        conversationId = lease.getDialogHandler().getControlblock().getConversationID();
+        lease.invalidate();
+      }
+
+      try (DialogPool.Lease lease = pool.acquire())
+      {
+        assertEquals(2, pool.getReinitializations());
+        assertNotEquals(conversationId, lease.getDialogHandler().getControlblock().getConversationID());
+      }
+    }
+
+    // Der verworfene Dialog gilt als nicht mehr ansprechbar und wird nicht mit ExitDialog beendet
+    assertEquals(1, fixture.loopback.getOpenDialogs());
+  }
+
+  @Test
+  public void idleDialogIsEvictedInBackground() throws Exception
+  {
+    try (DialogPool pool = newPool(2, 200))
+    {
+      pool.acquire().close();
+      assertEquals(1, pool.getIdleDialogs());
+      assertEquals(1, fixture.loopback.getOpenDialogs());
+
+      assertTrue(await(() -> fixture.loopback.getOpenDialogs() == 0, 3000), pool.toString());
+      assertEquals(1, pool.getEvictions());
+      assertEquals(0, pool.getIdleDialogs());
+
+      // InitDialog im Test-Thread, ExitDialog nicht im Timer-Thread
+      assertEquals(2, connections.size());
+      assertEquals(Thread.currentThread().getName(), connections.get(0));
+      assertTrue(connections.get(1).startsWith("osci-background-"), connections.get(1));
+
+      try (DialogPool.Lease lease = pool.acquire())
+      {
+        assertEquals(2, pool.getInitializations());
+      }
+    }
+  }
+
+  @Test
+  public void closeExitsIdleAndReturnedDialogs() throws Exception
+  {
+    DialogPool pool = newPool(2, 0);
+    DialogPool.Lease first = pool.acquire();
+    DialogPool.Lease second = pool.acquire();
+    first.close();
+    assertEquals(1, pool.getIdleDialogs());
+    assertEquals(2, fixture.loopback.getOpenDialogs());
+
+    pool.close();
+    assertEquals(0, pool.getIdleDialogs());
+    assertEquals(1, fixture.loopback.getOpenDialogs());
+    assertThrows(IllegalStateException.class, pool::acquire);
+
+    // Der übergebene Dialog wird bei der Rückgabe beendet
+    second.close();
+    assertEquals(0, fixture.loopback.getOpenDialogs());
+    assertEquals(0, pool.getLeasedDialogs());
+    assertEquals(2, pool.getInitializations());
+  }
+
+  private DialogPool newPool(int maxDialogs, long idleTimeout)
+  {
+    TransportI transport = new RecordingTransport(fixture.loopback.newTransport(), connections);
+    return new DialogPool(fixture.bob, fixture.loopback.getIntermed(), transport, maxDialogs, idleTimeout);
+  }
+
+  private static byte[] fetch(DialogPool.Lease lease, String messageId) throws Exception
+  {
+    FetchDelivery fetchDel = new FetchDelivery(lease.getDialogHandler());
+    fetchDel.setSelectionMode(OSCIMessage.SELECT_BY_MESSAGE_ID);
+    fetchDel.setSelectionRule(messageId);
+    ResponseToFetchDelivery rsp = fetchDel.send();
+    check(rsp.getFeedback(), "FetchDelivery");
+    return attachment(rsp);
+  }
+
+  private static boolean await(BooleanSupplier condition, long millis) throws InterruptedException
+  {
+    long end = System.currentTimeMillis() + millis;
+
+    while (!condition.getAsBoolean())
+    {
+      if (System.currentTimeMillis() > end)
+        return false;
+
+      Thread.sleep(20);
+    }
+
+    return true;
+  }
+
+  /**
+   * Transportmodul, das den Thread jedes Verbindungsaufbaus festhält.
+   */
+  private static final class RecordingTransport implements TransportI
+  {
+    private final TransportI transport;
+
+    private final List<String> connections;
+
+    RecordingTransport(TransportI transport, List<String> connections)
+    {
+      this.transport = transport;
+      this.connections = connections;
+    }
+
+    public String getVersion()
+    {
+      return transport.getVersion();
+    }
+
+    public String getVendor()
+    {
+      return transport.getVendor();
+    }
+
+    public TransportI newInstance() throws IOException
+    {
+      return new RecordingTransport(transport.newInstance(), connections);
+    }
+
+    public boolean isOnline(URI uri) throws IOException
+    {
+      return transport.isOnline(uri);
+    }
+
+    public boolean isChunkedTransferSupported()
+    {
+      return transport.isChunkedTransferSupported();
+    }
+
+    public OutputStream getConnection(URI uri, long length) throws IOException
+    {
+      connections.add(Thread.currentThread().getName());
+      return transport.getConnection(uri, length);
+    }
+
+    public InputStream getResponseStream() throws IOException
+    {
+      return transport.getResponseStream();
+    }
+
+    public long getContentLength()
+    {
+      return transport.getContentLength();
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package de.osci.osci12.common;
+
+import static de.osci.osci12.messagetypes.LoopbackFixture.check;
+import static de.osci.osci12.messagetypes.LoopbackFixture.random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.osci.osci12.extinterfaces.TransportI;
+import de.osci.osci12.messagetypes.LoopbackFixture;
+import de.osci.osci12.messagetypes.ResponseToStoreDelivery;
+
+
+/**
+ * Füllstand, Ablauf und Nachfüllen des {@link MessageIdPool} über den LoopbackIntermed. Das Nachfüllen läuft
+ * im aufrufenden Thread, damit die Füllstände ohne Wartezeiten geprüft werden können.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class MessageIdPoolTest
+{
+  private static final Executor INLINE = Runnable::run;
+
+  private LoopbackFixture fixture;
+
+  private FailingTransport transport;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    fixture = new LoopbackFixture();
+    transport = new FailingTransport(fixture.loopback.newTransport(), new AtomicBoolean());
+  }
+
+  @Test
+  public void refillsFromLowToHighWatermark() throws Exception
+  {
+    try (MessageIdPool pool = newPool(2, 5, 0))
+    {
+      pool.refill();
+      assertEquals(5, pool.getAvailable());
+      assertEquals(5, pool.getFetched());
+
+      Set<String> ids = new HashSet<String>();
+
+      // Bis zur unteren Marke wird nicht nachgefüllt
+      for ( int i = 0 ; i < 3 ; i++ )
+        assertTrue(ids.add(pool.poll()));
+
+      assertEquals(2, pool.getAvailable());
+      assertEquals(5, pool.getFetched());
+
+      // Unter der unteren Marke wird bis zur oberen aufgefüllt
+      assertTrue(ids.add(pool.take()));
+      assertEquals(5, pool.getAvailable());
+      assertEquals(9, pool.getFetched());
+      assertEquals(4, pool.getHits());
+      assertEquals(0, pool.getMisses());
+
+      store(pool.take());
+    }
+  }
+
+  @Test
+  public void expiredIdsAreDiscarded() throws Exception
+  {
+    try (MessageIdPool pool = newPool(0, 3, 200))
+    {
+      pool.refill();
+      assertEquals(3, pool.getAvailable());
+
+      // Der Timer verwirft die abgelaufenen Message-IDs, ohne nachzufüllen
+      assertTrue(await(() -> pool.getExpired() == 3, 3000), pool.toString());
+      assertEquals(0, pool.getAvailable());
+
+      // Der leere Vorrat wird beim Abruf wieder gefüllt
+      assertNull(pool.poll());
+      assertEquals(3, pool.getAvailable());
+      assertEquals(6, pool.getFetched());
+      store(pool.take());
+    }
+  }
+
+  @Test
+  public void refillsAfterFailedGetMessageId() throws Exception
+  {
+    try (MessageIdPool pool = newPool(1, 3, 0))
+    {
+      transport.failing.set(true);
+      pool.refill();
+      assertEquals(0, pool.getAvailable());
+      assertThrows(IOException.class, pool::take);
+      assertEquals(1, pool.getMisses());
+      assertEquals(0, pool.getFetched());
+
+      // Nach dem Fehler wird beim nächsten Abruf erneut nachgefüllt
+      transport.failing.set(false);
+      assertNull(pool.poll());
+      assertEquals(3, pool.getAvailable());
+
+      String id = pool.take();
+      assertNotNull(id);
+      assertEquals(1, pool.getHits());
+      store(id);
+    }
+  }
+
+  private MessageIdPool newPool(int lowWatermark, int highWatermark, long maxAge)
+  {
+    return new MessageIdPool(fixture.alice, fixture.loopback.getIntermed(), transport, lowWatermark,
+                             highWatermark, maxAge, INLINE);
+  }
+
+  /**
+   * Prüft, dass der Intermediär die Message-ID annimmt.
+   */
+  private void store(String messageId) throws Exception
+  {
+    DialogHandler dh = fixture.newDialog(fixture.alice);
+    ResponseToStoreDelivery rsp = fixture.createStoreDelivery(dh, messageId, random(64)).send();
+    check(rsp.getFeedback(), "StoreDelivery");
+  }
+
+  private static boolean await(BooleanSupplier condition, long millis) throws InterruptedException
+  {
+    long end = System.currentTimeMillis() + millis;
+
+    while (!condition.getAsBoolean())
+    {
+      if (System.currentTimeMillis() > end)
+        return false;
+
+      Thread.sleep(20);
+    }
+
+    return true;
+  }
+
+  /**
+   * Transportmodul, dessen Verbindungsaufbau scheitert, solange das Flag gesetzt ist.
+   */
+  private static final class FailingTransport implements TransportI
+  {
+    final AtomicBoolean failing;
+
+    private final TransportI transport;
+
+    FailingTransport(TransportI transport, AtomicBoolean failing)
+    {
+      this.transport = transport;
+      this.failing = failing;
+    }
+
+    public String getVersion()
+    {
+      return transport.getVersion();
+    }
+
+    public String getVendor()
+    {
+      return transport.getVendor();
+    }
+
+    public TransportI newInstance() throws IOException
+    {
+      return new FailingTransport(transport.newInstance(), failing);
+    }
+
+    public boolean isOnline(URI uri) throws IOException
+    {
+      return transport.isOnline(uri);
+    }
+
+    public boolean isChunkedTransferSupported()
+    {
+      return transport.isChunkedTransferSupported();
+    }
+
+    public OutputStream getConnection(URI uri, long length) throws IOException
+    {
+      if (failing.get())
+        throw new IOException("connection refused");
+
+      return transport.getConnection(uri, length);
+    }
+
+    public InputStream getResponseStream() throws IOException
+    {
+      return transport.getResponseStream();
+    }
+
+    public long getContentLength()
+    {
+      return transport.getContentLength();
+    }
+  }
+}
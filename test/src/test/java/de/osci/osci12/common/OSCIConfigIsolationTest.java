@@ -0,0 +1,395 @@
+package de.osci.osci12.common;
+
+import static de.osci.osci12.messagetypes.LoopbackFixture.check;
+import static de.osci.osci12.messagetypes.LoopbackFixture.random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.osci.osci12.encryption.ProviderRouter;
+import de.osci.osci12.extinterfaces.TransportI;
+import de.osci.osci12.messageparts.ContentContainer;
+import de.osci.osci12.messagetypes.GetMessageId;
+import de.osci.osci12.messagetypes.LoopbackFixture;
+import de.osci.osci12.messagetypes.ResponseToStoreDelivery;
+import de.osci.osci12.messagetypes.StoreDelivery;
+
+
+/**
+ * Trennung der Konfigurationen zweier Dialoge mit {@link DialogHandler#setConfig(OSCIConfig)}: Beide
+ * versenden gleichzeitig über den LoopbackIntermed, mit unterschiedlichen Hash- und Signaturalgorithmen und
+ * je einem eigenen Security-Provider. Jeder Auftrag wird mit den Einstellungen seines Dialogs signiert, auch
+ * die vom Pipeline-Thread geschriebenen Daten und die Hashwerte, die beim Parsen der Antwort im Thread des
+ * Canonizers berechnet werden.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class OSCIConfigIsolationTest
+{
+  private static final int MESSAGES = 2;
+
+  private static final Pattern ALGORITHM = Pattern.compile("<\\w+:(DigestMethod|SignatureMethod) "
+                                                           + "Algorithm=\"([^\"]+)\"");
+
+  // Über die Threads der Versender werden die mitgeschnittenen Aufträge zugeordnet
+  private static final ThreadLocal<List<ByteArrayOutputStream>> REQUESTS =
+    new ThreadLocal<List<ByteArrayOutputStream>>();
+
+  private RecordingProvider sha512Provider;
+
+  private RecordingProvider sha256Provider;
+
+  private LoopbackFixture fixture;
+
+  private ExecutorService senders;
+
+  private ExecutorService pipeline;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    fixture = new LoopbackFixture();
+    ProviderRouter.clear();
+    // Die Dienste werden über den registrierten BouncyCastle-Provider instanziiert
+    Provider base = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+    sha512Provider = new RecordingProvider("OSCIConfigTestA", base);
+    sha256Provider = new RecordingProvider("OSCIConfigTestB", base);
+    Security.addProvider(sha512Provider);
+    Security.addProvider(sha256Provider);
+    fixture.setTransportDecorator(CapturingTransport::new);
+    senders = Executors.newFixedThreadPool(2);
+    pipeline = Executors.newCachedThreadPool();
+  }
+
+  @AfterEach
+  public void tearDown()
+  {
+    senders.shutdownNow();
+    pipeline.shutdownNow();
+    Security.removeProvider(sha512Provider.getName());
+    Security.removeProvider(sha256Provider.getName());
+  }
+
+  @Test
+  public void concurrentDialogsUseTheirOwnConfig() throws Exception
+  {
+    OSCIConfig sha512 = OSCIConfig.global()
+                                  .withDigestAlgorithm(Constants.DIGEST_ALGORITHM_SHA512)
+                                  .withSignatureAlgorithm(Constants.SIGNATURE_ALGORITHM_RSA_SHA512)
+                                  .withSecurityProvider(sha512Provider)
+                                  .withPipelineDepth(4)
+                                  .withPipelineExecutor(pipeline);
+    OSCIConfig sha256 = OSCIConfig.global()
+                                  .withDigestAlgorithm(Constants.DIGEST_ALGORITHM_SHA256)
+                                  .withSignatureAlgorithm(Constants.SIGNATURE_ALGORITHM_RSA_SHA256)
+                                  .withSecurityProvider(sha256Provider)
+                                  .withPipelineDepth(4)
+                                  .withPipelineExecutor(pipeline);
+    CountDownLatch start = new CountDownLatch(1);
+
+    Future<List<ByteArrayOutputStream>> sha512Requests = senders.submit(() -> send(sha512, start));
+    Future<List<ByteArrayOutputStream>> sha256Requests = senders.submit(() -> send(sha256, start));
+    start.countDown();
+
+    // GetMessageId und StoreDelivery je Nachricht
+    assertRequests(sha512Requests.get(5, TimeUnit.MINUTES), Constants.DIGEST_ALGORITHM_SHA512,
+                   Constants.SIGNATURE_ALGORITHM_RSA_SHA512);
+    assertRequests(sha256Requests.get(5, TimeUnit.MINUTES), Constants.DIGEST_ALGORITHM_SHA256,
+                   Constants.SIGNATURE_ALGORITHM_RSA_SHA256);
+
+    // Hashwerte und Signaturen laufen über den Provider des eigenen Dialogs, auch in dessen Hilfs-Threads
+    assertUses(sha512Provider, "SHA-512", "SHA512WITHRSA");
+    assertUses(sha256Provider, "SHA-256", "SHA256WITHRSA");
+    assertAvoids(sha512Provider, "SHA256WITHRSA");
+    assertAvoids(sha256Provider, "SHA-512", "SHA512WITHRSA");
+    assertTrue(sha512Provider.usedOnWorkerThread("MessageDigest"), sha512Provider::toString);
+    assertTrue(sha256Provider.usedOnWorkerThread("MessageDigest"), sha256Provider::toString);
+  }
+
+  private List<ByteArrayOutputStream> send(OSCIConfig config, CountDownLatch start) throws Exception
+  {
+    List<ByteArrayOutputStream> requests = new ArrayList<ByteArrayOutputStream>();
+    REQUESTS.set(requests);
+    sha512Provider.senders.add(Thread.currentThread());
+    sha256Provider.senders.add(Thread.currentThread());
+    DialogHandler dh = fixture.newDialog(fixture.alice);
+    dh.setConfig(config);
+    // Unverschlüsselt, damit die Algorithmen in den mitgeschnittenen Aufträgen lesbar sind
+    dh.setEncryption(false);
+    start.await();
+
+    for ( int i = 0 ; i < MESSAGES ; i++ )
+    {
+      String messageId = new GetMessageId(dh).send().getMessageId();
+      StoreDelivery storeDel;
+
+      // Der Inhaltsdatencontainer wird außerhalb des Versands signiert
+      try (OSCIConfig.Scope scope = config.bind())
+      {
+        storeDel = fixture.createStoreDelivery(dh, messageId, random(64 * 1024));
+      }
+
+      ResponseToStoreDelivery rsp = storeDel.send();
+      check(rsp.getFeedback(), "StoreDelivery");
+      assertEquals(1, storeDel.getContentContainer().length);
+      assertSignedWith(storeDel.getContentContainer()[0], config.getDigestAlgorithm());
+    }
+
+    return requests;
+  }
+
+  private static void assertSignedWith(ContentContainer container, String digestAlgorithm)
+  {
+    for ( String method : container.getSignatures()[0].getDigestMethods().values() )
+      assertEquals(digestAlgorithm, method);
+  }
+
+  private static void assertRequests(List<ByteArrayOutputStream> requests, String digestAlgorithm,
+                                     String signatureAlgorithm)
+  {
+    assertEquals(2 * MESSAGES, requests.size());
+
+    for ( ByteArrayOutputStream request : requests )
+    {
+      Set<String> algorithms = new TreeSet<String>();
+      Matcher m = ALGORITHM.matcher(new String(request.toByteArray(), StandardCharsets.ISO_8859_1));
+
+      while (m.find())
+        algorithms.add(m.group(2));
+
+      Set<String> expected = new TreeSet<String>();
+      expected.add(digestAlgorithm);
+      expected.add(signatureAlgorithm);
+      assertEquals(expected, algorithms);
+    }
+  }
+
+  private static void assertUses(RecordingProvider provider, String... algorithms)
+  {
+    for ( String algorithm : algorithms )
+      assertTrue(provider.algorithms().contains(algorithm), () -> algorithm + " not used: " + provider);
+  }
+
+  private static void assertAvoids(RecordingProvider provider, String... algorithms)
+  {
+    for ( String algorithm : algorithms )
+      assertFalse(provider.algorithms().contains(algorithm), () -> algorithm + " used: " + provider);
+  }
+
+  /**
+   * Bietet die Dienste eines anderen Providers unter eigenem Namen an und hält fest, welche Algorithmen in
+   * welchen Threads angefordert werden.
+   */
+  private static final class RecordingProvider extends Provider
+  {
+    private static final long serialVersionUID = 1L;
+
+    final transient Set<Thread> senders = ConcurrentHashMap.newKeySet();
+
+    private final transient List<String[]> uses = new CopyOnWriteArrayList<String[]>();
+
+    private final transient Set<String> workerTypes = ConcurrentHashMap.newKeySet();
+
+    RecordingProvider(String name, Provider base)
+    {
+      super(name, "1.0", "OSCIConfig isolation test");
+      Map<String, List<String>> aliases = new HashMap<String, List<String>>();
+      Map<String, Map<String, String>> attributes = new HashMap<String, Map<String, String>>();
+
+      for ( Map.Entry<Object, Object> entry : base.entrySet() )
+      {
+        String key = (String)entry.getKey();
+        String value = (String)entry.getValue();
+
+        if (key.startsWith("Alg.Alias."))
+        {
+          String type = key.substring(10, key.indexOf('.', 10));
+          aliases.computeIfAbsent(type + "." + value, k -> new ArrayList<String>())
+                 .add(key.substring(11 + type.length()));
+        }
+        else if (key.indexOf(' ') > 0)
+        {
+          int blank = key.indexOf(' ');
+          attributes.computeIfAbsent(key.substring(0, blank), k -> new HashMap<String, String>())
+                    .put(key.substring(blank + 1), value);
+        }
+      }
+
+      for ( Service service : base.getServices() )
+      {
+        String key = service.getType() + "." + service.getAlgorithm();
+        putService(new RecordingService(this, base, service, aliases.get(key), attributes.get(key)));
+      }
+    }
+
+    void record(String type, String algorithm)
+    {
+      Thread thread = Thread.currentThread();
+      uses.add(new String[]{type, algorithm, thread.getName()});
+
+      if (!senders.contains(thread))
+        workerTypes.add(type);
+    }
+
+    Set<String> algorithms()
+    {
+      Set<String> algorithms = new TreeSet<String>();
+
+      for ( String[] use : uses )
+        algorithms.add(use[1].toUpperCase().startsWith("SHA") && use[1].contains("WITH")
+          ? use[1].toUpperCase() : use[1]);
+
+      return algorithms;
+    }
+
+    boolean usedOnWorkerThread(String type)
+    {
+      return workerTypes.contains(type);
+    }
+
+    @Override
+    public String toString()
+    {
+      Set<String> summary = new TreeSet<String>();
+
+      for ( String[] use : uses )
+        summary.add(use[0] + "." + use[1] + "@" + use[2]);
+
+      return getName() + summary;
+    }
+  }
+
+  private static final class RecordingService extends Provider.Service
+  {
+    private final Provider base;
+
+    RecordingService(RecordingProvider provider, Provider base, Provider.Service service,
+                     List<String> aliases, Map<String, String> attributes)
+    {
+      super(provider, service.getType(), service.getAlgorithm(), service.getClassName(), aliases, attributes);
+      this.base = base;
+    }
+
+    @Override
+    public Object newInstance(Object constructorParameter) throws NoSuchAlgorithmException
+    {
+      ((RecordingProvider)getProvider()).record(getType(), getAlgorithm());
+      // Nur der beim Provider registrierte Dienst darf instanziiert werden
+      return base.getService(getType(), getAlgorithm()).newInstance(constructorParameter);
+    }
+
+    @Override
+    public boolean supportsParameter(Object parameter)
+    {
+      return base.getService(getType(), getAlgorithm()).supportsParameter(parameter);
+    }
+  }
+
+  /**
+   * Schneidet die Aufträge mit, die der Pipeline-Thread in die Verbindung schreibt.
+   */
+  private static final class CapturingTransport implements TransportI
+  {
+    private final TransportI transport;
+
+    CapturingTransport(TransportI transport)
+    {
+      this.transport = transport;
+    }
+
+    public String getVersion()
+    {
+      return transport.getVersion();
+    }
+
+    public String getVendor()
+    {
+      return transport.getVendor();
+    }
+
+    public TransportI newInstance() throws IOException
+    {
+      return new CapturingTransport(transport.newInstance());
+    }
+
+    public boolean isOnline(URI uri) throws IOException
+    {
+      return transport.isOnline(uri);
+    }
+
+    public OutputStream getConnection(URI uri, long length) throws IOException
+    {
+      final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+      List<ByteArrayOutputStream> requests = REQUESTS.get();
+
+      if (requests != null)
+        requests.add(copy);
+
+      return new FilterOutputStream(transport.getConnection(uri, length))
+      {
+        @Override
+        public void write(int b) throws IOException
+        {
+          out.write(b);
+          copy.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+          out.write(b, off, len);
+          copy.write(b, off, len);
+        }
+      };
+    }
+
+    public InputStream getResponseStream() throws IOException
+    {
+      return transport.getResponseStream();
+    }
+
+    public long getContentLength()
+    {
+      return transport.getContentLength();
+    }
+  }
+}
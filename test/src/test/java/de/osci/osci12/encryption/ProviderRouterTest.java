@@ -0,0 +1,193 @@
+package de.osci.osci12.encryption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.security.MessageDigestSpi;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.SignatureSpi;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.osci.osci12.common.Constants;
+import de.osci.osci12.common.OSCIConfig;
+
+
+/**
+ * Zuordnung von Algorithmen zu Security-Providern im {@link ProviderRouter}: Die Kalibrierung wählt einen
+ * Provider, dessen Hash- und Signaturprüfung nichts tun, und lässt ihn bei Algorithmen aus, die er nicht
+ * anbietet. Ohne Zuordnung wird der konfigurierte Provider verwendet.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class ProviderRouterTest
+{
+  private static final String FAST = "OSCIRouterTest";
+
+  private final Provider fast = new FastProvider();
+
+  @BeforeEach
+  public void setUp()
+  {
+    ProviderRouter.clear();
+    Security.addProvider(fast);
+  }
+
+  @AfterEach
+  public void tearDown()
+  {
+    Security.removeProvider(FAST);
+    ProviderRouter.clear();
+  }
+
+  @Test
+  public void calibrationRoutesToFastestProvider() throws Exception
+  {
+    Map<String, String> routes = ProviderRouter.calibrate();
+
+    assertEquals(FAST, routes.get(Constants.DIGEST_ALGORITHM_SHA256));
+    assertEquals(FAST, routes.get(Constants.SIGNATURE_ALGORITHM_RSA_SHA256));
+    assertSame(fast, Crypto.createMessageDigest(Constants.DIGEST_ALGORITHM_SHA256).getProvider());
+    assertSame(fast, Crypto.createSignature(Constants.SIGNATURE_ALGORITHM_RSA_SHA256).getProvider());
+
+    // Was der Provider nicht anbietet, geht an einen anderen
+    assertNotEquals(FAST, routes.get(Constants.DIGEST_ALGORITHM_SHA512));
+    assertEquals(routes.get(Constants.DIGEST_ALGORITHM_SHA512),
+                 Crypto.createMessageDigest(Constants.DIGEST_ALGORITHM_SHA512).getProvider().getName());
+
+    // GCM wird nicht kalibriert
+    assertFalse(routes.containsKey(Constants.SYMMETRIC_CIPHER_ALGORITHM_AES256_GCM));
+  }
+
+  @Test
+  public void unroutedAlgorithmUsesConfiguredProvider() throws Exception
+  {
+    ProviderRouter.setProvider(Constants.DIGEST_ALGORITHM_SHA256, fast);
+    assertSame(fast, Crypto.createMessageDigest(Constants.DIGEST_ALGORITHM_SHA256).getProvider());
+
+    ProviderRouter.setProvider(Constants.DIGEST_ALGORITHM_SHA256, null);
+    assertEquals(OSCIConfig.current().getSecurityProvider(),
+                 ProviderRouter.getProvider(Constants.DIGEST_ALGORITHM_SHA256));
+    assertNotEquals(FAST,
+                    Crypto.createMessageDigest(Constants.DIGEST_ALGORITHM_SHA256).getProvider().getName());
+    assertEquals(0, ProviderRouter.getRoutes().size());
+  }
+
+  @Test
+  public void unknownAlgorithmIsRejected()
+  {
+    assertThrows(IllegalArgumentException.class, () -> ProviderRouter.setProvider("urn:unknown", fast));
+  }
+
+  /**
+   * Provider mit SHA-256 und SHA256withRSA, die ohne jede Rechnung auskommen.
+   */
+  private static final class FastProvider extends Provider
+  {
+    private static final long serialVersionUID = 1L;
+
+    FastProvider()
+    {
+      super(FAST, "1.0", "ProviderRouter test");
+      put("MessageDigest.SHA-256", NullDigest.class.getName());
+      put("Signature.SHA256withRSA", NullSignature.class.getName());
+    }
+  }
+
+  public static final class NullDigest extends MessageDigestSpi
+  {
+    @Override
+    protected void engineUpdate(byte input)
+    {
+      // keine Rechnung
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len)
+    {
+      // keine Rechnung
+    }
+
+    @Override
+    protected byte[] engineDigest()
+    {
+      return new byte[32];
+    }
+
+    @Override
+    protected void engineReset()
+    {
+      // kein Zustand
+    }
+  }
+
+  public static final class NullSignature extends SignatureSpi
+  {
+    @Override
+    protected void engineInitVerify(PublicKey publicKey)
+    {
+      // kein Zustand
+    }
+
+    @Override
+    protected void engineInitSign(PrivateKey privateKey)
+    {
+      // kein Zustand
+    }
+
+    @Override
+    protected void engineUpdate(byte b)
+    {
+      // keine Rechnung
+    }
+
+    @Override
+    protected void engineUpdate(byte[] b, int off, int len)
+    {
+      // keine Rechnung
+    }
+
+    @Override
+    protected byte[] engineSign()
+    {
+      return new byte[256];
+    }
+
+    @Override
+    protected boolean engineVerify(byte[] sigBytes)
+    {
+      return true;
+    }
+
+    @Override
+    @Deprecated
+    protected void engineSetParameter(String param, Object value)
+    {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    protected Object engineGetParameter(String param)
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package de.osci.osci12.messagetypes;
+
+import static de.osci.osci12.messagetypes.LoopbackFixture.random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+
+import org.junit.jupiter.api.Test;
+
+import de.osci.osci12.messageparts.MessagePart;
+import de.osci.osci12.soapheader.NonIntermediaryCertificatesH;
+
+
+/**
+ * Prüft, dass bei wiederholtem Versand mit denselben Rollen Hashwert und Länge der Zertifikats-Header aus dem
+ * Fragment-Cache der Rolle übernommen werden und die vorausberechnete Nachrichtenlänge stimmt.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class CertificateHeaderCacheTest
+{
+  @Test
+  public void cachedDigestRestoresLength() throws Exception
+  {
+    LoopbackFixture fixture = new LoopbackFixture();
+
+    for ( int i = 0 ; i < 3 ; i++ )
+    {
+      StoreDelivery storeDel = fixture.createStoreDelivery(fixture.newDialog(fixture.alice), "message-" + i,
+                                                           random(1024));
+      storeDel.sign();
+
+      NonIntermediaryCertificatesH header = storeDel.nonIntermediaryCertificatesH;
+      // Ab der zweiten Nachricht stammt der Hashwert aus dem Cache, die Länge muss mit übernommen werden
+      assertTrue(length(header) > 0);
+
+      ByteArrayOutputStream headerOut = new ByteArrayOutputStream();
+      header.writeXML(headerOut);
+      assertEquals(headerOut.size(), header.getLength());
+
+      long calculated = storeDel.calcLength();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      storeDel.writeXML(out);
+      assertEquals(out.size(), calculated);
+    }
+  }
+
+  private static long length(MessagePart part) throws Exception
+  {
+    Field field = MessagePart.class.getDeclaredField("length");
+    field.setAccessible(true);
+    return field.getLong(part);
+  }
+}
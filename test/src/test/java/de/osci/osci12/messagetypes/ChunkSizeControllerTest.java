@@ -0,0 +1,140 @@
+package de.osci.osci12.messagetypes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Chunkgrößen des {@link ChunkSizeController} für eine simulierte Verbindung mit fester Latenz je Chunk und
+ * festem Durchsatz: Verdoppeln beim Kaltstart, Konvergenz auf eine stabile Größe mit höchstens dem
+ * eingestellten Latenzanteil, Einhaltung der maximalen Chunk-Laufzeit und der Grenzen.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class ChunkSizeControllerTest
+{
+  private static final int ROUNDS = 50;
+
+  @Test
+  public void coldStartDoublesMeasuredSize()
+  {
+    ChunkSizeController controller = new ChunkSizeController();
+    Link link = new Link(0.05, 1024 * 1024);
+
+    link.transmit(controller);
+    assertEquals(2 * ChunkSizeController.DEFAULT_INITIAL_CHUNK_SIZE, controller.getChunkSize());
+    assertEquals(-1, controller.getLatency());
+
+    // Messungen der alten Größe treiben die Größe nicht weiter
+    controller.chunkTransmitted(ChunkSizeController.DEFAULT_INITIAL_CHUNK_SIZE * 1024,
+                                link.nanos(ChunkSizeController.DEFAULT_INITIAL_CHUNK_SIZE));
+    assertEquals(2 * ChunkSizeController.DEFAULT_INITIAL_CHUNK_SIZE, controller.getChunkSize());
+  }
+
+  @Test
+  public void convergesToTargetOverhead()
+  {
+    ChunkSizeController controller = new ChunkSizeController();
+    Link link = new Link(0.05, 1024 * 1024);
+
+    for ( int i = 0 ; i < ROUNDS ; i++ )
+      link.transmit(controller);
+
+    // Latenzanteil höchstens 10 %: Größe mindestens Latenz * Durchsatz * 9. Bis das Modell bestimmt ist,
+    // wird zweimal verdoppelt, verkleinert wird nur wegen der maximalen Laufzeit
+    long lower = (long)(0.05 * 1024 * 1024 * 9 / 1024);
+    long chunkSize = controller.getChunkSize();
+    assertTrue(chunkSize >= lower && chunkSize <= 4 * lower, controller::toString);
+    assertEquals(50, controller.getLatency(), 5, controller::toString);
+    assertEquals(1024 * 1024, controller.getThroughput(), 1024 * 1024 * 0.05, controller::toString);
+
+    // Weitere Messungen ändern die Größe nicht mehr
+    for ( int i = 0 ; i < 10 ; i++ )
+      link.transmit(controller);
+
+    assertEquals(chunkSize, controller.getChunkSize(), controller::toString);
+  }
+
+  @Test
+  public void maxChunkTimeIsRespectedFromColdStart()
+  {
+    ChunkSizeController controller = new ChunkSizeController(64, 1, 64 * 1024);
+    controller.setMaxChunkTime(1000);
+    // 100 KB/s: In einer Sekunde passen weniger als 128 KB
+    Link link = new Link(0.01, 100 * 1024);
+
+    for ( int i = 0 ; i < ROUNDS ; i++ )
+    {
+      double seconds = link.transmit(controller);
+      assertTrue(seconds <= 1.05, () -> "chunk took " + seconds + " s: " + controller);
+    }
+
+    assertTrue(controller.getChunkSize() >= 80, controller::toString);
+  }
+
+  @Test
+  public void chunkSizeStaysWithinBounds()
+  {
+    ChunkSizeController fast = new ChunkSizeController(256, 128, 512);
+    Link fastLink = new Link(0.2, 1024 * 1024 * 1024);
+
+    ChunkSizeController slow = new ChunkSizeController(256, 128, 512);
+    slow.setMaxChunkTime(100);
+    Link slowLink = new Link(0.01, 64 * 1024);
+
+    for ( int i = 0 ; i < ROUNDS ; i++ )
+    {
+      fastLink.transmit(fast);
+      slowLink.transmit(slow);
+      assertTrue(fast.getChunkSize() >= 128 && fast.getChunkSize() <= 512, fast::toString);
+      assertTrue(slow.getChunkSize() >= 128 && slow.getChunkSize() <= 512, slow::toString);
+    }
+
+    assertEquals(512, fast.getChunkSize(), fast::toString);
+    assertEquals(128, slow.getChunkSize(), slow::toString);
+  }
+
+  /**
+   * Simulierte Verbindung: Laufzeit = Latenz + Größe / Durchsatz.
+   */
+  private static final class Link
+  {
+    private final double latency;
+
+    private final double throughput;
+
+    Link(double latency, double throughput)
+    {
+      this.latency = latency;
+      this.throughput = throughput;
+    }
+
+    long nanos(long chunkSize)
+    {
+      return (long)((latency + chunkSize * 1024 / throughput) * 1e9);
+    }
+
+    /**
+     * Überträgt einen Chunk der aktuellen Größe und meldet die Laufzeit.
+     *
+     * @return Laufzeit in Sekunden
+     */
+    double transmit(ChunkSizeController controller)
+    {
+      long chunkSize = controller.getChunkSize();
+      long nanos = nanos(chunkSize);
+      controller.chunkTransmitted(chunkSize * 1024, nanos);
+      return nanos / 1e9;
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package de.osci.osci12.messagetypes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.X509Certificate;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import de.osci.helper.Tools;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.extinterfaces.TransportI;
+import de.osci.osci12.messageparts.Attachment;
+import de.osci.osci12.messageparts.Content;
+import de.osci.osci12.messageparts.ContentContainer;
+import de.osci.osci12.roles.Addressee;
+import de.osci.osci12.roles.Originator;
+import de.osci.osci12.samples.impl.crypto.PKCS12Decrypter;
+import de.osci.osci12.samples.impl.crypto.PKCS12Signer;
+
+
+/**
+ * Gemeinsame Testumgebung: ein {@link LoopbackIntermed} mit den Test-Zertifikaten der Beispielanwendung und
+ * die Clients Alice (Absenderin) und Bob (Empfänger).
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class LoopbackFixture
+{
+  private static final String CERTS = "/de/osci/osci12/samples/zertifikate/";
+
+  private static final String PIN = "123456";
+
+  public final LoopbackIntermed loopback;
+
+  public final Originator alice;
+
+  public final Originator bob;
+
+  public final Addressee bobAddressee;
+
+  private UnaryOperator<TransportI> transportDecorator = UnaryOperator.identity();
+
+  public LoopbackFixture() throws Exception
+  {
+    loopback = new LoopbackIntermed(new PKCS12Signer(CERTS + "osci_manager_signature_4096.p12", PIN),
+                                    new PKCS12Decrypter(CERTS + "osci_manager_cipher_4096.p12", PIN));
+    alice = new Originator(new PKCS12Signer(CERTS + "alice_signature_4096.p12", PIN),
+                           new PKCS12Decrypter(CERTS + "alice_cipher_4096.p12", PIN));
+    bob = new Originator(new PKCS12Signer(CERTS + "bob_signature_4096.p12", PIN),
+                         new PKCS12Decrypter(CERTS + "bob_cipher_4096.p12", PIN));
+    X509Certificate bobCipher = Tools.createCertificate(LoopbackFixture.class.getResourceAsStream(CERTS
+                                                                                                   + "bob_cipher_4096.cer"));
+    bobAddressee = new Addressee(null, bobCipher);
+  }
+
+  /**
+   * Legt fest, womit die Transportmodule neuer Dialoge umhüllt werden, z. B. um Latenz oder Fehler
+   * einzuspielen.
+   */
+  public void setTransportDecorator(UnaryOperator<TransportI> transportDecorator)
+  {
+    this.transportDecorator = transportDecorator;
+  }
+
+  /**
+   * Liefert einen DialogHandler des Clients mit dem Loopback-Intermediär als Supplier.
+   */
+  public DialogHandler newDialog(Originator client)
+  {
+    DialogHandler dh = new DialogHandler(client, loopback.getIntermed(),
+                                         transportDecorator.apply(loopback.newTransport()));
+    dh.setTransportFactory(() -> transportDecorator.apply(loopback.newTransport()));
+    return dh;
+  }
+
+  /**
+   * Liefert eine von Alice signierte Zustellung an Bob mit den Daten als Anhang.
+   */
+  public StoreDelivery createStoreDelivery(DialogHandler dh, String messageId, byte[] data) throws Exception
+  {
+    StoreDelivery storeDel = new StoreDelivery(dh, bobAddressee, messageId);
+    storeDel.setSubject("Loopback");
+    ContentContainer container = new ContentContainer();
+    container.addContent(new Content("Any content data."));
+    container.addContent(new Content(new Attachment(new ByteArrayInputStream(data), "data.bin")));
+    container.sign(alice);
+    storeDel.addContentContainer(container);
+    return storeDel;
+  }
+
+  /**
+   * Zustellung an Bob im impliziten Dialog.
+   *
+   * @return Message-ID
+   */
+  public String store(byte[] data) throws Exception
+  {
+    DialogHandler dh = newDialog(alice);
+    String messageId = new GetMessageId(dh).send().getMessageId();
+    ResponseToStoreDelivery rsp = createStoreDelivery(dh, messageId, data).send();
+    check(rsp.getFeedback(), "StoreDelivery");
+    return rsp.getMessageId();
+  }
+
+  /**
+   * Abholung durch Bob im expliziten Dialog.
+   *
+   * @return Daten des Anhangs
+   */
+  public byte[] fetch(String messageId) throws Exception
+  {
+    DialogHandler dh = newDialog(bob);
+    new InitDialog(dh).send();
+    FetchDelivery fetchDel = new FetchDelivery(dh);
+
+    if (messageId != null)
+    {
+      fetchDel.setSelectionMode(OSCIMessage.SELECT_BY_MESSAGE_ID);
+      fetchDel.setSelectionRule(messageId);
+    }
+
+    ResponseToFetchDelivery rsp = fetchDel.send();
+    check(rsp.getFeedback(), "FetchDelivery");
+    new ExitDialog(dh).send();
+    return attachment(rsp);
+  }
+
+  /**
+   * Liefert die Daten des Anhangs einer mit {@link #createStoreDelivery} erzeugten Zustellung.
+   */
+  public static byte[] attachment(ResponseToFetchDelivery rsp) throws Exception
+  {
+    return read(rsp.getContentContainer()[0].getContents()[1].getAttachment().getStream());
+  }
+
+  /**
+   * Prüft, dass die Rückmeldung mit einem Code der Klasse 0 beginnt.
+   */
+  public static void check(String[][] feedback, String step)
+  {
+    if ((feedback == null) || !feedback[0][1].startsWith("0"))
+      throw new IllegalStateException(step + ": " + ((feedback == null) ? "no feedback" : feedback[0][1]));
+  }
+
+  public static byte[] random(int length)
+  {
+    byte[] data = new byte[length];
+    new Random().nextBytes(data);
+    return data;
+  }
+
+  public static byte[] read(InputStream in) throws IOException
+  {
+    try (InputStream input = in)
+    {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      int n;
+
+      while ((n = input.read(buf)) > -1)
+        out.write(buf, 0, n);
+
+      return out.toByteArray();
+    }
+  }
+}
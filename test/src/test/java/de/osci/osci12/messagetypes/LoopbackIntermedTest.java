@@ -0,0 +1,190 @@
+package de.osci.osci12.messagetypes;
+
+import static de.osci.osci12.messagetypes.LoopbackFixture.check;
+import static de.osci.osci12.messagetypes.LoopbackFixture.random;
+import static de.osci.osci12.messagetypes.LoopbackFixture.read;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIConfig;
+import de.osci.osci12.messageparts.ChunkInformation;
+
+
+/**
+ * Vollständiger Nachrichtenaustausch mit dem {@link LoopbackIntermed}: Alice stellt an Bob zu (einfach und
+ * paketiert), Bob holt ab (einfach und paketiert) und Alice ruft die Laufzettel ab. Anschließend senden und
+ * empfangen mehrere Threads gleichzeitig.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class LoopbackIntermedTest
+{
+  private LoopbackFixture fixture;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    fixture = new LoopbackFixture();
+  }
+
+  @Test
+  public void storeAndFetch() throws Exception
+  {
+    byte[] data = random(10 * 1024);
+
+    assertArrayEquals(data, fixture.fetch(fixture.store(data)));
+    assertEquals(0, fixture.loopback.getPendingDeliveries());
+  }
+
+  @Test
+  public void partialStoreAndPartialFetch() throws Exception
+  {
+    byte[] data = random(200 * 1024);
+
+    assertArrayEquals(data, partialFetch(partialStore(data, 64), 32));
+  }
+
+  @Test
+  public void storeWithPipelining() throws Exception
+  {
+    byte[] data = random(256 * 1024);
+    DialogHandler dh = fixture.newDialog(fixture.alice);
+    dh.setConfig(OSCIConfig.global().withPipelineDepth(4).withPipelineBufferSize(16 * 1024));
+    String messageId = new GetMessageId(dh).send().getMessageId();
+    ResponseToStoreDelivery rsp = fixture.createStoreDelivery(dh, messageId, data).send();
+    check(rsp.getFeedback(), "StoreDelivery");
+
+    // Das Pipelining gilt nur für den Dialog, die Abholung läuft ohne
+    assertEquals(0, OSCIConfig.global().getPipelineDepth());
+    assertArrayEquals(data, fixture.fetch(messageId));
+  }
+
+  @Test
+  public void fetchProcessCards() throws Exception
+  {
+    fixture.fetch(fixture.store(random(1024)));
+
+    DialogHandler dh = fixture.newDialog(fixture.alice);
+    new InitDialog(dh).send();
+    FetchProcessCard fetchProcCard = new FetchProcessCard(dh);
+    fetchProcCard.setRoleForSelection(OSCIMessage.SELECT_ORIGINATOR);
+    ResponseToFetchProcessCard rsp = fetchProcCard.send();
+    check(rsp.getFeedback(), "FetchProcessCard");
+    new ExitDialog(dh).send();
+
+    assertEquals(1, rsp.getProcessCardBundles().length);
+    assertTrue(rsp.getProcessCardBundles()[0].getReception() != null);
+  }
+
+  @Test
+  public void concurrentRoundTrips() throws Exception
+  {
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+    try
+    {
+      for ( int i = 0 ; i < threads * 2 ; i++ )
+      {
+        results.add(executor.submit(() -> {
+          byte[] data = random(4 * 1024);
+          String messageId = fixture.store(data);
+          return Arrays.equals(data, fixture.fetch(messageId));
+        }));
+      }
+
+      for ( Future<Boolean> result : results )
+        assertTrue(result.get());
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Paketierte Zustellung an Bob, Chunkgröße in KB.
+   */
+  private String partialStore(byte[] data, int chunkSize) throws Exception
+  {
+    DialogHandler dh = fixture.newDialog(fixture.alice);
+    new InitDialog(dh).send();
+    String messageId = new GetMessageId(dh).send().getMessageId();
+
+    StoreDelivery storeDel = fixture.createStoreDelivery(fixture.newDialog(fixture.alice), messageId, data);
+    ResponseToPartialStoreDelivery rsp = new StoreDeliverySplitter(storeDel, chunkSize).send(dh,
+                                                                                            fixture.bobAddressee);
+    check(rsp.getInsideFeedback(), "PartialStoreDelivery (inside)");
+    new ExitDialog(dh).send();
+    return messageId;
+  }
+
+  /**
+   * Paketierte Abholung durch Bob, Chunkgröße in KB.
+   */
+  private byte[] partialFetch(String messageId, int chunkSize) throws Exception
+  {
+    DialogHandler dh = fixture.newDialog(fixture.bob);
+    new InitDialog(dh).send();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ResponseToFetchDelivery rsp;
+    int chunk = 1;
+    int totalChunks = 1;
+    List<Integer> received = new ArrayList<Integer>();
+
+    do
+    {
+      PartialFetchDelivery partialFetch = new PartialFetchDelivery(dh,
+                                                                   new ChunkInformation(chunkSize, chunk,
+                                                                                        received));
+      partialFetch.setSelectionMode(OSCIMessage.SELECT_BY_MESSAGE_ID);
+      partialFetch.setSelectionRule(messageId);
+      ResponseToFetchAbstract partialRsp = partialFetch.send();
+      check(partialRsp.getFeedback(), "PartialFetchDelivery " + chunk);
+
+      if (partialRsp instanceof ResponseToFetchDelivery)
+      {
+        rsp = (ResponseToFetchDelivery)partialRsp;
+        break;
+      }
+
+      ResponseToPartialFetchDelivery chunkRsp = (ResponseToPartialFetchDelivery)partialRsp;
+      totalChunks = chunkRsp.getChunkInformation().getTotalChunkNumbers();
+      out.write(read(chunkRsp.getChunkBlob()));
+      received.add(chunk++);
+      rsp = null;
+    }
+    while (chunk <= totalChunks);
+
+    assertTrue(totalChunks > 1);
+
+    if (rsp == null)
+      rsp = ResponseToFetchDelivery.parseResponseToFetchDelivery(new ByteArrayInputStream(out.toByteArray()));
+
+    new ExitDialog(dh).send();
+    return LoopbackFixture.attachment(rsp);
+  }
+}
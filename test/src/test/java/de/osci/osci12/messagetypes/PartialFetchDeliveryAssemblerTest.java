@@ -0,0 +1,281 @@
+package de.osci.osci12.messagetypes;
+
+import static de.osci.osci12.messagetypes.LoopbackFixture.attachment;
+import static de.osci.osci12.messagetypes.LoopbackFixture.check;
+import static de.osci.osci12.messagetypes.LoopbackFixture.random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.osci.osci12.OSCIException;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.DialogPool;
+import de.osci.osci12.messageparts.ChunkInformation;
+
+
+/**
+ * Paketierte Abholung mit dem {@link PartialFetchDeliveryAssembler} über den {@link LoopbackIntermed}: Die
+ * Chunks treffen verzögert und in beliebiger Reihenfolge ein oder gehen verloren, die Zustellung wird
+ * trotzdem in der richtigen Reihenfolge zusammengesetzt. Das Fenster begrenzt die gleichzeitigen
+ * Anforderungen, der letzte Chunk wird erst angefordert, wenn alle übrigen vorliegen.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class PartialFetchDeliveryAssemblerTest
+{
+  // Chunkgröße in KB
+  private static final int CHUNK_SIZE = 4;
+
+  private static final int WINDOW = 3;
+
+  @TempDir
+  Path dir;
+
+  private LoopbackFixture fixture;
+
+  private DialogPool pool;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    fixture = new LoopbackFixture();
+    pool = new DialogPool(fixture.bob, fixture.loopback.getIntermed(), fixture.loopback.newTransport(),
+                          WINDOW);
+  }
+
+  @AfterEach
+  public void tearDown()
+  {
+    if (pool != null)
+      pool.close();
+  }
+
+  @Test
+  public void delayedChunksAreStreamedInOrder() throws Exception
+  {
+    byte[] data = random(16 * 1024);
+    String messageId = fixture.store(data);
+
+    ObservedAssembler assembler = new ObservedAssembler();
+    // Chunk 2 trifft erst nach den folgenden ein
+    assembler.delays.put(2, 500L);
+
+    ResponseToFetchDelivery rsp = assembler.fetch(messageId);
+    check(rsp.getFeedback(), "PartialFetchDelivery");
+    assertArrayEquals(data, attachment(rsp));
+
+    int total = assembler.total;
+    assertTrue(total > WINDOW + 1, "too few chunks: " + total);
+    assertTrue(assembler.completions.indexOf(3) < assembler.completions.indexOf(2),
+               assembler.completions::toString);
+    assertTrue(assembler.maxInFlight.get() <= WINDOW, () -> "in flight: " + assembler.maxInFlight);
+    assertLastChunkRequestedAfterAllOthers(assembler);
+    assertEquals(total, assembler.getFetchedChunks());
+    assertEquals(0, assembler.getRetries());
+    assertEquals(0, fixture.loopback.getPendingDeliveries());
+  }
+
+  @Test
+  public void lostChunkIsRequestedAgain() throws Exception
+  {
+    byte[] data = random(12 * 1024);
+    String messageId = fixture.store(data);
+
+    ObservedAssembler assembler = new ObservedAssembler();
+    assembler.failures.put(1, 1);
+    assembler.failures.put(3, 1);
+
+    ResponseToFetchDelivery rsp = assembler.fetch(messageId);
+    assertArrayEquals(data, attachment(rsp));
+
+    assertEquals(2, assembler.attempts(1));
+    assertEquals(2, assembler.attempts(3));
+    assertEquals(2, assembler.getRetries());
+    assertEquals(1, assembler.attempts(assembler.total));
+    assertLastChunkRequestedAfterAllOthers(assembler);
+  }
+
+  @Test
+  public void interruptedFetchIsResumedFromJournal() throws Exception
+  {
+    byte[] data = random(16 * 1024);
+    String messageId = fixture.store(data);
+    File journalFile = dir.resolve("transfers.journal").toFile();
+    File target = dir.resolve("delivery.part").toFile();
+
+    try (PartialTransferJournal journal = new PartialTransferJournal(journalFile))
+    {
+      ObservedAssembler assembler = new ObservedAssembler();
+      assembler.setMaxRetries(0);
+      assembler.failures.put(3, 1);
+
+      assertThrows(IOException.class, () -> assembler.fetch(messageId, journal, target));
+      assertEquals(0, assembler.attempts(assembler.total));
+    }
+
+    try (PartialTransferJournal journal = new PartialTransferJournal(journalFile))
+    {
+      List<Integer> present = journal.getCheckpoint(messageId).getAcknowledgedChunks();
+      assertTrue(present.contains(1) && !present.contains(3), present::toString);
+
+      ObservedAssembler assembler = new ObservedAssembler();
+      ResponseToFetchDelivery rsp = assembler.fetch(messageId, journal, target);
+      assertArrayEquals(data, attachment(rsp));
+
+      // Vorhandene Chunks werden aus der Datei gelesen und nicht erneut angefordert
+      for ( Integer chunkNumber : present )
+        assertEquals(0, assembler.attempts(chunkNumber), "chunk " + chunkNumber);
+
+      assertEquals(1, assembler.attempts(3));
+      assertTrue(journal.getCheckpoint(messageId) == null);
+      assertTrue(!target.exists());
+    }
+  }
+
+  @Test
+  public void rejectedChunkFailsFetch() throws Exception
+  {
+    String messageId = fixture.store(random(16 * 1024));
+    AtomicInteger accepted = new AtomicInteger();
+    // Nimmt nur die erste Fensterfüllung an, die folgenden Chunks werden aus den Ladethreads abgelehnt
+    Executor executor = command -> {
+      if (accepted.incrementAndGet() > WINDOW)
+        throw new RejectedExecutionException("saturated");
+
+      new Thread(command, "assembler-test-load").start();
+    };
+    PartialFetchDeliveryAssembler assembler = new PartialFetchDeliveryAssembler(pool, CHUNK_SIZE, WINDOW,
+                                                                                executor);
+
+    RejectedExecutionException ex = assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+      return assertThrows(RejectedExecutionException.class, () -> assembler.fetch(messageId));
+    });
+
+    assertEquals("saturated", ex.getMessage());
+    assertTrue(accepted.get() > WINDOW);
+  }
+
+  private static void assertLastChunkRequestedAfterAllOthers(ObservedAssembler assembler)
+  {
+    Set<Integer> expected = new TreeSet<Integer>();
+
+    for ( int i = 1 ; i < assembler.total ; i++ )
+      expected.add(i);
+
+    assertEquals(expected, assembler.completedBeforeLast);
+  }
+
+  /**
+   * Assembler, der Antworten einzelner Chunks verzögert oder verwirft und die Anforderungen mitschreibt.
+   */
+  private final class ObservedAssembler extends PartialFetchDeliveryAssembler
+  {
+    // Verzögerung der Antwort in Millisekunden
+    final Map<Integer, Long> delays = new HashMap<Integer, Long>();
+
+    // Anzahl der fehlschlagenden ersten Versuche
+    final Map<Integer, Integer> failures = new HashMap<Integer, Integer>();
+
+    final List<Integer> completions = Collections.synchronizedList(new ArrayList<Integer>());
+
+    final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Map<Integer, AtomicInteger> attempts = new ConcurrentHashMap<Integer, AtomicInteger>();
+
+    volatile int total;
+
+    volatile Set<Integer> completedBeforeLast;
+
+    ObservedAssembler()
+    {
+      super(pool, CHUNK_SIZE, WINDOW);
+    }
+
+    int attempts(int chunkNumber)
+    {
+      AtomicInteger count = attempts.get(chunkNumber);
+      return (count == null) ? 0 : count.get();
+    }
+
+    @Override
+    protected ResponseToFetchAbstract fetchChunk(DialogHandler dh, String messageId,
+                                                 ChunkInformation chunkInformation)
+      throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      int number = chunkInformation.getChunkNumber();
+      int attempt = attempts.computeIfAbsent(number, n -> new AtomicInteger()).incrementAndGet();
+
+      if ((total > 0) && (number == total) && (completedBeforeLast == null))
+        completedBeforeLast = new TreeSet<Integer>(completions);
+
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+      try
+      {
+        if (attempt <= failures.getOrDefault(number, 0))
+          throw new IOException("response to chunk " + number + " lost");
+
+        ResponseToFetchAbstract rsp = super.fetchChunk(dh, messageId, chunkInformation);
+
+        if (rsp instanceof ResponseToPartialFetchDelivery)
+          total = ((ResponseToPartialFetchDelivery)rsp).getChunkInformation().getTotalChunkNumbers();
+
+        sleep(delays.getOrDefault(number, 0L));
+        completions.add(number);
+        return rsp;
+      }
+      finally
+      {
+        inFlight.decrementAndGet();
+      }
+    }
+  }
+
+  private static void sleep(long millis) throws IOException
+  {
+    try
+    {
+      Thread.sleep(millis);
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+}
@@ -0,0 +1,320 @@
+package de.osci.osci12.messagetypes;
+
+import static de.osci.osci12.messagetypes.LoopbackFixture.random;
+import static de.osci.osci12.messagetypes.LoopbackFixture.read;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.osci.osci12.common.OSCIErrorException;
+import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
+import de.osci.osci12.messageparts.ChunkInformation;
+
+
+/**
+ * Zusammensetzen eingehender Chunks im {@link PartialStoreDeliveryChunkStore}: beliebige Reihenfolge,
+ * doppelte und fehlerhafte Chunks, Grenzen, abgebrochene Übertragungen sowie gleichzeitiges Eintreffen.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class PartialStoreDeliveryChunkStoreTest
+{
+  private static final String MESSAGE_ID = "chunk-store-test";
+
+  // Chunkgröße in KB
+  private static final int CHUNK_SIZE = 1;
+
+  @TempDir
+  Path dir;
+
+  private PartialStoreDeliveryChunkStore store;
+
+  private final List<byte[]> completed = new CopyOnWriteArrayList<byte[]>();
+
+  private final PartialStoreDeliveryChunkStore.CompletionHandler handler = (messageId, in) -> {
+    assertEquals(MESSAGE_ID, messageId);
+    completed.add(read(in));
+  };
+
+  @BeforeEach
+  public void setUp()
+  {
+    store = new PartialStoreDeliveryChunkStore(dir.toFile());
+  }
+
+  @Test
+  public void outOfOrderChunksAreReassembled() throws Exception
+  {
+    byte[] data = random(4 * 1024 + 300);
+
+    assertEquals(Arrays.asList(3), received(send(data, 3)));
+    assertEquals(Arrays.asList(3, 5), received(send(data, 5)));
+    assertEquals(Arrays.asList(1, 3, 5), received(send(data, 1)));
+    assertEquals(Arrays.asList(1, 3, 4, 5), received(send(data, 4)));
+    assertTrue(completed.isEmpty());
+
+    ChunkInformation last = send(data, 2);
+
+    assertEquals(Arrays.asList(1, 2, 3, 4, 5), received(last));
+    assertEquals(2, last.getChunkNumber());
+    assertEquals(1, completed.size());
+    assertArrayEquals(data, completed.get(0));
+    assertTrue(store.getMessageIds().isEmpty());
+    assertEquals(0, dir.toFile().list().length);
+  }
+
+  @Test
+  public void duplicateChunkIsRejected() throws Exception
+  {
+    byte[] data = random(3 * 1024);
+
+    send(data, 2);
+    assertError(OSCIErrorCodes.DuplicateChunk, () -> send(data, 2));
+    assertEquals(Arrays.asList(2), received(store.getChunkInformation(MESSAGE_ID)));
+
+    send(data, 3);
+    send(data, 1);
+    assertEquals(1, completed.size());
+    assertArrayEquals(data, completed.get(0));
+  }
+
+  @Test
+  public void chunkAfterCompletionIsRejected() throws Exception
+  {
+    byte[] data = random(2 * 1024);
+    send(data, 1);
+    send(data, 2);
+
+    // Die Antwort auf den letzten Chunk ging verloren, der Client sendet ihn erneut
+    assertError(OSCIErrorCodes.DuplicateChunk, () -> send(data, 2));
+    assertEquals(1, completed.size());
+    assertTrue(store.getMessageIds().isEmpty());
+    assertEquals(0, dir.toFile().list().length);
+  }
+
+  @Test
+  public void transferCanBeRepeatedAfterHandlerFailure() throws Exception
+  {
+    byte[] data = random(2 * 1024);
+    store.receive(MESSAGE_ID, chunkInformation(data, 1), new ByteArrayInputStream(data, 0, 1024), handler);
+
+    assertThrows(IOException.class,
+                 () -> store.receive(MESSAGE_ID, chunkInformation(data, 2),
+                                     new ByteArrayInputStream(data, 1024, 1024), (messageId, in) -> {
+                                       throw new IOException("handler failed");
+                                     }));
+
+    send(data, 2);
+    send(data, 1);
+    assertArrayEquals(data, completed.get(0));
+  }
+
+  @Test
+  public void failedChunkCanBeSentAgain() throws Exception
+  {
+    byte[] data = random(3 * 1024);
+    ChunkInformation chunkInformation = chunkInformation(data, 2);
+
+    // Ein abgeschnittener Chunk wird abgewiesen und nicht als empfangen vermerkt
+    assertError(OSCIErrorCodes.WrongChunkInformation,
+                () -> store.receive(MESSAGE_ID, chunkInformation, new ByteArrayInputStream(data, 1024, 512),
+                                    handler));
+    assertEquals(Collections.emptyList(), received(store.getChunkInformation(MESSAGE_ID)));
+
+    send(data, 2);
+    send(data, 1);
+    send(data, 3);
+    assertArrayEquals(data, completed.get(0));
+  }
+
+  @Test
+  public void chunksOutsideThePlanAreRejected() throws Exception
+  {
+    byte[] data = random(3 * 1024);
+    send(data, 1);
+
+    assertError(OSCIErrorCodes.WrongChunkNumber,
+                () -> store.receive(MESSAGE_ID, new ChunkInformation(CHUNK_SIZE, 4, 3, 3),
+                                    new ByteArrayInputStream(new byte[1024]), handler));
+    assertError(OSCIErrorCodes.WrongChunkInformation,
+                () -> store.receive(MESSAGE_ID, new ChunkInformation(CHUNK_SIZE, 2, 3, 4),
+                                    new ByteArrayInputStream(new byte[1024]), handler));
+    assertError(OSCIErrorCodes.WrongChunkInformation,
+                () -> store.receive(MESSAGE_ID, new ChunkInformation(CHUNK_SIZE, 2, 3, 3),
+                                    new ByteArrayInputStream(new byte[1025]), handler));
+    assertEquals(Arrays.asList(1), received(store.getChunkInformation(MESSAGE_ID)));
+  }
+
+  @Test
+  public void limitsAreCheckedOnTheFirstChunk() throws Exception
+  {
+    store.setLimits(2, 4, 8);
+
+    assertError(OSCIErrorCodes.WrongMinChunkSize,
+                () -> store.receive(MESSAGE_ID, new ChunkInformation(1, 1, 3, 3),
+                                    new ByteArrayInputStream(new byte[1024]), handler));
+    assertError(OSCIErrorCodes.WrongMaxChunkSize,
+                () -> store.receive(MESSAGE_ID, new ChunkInformation(8, 1, 8, 1),
+                                    new ByteArrayInputStream(new byte[1024]), handler));
+    assertError(OSCIErrorCodes.WrongMaxMessageSize,
+                () -> store.receive(MESSAGE_ID, new ChunkInformation(4, 1, 12, 3),
+                                    new ByteArrayInputStream(new byte[4096]), handler));
+    assertNull(store.getChunkInformation(MESSAGE_ID));
+    assertEquals(0, dir.toFile().list().length);
+  }
+
+  @Test
+  public void oversizedDeclarationIsRejectedByDefault() throws Exception
+  {
+    long maxMessageSize = PartialStoreDeliveryChunkStore.DEFAULT_MAX_MESSAGE_SIZE;
+    long maxChunkSize = PartialStoreDeliveryChunkStore.DEFAULT_MAX_CHUNK_SIZE;
+
+    // Ohne eingestellte Grenzen darf der erste Chunk keine beliebig große Datei anlegen
+    assertError(OSCIErrorCodes.WrongMaxMessageSize,
+                () -> store.receive(MESSAGE_ID,
+                                    new ChunkInformation(maxChunkSize, 1, 1024 * maxMessageSize,
+                                                         (int)(1024 * maxMessageSize / maxChunkSize)),
+                                    new ByteArrayInputStream(new byte[1024]), handler));
+    assertError(OSCIErrorCodes.WrongMaxChunkSize,
+                () -> store.receive(MESSAGE_ID,
+                                    new ChunkInformation(2 * maxChunkSize, 1, 2 * maxChunkSize, 1),
+                                    new ByteArrayInputStream(new byte[1024]), handler));
+    assertNull(store.getChunkInformation(MESSAGE_ID));
+    assertEquals(0, dir.toFile().list().length);
+  }
+
+  @Test
+  public void idleTransferIsDiscarded() throws Exception
+  {
+    store.setIdleTimeout(200);
+    byte[] data = random(3 * 1024);
+    send(data, 1);
+    assertEquals(1, dir.toFile().list().length);
+
+    // Die Datei wird geschlossen und gelöscht, ein später Chunk beginnt eine neue Übertragung
+    long end = System.currentTimeMillis() + 3000;
+
+    while ((dir.toFile().list().length > 0) && (System.currentTimeMillis() < end))
+      Thread.sleep(20);
+
+    assertTrue(store.getMessageIds().isEmpty());
+    assertEquals(0, dir.toFile().list().length);
+    assertEquals(Arrays.asList(2), received(send(data, 2)));
+
+    send(data, 3);
+    send(data, 1);
+    assertArrayEquals(data, completed.get(0));
+  }
+
+  @Test
+  public void concurrentChunksCompleteOnce() throws Exception
+  {
+    int chunks = 32;
+    byte[] data = random(chunks * 1024 - 100);
+    List<Integer> order = new ArrayList<Integer>();
+
+    for ( int i = 1 ; i <= chunks ; i++ )
+    {
+      order.add(i);
+      order.add(i);
+    }
+
+    Collections.shuffle(order);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+    try
+    {
+      for ( int chunkNumber : order )
+      {
+        results.add(executor.submit(() -> {
+          start.await();
+
+          try
+          {
+            send(data, chunkNumber);
+            return Boolean.TRUE;
+          }
+          catch (OSCIErrorException ex)
+          {
+            // Jeder Chunk wird zweimal gesendet, einer der beiden kommt zu spät
+            if (ex.getErrorCodeObject() != OSCIErrorCodes.DuplicateChunk)
+              throw ex;
+
+            return Boolean.FALSE;
+          }
+        }));
+      }
+
+      start.countDown();
+      int accepted = 0;
+
+      for ( Future<Boolean> result : results )
+        accepted += result.get() ? 1 : 0;
+
+      assertEquals(chunks, accepted);
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+
+    assertEquals(1, completed.size());
+    assertArrayEquals(data, completed.get(0));
+  }
+
+  private ChunkInformation send(byte[] data, int chunkNumber) throws Exception
+  {
+    int offset = (chunkNumber - 1) * CHUNK_SIZE * 1024;
+    int length = Math.min(CHUNK_SIZE * 1024, data.length - offset);
+
+    return store.receive(MESSAGE_ID, chunkInformation(data, chunkNumber),
+                         new ByteArrayInputStream(data, offset, length), handler);
+  }
+
+  private static ChunkInformation chunkInformation(byte[] data, int chunkNumber)
+  {
+    int chunkBytes = CHUNK_SIZE * 1024;
+    return new ChunkInformation(CHUNK_SIZE, chunkNumber, data.length / 1024,
+                                (data.length + chunkBytes - 1) / chunkBytes);
+  }
+
+  private static List<Integer> received(ChunkInformation chunkInformation)
+  {
+    return chunkInformation.getReceivedChunks();
+  }
+
+  private static void assertError(OSCIErrorCodes code, Executable executable)
+  {
+    assertEquals(code, assertThrows(OSCIErrorException.class, executable).getErrorCodeObject());
+  }
+}
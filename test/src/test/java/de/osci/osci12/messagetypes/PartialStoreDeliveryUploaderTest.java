@@ -0,0 +1,224 @@
+package de.osci.osci12.messagetypes;
+
+import static de.osci.osci12.messagetypes.LoopbackFixture.check;
+import static de.osci.osci12.messagetypes.LoopbackFixture.random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.osci.osci12.OSCIException;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.DialogPool;
+import de.osci.osci12.extinterfaces.OSCIDataSource;
+import de.osci.osci12.messageparts.ChunkInformation;
+
+
+/**
+ * Paketierte Zustellung mit dem {@link PartialStoreDeliveryUploader} über den {@link LoopbackIntermed}, wobei
+ * einzelne Übertragungen verloren gehen: Verlorene Chunks werden erneut gesendet, bereits empfangene nicht,
+ * und der letzte Chunk geht erst hinaus, wenn der Intermediär alle übrigen hat.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class PartialStoreDeliveryUploaderTest
+{
+  // Chunkgröße in KB
+  private static final int CHUNK_SIZE = 4;
+
+  private static final int PARALLELISM = 2;
+
+  private LoopbackFixture fixture;
+
+  private DialogPool pool;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    fixture = new LoopbackFixture();
+    pool = new DialogPool(fixture.alice, fixture.loopback.getIntermed(), fixture.loopback.newTransport(),
+                          PARALLELISM);
+  }
+
+  @AfterEach
+  public void tearDown()
+  {
+    if (pool != null)
+      pool.close();
+  }
+
+  @Test
+  public void lostChunksAreRetransmitted() throws Exception
+  {
+    byte[] data = random(12 * 1024);
+    String messageId = newMessageId();
+    StoreDeliverySplitter splitter = splitter(messageId, data);
+    int total = splitter.getTotalChunkNumbers();
+    assertTrue(total >= 4, "too few chunks: " + total);
+
+    FaultyUploader uploader = new FaultyUploader(total);
+    uploader.faults.put(1, Fault.LOST_REQUEST);
+    uploader.faults.put(2, Fault.LOST_RESPONSE);
+    uploader.faults.put(3, Fault.LOST_REQUEST);
+
+    ResponseToPartialStoreDelivery rsp = uploader.upload(splitter);
+    check(rsp.getInsideFeedback(), "PartialStoreDelivery (inside)");
+
+    // Chunk 1 wird sofort wiederholt, Chunk 3 nach der Abfrage des Empfangsstands; Chunk 2 hat der
+    // Intermediär trotz verlorener Antwort erhalten
+    assertEquals(2, uploader.attempts(1));
+    assertEquals(1, uploader.attempts(2));
+    assertEquals(2, uploader.attempts(3));
+    assertEquals(2, uploader.getRetransmittedChunks());
+    assertEquals(3, uploader.getFailedTransmissions());
+    assertEquals(total - 1, uploader.getSentChunks());
+    assertLastChunkSentAfterAllOthers(uploader, total);
+    assertArrayEquals(data, fixture.fetch(messageId));
+  }
+
+  @Test
+  public void lastChunkIsRepeatedAfterLostRequest() throws Exception
+  {
+    byte[] data = random(10 * 1024);
+    String messageId = newMessageId();
+    StoreDeliverySplitter splitter = splitter(messageId, data);
+    int total = splitter.getTotalChunkNumbers();
+
+    FaultyUploader uploader = new FaultyUploader(total);
+    uploader.faults.put(total, Fault.LOST_REQUEST);
+
+    ResponseToPartialStoreDelivery rsp = uploader.upload(splitter);
+    check(rsp.getInsideFeedback(), "PartialStoreDelivery (inside)");
+
+    assertEquals(2, uploader.attempts(total));
+    assertEquals(1, uploader.getRetransmittedChunks());
+    assertLastChunkSentAfterAllOthers(uploader, total);
+    assertArrayEquals(data, fixture.fetch(messageId));
+  }
+
+  @Test
+  public void lastChunkIsWithheldWhileChunksAreMissing() throws Exception
+  {
+    byte[] data = random(10 * 1024);
+    StoreDeliverySplitter splitter = splitter(newMessageId(), data);
+    int total = splitter.getTotalChunkNumbers();
+
+    FaultyUploader uploader = new FaultyUploader(total);
+    uploader.setMaxRounds(0);
+    uploader.faults.put(2, Fault.LOST_REQUEST);
+
+    IOException ex = assertThrows(IOException.class, () -> uploader.upload(splitter));
+
+    assertTrue(ex.getMessage().endsWith("[2]"), ex.getMessage());
+    assertEquals(1, uploader.attempts(2));
+    assertEquals(0, uploader.attempts(total));
+    assertEquals(0, fixture.loopback.getPendingDeliveries());
+  }
+
+  private String newMessageId() throws Exception
+  {
+    return new GetMessageId(fixture.newDialog(fixture.alice)).send().getMessageId();
+  }
+
+  private StoreDeliverySplitter splitter(String messageId, byte[] data) throws Exception
+  {
+    StoreDelivery storeDel = fixture.createStoreDelivery(fixture.newDialog(fixture.alice), messageId, data);
+    return new StoreDeliverySplitter(storeDel, CHUNK_SIZE);
+  }
+
+  private static void assertLastChunkSentAfterAllOthers(FaultyUploader uploader, int total)
+  {
+    Set<Integer> expected = new TreeSet<Integer>();
+
+    for ( int i = 1 ; i < total ; i++ )
+      expected.add(i);
+
+    assertEquals(expected, uploader.deliveredBeforeLast);
+  }
+
+  private enum Fault
+  {
+    /** Die Anfrage erreicht den Intermediär nicht. */
+    LOST_REQUEST,
+
+    /** Der Intermediär verarbeitet den Chunk, die Antwort geht verloren. */
+    LOST_RESPONSE
+  }
+
+  /**
+   * Uploader, der beim ersten Versuch einzelner Chunks eine Störung der Verbindung nachbildet und die
+   * Versuche mitzählt.
+   */
+  private final class FaultyUploader extends PartialStoreDeliveryUploader
+  {
+    final Map<Integer, Fault> faults = new HashMap<Integer, Fault>();
+
+    private final Map<Integer, AtomicInteger> attempts = new ConcurrentHashMap<Integer, AtomicInteger>();
+
+    // Chunks, die der Intermediär verarbeitet hat
+    private final Set<Integer> delivered = ConcurrentHashMap.newKeySet();
+
+    private final int total;
+
+    volatile Set<Integer> deliveredBeforeLast;
+
+    FaultyUploader(int total)
+    {
+      super(pool, fixture.bobAddressee, PARALLELISM);
+      this.total = total;
+    }
+
+    int attempts(int chunkNumber)
+    {
+      AtomicInteger count = attempts.get(chunkNumber);
+      return (count == null) ? 0 : count.get();
+    }
+
+    @Override
+    protected ResponseToPartialStoreDelivery sendChunk(DialogHandler dh,
+                                                       String messageId,
+                                                       ChunkInformation chunkInformation,
+                                                       OSCIDataSource chunk)
+      throws IOException, OSCIException, NoSuchAlgorithmException
+    {
+      int number = chunkInformation.getChunkNumber();
+      int attempt = attempts.computeIfAbsent(number, n -> new AtomicInteger()).incrementAndGet();
+      Fault fault = (attempt == 1) ? faults.get(number) : null;
+
+      if ((number == total) && (deliveredBeforeLast == null))
+        deliveredBeforeLast = new TreeSet<Integer>(delivered);
+
+      if (fault == Fault.LOST_REQUEST)
+        throw new IOException("request of chunk " + number + " lost");
+
+      ResponseToPartialStoreDelivery rsp = super.sendChunk(dh, messageId, chunkInformation, chunk);
+      delivered.add(number);
+
+      if (fault == Fault.LOST_RESPONSE)
+        throw new IOException("response to chunk " + number + " lost");
+
+      return rsp;
+    }
+  }
+}
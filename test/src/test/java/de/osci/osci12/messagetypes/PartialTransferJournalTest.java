@@ -0,0 +1,245 @@
+package de.osci.osci12.messagetypes;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.osci.osci12.messageparts.ChunkInformation;
+import de.osci.osci12.messageparts.ChunkInformation.CheckInstance;
+import de.osci.osci12.messagetypes.PartialTransferJournal.Checkpoint;
+
+
+/**
+ * Schreiben und Wiederherstellen des {@link PartialTransferJournal}, auch nach einem beim Abbruch
+ * unvollständig geschriebenen letzten Eintrag und bei gleichzeitigen Einträgen mehrerer Threads.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class PartialTransferJournalTest
+{
+  private static final ChunkInformation PLAN = new ChunkInformation(64, 1, 300, 5);
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void replayRestoresOpenTransfers() throws Exception
+  {
+    File journalFile = dir.resolve("transfers.journal").toFile();
+    File data = dir.resolve("data.bin").toFile();
+
+    try (PartialTransferJournal journal = new PartialTransferJournal(journalFile))
+    {
+      Checkpoint checkpoint = journal.begin("msg-1", 64, PLAN, data);
+      checkpoint.chunkStored(1, digest(1));
+      checkpoint.chunkStored(2, digest(2));
+      checkpoint.chunkAcknowledged(2);
+      checkpoint.chunkAcknowledged(4, digest(4));
+    }
+
+    try (PartialTransferJournal journal = new PartialTransferJournal(journalFile))
+    {
+      Checkpoint checkpoint = journal.getCheckpoint("msg-1");
+
+      assertEquals(CheckInstance.PartialStoreDelivery, checkpoint.getCheckInstance());
+      assertEquals(64, checkpoint.getChunkSize());
+      assertEquals(300, checkpoint.getTotalMessageSize());
+      assertEquals(5, checkpoint.getTotalChunkNumbers());
+      assertEquals(data.getAbsoluteFile(), checkpoint.getFile());
+      assertArrayEquals(digest(1), checkpoint.getDigest(1));
+      assertArrayEquals(digest(4), checkpoint.getDigest(4));
+      assertNull(checkpoint.getDigest(3));
+      assertEquals(Arrays.asList(2, 4), checkpoint.getAcknowledgedChunks());
+      assertEquals(1, checkpoint.getFirstUnacknowledged());
+      assertFalse(checkpoint.isStored());
+    }
+  }
+
+  @Test
+  public void tornLastRecordIsDiscarded() throws Exception
+  {
+    File journalFile = dir.resolve("transfers.journal").toFile();
+
+    try (PartialTransferJournal journal = new PartialTransferJournal(journalFile))
+    {
+      Checkpoint checkpoint = journal.begin("msg-1", 64, PLAN, dir.resolve("data.bin").toFile());
+      checkpoint.chunkAcknowledged(1);
+      checkpoint.chunkAcknowledged(2);
+    }
+
+    long intact = journalFile.length();
+
+    // Abbruch mitten im Eintrag für Chunk 3
+    Files.write(journalFile.toPath(), "A msg-1 3 c2hhMj".getBytes(StandardCharsets.US_ASCII),
+                StandardOpenOption.APPEND);
+
+    try (PartialTransferJournal journal = new PartialTransferJournal(journalFile))
+    {
+      Checkpoint checkpoint = journal.getCheckpoint("msg-1");
+
+      assertEquals(Arrays.asList(1, 2), checkpoint.getAcknowledgedChunks());
+      assertEquals(intact, journalFile.length());
+
+      // Weitere Einträge schließen an den letzten vollständigen an
+      checkpoint.chunkAcknowledged(3);
+    }
+
+    try (PartialTransferJournal journal = new PartialTransferJournal(journalFile))
+    {
+      assertEquals(Arrays.asList(1, 2, 3), journal.getCheckpoint("msg-1").getAcknowledgedChunks());
+    }
+  }
+
+  @Test
+  public void corruptRecordIsRejected() throws Exception
+  {
+    File journalFile = dir.resolve("transfers.journal").toFile();
+    Files.write(journalFile.toPath(), "X msg-1\n".getBytes(StandardCharsets.US_ASCII));
+
+    assertThrows(IOException.class, () -> new PartialTransferJournal(journalFile));
+  }
+
+  @Test
+  public void planMismatchIsRejected() throws Exception
+  {
+    File data = dir.resolve("data.bin").toFile();
+
+    try (PartialTransferJournal journal = new PartialTransferJournal(dir.resolve("transfers.journal").toFile()))
+    {
+      Checkpoint checkpoint = journal.begin("msg-1", 64, PLAN, data);
+
+      assertTrue(checkpoint == journal.begin("msg-1", 64, PLAN, data));
+      assertThrows(IOException.class, () -> journal.begin("msg-1", 32, PLAN, data));
+      assertThrows(IOException.class,
+                   () -> journal.begin("msg-1", 64, new ChunkInformation(64, 1, 300, 6), data));
+    }
+  }
+
+  @Test
+  public void finishedTransfersAreCompacted() throws Exception
+  {
+    File journalFile = dir.resolve("transfers.journal").toFile();
+
+    try (PartialTransferJournal journal = new PartialTransferJournal(journalFile))
+    {
+      for ( int i = 0 ; i < 20 ; i++ )
+      {
+        Checkpoint checkpoint = journal.begin("done-" + i, 64, PLAN, dir.resolve("done-" + i).toFile());
+
+        for ( int chunk = 1 ; chunk <= 5 ; chunk++ )
+          checkpoint.chunkAcknowledged(chunk, digest(chunk));
+
+        checkpoint.finish();
+      }
+
+      journal.begin("open", 64, PLAN, dir.resolve("open").toFile()).chunkAcknowledged(1);
+    }
+
+    long before = journalFile.length();
+
+    try (PartialTransferJournal journal = new PartialTransferJournal(journalFile))
+    {
+      assertEquals(1, journal.getMessageIds().size());
+      assertEquals(Arrays.asList(1), journal.getCheckpoint("open").getAcknowledgedChunks());
+    }
+
+    assertTrue(journalFile.length() < before / 10);
+  }
+
+  @Test
+  public void concurrentRecordsAreAllReplayed() throws Exception
+  {
+    File journalFile = dir.resolve("transfers.journal").toFile();
+    int threads = 8;
+    int chunks = 400;
+    ChunkInformation plan = new ChunkInformation(64, 1, chunks * 64, chunks);
+
+    try (PartialTransferJournal journal = new PartialTransferJournal(journalFile))
+    {
+      Checkpoint checkpoint = journal.begin("msg-1", 64, plan, dir.resolve("data.bin").toFile());
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      List<Future<?>> results = new ArrayList<Future<?>>();
+
+      try
+      {
+        for ( int t = 0 ; t < threads ; t++ )
+        {
+          int first = t + 1;
+          results.add(executor.submit(() -> {
+            for ( int chunk = first ; chunk <= chunks ; chunk += threads )
+            {
+              checkpoint.chunkStored(chunk, digest(chunk));
+              checkpoint.chunkAcknowledged(chunk);
+            }
+            return null;
+          }));
+        }
+
+        for ( Future<?> result : results )
+          result.get();
+      }
+      finally
+      {
+        executor.shutdown();
+      }
+
+      assertTrue(checkpoint.isStored());
+    }
+
+    try (PartialTransferJournal journal = new PartialTransferJournal(journalFile))
+    {
+      Checkpoint checkpoint = journal.getCheckpoint("msg-1");
+
+      assertTrue(checkpoint.isStored());
+      assertEquals(chunks + 1, checkpoint.getFirstUnacknowledged());
+
+      for ( int chunk = 1 ; chunk <= chunks ; chunk++ )
+        assertArrayEquals(digest(chunk), checkpoint.getDigest(chunk));
+    }
+  }
+
+  @Test
+  public void closedJournalRejectsRecords() throws Exception
+  {
+    PartialTransferJournal journal = new PartialTransferJournal(dir.resolve("transfers.journal").toFile());
+    Checkpoint checkpoint = journal.begin("msg-1", 64, PLAN, dir.resolve("data.bin").toFile());
+    journal.close();
+
+    assertThrows(IOException.class, () -> checkpoint.chunkAcknowledged(1));
+    assertFalse(checkpoint.isAcknowledged(1));
+  }
+
+  private static byte[] digest(int chunkNumber)
+  {
+    byte[] digest = new byte[32];
+    Arrays.fill(digest, (byte)chunkNumber);
+    return digest;
+  }
+}
@@ -0,0 +1,265 @@
+package de.osci.osci12.messagetypes;
+
+import static de.osci.osci12.messagetypes.LoopbackFixture.check;
+import static de.osci.osci12.messagetypes.LoopbackFixture.random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.osci.osci12.OSCIException;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.common.OSCIExceptionCodes.OSCIErrorCodes;
+import de.osci.osci12.extinterfaces.AsyncTransportI;
+import de.osci.osci12.extinterfaces.TransportI;
+
+
+/**
+ * Asynchroner Versand mit sendAsync über den {@link LoopbackIntermed}, sowohl über den Executor als auch über
+ * ein Transportmodul mit {@link AsyncTransportI}. Das Future wird mit der Antwort abgeschlossen, bei einem
+ * Verbindungsfehler mit der IOException und bei einem SOAP-Fault des Intermediärs mit der OSCIException;
+ * Fehlermeldungen im Feedback kommen mit der Antwort.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class SendAsyncTest
+{
+  private static final long TIMEOUT_SECONDS = 60;
+
+  private LoopbackFixture fixture;
+
+  private ExecutorService executor;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    fixture = new LoopbackFixture();
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  @AfterEach
+  public void tearDown()
+  {
+    executor.shutdown();
+  }
+
+  @Test
+  public void storeDeliveryCompletes() throws Exception
+  {
+    byte[] data = random(8 * 1024);
+    DialogHandler dh = fixture.newDialog(fixture.alice);
+    ResponseToGetMessageId idRsp = await(new GetMessageId(dh).sendAsync(executor));
+    check(idRsp.getFeedback(), "GetMessageId");
+
+    ResponseToStoreDelivery rsp = await(fixture.createStoreDelivery(dh, idRsp.getMessageId(), data)
+                                               .sendAsync(executor));
+
+    check(rsp.getFeedback(), "StoreDelivery");
+    assertArrayEquals(data, fixture.fetch(idRsp.getMessageId()));
+  }
+
+  @Test
+  public void storeDeliveryCompletesOverAsyncTransport() throws Exception
+  {
+    AtomicInteger asyncCalls = new AtomicInteger();
+    fixture.setTransportDecorator(transport -> new AsyncTransport(transport, asyncCalls));
+    byte[] data = random(8 * 1024);
+    DialogHandler dh = fixture.newDialog(fixture.alice);
+    String messageId = new GetMessageId(dh).send().getMessageId();
+
+    ResponseToStoreDelivery rsp = await(fixture.createStoreDelivery(dh, messageId, data).sendAsync(executor));
+
+    check(rsp.getFeedback(), "StoreDelivery");
+    // Verbindungsaufbau und Antwort
+    assertEquals(2, asyncCalls.get());
+    fixture.setTransportDecorator(transport -> transport);
+    assertArrayEquals(data, fixture.fetch(messageId));
+  }
+
+  @Test
+  public void connectFailureCompletesExceptionally() throws Exception
+  {
+    String messageId = new GetMessageId(fixture.newDialog(fixture.alice)).send().getMessageId();
+    fixture.setTransportDecorator(RefusingTransport::new);
+    DialogHandler dh = fixture.newDialog(fixture.alice);
+
+    IOException ex = assertFailure(IOException.class,
+                                   fixture.createStoreDelivery(dh, messageId, random(1024)).sendAsync(executor));
+    assertEquals(RefusingTransport.MESSAGE, ex.getMessage());
+
+    // Über AsyncTransportI kommt der Fehler als UncheckedIOException und wird ausgepackt
+    fixture.setTransportDecorator(transport -> new AsyncTransport(new RefusingTransport(transport),
+                                                                  new AtomicInteger()));
+    dh = fixture.newDialog(fixture.alice);
+    ex = assertFailure(IOException.class,
+                       fixture.createStoreDelivery(dh, messageId, random(1024)).sendAsync(executor));
+    assertEquals(RefusingTransport.MESSAGE, ex.getMessage());
+  }
+
+  @Test
+  public void soapFaultCompletesExceptionally() throws Exception
+  {
+    DialogHandler dh = fixture.newDialog(fixture.bob);
+    new InitDialog(dh).send();
+
+    // Der Intermediär vergisst den Dialog und antwortet mit einem SOAP-Fault
+    fixture.loopback.clear();
+    OSCIException ex = assertFailure(OSCIException.class, new FetchDelivery(dh).sendAsync(executor));
+
+    assertEquals(OSCIErrorCodes.WrongControlBlock.getOSCICode(), ex.getErrorCode());
+  }
+
+  @Test
+  public void errorFeedbackCompletesWithResponse() throws Exception
+  {
+    DialogHandler dh = fixture.newDialog(fixture.alice);
+
+    ResponseToStoreDelivery rsp = await(fixture.createStoreDelivery(dh, "never-issued", random(1024))
+                                               .sendAsync(executor));
+
+    assertEquals(OSCIErrorCodes.IllegalMessageId.getOSCICode(), rsp.getFeedback()[0][1]);
+    assertEquals(0, fixture.loopback.getPendingDeliveries());
+  }
+
+  private static <T> T await(CompletableFuture<T> future) throws Exception
+  {
+    return future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  private static <X extends Throwable> X assertFailure(Class<X> type, CompletableFuture<?> future)
+  {
+    ExecutionException ex = assertThrows(ExecutionException.class,
+                                         () -> future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertTrue(type.isInstance(ex.getCause()), () -> "unexpected cause: " + ex.getCause());
+    return type.cast(ex.getCause());
+  }
+
+  /**
+   * Reicht alle Aufrufe an das umhüllte Transportmodul weiter.
+   */
+  private abstract static class ForwardingTransport implements TransportI
+  {
+    final TransportI transport;
+
+    ForwardingTransport(TransportI transport)
+    {
+      this.transport = transport;
+    }
+
+    public String getVersion()
+    {
+      return transport.getVersion();
+    }
+
+    public String getVendor()
+    {
+      return transport.getVendor();
+    }
+
+    public boolean isOnline(URI uri) throws IOException
+    {
+      return transport.isOnline(uri);
+    }
+
+    public boolean isChunkedTransferSupported()
+    {
+      return transport.isChunkedTransferSupported();
+    }
+
+    public OutputStream getConnection(URI uri, long length) throws IOException
+    {
+      return transport.getConnection(uri, length);
+    }
+
+    public InputStream getResponseStream() throws IOException
+    {
+      return transport.getResponseStream();
+    }
+
+    public long getContentLength()
+    {
+      return transport.getContentLength();
+    }
+  }
+
+  /**
+   * Transportmodul, dessen Verbindungsaufbau scheitert.
+   */
+  private static final class RefusingTransport extends ForwardingTransport
+  {
+    static final String MESSAGE = "connection refused";
+
+    RefusingTransport(TransportI transport)
+    {
+      super(transport);
+    }
+
+    public TransportI newInstance() throws IOException
+    {
+      return new RefusingTransport(transport.newInstance());
+    }
+
+    @Override
+    public OutputStream getConnection(URI uri, long length) throws IOException
+    {
+      throw new IOException(MESSAGE);
+    }
+  }
+
+  /**
+   * Transportmodul mit AsyncTransportI, das die asynchronen Aufrufe mitzählt.
+   */
+  private static final class AsyncTransport extends ForwardingTransport implements AsyncTransportI
+  {
+    private final AtomicInteger asyncCalls;
+
+    AsyncTransport(TransportI transport, AtomicInteger asyncCalls)
+    {
+      super(transport);
+      this.asyncCalls = asyncCalls;
+    }
+
+    public TransportI newInstance() throws IOException
+    {
+      return new AsyncTransport(transport.newInstance(), asyncCalls);
+    }
+
+    @Override
+    public CompletableFuture<OutputStream> getConnectionAsync(URI uri, long length, Executor executor)
+    {
+      asyncCalls.incrementAndGet();
+      return AsyncTransportI.super.getConnectionAsync(uri, length, executor);
+    }
+
+    @Override
+    public CompletableFuture<InputStream> getResponseStreamAsync(Executor executor)
+    {
+      asyncCalls.incrementAndGet();
+      return AsyncTransportI.super.getResponseStreamAsync(executor);
+    }
+  }
+}
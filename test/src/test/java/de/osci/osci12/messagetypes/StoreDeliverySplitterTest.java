@@ -0,0 +1,203 @@
+package de.osci.osci12.messagetypes;
+
+import static de.osci.osci12.messagetypes.LoopbackFixture.random;
+import static de.osci.osci12.messagetypes.LoopbackFixture.read;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.messageparts.ChunkInformation;
+
+
+/**
+ * Zerlegung einer StoreDelivery durch den {@link StoreDeliverySplitter}: Chunkgrenzen, Angaben der
+ * ChunkInformation und Zusammensetzen der Chunks zur ursprünglichen Nachricht, für eine Nachricht aus genau
+ * n Chunks und für eine mit einem zusätzlichen Byte im letzten Chunk.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class StoreDeliverySplitterTest
+{
+  // Chunkgröße in KB
+  private static final int CHUNK_SIZE = 2;
+
+  private static final int CHUNK_BYTES = CHUNK_SIZE * 1024;
+
+  private LoopbackFixture fixture;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    fixture = new LoopbackFixture();
+  }
+
+  @Test
+  public void exactMultipleOfChunkSize() throws Exception
+  {
+    byte[] data = random(3 * CHUNK_BYTES);
+    StoreDeliverySplitter splitter = new StoreDeliverySplitter(new FixedStoreDelivery(data), CHUNK_SIZE);
+    assertEquals(3, splitter.getTotalChunkNumbers());
+
+    List<Chunk> chunks = split(splitter);
+    assertEquals(3, chunks.size());
+
+    for ( int i = 0 ; i < 3 ; i++ )
+      assertChunk(chunks.get(i), i + 1, 3, 6, range(data, i));
+
+    assertArrayEquals(data, reassemble(chunks));
+  }
+
+  @Test
+  public void oneByteRemainderFormsLastChunk() throws Exception
+  {
+    byte[] data = random(3 * CHUNK_BYTES + 1);
+    StoreDeliverySplitter splitter = new StoreDeliverySplitter(new FixedStoreDelivery(data), CHUNK_SIZE);
+    assertEquals(4, splitter.getTotalChunkNumbers());
+
+    List<Chunk> chunks = split(splitter);
+    assertEquals(4, chunks.size());
+
+    // Die Gesamtgröße wird in ganzen KB angegeben
+    for ( int i = 0 ; i < 3 ; i++ )
+      assertChunk(chunks.get(i), i + 1, 4, 6, range(data, i));
+
+    assertChunk(chunks.get(3), 4, 4, 6, new byte[]{data[data.length - 1]});
+    assertArrayEquals(data, reassemble(chunks));
+  }
+
+  @Test
+  public void storeDeliveryIsReassembled() throws Exception
+  {
+    DialogHandler dh = fixture.newDialog(fixture.alice);
+    StoreDelivery storeDel = fixture.createStoreDelivery(dh, "message-id", random(5 * 1024));
+    StoreDeliverySplitter splitter = new StoreDeliverySplitter(storeDel, 1);
+
+    List<Chunk> chunks = split(splitter);
+    byte[] message = reassemble(chunks);
+    assertEquals(splitter.getTotalLength(), message.length);
+    assertEquals(splitter.getTotalChunkNumbers(), chunks.size());
+
+    for ( Chunk chunk : chunks )
+      assertEquals(splitter.getTotalLength() / 1024, chunk.info.getTotalMessageSize());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    storeDel.writeMessage(out);
+    assertArrayEquals(out.toByteArray(), message);
+  }
+
+  @Test
+  public void lengthMismatchIsDetected() throws Exception
+  {
+    byte[] data = random(CHUNK_BYTES + 10);
+
+    // Die Nachricht wird länger als berechnet
+    FixedStoreDelivery longer = new FixedStoreDelivery(data);
+    longer.length = data.length - 1;
+    assertThrows(IOException.class, () -> split(new StoreDeliverySplitter(longer, CHUNK_SIZE)));
+
+    // Die Nachricht wird kürzer als berechnet
+    FixedStoreDelivery shorter = new FixedStoreDelivery(data);
+    shorter.length = data.length + 1;
+    assertThrows(IOException.class, () -> split(new StoreDeliverySplitter(shorter, CHUNK_SIZE)));
+  }
+
+  private static void assertChunk(Chunk chunk, int number, int total, long totalSize, byte[] expected)
+  {
+    assertEquals(CHUNK_SIZE, chunk.info.getChunkSize());
+    assertEquals(number, chunk.info.getChunkNumber());
+    assertEquals(total, chunk.info.getTotalChunkNumbers());
+    assertEquals(totalSize, chunk.info.getTotalMessageSize());
+    assertArrayEquals(expected, chunk.data, "chunk " + number);
+  }
+
+  private static byte[] range(byte[] data, int chunk)
+  {
+    return Arrays.copyOfRange(data, chunk * CHUNK_BYTES, (chunk + 1) * CHUNK_BYTES);
+  }
+
+  private static List<Chunk> split(StoreDeliverySplitter splitter) throws Exception
+  {
+    List<Chunk> chunks = new ArrayList<Chunk>();
+    splitter.split((chunkInformation, chunk) -> {
+      // Der Puffer kann nur einmal gelesen werden, danach ist die Länge nicht mehr verfügbar
+      long length = chunk.getLength();
+      byte[] data = read(chunk.getInputStream());
+      assertEquals(length, data.length);
+      chunks.add(new Chunk(chunkInformation, data));
+    });
+    return chunks;
+  }
+
+  private static byte[] reassemble(List<Chunk> chunks) throws IOException
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    for ( Chunk chunk : chunks )
+      out.write(chunk.data);
+
+    return out.toByteArray();
+  }
+
+  private static final class Chunk
+  {
+    final ChunkInformation info;
+
+    final byte[] data;
+
+    Chunk(ChunkInformation info, byte[] data)
+    {
+      this.info = info;
+      this.data = data;
+    }
+  }
+
+  /**
+   * StoreDelivery, die statt der serialisierten Nachricht feste Daten in ungeraden Blöcken schreibt, damit
+   * Schreibvorgänge über die Chunkgrenzen hinweg reichen.
+   */
+  private final class FixedStoreDelivery extends StoreDelivery
+  {
+    private final byte[] data;
+
+    long length;
+
+    FixedStoreDelivery(byte[] data) throws Exception
+    {
+      super(fixture.newDialog(fixture.alice), fixture.bobAddressee, "message-id");
+      this.data = data;
+      this.length = data.length;
+    }
+
+    @Override
+    protected long calcLength()
+    {
+      return length;
+    }
+
+    @Override
+    public void writeMessage(OutputStream out) throws IOException
+    {
+      for ( int off = 0 ; off < data.length ; off += 1000 )
+        out.write(data, off, Math.min(1000, data.length - off));
+    }
+  }
+}
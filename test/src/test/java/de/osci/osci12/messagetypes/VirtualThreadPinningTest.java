@@ -0,0 +1,254 @@
+package de.osci.osci12.messagetypes;
+
+import static de.osci.osci12.messagetypes.LoopbackFixture.check;
+import static de.osci.osci12.messagetypes.LoopbackFixture.random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.osci.helper.VirtualThreads;
+import de.osci.osci12.common.DialogHandler;
+import de.osci.osci12.extinterfaces.TransportI;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+
+
+/**
+ * Senden und Empfangen über den {@link LoopbackIntermed} auf virtuellen Threads. Das Transportmodul legt den
+ * Thread bei jedem Verbindungsaufbau und beim Warten auf die Antwort schlafen; hält der Aufrufer dabei einen
+ * Monitor, bleibt der virtuelle Thread an seinen Träger-Thread gebunden. Der Test zeichnet diese Fälle mit dem
+ * JDK Flight Recorder (Ereignis jdk.VirtualThreadPinned) auf und schlägt fehl, sobald eines auftritt. Ohne
+ * virtuelle Threads (vor JDK 21) wird er übersprungen.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class VirtualThreadPinningTest
+{
+  private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+  private static final int TASKS = 4;
+
+  private LoopbackFixture fixture;
+
+  @BeforeEach
+  public void setUp() throws Exception
+  {
+    assumeTrue(VirtualThreads.isSupported(), "virtual threads require JDK 21");
+    fixture = new LoopbackFixture();
+    fixture.setTransportDecorator(SleepingTransport::new);
+
+    // Klassen auf einem Plattform-Thread initialisieren, damit static-Initialisierer nicht mitgezählt werden
+    fixture.fetch(fixture.store(random(1024)));
+  }
+
+  @Test
+  public void sendAndReceiveWithoutPinning() throws Exception
+  {
+    List<RecordedEvent> pinned = record(() -> {
+      ExecutorService executor = VirtualThreads.newExecutor();
+      List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+      List<byte[]> data = new ArrayList<byte[]>();
+
+      try
+      {
+        for ( int i = 0 ; i < TASKS ; i++ )
+        {
+          byte[] payload = random(8 * 1024);
+          data.add(payload);
+          results.add(executor.submit(() -> fixture.fetch(fixture.store(payload))));
+        }
+
+        for ( int i = 0 ; i < TASKS ; i++ )
+          assertArrayEquals(data.get(i), results.get(i).get());
+      }
+      finally
+      {
+        executor.shutdown();
+      }
+    });
+
+    assertTrue(pinned.isEmpty(), () -> describe(pinned));
+  }
+
+  @Test
+  public void sendAsyncWithoutPinning() throws Exception
+  {
+    List<RecordedEvent> pinned = record(() -> {
+      ExecutorService executor = VirtualThreads.newExecutor();
+      List<CompletableFuture<ResponseToStoreDelivery>> results = new ArrayList<CompletableFuture<ResponseToStoreDelivery>>();
+
+      try
+      {
+        for ( int i = 0 ; i < TASKS ; i++ )
+        {
+          DialogHandler dh = fixture.newDialog(fixture.alice);
+          String messageId = new GetMessageId(dh).send().getMessageId();
+          results.add(fixture.createStoreDelivery(dh, messageId, random(8 * 1024)).sendAsync(executor));
+        }
+
+        for ( CompletableFuture<ResponseToStoreDelivery> result : results )
+          check(result.get().getFeedback(), "StoreDelivery");
+      }
+      finally
+      {
+        executor.shutdown();
+      }
+    });
+
+    assertTrue(pinned.isEmpty(), () -> describe(pinned));
+  }
+
+  private interface Scenario
+  {
+    void run() throws Exception;
+  }
+
+  /**
+   * Führt das Szenario unter Aufzeichnung aus und liefert alle Pinning-Ereignisse.
+   */
+  private static List<RecordedEvent> record(Scenario scenario) throws Exception
+  {
+    Path file = Files.createTempFile("pinning", ".jfr");
+
+    try
+    {
+      try (Recording recording = new Recording())
+      {
+        recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+        recording.start();
+        scenario.run();
+        recording.stop();
+        recording.dump(file);
+      }
+
+      List<RecordedEvent> pinned = new ArrayList<RecordedEvent>();
+
+      for ( RecordedEvent event : RecordingFile.readAllEvents(file) )
+      {
+        if (PINNED_EVENT.equals(event.getEventType().getName()))
+          pinned.add(event);
+      }
+
+      return pinned;
+    }
+    finally
+    {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static String describe(List<RecordedEvent> pinned)
+  {
+    StringBuilder sb = new StringBuilder(pinned.size() + " pinned virtual thread(s):");
+
+    for ( RecordedEvent event : pinned )
+    {
+      sb.append("\n---");
+
+      if (event.getStackTrace() != null)
+      {
+        for ( RecordedFrame frame : event.getStackTrace().getFrames() )
+          sb.append("\n  at ").append(frame.getMethod().getType().getName()).append('.')
+            .append(frame.getMethod().getName()).append(':').append(frame.getLineNumber());
+      }
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * Transportmodul, das vor dem Verbindungsaufbau und vor der Antwort kurz schläft, wie es ein Netzwerk tun
+   * würde.
+   */
+  private static final class SleepingTransport implements TransportI
+  {
+    private final TransportI transport;
+
+    SleepingTransport(TransportI transport)
+    {
+      this.transport = transport;
+    }
+
+    public String getVersion()
+    {
+      return transport.getVersion();
+    }
+
+    public String getVendor()
+    {
+      return transport.getVendor();
+    }
+
+    public TransportI newInstance() throws IOException
+    {
+      return new SleepingTransport(transport.newInstance());
+    }
+
+    public boolean isOnline(URI uri) throws IOException
+    {
+      return transport.isOnline(uri);
+    }
+
+    public boolean isChunkedTransferSupported()
+    {
+      return transport.isChunkedTransferSupported();
+    }
+
+    public OutputStream getConnection(URI uri, long length) throws IOException
+    {
+      sleep();
+      return transport.getConnection(uri, length);
+    }
+
+    public InputStream getResponseStream() throws IOException
+    {
+      sleep();
+      return transport.getResponseStream();
+    }
+
+    public long getContentLength()
+    {
+      return transport.getContentLength();
+    }
+
+    private static void sleep() throws IOException
+    {
+      try
+      {
+        Thread.sleep(1);
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package de.osci.osci12.roles;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import de.osci.osci12.extinterfaces.crypto.Decrypter;
+import de.osci.osci12.extinterfaces.crypto.Signer;
+
+
+/**
+ * Verdrängung im Fragment-Cache einer {@link Role}: Bei mehr Empfängern, als der Cache fasst, wird nur das
+ * am längsten nicht verwendete Fragment entfernt.
+ *
+ * <p>Copyright © 2023 Governikus GmbH &amp; Co. KG, Germany</p>
+ * <p>Erstellt von Governikus GmbH &amp; Co. KG</p>
+ * <p>Diese Bibliothek kann von jedermann nach Maßgabe der European Union
+ *  Public Licence genutzt werden.</p><p>Die Lizenzbestimmungen können
+ * unter der URL <a href="https://eupl.eu/">https://eupl.eu/</a> abgerufen werden.
+ *
+ *
+ * @author Governikus GmbH &amp; Co. KG
+ * @version 2.4.1
+ */
+public class RoleFragmentCacheTest
+{
+  // Entspricht Role.MAX_CACHED_FRAGMENTS
+  private static final int CAPACITY = 64;
+
+  @Test
+  public void leastRecentlyUsedFragmentIsEvicted()
+  {
+    Role role = new Originator((Signer)null, (Decrypter)null);
+
+    for ( int i = 0 ; i < CAPACITY ; i++ )
+      role.putCachedFragment("addressee-" + i, fragment(i));
+
+    // Der erste Empfänger wird weiter verwendet, der zweite ist damit der älteste
+    assertArrayEquals(fragment(0), role.getCachedFragment("addressee-0"));
+    role.putCachedFragment("addressee-" + CAPACITY, fragment(CAPACITY));
+
+    assertNull(role.getCachedFragment("addressee-1"));
+
+    for ( int i = 0 ; i <= CAPACITY ; i++ )
+    {
+      if (i != 1)
+        assertArrayEquals(fragment(i), role.getCachedFragment("addressee-" + i), "addressee-" + i);
+    }
+  }
+
+  @Test
+  public void cycleOverMoreAddresseesKeepsRecentFragments()
+  {
+    Role role = new Originator((Signer)null, (Decrypter)null);
+    int addressees = CAPACITY + 8;
+
+    for ( int round = 0 ; round < 2 ; round++ )
+    {
+      for ( int i = 0 ; i < addressees ; i++ )
+        role.putCachedFragment("addressee-" + i, fragment(i));
+    }
+
+    // Die zuletzt gesendeten CAPACITY Fragmente sind vorhanden, nicht nur die seit dem letzten Leeren
+    for ( int i = addressees - CAPACITY ; i < addressees ; i++ )
+      assertArrayEquals(fragment(i), role.getCachedFragment("addressee-" + i), "addressee-" + i);
+
+    for ( int i = 0 ; i < addressees - CAPACITY ; i++ )
+      assertNull(role.getCachedFragment("addressee-" + i), "addressee-" + i);
+  }
+
+  @Test
+  public void newCertificateClearsCache()
+  {
+    Role role = new Originator((Signer)null, (Decrypter)null);
+    role.putCachedFragment("addressee-0", fragment(0));
+
+    role.setDecrypter(null);
+
+    assertNull(role.getCachedFragment("addressee-0"));
+  }
+
+  private static byte[] fragment(int i)
+  {
+    return new byte[]{(byte)i, (byte)(i >> 8)};
+  }
+}